@@ -0,0 +1,119 @@
+/**
+ * A blocked Bloom filter over the hash codes of a set's items. Every item
+ * sets its bits in a single block of 512 bits, which is one 64-byte cache
+ * line, so a lookup touches one line however many bits it tests. The
+ * filter only sees the 32-bit hash the set already computed, spread over 64
+ * bits, so it never reads the item itself. Bits are never cleared: removed
+ * items leave their bits behind until the owner rebuilds the filter.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+class BloomFilter {
+	private static final int BLOCK_WORDS = 8;
+	private static final int BLOCK_BITS = BLOCK_WORDS * 64;
+
+	private final long[] words;
+	private final int blocks;
+	private final int hashes;
+	private final int capacity;
+	private int count;
+
+	/**
+	 * @param capacity The number of items the filter is sized for
+	 * @param bitsPerItem How many bits to allow for each of them
+	 * @param hashes How many bits each item sets
+	 */
+	BloomFilter(int capacity, int bitsPerItem, int hashes) {
+		long bits = Math.max(BLOCK_BITS, (long) capacity * bitsPerItem);
+		this.blocks = (int) Math.min((bits + BLOCK_BITS - 1) / BLOCK_BITS, Integer.MAX_VALUE / BLOCK_WORDS);
+		this.words = new long[this.blocks * BLOCK_WORDS];
+		this.hashes = hashes;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param falsePositiveRate
+	 * @return The bits per item a plain Bloom filter needs for that rate,
+	 *         plus one for the unevenness of blocks
+	 */
+	static int bitsPerItem(double falsePositiveRate) {
+		return (int) Math.ceil(-Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))) + 1;
+	}
+
+	/**
+	 * @param bitsPerItem
+	 * @return The number of hash functions that gives the fewest false
+	 *         positives with that many bits per item, from 1 to 16
+	 */
+	static int hashesFor(int bitsPerItem) {
+		return Math.max(1, Math.min(16, (int) Math.round(bitsPerItem * Math.log(2))));
+	}
+
+	/**
+	 * Spreads a 32-bit hash over 64 bits: the high half picks the block and
+	 * the low half the bits within it
+	 */
+	private static long spread(int hash) {
+		long x = hash * 0x9E3779B97F4A7C15L;
+		x ^= x >>> 32;
+		x *= 0xD6E8FEB86659FD93L;
+		return x ^ x >>> 32;
+	}
+
+	void add(int hash) {
+		long x = BloomFilter.spread(hash);
+		int base = (int) (((x >>> 32) * this.blocks) >>> 32) * BLOCK_WORDS;
+		int h = (int) x, step = (int) (x * 0x9E3779B97F4A7C15L >>> 32) | 1;
+		for (int i = 0; i < this.hashes; i++, h += step) {
+			int bit = h >>> 23;
+			this.words[base + (bit >>> 6)] |= 1L << bit;
+		}
+		this.count++;
+	}
+
+	/**
+	 * @param hash
+	 * @return False if no item with this hash was added, true if one may have been
+	 */
+	boolean mightContain(int hash) {
+		long x = BloomFilter.spread(hash);
+		int base = (int) (((x >>> 32) * this.blocks) >>> 32) * BLOCK_WORDS;
+		int h = (int) x, step = (int) (x * 0x9E3779B97F4A7C15L >>> 32) | 1;
+		for (int i = 0; i < this.hashes; i++, h += step) {
+			int bit = h >>> 23;
+			if ((this.words[base + (bit >>> 6)] & 1L << bit) == 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return Whether as many items have been added as the filter was sized for
+	 */
+	boolean isFull() {
+		return this.count >= this.capacity;
+	}
+
+	/**
+	 * @return The number of items added since the filter was built
+	 */
+	int count() {
+		return this.count;
+	}
+
+	/**
+	 * @return The fraction of absent items the filter would let through now,
+	 *         estimated from how many of its bits are set
+	 */
+	double falsePositiveRate() {
+		long set = 0;
+		for (long word : this.words) set += Long.bitCount(word);
+		return Math.pow((double) set / (this.words.length * 64L), this.hashes);
+	}
+
+	/**
+	 * @return The bytes of the filter's bit array
+	 */
+	long bytes() {
+		return this.words.length * 8L;
+	}
+}
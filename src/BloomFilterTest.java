@@ -0,0 +1,46 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+	@Test
+	public void testNoFalseNegatives() {
+		BloomFilter filter = new BloomFilter(10000, 10, 7);
+		Random random = new Random(230);
+		int[] hashes = new int[10000];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = random.nextInt();
+			filter.add(hashes[i]);
+		}
+		for (int hash : hashes) assertTrue(filter.mightContain(hash));
+		assertEquals(10000, filter.count());
+		assertTrue(filter.isFull());
+	}
+
+	@Test
+	public void testFalsePositiveRate() {
+		int bitsPerItem = BloomFilter.bitsPerItem(0.01);
+		BloomFilter filter = new BloomFilter(100000, bitsPerItem, BloomFilter.hashesFor(bitsPerItem));
+		for (int i = 0; i < 100000; i++) filter.add(("item" + i).hashCode());
+		int passed = 0;
+		for (int i = 0; i < 100000; i++) if (filter.mightContain(("other" + i).hashCode())) passed++;
+		// Blocks fill unevenly, so allow some slack over 1%
+		assertTrue("passed " + passed, passed < 1500);
+		assertTrue(filter.falsePositiveRate() < 0.015);
+		assertFalse(filter.isFull() && filter.count() < 100000);
+	}
+
+	@Test
+	public void testSizing() {
+		assertEquals(11, BloomFilter.bitsPerItem(0.01));
+		assertEquals(8, BloomFilter.hashesFor(11));
+		assertEquals(1, BloomFilter.hashesFor(1));
+		// At least one block of 512 bits
+		assertEquals(64, new BloomFilter(1, 1, 1).bytes());
+		assertEquals(10000 * 16 / 8, new BloomFilter(10000, 16, 11).bytes(), 64);
+	}
+}
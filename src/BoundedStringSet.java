@@ -0,0 +1,672 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * A set of Strings with a maximum size, for cache-style uses such as
+ * remembering recently seen IDs. Once it is full, every add() of a new item
+ * evicts one, chosen by the set's Eviction policy, in constant time. Items
+ * can also expire a fixed time after they were last added.
+ *
+ * The set is split into segments by hash code, each with its own lock, its
+ * own share of the maximum size and its own eviction order, so threads
+ * working on different segments never wait for each other. Small sets have
+ * a single segment, so their policy is exact; in larger ones it holds
+ * within each segment. Each segment finds its items through the same
+ * open-addressing engine as a StringHashSet's probing storage, and keeps
+ * its eviction order in int arrays beside it, so no operation allocates
+ * except to add an item.
+ *
+ * contains() and add() both count as uses of an item: they update the
+ * eviction order and count a hit if the item is there and a miss if not.
+ * Iterators see a copy of the items taken one segment at a time.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public class BoundedStringSet implements Iterable<String> {
+
+	/**
+	 * The ways a full set can choose the item to evict
+	 */
+	public enum Eviction {
+		/** Evict the least recently used item */
+		LRU,
+		/**
+		 * Sweep the items in a circle, evicting the first one not used since
+		 * the sweep last passed it; close to LRU without reordering on hits
+		 */
+		CLOCK,
+		/**
+		 * Keep new items in a small LRU window, and only let one that leaves
+		 * the window into the main segmented LRU if it has been used more
+		 * often than the item it would displace, as counted by a frequency
+		 * sketch; resists scans and one-off items
+		 */
+		TINY_LFU
+	}
+
+	// Each segment holds at least this many items, so small sets are exact
+	private static final int MIN_SEGMENT_SIZE = 64;
+
+	private static final int MAX_SEGMENTS = 64;
+
+	private final Eviction policy;
+	private final int maximumSize;
+	private final long expireAfterNanos;
+	private final LongSupplier ticker;
+	private final StringHasher hasher;
+	private final Segment[] segments;
+	private final int segmentShift;
+
+	/**
+	 * The items of one range of hash codes, with their eviction order. Every
+	 * method is called with the segment locked.
+	 */
+	private static final class Segment {
+		private static final int WINDOW = 0;
+		private static final int PROBATION = 1;
+		private static final int PROTECTED = 2;
+
+		final Eviction policy;
+		final int capacity;
+		final long expireAfterNanos;
+		final String[] items;
+		final int[] hashes;
+		final Index index;
+		int size;
+		int allocated;
+		int[] free;
+		int freeCount;
+
+		// The LRU lists, by id; LRU uses only WINDOW
+		int[] prev;
+		int[] next;
+		byte[] queue;
+		final int[] head = { -1, -1, -1 };
+		final int[] tail = { -1, -1, -1 };
+		final int[] count = new int[3];
+		int windowMax;
+		int protectedMax;
+		FrequencySketch sketch;
+
+		// CLOCK's reference bits and hand
+		boolean[] referenced;
+		int hand;
+
+		// When each item was last added, oldest first
+		long[] written;
+		int[] older;
+		int[] newer;
+		int oldest = -1;
+		int newest = -1;
+
+		long hits;
+		long misses;
+		long evictions;
+		long expirations;
+
+		/**
+		 * Finds the id of an item, whose key is the id plus one
+		 */
+		private final class Index extends OpenTable<int[]> {
+			Index(int capacity) {
+				super(capacity, 0.5, false);
+			}
+
+			@Override
+			int[] newKeys(int slots) {
+				return new int[slots];
+			}
+
+			@Override
+			boolean isEmpty(int[] keys, int slot) {
+				return keys[slot] == 0;
+			}
+
+			@Override
+			void move(int[] from, int fromSlot, int[] to, int toSlot) {
+				to[toSlot] = from[fromSlot];
+			}
+
+			@Override
+			void clear(int[] keys, int slot) {
+				keys[slot] = 0;
+			}
+
+			/**
+			 * @return The slot holding the item's id, or -1 if it is not in the segment
+			 */
+			int find(String item, int hash) {
+				for (int slot = this.home(hash); ; slot = this.next(slot)) {
+					int key = this.keys[slot];
+					if (key == 0) return -1;
+					if (this.hashes[slot] == hash && Segment.this.items[key - 1].equals(item)) return slot;
+				}
+			}
+
+			/**
+			 * Finds an id's slot by comparing ids, so evicting never reads the victim's characters
+			 * @return The slot holding the id
+			 */
+			int slotOf(int id) {
+				int slot = this.home(Segment.this.hashes[id]);
+				while (this.keys[slot] != id + 1) slot = this.next(slot);
+				return slot;
+			}
+		}
+
+		Segment(Eviction policy, int capacity, long expireAfterNanos) {
+			this.policy = policy;
+			this.capacity = capacity;
+			this.expireAfterNanos = expireAfterNanos;
+			// TINY_LFU adds a new item before it chooses which one to evict
+			int ids = policy == Eviction.TINY_LFU ? capacity + 1 : capacity;
+			this.items = new String[ids];
+			this.hashes = new int[ids];
+			this.index = new Index(ids);
+			this.free = new int[4];
+			if (policy == Eviction.CLOCK) {
+				this.referenced = new boolean[ids];
+			} else {
+				this.prev = new int[ids];
+				this.next = new int[ids];
+				this.queue = new byte[ids];
+			}
+			if (policy == Eviction.TINY_LFU) {
+				this.windowMax = Math.max(1, capacity / 100);
+				this.protectedMax = (capacity - this.windowMax) * 4 / 5;
+				this.sketch = new FrequencySketch(capacity);
+			}
+			if (expireAfterNanos > 0) {
+				this.written = new long[ids];
+				this.older = new int[ids];
+				this.newer = new int[ids];
+			}
+		}
+
+		private void append(int list, int id) {
+			this.queue[id] = (byte) list;
+			this.prev[id] = this.tail[list];
+			this.next[id] = -1;
+			if (this.tail[list] >= 0) this.next[this.tail[list]] = id;
+			else this.head[list] = id;
+			this.tail[list] = id;
+			this.count[list]++;
+		}
+
+		private void unlink(int id) {
+			int list = this.queue[id];
+			if (this.prev[id] >= 0) this.next[this.prev[id]] = this.next[id];
+			else this.head[list] = this.next[id];
+			if (this.next[id] >= 0) this.prev[this.next[id]] = this.prev[id];
+			else this.tail[list] = this.prev[id];
+			this.count[list]--;
+		}
+
+		private void written(int id, long now) {
+			this.written[id] = now;
+			this.older[id] = this.newest;
+			this.newer[id] = -1;
+			if (this.newest >= 0) this.newer[this.newest] = id;
+			else this.oldest = id;
+			this.newest = id;
+		}
+
+		private void unwritten(int id) {
+			if (this.older[id] >= 0) this.newer[this.older[id]] = this.newer[id];
+			else this.oldest = this.newer[id];
+			if (this.newer[id] >= 0) this.older[this.newer[id]] = this.older[id];
+			else this.newest = this.older[id];
+		}
+
+		/**
+		 * Removes every item that has outlived the expiry time, oldest first
+		 */
+		void expire(long now) {
+			while (this.oldest >= 0 && now - this.written[this.oldest] >= this.expireAfterNanos) {
+				this.expirations++;
+				this.delete(this.oldest);
+			}
+		}
+
+		/**
+		 * @return The id of the item, or -1 if it is not in the segment
+		 */
+		int locate(String item, int hash) {
+			int slot = this.index.find(item, hash);
+			return slot < 0 ? -1 : this.index.keys[slot] - 1;
+		}
+
+		/**
+		 * Records a use of an item that is in the segment
+		 */
+		void touch(int id) {
+			switch (this.policy) {
+			case LRU:
+				this.unlink(id);
+				this.append(WINDOW, id);
+				break;
+			case CLOCK:
+				this.referenced[id] = true;
+				break;
+			default:
+				this.sketch.increment(this.hashes[id]);
+				int list = this.queue[id];
+				this.unlink(id);
+				this.append(list == WINDOW ? WINDOW : PROTECTED, id);
+				if (list == PROBATION && this.count[PROTECTED] > this.protectedMax) {
+					int demoted = this.head[PROTECTED];
+					this.unlink(demoted);
+					this.append(PROBATION, demoted);
+				}
+			}
+		}
+
+		boolean contains(String item, int hash, long now) {
+			if (this.expireAfterNanos > 0) this.expire(now);
+			int id = this.locate(item, hash);
+			if (id < 0) {
+				this.misses++;
+				if (this.sketch != null) this.sketch.increment(hash);
+				return false;
+			}
+			this.hits++;
+			this.touch(id);
+			return true;
+		}
+
+		boolean add(String item, int hash, long now) {
+			if (this.expireAfterNanos > 0) this.expire(now);
+			int id = this.locate(item, hash);
+			if (id >= 0) {
+				this.hits++;
+				this.touch(id);
+				if (this.expireAfterNanos > 0) {
+					this.unwritten(id);
+					this.written(id, now);
+				}
+				return false;
+			}
+			this.misses++;
+			if (this.policy != Eviction.TINY_LFU && this.size == this.capacity) {
+				this.evictions++;
+				this.delete(this.policy == Eviction.LRU ? this.head[WINDOW] : this.sweep());
+			}
+			id = this.freeCount > 0 ? this.free[--this.freeCount] : this.allocated++;
+			this.items[id] = item;
+			this.hashes[id] = hash;
+			int slot = this.index.claim(hash);
+			this.index.keys[slot] = id + 1;
+			this.size++;
+			if (this.expireAfterNanos > 0) this.written(id, now);
+			if (this.policy == Eviction.CLOCK) {
+				this.referenced[id] = false;
+				return true;
+			}
+			this.append(WINDOW, id);
+			if (this.policy == Eviction.TINY_LFU) this.admit(hash);
+			return true;
+		}
+
+		/**
+		 * Moves CLOCK's hand past every item used since it last passed them,
+		 * clearing their bits, to the first one that has not been
+		 * @return The item to evict
+		 */
+		private int sweep() {
+			while (this.referenced[this.hand]) {
+				this.referenced[this.hand] = false;
+				this.hand = this.hand + 1 == this.capacity ? 0 : this.hand + 1;
+			}
+			int victim = this.hand;
+			this.hand = this.hand + 1 == this.capacity ? 0 : this.hand + 1;
+			return victim;
+		}
+
+		/**
+		 * Moves the oldest item of an overfull window to probation, and if the
+		 * segment is over its capacity evicts whichever of that item and the
+		 * next one probation would give up has been used less often
+		 */
+		private void admit(int hash) {
+			this.sketch.increment(hash);
+			int candidate = -1;
+			if (this.count[WINDOW] > this.windowMax) {
+				candidate = this.head[WINDOW];
+				this.unlink(candidate);
+				this.append(PROBATION, candidate);
+			}
+			if (this.size <= this.capacity) return;
+			int victim = this.head[PROBATION];
+			if (victim == candidate) victim = this.head[PROTECTED];
+			if (victim < 0) victim = candidate >= 0 ? candidate : this.head[WINDOW];
+			else if (candidate >= 0 && this.sketch.frequency(this.hashes[candidate]) <= this.sketch.frequency(this.hashes[victim])) victim = candidate;
+			this.evictions++;
+			this.delete(victim);
+		}
+
+		/**
+		 * Takes an item out of the index, its lists and its id
+		 */
+		void delete(int id) {
+			this.index.removeAt(this.index.slotOf(id));
+			if (this.policy != Eviction.CLOCK) this.unlink(id);
+			if (this.expireAfterNanos > 0) this.unwritten(id);
+			this.items[id] = null;
+			if (this.freeCount == this.free.length) this.free = Arrays.copyOf(this.free, this.freeCount * 2);
+			this.free[this.freeCount++] = id;
+			this.size--;
+		}
+
+		boolean remove(String item, int hash, long now) {
+			if (this.expireAfterNanos > 0) this.expire(now);
+			int id = this.locate(item, hash);
+			if (id < 0) return false;
+			this.delete(id);
+			return true;
+		}
+
+		void clear() {
+			for (int id = 0; id < this.allocated; id++) if (this.items[id] != null) this.delete(id);
+		}
+	}
+
+	/**
+	 * Creates a set that holds at most the given number of items, evicting
+	 * the least recently used.
+	 */
+	public BoundedStringSet(int maximumSize) {
+		this(maximumSize, Eviction.LRU);
+	}
+
+	/**
+	 * Creates a set that holds at most the given number of items, evicting
+	 * by the given policy.
+	 */
+	public BoundedStringSet(int maximumSize, Eviction policy) {
+		this(maximumSize, policy, null);
+	}
+
+	/**
+	 * Creates a set that holds at most the given number of items, evicting
+	 * by the given policy, where each item also expires a fixed time after it
+	 * was last added.
+	 *
+	 * @param maximumSize
+	 * @param policy
+	 * @param expireAfterWrite How long an item stays after add(), or null to keep items until they are evicted
+	 * @throws IllegalArgumentException If the maximum size or the expiry time is not positive
+	 */
+	public BoundedStringSet(int maximumSize, Eviction policy, Duration expireAfterWrite) throws IllegalArgumentException {
+		this(maximumSize, policy, expireAfterWrite, StringHasher.MIXED);
+	}
+
+	/**
+	 * Creates a set with the given maximum size, policy and expiry time,
+	 * using the given hash function. The default, StringHasher.MIXED, starts
+	 * from the hash code Strings cache, so a lookup need not read the
+	 * characters; StringHasher.randomized() reads them every time, but keeps
+	 * anyone choosing the items from piling them into one segment.
+	 *
+	 * @param maximumSize
+	 * @param policy
+	 * @param expireAfterWrite How long an item stays after add(), or null to keep items until they are evicted
+	 * @param hasher
+	 * @throws IllegalArgumentException If the maximum size or the expiry time is not positive
+	 */
+	public BoundedStringSet(int maximumSize, Eviction policy, Duration expireAfterWrite, StringHasher hasher) throws IllegalArgumentException {
+		this(maximumSize, policy, expireAfterWrite == null ? 0 : BoundedStringSet.positiveNanos(expireAfterWrite), System::nanoTime, hasher);
+	}
+
+	private static long positiveNanos(Duration duration) {
+		if (duration.isNegative() || duration.isZero()) throw new IllegalArgumentException("Illegal expiry time: " + duration);
+		return duration.toNanos();
+	}
+
+	/**
+	 * @param ticker The clock, in nanoseconds, that expiry times are measured with
+	 */
+	BoundedStringSet(int maximumSize, Eviction policy, long expireAfterNanos, LongSupplier ticker, StringHasher hasher) {
+		if (policy == null || ticker == null || hasher == null) throw new NullPointerException();
+		if (maximumSize < 1) throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+		this.policy = policy;
+		this.maximumSize = maximumSize;
+		this.expireAfterNanos = expireAfterNanos;
+		this.ticker = ticker;
+		this.hasher = hasher;
+		int processors = Runtime.getRuntime().availableProcessors();
+		int count = 1;
+		while (count < MAX_SEGMENTS && count < 4 * processors && (long) count * 2 * MIN_SEGMENT_SIZE <= maximumSize) count <<= 1;
+		this.segments = new Segment[count];
+		for (int i = 0; i < count; i++) this.segments[i] = new Segment(policy, maximumSize / count + (i < maximumSize % count ? 1 : 0), expireAfterNanos);
+		this.segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+	}
+
+	/**
+	 * @return The eviction policy
+	 */
+	public Eviction policy() {
+		return this.policy;
+	}
+
+	/**
+	 * @return The most items the set holds
+	 */
+	public int maximumSize() {
+		return this.maximumSize;
+	}
+
+	/**
+	 * The high bits of the hash pick the segment, and the segment's table uses the low ones
+	 */
+	private Segment segment(int hash) {
+		return this.segmentShift == 32 ? this.segments[0] : this.segments[hash >>> this.segmentShift];
+	}
+
+	private long now() {
+		return this.expireAfterNanos > 0 ? this.ticker.getAsLong() : 0;
+	}
+
+	/**
+	 * Checks if the given item is in the set, counting a use of it if it is.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the set.
+	 */
+	public boolean contains(String item) {
+		int hash = this.hasher.hash(item);
+		Segment segment = this.segment(hash);
+		long now = this.now();
+		synchronized (segment) {
+			return segment.contains(item, hash, now);
+		}
+	}
+
+	/**
+	 * Adds the item if it is not there already, evicting another if the set
+	 * is full. Adding an item that is there counts as a use of it and
+	 * restarts its expiry time.
+	 *
+	 * @param item
+	 * @return true if the item was added, false if it was already there.
+	 */
+	public boolean add(String item) {
+		if (item == null) throw new NullPointerException();
+		int hash = this.hasher.hash(item);
+		Segment segment = this.segment(hash);
+		long now = this.now();
+		synchronized (segment) {
+			return segment.add(item, hash, now);
+		}
+	}
+
+	/**
+	 * Removes the given item from the set if it is there.
+	 *
+	 * @param item
+	 * @return True if the set changed.
+	 */
+	public boolean remove(String item) {
+		int hash = this.hasher.hash(item);
+		Segment segment = this.segment(hash);
+		long now = this.now();
+		synchronized (segment) {
+			return segment.remove(item, hash, now);
+		}
+	}
+
+	/**
+	 * Removes every expired item now, instead of as the segments they are in are used.
+	 */
+	public void expire() {
+		if (this.expireAfterNanos == 0) return;
+		long now = this.now();
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				segment.expire(now);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of items in the set, which may include expired
+	 *         items that have not been removed yet
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				size += segment.size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return True iff the set contains no items.
+	 */
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	/**
+	 * Removes all the items, keeping the counters.
+	 */
+	public void clear() {
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of contains() and add() calls that found their item
+	 */
+	public long hitCount() {
+		long hits = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				hits += segment.hits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * @return The number of contains() and add() calls that did not find their item
+	 */
+	public long missCount() {
+		long misses = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				misses += segment.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * @return The fraction of contains() and add() calls that found their
+	 *         item, or 0 if there have been none
+	 */
+	public double hitRate() {
+		long hits = this.hitCount(), requests = hits + this.missCount();
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	/**
+	 * @return The number of items evicted to make room for others
+	 */
+	public long evictionCount() {
+		long evictions = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				evictions += segment.evictions;
+			}
+		}
+		return evictions;
+	}
+
+	/**
+	 * @return The number of items removed because they expired
+	 */
+	public long expiredCount() {
+		long expirations = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				expirations += segment.expirations;
+			}
+		}
+		return expirations;
+	}
+
+	/**
+	 * Iterates over a copy of the items, taken one segment at a time, so it
+	 * never throws ConcurrentModificationException. Its remove() removes the
+	 * last item from the set.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		List<String> items = new ArrayList<String>(this.size());
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				for (int id = 0; id < segment.allocated; id++) if (segment.items[id] != null) items.add(segment.items[id]);
+			}
+		}
+		Iterator<String> copy = items.iterator();
+		return new Iterator<String>() {
+			String last;
+
+			@Override
+			public boolean hasNext() {
+				return copy.hasNext();
+			}
+
+			@Override
+			public String next() {
+				return this.last = copy.next();
+			}
+
+			@Override
+			public void remove() {
+				if (this.last == null) throw new IllegalStateException();
+				BoundedStringSet.this.remove(this.last);
+				this.last = null;
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (Iterator<String> iter = this.iterator(); iter.hasNext(); ) {
+			sb.append(iter.next());
+			if (iter.hasNext()) sb.append(", ");
+		}
+		return sb.append(']').toString();
+	}
+}
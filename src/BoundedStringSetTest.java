@@ -0,0 +1,175 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class BoundedStringSetTest {
+
+	@Test
+	public void testLru() {
+		BoundedStringSet set = new BoundedStringSet(3);
+		assertTrue(set.add("a"));
+		assertTrue(set.add("b"));
+		assertTrue(set.add("c"));
+		assertFalse(set.add("a"));
+		assertTrue(set.contains("b"));
+		assertTrue(set.add("d"));
+		assertEquals(3, set.size());
+		assertFalse(set.contains("c"));
+		assertTrue(set.contains("a"));
+		assertTrue(set.contains("d"));
+		assertEquals(1, set.evictionCount());
+		assertEquals(4, set.hitCount());
+		assertEquals(5, set.missCount());
+		assertEquals(4.0 / 9, set.hitRate(), 1e-9);
+		assertTrue(set.remove("a"));
+		assertFalse(set.remove("a"));
+		assertTrue(set.add("e"));
+		assertEquals(1, set.evictionCount());
+		assertEquals(3, set.size());
+	}
+
+	@Test
+	public void testClock() {
+		BoundedStringSet set = new BoundedStringSet(3, BoundedStringSet.Eviction.CLOCK);
+		set.add("a");
+		set.add("b");
+		set.add("c");
+		set.contains("a");
+		set.add("d");
+		// The hand passes over "a", which was used, and evicts "b"
+		assertFalse(set.contains("b"));
+		assertTrue(set.contains("a"));
+		assertTrue(set.contains("c"));
+		assertTrue(set.contains("d"));
+		assertEquals(1, set.evictionCount());
+	}
+
+	@Test
+	public void testTinyLfuResistsScans() {
+		for (BoundedStringSet.Eviction policy : BoundedStringSet.Eviction.values()) {
+			BoundedStringSet set = new BoundedStringSet(100, policy);
+			for (int round = 0; round < 10; round++) for (int i = 0; i < 50; i++) set.add("hot" + i);
+			// Each hot item comes back after 500 one-off items, more than the set holds
+			int found = 0;
+			for (int i = 0; i < 50000; i++) {
+				set.add("scan" + i);
+				if (i % 10 == 0 && set.contains("hot" + (i / 10 % 50))) found++;
+			}
+			if (policy == BoundedStringSet.Eviction.TINY_LFU) assertTrue(found > 4900);
+			else assertTrue(found < 50);
+			assertEquals(100, set.size());
+		}
+	}
+
+	@Test
+	public void testNeverExceedsMaximum() {
+		for (BoundedStringSet.Eviction policy : BoundedStringSet.Eviction.values()) {
+			for (int maximum : new int[] { 1, 2, 7, 100, 5000 }) {
+				BoundedStringSet set = new BoundedStringSet(maximum, policy);
+				Set<String> added = new HashSet<String>();
+				Random random = new Random(maximum);
+				for (int i = 0; i < 20000; i++) {
+					String item = "item" + random.nextInt(3 * maximum + 10);
+					int action = random.nextInt(10);
+					if (action == 0) set.remove(item);
+					else if (action < 4) set.contains(item);
+					else {
+						set.add(item);
+						added.add(item);
+						assertTrue(policy + " " + maximum, set.contains(item));
+					}
+					assertTrue(policy + " " + maximum, set.size() <= maximum);
+				}
+				int count = 0;
+				for (String item : set) {
+					assertTrue(added.contains(item));
+					assertTrue(set.contains(item));
+					count++;
+				}
+				assertEquals(set.size(), count);
+				set.clear();
+				assertTrue(set.isEmpty());
+				for (int i = 0; i < 2 * maximum; i++) set.add("again" + i);
+				assertEquals(maximum, set.size());
+			}
+		}
+	}
+
+	@Test
+	public void testExpiry() {
+		AtomicLong now = new AtomicLong();
+		BoundedStringSet set = new BoundedStringSet(10, BoundedStringSet.Eviction.LRU, 100, now::get, StringHasher.randomized());
+		set.add("a");
+		now.set(50);
+		set.add("b");
+		now.set(99);
+		assertTrue(set.contains("a"));
+		now.set(100);
+		assertFalse(set.contains("a"));
+		assertTrue(set.contains("b"));
+		// Adding again restarts the time
+		set.add("b");
+		now.set(199);
+		assertTrue(set.contains("b"));
+		now.set(300);
+		set.expire();
+		assertEquals(0, set.size());
+		assertEquals(2, set.expiredCount());
+		assertEquals(0, set.evictionCount());
+	}
+
+	@Test
+	public void testIterator() {
+		BoundedStringSet set = new BoundedStringSet(10);
+		set.add("a");
+		set.add("b");
+		Iterator<String> iter = set.iterator();
+		try {
+			iter.remove();
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		String first = iter.next();
+		iter.remove();
+		assertFalse(set.contains(first));
+		assertEquals(1, set.size());
+		set.add("c");
+		assertTrue(iter.hasNext());
+		iter.next();
+		assertFalse(iter.hasNext());
+	}
+
+	@Test
+	public void testIllegalArguments() {
+		try {
+			new BoundedStringSet(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new BoundedStringSet(10, BoundedStringSet.Eviction.LRU, Duration.ZERO);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new BoundedStringSet(10).add(null);
+			fail();
+		} catch (NullPointerException e) {
+			// expected
+		}
+		assertEquals(0, new BoundedStringSet(10).hitRate(), 0);
+	}
+}
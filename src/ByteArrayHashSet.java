@@ -0,0 +1,268 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A hash set of byte strings, compared by their contents rather than by
+ * identity as a HashSet of arrays would. Any range of any array can be looked
+ * up without copying it out first; the set copies an item only when it adds
+ * it, so later changes to the caller's array cannot reach the set.
+ *
+ * Items are hashed eight bytes at a time with the same wide-multiply mixing
+ * as StringHasher.seeded(), keyed with a random seed per set, and kept in the
+ * same open-addressing engine as a StringHashSet's probing storage.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public class ByteArrayHashSet implements Iterable<byte[]> {
+
+	// The initial size of the table.
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final long seed = StringHasher.Seeded.SEEDS.nextLong() ^ StringHasher.Seeded.P0;
+	private final Table table;
+	private int changes;
+
+	/**
+	 * The probing table, with the items' arrays as its keys
+	 */
+	private static final class Table extends OpenTable<byte[][]> {
+		Table(int initialCapacity, double loadFactor, boolean robinHood) {
+			super(initialCapacity, loadFactor, robinHood);
+		}
+
+		@Override
+		byte[][] newKeys(int slots) {
+			return new byte[slots][];
+		}
+
+		@Override
+		boolean isEmpty(byte[][] keys, int slot) {
+			return keys[slot] == null;
+		}
+
+		@Override
+		void move(byte[][] from, int fromSlot, byte[][] to, int toSlot) {
+			to[toSlot] = from[fromSlot];
+		}
+
+		@Override
+		void clear(byte[][] keys, int slot) {
+			keys[slot] = null;
+		}
+
+		int find(byte[] bytes, int offset, int length, int hash) {
+			int slot = this.home(hash);
+			for (int dist = 0; ; dist++) {
+				byte[] key = this.keys[slot];
+				if (key == null) return -1;
+				if (this.hashes[slot] == hash && Arrays.equals(key, 0, key.length, bytes, offset, offset + length)) return slot;
+				if (this.passed(slot, dist)) return -1;
+				slot = this.next(slot);
+			}
+		}
+	}
+
+	/**
+	 * Creates a set sized for a modest number of items.
+	 */
+	public ByteArrayHashSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a set with room for the given number of items before the table
+	 * has to grow, probing linearly.
+	 */
+	public ByteArrayHashSet(int expectedItems) {
+		this(expectedItems, StringHashSet.Storage.LINEAR_PROBING);
+	}
+
+	/**
+	 * Creates a set with room for the given number of items before the table
+	 * has to grow.
+	 * @param expectedItems
+	 * @param storage LINEAR_PROBING or ROBIN_HOOD, which also gives the load factor
+	 * @throws IllegalArgumentException If the storage is CHAINED
+	 */
+	public ByteArrayHashSet(int expectedItems, StringHashSet.Storage storage) throws IllegalArgumentException {
+		if (storage == StringHashSet.Storage.CHAINED) throw new IllegalArgumentException("Illegal storage: " + storage);
+		this.table = new Table(expectedItems, storage.defaultLoadFactor(), storage == StringHashSet.Storage.ROBIN_HOOD);
+	}
+
+	/**
+	 * @param bytes
+	 * @param offset The index of the first byte
+	 * @param length The number of bytes
+	 * @return The set's hash code for the bytes
+	 */
+	int hash(byte[] bytes, int offset, int length) {
+		long state = this.seed;
+		int i = offset;
+		int end = offset + length;
+		for (; i + 8 <= end; i += 8) state = StringHasher.Seeded.mum(state ^ (long) LONGS.get(bytes, i), StringHasher.Seeded.P1);
+		long word = 0;
+		for (int shift = 0; i < end; i++, shift += 8) word |= (bytes[i] & 0xFFL) << shift;
+		state = StringHasher.Seeded.mum(state ^ word ^ StringHasher.Seeded.P1, length ^ StringHasher.Seeded.P2);
+		return (int) (state ^ (state >>> 32));
+	}
+
+	/**
+	 * Adds a copy of the given bytes if they are not there already.
+	 *
+	 * @param item
+	 * @return true if the set changed.
+	 */
+	public boolean add(byte[] item) {
+		return this.add(item, 0, item.length);
+	}
+
+	/**
+	 * Adds a copy of a range of an array if it is not there already.
+	 *
+	 * @param bytes
+	 * @param offset The index of the first byte
+	 * @param length The number of bytes
+	 * @return true if the set changed.
+	 * @throws IndexOutOfBoundsException If the range is not inside the array
+	 */
+	public boolean add(byte[] bytes, int offset, int length) throws IndexOutOfBoundsException {
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		int hash = this.hash(bytes, offset, length);
+		if (this.table.find(bytes, offset, length, hash) >= 0) return false;
+		int slot = this.table.claim(hash);
+		this.table.keys[slot] = Arrays.copyOfRange(bytes, offset, offset + length);
+		this.changes++;
+		return true;
+	}
+
+	/**
+	 * Checks if the given bytes are in the set.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the set.
+	 */
+	public boolean contains(byte[] item) {
+		return this.contains(item, 0, item.length);
+	}
+
+	/**
+	 * Checks if a range of an array is in the set, without copying it.
+	 *
+	 * @param bytes
+	 * @param offset The index of the first byte
+	 * @param length The number of bytes
+	 * @return True if and only if the range is in the set.
+	 * @throws IndexOutOfBoundsException If the range is not inside the array
+	 */
+	public boolean contains(byte[] bytes, int offset, int length) throws IndexOutOfBoundsException {
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		return this.table.find(bytes, offset, length, this.hash(bytes, offset, length)) >= 0;
+	}
+
+	/**
+	 * Removes the given bytes from the set if they are there.
+	 *
+	 * @param item
+	 * @return True if the set changed.
+	 */
+	public boolean remove(byte[] item) {
+		return this.remove(item, 0, item.length);
+	}
+
+	/**
+	 * Removes a range of an array from the set if it is there.
+	 *
+	 * @param bytes
+	 * @param offset The index of the first byte
+	 * @param length The number of bytes
+	 * @return True if the set changed.
+	 * @throws IndexOutOfBoundsException If the range is not inside the array
+	 */
+	public boolean remove(byte[] bytes, int offset, int length) throws IndexOutOfBoundsException {
+		Objects.checkFromIndexSize(offset, length, bytes.length);
+		int slot = this.table.find(bytes, offset, length, this.hash(bytes, offset, length));
+		if (slot < 0) return false;
+		this.table.removeAt(slot);
+		this.changes++;
+		return true;
+	}
+
+	/**
+	 * @return The number of items in the set.
+	 */
+	public int size() {
+		return this.table.size();
+	}
+
+	/**
+	 * @return True iff the set contains no items.
+	 */
+	public boolean isEmpty() {
+		return this.table.size() == 0;
+	}
+
+	/**
+	 * Removes all the items, keeping a table of the default size.
+	 */
+	public void clear() {
+		this.table.clear(DEFAULT_CAPACITY);
+		this.changes++;
+	}
+
+	/**
+	 * Iterates over the set's own arrays, which must not be changed.
+	 */
+	@Override
+	public Iterator<byte[]> iterator() {
+		return new SlotIterator(this);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (Iterator<byte[]> iter = this.iterator(); iter.hasNext(); ) {
+			sb.append(Arrays.toString(iter.next()));
+			if (iter.hasNext()) sb.append(", ");
+		}
+		return sb.append(']').toString();
+	}
+
+	private static class SlotIterator implements Iterator<byte[]> {
+		ByteArrayHashSet set;
+		OpenTable<byte[][]>.Cursor cursor;
+		int changes;
+
+		SlotIterator(ByteArrayHashSet set) {
+			this.set = set;
+			this.cursor = set.table.new Cursor();
+			this.changes = set.changes;
+		}
+
+		@Override
+		public boolean hasNext() throws ConcurrentModificationException {
+			if (this.changes != this.set.changes) throw new ConcurrentModificationException();
+			return this.cursor.hasNext();
+		}
+
+		@Override
+		public byte[] next() throws NoSuchElementException, ConcurrentModificationException {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			return this.set.table.keys[this.cursor.next()];
+		}
+
+		@Override
+		public void remove() throws IllegalStateException, ConcurrentModificationException {
+			if (this.changes != this.set.changes) throw new ConcurrentModificationException();
+			this.cursor.remove();
+			this.changes = ++this.set.changes;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ByteArrayHashSetTest {
+
+	@Test
+	public void testContents() {
+		ByteArrayHashSet set = new ByteArrayHashSet();
+		byte[] item = { 1, 2, 3 };
+		assertTrue(set.add(item));
+		assertFalse(set.add(new byte[] { 1, 2, 3 }));
+		assertTrue(set.contains(new byte[] { 1, 2, 3 }));
+		// The set keeps a copy
+		item[0] = 9;
+		assertTrue(set.contains(new byte[] { 1, 2, 3 }));
+		assertFalse(set.contains(item));
+		assertTrue(set.add(new byte[0]));
+		assertTrue(set.contains(new byte[0]));
+		assertEquals(2, set.size());
+		assertTrue(set.remove(new byte[] { 1, 2, 3 }));
+		assertFalse(set.remove(new byte[] { 1, 2, 3 }));
+		assertEquals("[[]]", set.toString());
+	}
+
+	@Test
+	public void testRanges() {
+		ByteArrayHashSet set = new ByteArrayHashSet();
+		byte[] line = "GET /index.html HTTP/1.1".getBytes(StandardCharsets.US_ASCII);
+		assertTrue(set.add(line, 4, 11));
+		assertTrue(set.contains("/index.html".getBytes(StandardCharsets.US_ASCII)));
+		assertTrue(set.contains(line, 4, 11));
+		assertFalse(set.contains(line, 4, 10));
+		assertFalse(set.contains(line, 5, 11));
+		assertArrayEquals("/index.html".getBytes(StandardCharsets.US_ASCII), set.iterator().next());
+		try {
+			set.contains(line, 20, 10);
+			fail("Read past the end of the array");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		try {
+			set.add(line, 4, -1);
+			fail("Added a negative length");
+		} catch (IndexOutOfBoundsException e) {
+			// expected
+		}
+		assertTrue(set.remove(line, 4, 11));
+		assertTrue(set.isEmpty());
+	}
+
+	@Test
+	public void testMatchesHashSet() {
+		for (StringHashSet.Storage storage : new StringHashSet.Storage[] { StringHashSet.Storage.LINEAR_PROBING, StringHashSet.Storage.ROBIN_HOOD }) {
+			ByteArrayHashSet set = new ByteArrayHashSet(0, storage);
+			HashSet<String> oracle = new HashSet<String>();
+			SetOracle.check(oracle, new Random(230), 100000, random -> "key-" + random.nextInt(2000), item -> set.add(item.getBytes(StandardCharsets.UTF_8)),
+					item -> set.remove(item.getBytes(StandardCharsets.UTF_8)), item -> set.contains(item.getBytes(StandardCharsets.UTF_8)));
+			assertEquals(oracle.size(), set.size());
+			HashSet<String> iterated = new HashSet<String>();
+			for (Iterator<byte[]> iter = set.iterator(); iter.hasNext(); ) {
+				String item = new String(iter.next(), StandardCharsets.UTF_8);
+				assertTrue(iterated.add(item));
+				if (item.endsWith("7")) iter.remove();
+			}
+			assertEquals(oracle, iterated);
+			for (String item : oracle) assertEquals(!item.endsWith("7"), set.contains(item.getBytes(StandardCharsets.UTF_8)));
+		}
+	}
+
+	@Test
+	public void testConcurrentModification() {
+		ByteArrayHashSet set = new ByteArrayHashSet();
+		set.add(new byte[] { 1 });
+		Iterator<byte[]> iter = set.iterator();
+		set.add(new byte[] { 2 });
+		try {
+			iter.next();
+			fail("Should have thrown ConcurrentModificationException");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,198 @@
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash set of strings that can be searched with any CharSequence, such as a
+ * CharBuffer wrapped around part of a parser's buffer, without copying its
+ * characters into a String first. Items are stored as Strings, so add() only
+ * makes one when the characters are not in the set already, and get() hands
+ * back the String the set holds, which makes the set an interning table for
+ * tokens.
+ *
+ * The table is the same open-addressing engine as a StringHashSet's probing
+ * storage, with hash codes cached beside the items.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public class CharSequenceHashSet implements Iterable<String> {
+
+	// The initial size of the table.
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final StringHasher hasher;
+	private final ProbingTable table;
+	private int changes;
+
+	/**
+	 * Creates a set sized for a modest number of items.
+	 */
+	public CharSequenceHashSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a set with room for the given number of items before the table
+	 * has to grow, probing linearly. It hashes with its own
+	 * StringHasher.randomized() hasher.
+	 */
+	public CharSequenceHashSet(int expectedItems) {
+		this(expectedItems, StringHashSet.Storage.LINEAR_PROBING, StringHasher.randomized());
+	}
+
+	/**
+	 * Creates a set with room for the given number of items before the table
+	 * has to grow.
+	 * @param expectedItems
+	 * @param storage LINEAR_PROBING or ROBIN_HOOD, which also gives the load factor
+	 * @param hasher The hash function for the characters
+	 * @throws IllegalArgumentException If the storage is CHAINED
+	 */
+	public CharSequenceHashSet(int expectedItems, StringHashSet.Storage storage, StringHasher hasher) throws IllegalArgumentException {
+		if (hasher == null) throw new NullPointerException();
+		if (storage == StringHashSet.Storage.CHAINED) throw new IllegalArgumentException("Illegal storage: " + storage);
+		this.hasher = hasher;
+		this.table = new ProbingTable(expectedItems, storage.defaultLoadFactor(), storage == StringHashSet.Storage.ROBIN_HOOD);
+	}
+
+	/**
+	 * @return The hash function the set uses
+	 */
+	public StringHasher hasher() {
+		return this.hasher;
+	}
+
+	/**
+	 * Hashes the characters and folds the high bits of the hash into the low
+	 * bits the table indexes with, as StringHashSet does
+	 */
+	private int hash(CharSequence item) {
+		int hash = this.hasher.hash(item);
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Adds the given characters, as a String, if they are not there already.
+	 *
+	 * @param item
+	 * @return true if the set changed.
+	 */
+	public boolean add(CharSequence item) {
+		int hash = this.hash(item);
+		if (this.table.find(item, hash) >= 0) return false;
+		int slot = this.table.claim(hash);
+		this.table.keys[slot] = item.toString();
+		this.changes++;
+		return true;
+	}
+
+	/**
+	 * Checks if the given characters are in the set.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the set.
+	 */
+	public boolean contains(CharSequence item) {
+		return this.table.find(item, this.hash(item)) >= 0;
+	}
+
+	/**
+	 * Finds the String the set holds for the given characters.
+	 *
+	 * @param item
+	 * @return The String equal to the item, or null if it is not in the set.
+	 */
+	public String get(CharSequence item) {
+		int slot = this.table.find(item, this.hash(item));
+		return slot < 0 ? null : this.table.keys[slot];
+	}
+
+	/**
+	 * Removes the given characters from the set if they are there.
+	 *
+	 * @param item
+	 * @return True if the set changed.
+	 */
+	public boolean remove(CharSequence item) {
+		int slot = this.table.find(item, this.hash(item));
+		if (slot < 0) return false;
+		this.table.removeAt(slot);
+		this.changes++;
+		return true;
+	}
+
+	/**
+	 * @return The most slots a lookup of any item in the set reads
+	 */
+	int longestProbe() {
+		return this.table.probeLengths(new long[1]);
+	}
+
+	/**
+	 * @return The number of items in the set.
+	 */
+	public int size() {
+		return this.table.size();
+	}
+
+	/**
+	 * @return True iff the set contains no items.
+	 */
+	public boolean isEmpty() {
+		return this.table.size() == 0;
+	}
+
+	/**
+	 * Removes all the items, keeping a table of the default size.
+	 */
+	public void clear() {
+		this.table.clear(DEFAULT_CAPACITY);
+		this.changes++;
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new SlotIterator(this);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (Iterator<String> iter = this.iterator(); iter.hasNext(); ) {
+			sb.append(iter.next());
+			if (iter.hasNext()) sb.append(", ");
+		}
+		return sb.append(']').toString();
+	}
+
+	private static class SlotIterator implements Iterator<String> {
+		CharSequenceHashSet set;
+		OpenTable<String[]>.Cursor cursor;
+		int changes;
+
+		SlotIterator(CharSequenceHashSet set) {
+			this.set = set;
+			this.cursor = set.table.new Cursor();
+			this.changes = set.changes;
+		}
+
+		@Override
+		public boolean hasNext() throws ConcurrentModificationException {
+			if (this.changes != this.set.changes) throw new ConcurrentModificationException();
+			return this.cursor.hasNext();
+		}
+
+		@Override
+		public String next() throws NoSuchElementException, ConcurrentModificationException {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			return this.set.table.keys[this.cursor.next()];
+		}
+
+		@Override
+		public void remove() throws IllegalStateException, ConcurrentModificationException {
+			if (this.changes != this.set.changes) throw new ConcurrentModificationException();
+			this.cursor.remove();
+			this.changes = ++this.set.changes;
+		}
+	}
+}
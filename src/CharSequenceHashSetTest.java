@@ -0,0 +1,91 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.CharBuffer;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CharSequenceHashSetTest {
+	private static final String[] HELLOS = { "hello", "hi", "caio", "hola", "shalom", "bonjour", "ni-hao", "aloha", "tere", "sveiki",
+			"caf\u00e9", "\u4f60\u597d", "" };
+
+	@Test
+	public void testSlices() {
+		CharSequenceHashSet set = new CharSequenceHashSet();
+		for (String s : HELLOS) assertTrue(set.add(new StringBuilder(s)));
+		assertEquals(HELLOS.length, set.size());
+		char[] line = "say hello, then aloha".toCharArray();
+		assertTrue(set.contains(CharBuffer.wrap(line, 4, 5)));
+		assertTrue(set.contains(CharBuffer.wrap(line, 16, 5)));
+		assertFalse(set.contains(CharBuffer.wrap(line, 4, 4)));
+		assertFalse(set.add(CharBuffer.wrap(line, 4, 5)));
+		// The set holds its own String, whatever it was handed
+		String hello = set.get(CharBuffer.wrap(line, 4, 5));
+		assertEquals("hello", hello);
+		assertSame(hello, set.get("hello"));
+		assertNull(set.get("mulishani"));
+		assertTrue(set.remove(CharBuffer.wrap(line, 16, 5)));
+		assertFalse(set.contains("aloha"));
+		assertEquals(HELLOS.length - 1, set.size());
+	}
+
+	@Test
+	public void testMatchesHashSet() {
+		for (StringHashSet.Storage storage : new StringHashSet.Storage[] { StringHashSet.Storage.LINEAR_PROBING, StringHashSet.Storage.ROBIN_HOOD }) {
+			CharSequenceHashSet set = new CharSequenceHashSet(0, storage, StringHasher.POLYNOMIAL);
+			HashSet<String> oracle = new HashSet<String>();
+			SetOracle.check(oracle, new Random(230), 100000, random -> Integer.toString(random.nextInt(2000)), set::add, item -> set.remove(new StringBuilder(item)), set::contains);
+			assertEquals(oracle.size(), set.size());
+			SetOracle.assertSameItems(oracle, set);
+		}
+		try {
+			new CharSequenceHashSet(0, StringHashSet.Storage.CHAINED, StringHasher.MIXED);
+			fail("Chaining is not an open-addressing layout");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testSpreadsHighBits() {
+		// POLYNOMIAL hashes of these all end in sixteen zero bits, so only the fold tells them apart
+		CharSequenceHashSet set = new CharSequenceHashSet(0, StringHashSet.Storage.LINEAR_PROBING, StringHasher.POLYNOMIAL);
+		Random random = new Random(21);
+		for (int i = 0; i < 2000; i++) {
+			String prefix = i + "-" + random.nextInt();
+			char b = (char) -(prefix.hashCode() * 31 * 31 + 'a' * 31);
+			String item = prefix + 'a' + b;
+			assertEquals(0, item.hashCode() & 0xFFFF);
+			set.add(item);
+		}
+		assertTrue("longest probe " + set.longestProbe(), set.longestProbe() < 32);
+	}
+
+	@Test
+	public void testIterator() {
+		CharSequenceHashSet set = new CharSequenceHashSet();
+		for (int i = 0; i < 1000; i++) set.add("item" + i);
+		for (Iterator<String> iter = set.iterator(); iter.hasNext(); ) if (iter.next().endsWith("7")) iter.remove();
+		assertEquals(900, set.size());
+		for (int i = 0; i < 1000; i++) assertEquals(i % 10 != 7, set.contains("item" + i));
+		Iterator<String> iter = set.iterator();
+		set.add("other");
+		try {
+			iter.next();
+			fail("Should have thrown ConcurrentModificationException");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertEquals("[]", set.toString());
+	}
+}
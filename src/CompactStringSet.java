@@ -0,0 +1,490 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash set for Strings that keeps no String objects. The characters of
+ * every item are packed into shared byte arrays (the arena) as a record: a
+ * varint header holding the length and encoding, then the bytes. Items whose
+ * characters all fit in a byte are stored as Latin-1, one byte per
+ * character, and everything else as UTF-8. The probe table only holds the
+ * cached hash and the int address of each record, so an ASCII identifier
+ * costs its length plus about 11 bytes, instead of a Node, a String and its
+ * array.
+ *
+ * Lookups compare the record bytes with the characters directly, so adding,
+ * finding and removing never create a String. Strings are only created when
+ * iterating. Removed items leave their bytes behind until they make up half
+ * the arena, when the live records are copied into a fresh one.
+ *
+ * Unpaired surrogates are written as three UTF-8 bytes like any other
+ * character (as in WTF-8), so every String comes back out exactly as it
+ * went in.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public class CompactStringSet implements Iterable<String> {
+
+	// The fraction of slots in use before the table doubles.
+	private static final double LOAD_FACTOR = 0.75;
+
+	private static final int MIN_SLOTS = 16;
+
+	// Addresses are a chunk index above the offset in the chunk
+	private static final int CHUNK_BITS = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int MAX_CHUNKS = Integer.MAX_VALUE >>> CHUNK_BITS;
+	private static final int MIN_CHUNK = 256;
+
+	private final StringHasher hasher;
+	private int[] hashes;
+	private int[] refs;
+	private byte[][] chunks;
+	private int chunkCount;
+	private int chunkEnd;
+	private long arenaBytes;
+	private long usedBytes;
+	private long deadBytes;
+	private int mask;
+	private int threshold;
+	private int size;
+	private int changes;
+
+	/**
+	 * Creates a set sized for a modest number of items.
+	 */
+	public CompactStringSet() {
+		this(16);
+	}
+
+	/**
+	 * Creates a set with room for the given number of items before the table
+	 * has to grow. It hashes with its own StringHasher.randomized() hasher.
+	 */
+	public CompactStringSet(int expectedItems) {
+		this(expectedItems, StringHasher.randomized());
+	}
+
+	/**
+	 * Creates a set with room for the given number of items, using the given
+	 * hash function.
+	 */
+	public CompactStringSet(int expectedItems, StringHasher hasher) {
+		if (hasher == null) throw new NullPointerException();
+		this.hasher = hasher;
+		this.allocate(expectedItems);
+	}
+
+	private void allocate(int expectedItems) {
+		int slots = MIN_SLOTS;
+		while (slots * LOAD_FACTOR < expectedItems && slots < 1 << 30) slots <<= 1;
+		this.createTable(slots);
+		this.chunks = new byte[4][];
+		this.chunkCount = 0;
+		this.chunkEnd = 0;
+		this.arenaBytes = 0;
+		this.usedBytes = 0;
+		this.deadBytes = 0;
+		this.size = 0;
+	}
+
+	private void createTable(int slots) {
+		this.hashes = new int[slots];
+		this.refs = new int[slots];
+		this.mask = slots - 1;
+		this.threshold = (int) (slots * LOAD_FACTOR);
+	}
+
+	/**
+	 * Reads a record header, packed like StringHasher.nextChar(): the offset
+	 * of the first byte after the header in the high 32 bits, and the header
+	 * itself, the length shifted left once with the low bit set for UTF-8,
+	 * in the low 32 bits
+	 */
+	static long readHeader(byte[] chunk, int offset) {
+		int header = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = chunk[offset++];
+			header |= (b & 0x7F) << shift;
+			if (b >= 0) return ((long) offset << 32) | (header & 0xFFFFFFFFL);
+		}
+	}
+
+	/**
+	 * @return The number of bytes the header takes
+	 */
+	static int headerLength(int header) {
+		int length = 1;
+		while ((header >>>= 7) != 0) length++;
+		return length;
+	}
+
+	/**
+	 * @return The number of bytes a whole record takes
+	 */
+	static int recordLength(byte[] chunk, int offset) {
+		long header = CompactStringSet.readHeader(chunk, offset);
+		return (int) (header >>> 32) - offset + ((int) header >>> 1);
+	}
+
+	/**
+	 * Finds how an item will be stored
+	 * @return The header of its record
+	 */
+	static int header(CharSequence item) {
+		int n = item.length();
+		int i = 0;
+		while (i < n && item.charAt(i) <= 0xFF) i++;
+		if (i == n && n <= Integer.MAX_VALUE >>> 2) return n << 1;
+		long length = i;
+		for (; i < n; i++) {
+			char c = item.charAt(i);
+			if (c < 0x80) length++;
+			else if (c < 0x800) length += 2;
+			else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(item.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else length += 3;
+		}
+		if (length > Integer.MAX_VALUE >>> 2) throw new IllegalArgumentException("Item too long: " + length + " bytes");
+		return (int) length << 1 | 1;
+	}
+
+	/**
+	 * Checks whether the record at the given address holds exactly these characters
+	 */
+	private boolean equalsChars(int address, CharSequence item) {
+		return CompactStringSet.equalsChars(this.chunks[address >>> CHUNK_BITS], address & (CHUNK_SIZE - 1), item);
+	}
+
+	/**
+	 * Checks whether a record holds exactly these characters, without
+	 * decoding it into a String
+	 * @param chunk The array holding the record
+	 * @param record The offset of the record's header
+	 * @param item The characters to compare with
+	 * @return If they are the same string
+	 */
+	static boolean equalsChars(byte[] chunk, int record, CharSequence item) {
+		long header = CompactStringSet.readHeader(chunk, record);
+		int offset = (int) (header >>> 32);
+		int length = (int) header >>> 1;
+		int n = item.length();
+		if (((int) header & 1) == 0) {
+			if (length != n) return false;
+			for (int i = 0; i < n; i++) if ((chunk[offset + i] & 0xFF) != item.charAt(i)) return false;
+			return true;
+		}
+		int end = offset + length;
+		int i = 0;
+		long next = 0;
+		while (offset < end || (next & 0x10000) != 0) {
+			if (i == n) return false;
+			next = StringHasher.nextChar(chunk, offset, next);
+			offset = (int) (next >>> 32);
+			if ((char) next != item.charAt(i++)) return false;
+		}
+		return i == n;
+	}
+
+	/**
+	 * Finds the slot holding the given characters
+	 * @return The slot, or -1 if they are not in the set
+	 */
+	private int find(CharSequence item, int hash) {
+		for (int slot = hash & this.mask; ; slot = (slot + 1) & this.mask) {
+			int ref = this.refs[slot];
+			if (ref == 0) return -1;
+			if (this.hashes[slot] == hash && this.equalsChars(ref - 1, item)) return slot;
+		}
+	}
+
+	/**
+	 * Checks if the given characters are in the set.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the set.
+	 */
+	public boolean contains(CharSequence item) {
+		return this.find(item, this.hasher.hash(item)) >= 0;
+	}
+
+	/**
+	 * Reserves room in the arena for a record. Chunks start small and double
+	 * up to the chunk size, so small sets stay small; a record longer than
+	 * that gets a chunk of its own.
+	 * @return The address of the record
+	 */
+	private int reserve(int length) {
+		if (this.chunkCount == 0 || this.chunkEnd + length > this.chunks[this.chunkCount - 1].length) {
+			if (this.chunkCount == MAX_CHUNKS) throw new IllegalStateException("The arena is full");
+			if (this.chunkCount == this.chunks.length) this.chunks = Arrays.copyOf(this.chunks, this.chunkCount * 2);
+			int chunkSize = this.chunkCount == 0 ? MIN_CHUNK : (int) Math.min(CHUNK_SIZE, this.chunks[this.chunkCount - 1].length * 2L);
+			this.chunks[this.chunkCount++] = new byte[Math.max(chunkSize, length)];
+			this.arenaBytes += Math.max(chunkSize, length);
+			this.chunkEnd = 0;
+		}
+		int address = (this.chunkCount - 1) << CHUNK_BITS | this.chunkEnd;
+		this.chunkEnd += length;
+		this.usedBytes += length;
+		return address;
+	}
+
+	/**
+	 * Writes a record for the given characters
+	 * @param chunk The array to write into
+	 * @param offset Where the record starts
+	 * @param header What header() returned for the characters
+	 * @param item The characters
+	 * @return The offset just past the record
+	 */
+	static int write(byte[] chunk, int offset, int header, CharSequence item) {
+		for (int rest = header; ; rest >>>= 7) {
+			if (rest < 0x80) {
+				chunk[offset++] = (byte) rest;
+				break;
+			}
+			chunk[offset++] = (byte) (rest | 0x80);
+		}
+		int n = item.length();
+		if ((header & 1) == 0) {
+			for (int i = 0; i < n; i++) chunk[offset++] = (byte) item.charAt(i);
+			return offset;
+		}
+		for (int i = 0; i < n; i++) {
+			int cp = item.charAt(i);
+			if (cp < 0x80) {
+				chunk[offset++] = (byte) cp;
+				continue;
+			}
+			if (Character.isHighSurrogate((char) cp) && i + 1 < n && Character.isLowSurrogate(item.charAt(i + 1))) cp = Character.toCodePoint((char) cp, item.charAt(++i));
+			int bytes = cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+			chunk[offset++] = (byte) (bytes == 2 ? 0xC0 | cp >> 6 : bytes == 3 ? 0xE0 | cp >> 12 : 0xF0 | cp >> 18);
+			for (int shift = 6 * (bytes - 2); shift >= 0; shift -= 6) chunk[offset++] = (byte) (0x80 | (cp >> shift & 0x3F));
+		}
+		return offset;
+	}
+
+	/**
+	 * Adds the given characters if they are not there already.
+	 *
+	 * @param item
+	 * @return true if the set changed.
+	 */
+	public boolean add(CharSequence item) {
+		int hash = this.hasher.hash(item);
+		if (this.find(item, hash) >= 0) return false;
+		int header = CompactStringSet.header(item);
+		int address = this.reserve(CompactStringSet.headerLength(header) + (header >>> 1));
+		CompactStringSet.write(this.chunks[address >>> CHUNK_BITS], address & (CHUNK_SIZE - 1), header, item);
+		if (this.size >= this.threshold) this.resize();
+		this.place(hash, address + 1);
+		this.size++;
+		this.changes++;
+		return true;
+	}
+
+	private void place(int hash, int ref) {
+		int slot = hash & this.mask;
+		while (this.refs[slot] != 0) slot = (slot + 1) & this.mask;
+		this.hashes[slot] = hash;
+		this.refs[slot] = ref;
+	}
+
+	/**
+	 * Doubles the table, placing every item by its cached hash without
+	 * touching the arena
+	 */
+	private void resize() {
+		int[] oldHashes = this.hashes;
+		int[] oldRefs = this.refs;
+		this.createTable(oldRefs.length * 2);
+		for (int slot = 0; slot < oldRefs.length; slot++) if (oldRefs[slot] != 0) this.place(oldHashes[slot], oldRefs[slot]);
+	}
+
+	/**
+	 * Removes the given characters from the set if they are there.
+	 *
+	 * @param item
+	 * @return True if the set changed.
+	 */
+	public boolean remove(CharSequence item) {
+		int slot = this.find(item, this.hasher.hash(item));
+		if (slot < 0) return false;
+		this.removeAt(slot);
+		if (this.deadBytes >= MIN_CHUNK && this.deadBytes * 2 > this.usedBytes) this.compact();
+		return true;
+	}
+
+	/**
+	 * Empties a slot and shifts the rest of its cluster back
+	 */
+	private void removeAt(int hole) {
+		int address = this.refs[hole] - 1;
+		this.deadBytes += CompactStringSet.recordLength(this.chunks[address >>> CHUNK_BITS], address & (CHUNK_SIZE - 1));
+		for (int next = (hole + 1) & this.mask; ; next = (next + 1) & this.mask) {
+			int ref = this.refs[next];
+			if (ref == 0) break;
+			int hash = this.hashes[next];
+			if (((next - (hash & this.mask)) & this.mask) < ((next - hole) & this.mask)) continue;
+			this.hashes[hole] = hash;
+			this.refs[hole] = ref;
+			hole = next;
+		}
+		this.refs[hole] = 0;
+		this.size--;
+		this.changes++;
+	}
+
+	/**
+	 * Copies the live records into a fresh arena, in slot order, and drops
+	 * the old one along with the bytes of every removed item
+	 */
+	private void compact() {
+		byte[][] old = this.chunks;
+		this.chunks = new byte[4][];
+		this.chunkCount = 0;
+		this.chunkEnd = 0;
+		this.arenaBytes = 0;
+		this.usedBytes = 0;
+		this.deadBytes = 0;
+		for (int slot = 0; slot < this.refs.length; slot++) {
+			if (this.refs[slot] == 0) continue;
+			int address = this.refs[slot] - 1;
+			byte[] chunk = old[address >>> CHUNK_BITS];
+			int offset = address & (CHUNK_SIZE - 1);
+			int length = CompactStringSet.recordLength(chunk, offset);
+			int moved = this.reserve(length);
+			System.arraycopy(chunk, offset, this.chunks[moved >>> CHUNK_BITS], moved & (CHUNK_SIZE - 1), length);
+			this.refs[slot] = moved + 1;
+		}
+		this.changes++;
+	}
+
+	/**
+	 * Decodes a record into a new String
+	 * @param chunk The array holding the record
+	 * @param record The offset of the record's header
+	 * @param buffer Scratch space at least as long as the record
+	 * @return The string
+	 */
+	static String decode(byte[] chunk, int record, char[] buffer) {
+		long header = CompactStringSet.readHeader(chunk, record);
+		int offset = (int) (header >>> 32);
+		int length = (int) header >>> 1;
+		if (((int) header & 1) == 0) return new String(chunk, offset, length, StandardCharsets.ISO_8859_1);
+		int end = offset + length;
+		int n = 0;
+		long next = 0;
+		while (offset < end || (next & 0x10000) != 0) {
+			next = StringHasher.nextChar(chunk, offset, next);
+			offset = (int) (next >>> 32);
+			buffer[n++] = (char) next;
+		}
+		return new String(buffer, 0, n);
+	}
+
+	/**
+	 * @return The number of items in the set.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return True iff the set contains no items.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes all the items and releases the arena, keeping a table of the
+	 * default size.
+	 */
+	public void clear() {
+		this.allocate(0);
+		this.changes++;
+	}
+
+	/**
+	 * @return The number of bytes in the arena's chunks, including bytes
+	 *         that are not in use yet and those of removed items
+	 */
+	public long arenaBytes() {
+		return this.arenaBytes;
+	}
+
+	/**
+	 * @return The number of bytes in the probe table's arrays
+	 */
+	public long tableBytes() {
+		return 8L * this.refs.length;
+	}
+
+	/**
+	 * @return The number of arena bytes still held by items that have been removed
+	 */
+	public long deadBytes() {
+		return this.deadBytes;
+	}
+
+	/**
+	 * Returns an iterator that decodes each item into a new String. Throws
+	 * ConcurrentModificationException if the set changes while iterating.
+	 *
+	 * @return an iterator.
+	 */
+	public Iterator<String> iterator() {
+		return new SlotIterator(this);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (Iterator<String> iter = this.iterator(); iter.hasNext(); ) {
+			sb.append(iter.next());
+			if (iter.hasNext()) sb.append(", ");
+		}
+		return sb.append(']').toString();
+	}
+
+	private static class SlotIterator implements Iterator<String> {
+		CompactStringSet set;
+		int slot = -1;
+		int changes;
+		char[] buffer = new char[64];
+
+		SlotIterator(CompactStringSet set) {
+			this.set = set;
+			this.changes = set.changes;
+			this.advance();
+		}
+
+		private void advance() {
+			do this.slot++;
+			while (this.slot < this.set.refs.length && this.set.refs[this.slot] == 0);
+		}
+
+		@Override
+		public boolean hasNext() throws ConcurrentModificationException {
+			if (this.changes != this.set.changes) throw new ConcurrentModificationException();
+			return this.slot < this.set.refs.length;
+		}
+
+		@Override
+		public String next() throws NoSuchElementException, ConcurrentModificationException {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			int address = this.set.refs[this.slot] - 1;
+			byte[] chunk = this.set.chunks[address >>> CHUNK_BITS];
+			int record = address & (CHUNK_SIZE - 1);
+			// A record of n UTF-8 bytes never decodes to more than n characters
+			int length = CompactStringSet.recordLength(chunk, record);
+			if (this.buffer.length < length) this.buffer = new char[Math.max(length, this.buffer.length * 2)];
+			this.advance();
+			return CompactStringSet.decode(chunk, record, this.buffer);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactStringSetTest {
+	private static final String[] HELLOS = { "hello", "hi", "caio", "hola", "shalom", "bonjour", "ni-hao", "aloha", "tere", "sveiki",
+			"caf\u00e9", "\u4f60\u597d", "\ud83d\ude00 smile", "", "\u00ff\u0100" };
+
+	private CompactStringSet set;
+
+	@Before
+	public void setUp() {
+		set = new CompactStringSet(4);
+	}
+
+	@Test
+	public void testAddAndContains() {
+		for (String s : HELLOS) assertTrue(set.add(s));
+		for (String s : HELLOS) assertFalse(set.add(s));
+		assertEquals(HELLOS.length, set.size());
+		for (String s : HELLOS) {
+			assertTrue(s, set.contains(s));
+			assertTrue(s, set.contains(new StringBuilder(s)));
+		}
+		assertFalse(set.contains("mulishani"));
+		assertFalse(set.contains("hell"));
+		assertFalse(set.contains("hello!"));
+		assertFalse(set.contains("caf\u00e8"));
+		assertFalse(set.contains("\u4f60"));
+		assertFalse(set.contains("\u4f60\u597d\u597d"));
+		assertFalse(set.contains("\ud83d"));
+		HashSet<String> iterated = new HashSet<String>();
+		for (String s : set) assertTrue(iterated.add(s));
+		assertEquals(new HashSet<String>(Arrays.asList(HELLOS)), iterated);
+	}
+
+	@Test
+	public void testUnpairedSurrogates() {
+		String[] items = { "\ud83d", "\ude00", "a\ude00\ud83d", "\ud83d\ude00", "?" };
+		for (String s : items) assertTrue(s, set.add(s));
+		assertEquals(items.length, set.size());
+		HashSet<String> iterated = new HashSet<String>();
+		for (String s : set) iterated.add(s);
+		assertEquals(new HashSet<String>(Arrays.asList(items)), iterated);
+	}
+
+	@Test
+	public void testLatin1TakesOneBytePerChar() {
+		CompactStringSet latin1 = new CompactStringSet();
+		CompactStringSet utf8 = new CompactStringSet();
+		for (int i = 0; i < 1000; i++) {
+			latin1.add("\u00e9\u00e9\u00e9\u00e9-" + (1000 + i));
+			utf8.add("\u20ac\u20ac\u20ac\u20ac-" + (1000 + i));
+		}
+		// 9 characters and a header byte each, in chunks of 256, 512, ... bytes
+		assertTrue(latin1.arenaBytes() >= 10000);
+		assertTrue(latin1.arenaBytes() < 2 * 10000);
+		assertTrue(utf8.arenaBytes() > latin1.arenaBytes());
+		assertEquals(8 * 2048, latin1.tableBytes());
+	}
+
+	@Test
+	public void testRemoveCompactsArena() {
+		for (int i = 0; i < 10000; i++) set.add("item" + i);
+		long arena = set.arenaBytes();
+		assertTrue(set.remove(new StringBuilder("item0")));
+		assertFalse(set.remove("item0"));
+		assertEquals(6, set.deadBytes());
+		for (int i = 1; i < 9000; i++) assertTrue(set.remove("item" + i));
+		assertTrue(set.deadBytes() * 2 <= arena);
+		assertTrue(set.arenaBytes() < arena);
+		assertEquals(1000, set.size());
+		for (int i = 9000; i < 10000; i++) assertTrue(set.contains("item" + i));
+		assertFalse(set.contains("item1"));
+	}
+
+	@Test
+	public void testMatchesHashSet() {
+		HashSet<String> oracle = new HashSet<String>();
+		SetOracle.check(oracle, new Random(230), 100000, random -> "item-" + random.nextInt(5000) + (random.nextBoolean() ? "\u00e9" : random.nextBoolean() ? "\u20ac" : ""),
+				set::add, set::remove, set::contains);
+		assertEquals(oracle.size(), set.size());
+		SetOracle.assertSameItems(oracle, set);
+	}
+
+	@Test
+	public void testLongItems() {
+		// Longer than a 64 KiB chunk, so each gets a chunk of its own
+		char[] filler = new char[70000];
+		Arrays.fill(filler, '\u20ac');
+		for (int i = 0; i < 5; i++) assertTrue(set.add(i + new String(filler)));
+		assertTrue(set.add("short"));
+		for (int i = 0; i < 5; i++) assertTrue(set.contains(i + new String(filler)));
+		assertTrue(set.contains("short"));
+		for (String s : set) assertTrue(s.length() == 70001 || s.equals("short"));
+	}
+
+	@Test
+	public void testIteratorFailsFast() {
+		set.add("hello");
+		set.add("hi");
+		Iterator<String> iter = set.iterator();
+		iter.next();
+		set.add("caio");
+		try {
+			iter.hasNext();
+			fail("Did not throw ConcurrentModificationException");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertEquals(0, set.arenaBytes());
+		assertFalse(set.iterator().hasNext());
+		assertEquals("[]", set.toString());
+		set.add("hola");
+		assertEquals("[hola]", set.toString());
+	}
+}
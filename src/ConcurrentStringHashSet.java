@@ -0,0 +1,440 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A hash set for Strings that any number of threads can use at once. Cannot
+ * insert null into the set.
+ *
+ * Lookups never lock: they read bucket heads through volatile loads and walk
+ * chains whose links are volatile. An add into an empty bucket is a single
+ * compare-and-set of the bucket head; any other change locks the head node of
+ * the one bucket it touches. When the table fills up, every thread that writes
+ * to it claims a range of buckets and helps copy them into the doubled table,
+ * leaving a forwarding marker behind so lookups follow the items.
+ *
+ * Iterators are weakly consistent: they never throw
+ * ConcurrentModificationException, return each item at most once, and see
+ * every item that was in the set for the whole iteration.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public class ConcurrentStringHashSet implements Iterable<String> {
+
+	// The initial number of buckets.
+	private static final int DEFAULT_CAPACITY = 16;
+
+	// The fraction of buckets in use before the table doubles.
+	private static final double LOAD_FACTOR = 0.75;
+
+	// How many buckets a resizing thread claims at a time.
+	private static final int TRANSFER_STRIDE = 16;
+
+	private final StringHasher hasher;
+	private final LongAdder count = new LongAdder();
+	private volatile Table table;
+
+	/**
+	 * A link in a bucket's chain. The item and its hash never change, so
+	 * readers only need the volatile link to see a consistent chain.
+	 */
+	static class Node {
+		final String data;
+		final int hash;
+		volatile Node next;
+
+		Node(String data, int hash, Node next) {
+			this.data = data;
+			this.hash = hash;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * Sits at the head of a bucket that has been copied into the next table
+	 */
+	static final class Forward extends Node {
+		final Table next;
+
+		Forward(Table next) {
+			super(null, 0, null);
+			this.next = next;
+		}
+	}
+
+	/**
+	 * One generation of the bucket array and the state of copying it into the next one
+	 */
+	static final class Table {
+		final AtomicReferenceArray<Node> buckets;
+		final int mask;
+		final long threshold;
+		volatile Table next;
+		final AtomicInteger transferIndex;
+		final AtomicInteger remaining;
+
+		Table(int capacity) {
+			this.buckets = new AtomicReferenceArray<Node>(capacity);
+			this.mask = capacity - 1;
+			this.threshold = (long) (capacity * LOAD_FACTOR);
+			this.transferIndex = new AtomicInteger(capacity);
+			this.remaining = new AtomicInteger(capacity);
+		}
+	}
+
+	/**
+	 * Creates a Hash Set with the default capacity.
+	 */
+	public ConcurrentStringHashSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a Hash Set with room for the given number of items before it
+	 * has to resize.
+	 */
+	public ConcurrentStringHashSet(int initialCapacity) {
+		this(initialCapacity, StringHasher.POLYNOMIAL);
+	}
+
+	/**
+	 * Creates a Hash Set with room for the given number of items, using the
+	 * given hash function.
+	 */
+	public ConcurrentStringHashSet(int initialCapacity, StringHasher hasher) {
+		if (hasher == null) throw new NullPointerException();
+		this.hasher = hasher;
+		this.table = new Table(StringHashSet.powerOfTwoAtLeast((int) Math.min(1 << 30, (long) (initialCapacity / LOAD_FACTOR) + 1)));
+	}
+
+	private int hash(String item) {
+		int hash = this.hasher.hash(item);
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Checks if the given item is in the hash table. Never locks or writes.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the hash table.
+	 */
+	public boolean contains(String item) {
+		return this.find(item, this.hash(item)) != null;
+	}
+
+	private Node find(String item, int hash) {
+		Table table = this.table;
+		outer: for (;;) {
+			for (Node node = table.buckets.get(hash & table.mask); node != null; node = node.next) {
+				if (node instanceof Forward) {
+					table = ((Forward) node).next;
+					continue outer;
+				}
+				if (node.hash == hash && node.data.equals(item)) return node;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Adds the item if it is not there already.
+	 *
+	 * @param item
+	 * @return true if the item was added, false if it was already there.
+	 */
+	public boolean add(String item) {
+		return this.addIfAbsent(item) == null;
+	}
+
+	/**
+	 * Adds the item if it is not there already, atomically.
+	 *
+	 * @param item
+	 * @return null if the item was added, otherwise the equal instance that
+	 *         was already in the set
+	 */
+	public String addIfAbsent(String item) {
+		if (item == null) throw new NullPointerException();
+		int hash = this.hash(item);
+		Table table = this.table;
+		for (;;) {
+			int index = hash & table.mask;
+			Node head = table.buckets.get(index);
+			if (head == null) {
+				if (table.buckets.compareAndSet(index, null, new Node(item, hash, null))) break;
+				continue;
+			}
+			if (head instanceof Forward) {
+				table = this.helpTransfer(table);
+				continue;
+			}
+			synchronized (head) {
+				if (table.buckets.get(index) != head) continue;
+				Node node = head;
+				for (;; node = node.next) {
+					if (node.hash == hash && node.data.equals(item)) return node.data;
+					if (node.next == null) break;
+				}
+				node.next = new Node(item, hash, null);
+			}
+			break;
+		}
+		this.count.increment();
+		this.checkSize();
+		return null;
+	}
+
+	/**
+	 * Removes the given item from the hash table if it is there.
+	 *
+	 * @param item
+	 * @return True If the item was in the hash table.
+	 */
+	public boolean remove(String item) {
+		int hash = this.hash(item);
+		Table table = this.table;
+		for (;;) {
+			int index = hash & table.mask;
+			Node head = table.buckets.get(index);
+			if (head == null) return false;
+			if (head instanceof Forward) {
+				table = this.helpTransfer(table);
+				continue;
+			}
+			synchronized (head) {
+				if (table.buckets.get(index) != head) continue;
+				for (Node prev = null, node = head; node != null; prev = node, node = node.next) {
+					if (node.hash != hash || !node.data.equals(item)) continue;
+					if (prev == null) table.buckets.set(index, node.next);
+					else prev.next = node.next;
+					this.count.decrement();
+					return true;
+				}
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Removes every item the predicate accepts. Items added or removed by
+	 * other threads meanwhile may or may not be tested.
+	 *
+	 * @param filter
+	 * @return True if any item was removed.
+	 */
+	public boolean removeIf(Predicate<? super String> filter) {
+		if (filter == null) throw new NullPointerException();
+		boolean removed = false;
+		for (Iterator<String> iter = this.iterator(); iter.hasNext(); ) {
+			if (filter.test(iter.next())) {
+				iter.remove();
+				removed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Adds all the items from the given collection to the hash table.
+	 *
+	 * @param collection
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean addAll(Collection<String> collection) {
+		boolean success = false;
+		for (String item : collection) success |= this.add(item);
+		return success;
+	}
+
+	/**
+	 * Returns the number of items in the hash table. While other threads are
+	 * changing the set this is only an estimate.
+	 *
+	 * @return The number of items in the hash table.
+	 */
+	public int size() {
+		long size = this.count.sum();
+		return size < 0 ? 0 : size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+	}
+
+	/**
+	 * @return True iff the hash table contains no items.
+	 */
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	/**
+	 * Removes all the items from the hash table, one bucket at a time. Items
+	 * added by other threads while it runs may survive.
+	 */
+	public void clear() {
+		Table table = this.table;
+		for (int index = 0; index <= table.mask; ) {
+			Node head = table.buckets.get(index);
+			if (head == null) index++;
+			else if (head instanceof Forward) {
+				table = this.helpTransfer(table);
+				index = 0;
+			} else {
+				synchronized (head) {
+					if (table.buckets.get(index) != head) continue;
+					int removed = 0;
+					for (Node node = head; node != null; node = node.next) removed++;
+					table.buckets.set(index, null);
+					this.count.add(-removed);
+				}
+				index++;
+			}
+		}
+	}
+
+	/**
+	 * Starts or joins a resize once the table holds more items than its threshold
+	 */
+	private void checkSize() {
+		Table table = this.table;
+		if (this.count.sum() < table.threshold || table.mask == (1 << 30) - 1) return;
+		if (table.next == null) {
+			synchronized (table) {
+				if (table.next == null && this.table == table) table.next = new Table((table.mask + 1) << 1);
+			}
+		}
+		if (table.next != null) this.transfer(table);
+	}
+
+	/**
+	 * Helps finish copying the given table into its successor
+	 * @return The table to retry in
+	 */
+	private Table helpTransfer(Table table) {
+		this.transfer(table);
+		return table.next;
+	}
+
+	/**
+	 * Claims ranges of buckets in the given table and copies them into the
+	 * next table until no unclaimed range is left. The thread that copies the
+	 * last range publishes the next table as current.
+	 */
+	private void transfer(Table table) {
+		Table next = table.next;
+		for (;;) {
+			int end = table.transferIndex.get();
+			if (end <= 0) return;
+			int start = Math.max(0, end - TRANSFER_STRIDE);
+			if (!table.transferIndex.compareAndSet(end, start)) continue;
+			for (int index = start; index < end; index++) this.transferBucket(table, next, index);
+			if (table.remaining.addAndGet(start - end) == 0) this.table = next;
+		}
+	}
+
+	/**
+	 * Copies one bucket into the two buckets it splits into in the next table
+	 * and leaves a forwarding marker in its place. The old nodes are left
+	 * untouched for readers that are still walking them.
+	 */
+	private void transferBucket(Table table, Table next, int index) {
+		Forward forward = new Forward(next);
+		for (;;) {
+			Node head = table.buckets.get(index);
+			if (head == null) {
+				if (table.buckets.compareAndSet(index, null, forward)) return;
+				continue;
+			}
+			synchronized (head) {
+				if (table.buckets.get(index) != head) continue;
+				Node low = null, high = null;
+				for (Node node = head; node != null; node = node.next) {
+					if ((node.hash & next.mask) == index) low = new Node(node.data, node.hash, low);
+					else high = new Node(node.data, node.hash, high);
+				}
+				next.buckets.set(index, low);
+				next.buckets.set(index + table.mask + 1, high);
+				table.buckets.set(index, forward);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns a weakly consistent iterator over the set. It never throws
+	 * ConcurrentModificationException, and its remove() removes the last
+	 * item returned from the set.
+	 *
+	 * @return an iterator.
+	 */
+	public Iterator<String> iterator() {
+		return new WeakIterator(this);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (Iterator<String> iter = this.iterator(); iter.hasNext(); ) {
+			sb.append(iter.next());
+			if (iter.hasNext()) sb.append(", ");
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * Walks the buckets of the table that was current when it was created,
+	 * gathering one bucket at a time. A bucket that has moved on is gathered
+	 * from the buckets it split into, so no item is seen twice.
+	 */
+	private static class WeakIterator implements Iterator<String> {
+		ConcurrentStringHashSet hashSet;
+		Table table;
+		int index;
+		ArrayList<String> bucket = new ArrayList<String>();
+		int position;
+		String last;
+
+		WeakIterator(ConcurrentStringHashSet hashSet) {
+			this.hashSet = hashSet;
+			this.table = hashSet.table;
+		}
+
+		private static void gather(Table table, int index, ArrayList<String> out) {
+			for (Node node = table.buckets.get(index); node != null; node = node.next) {
+				if (node instanceof Forward) {
+					Table next = ((Forward) node).next;
+					WeakIterator.gather(next, index, out);
+					WeakIterator.gather(next, index + table.mask + 1, out);
+					return;
+				}
+				out.add(node.data);
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (this.position == this.bucket.size()) {
+				if (this.index > this.table.mask) return false;
+				this.bucket.clear();
+				this.position = 0;
+				WeakIterator.gather(this.table, this.index++, this.bucket);
+			}
+			return true;
+		}
+
+		@Override
+		public String next() throws NoSuchElementException {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			return this.last = this.bucket.get(this.position++);
+		}
+
+		@Override
+		public void remove() {
+			if (this.last == null) throw new IllegalStateException();
+			this.hashSet.remove(this.last);
+			this.last = null;
+		}
+	}
+}
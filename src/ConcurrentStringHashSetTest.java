@@ -0,0 +1,177 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ConcurrentStringHashSetTest {
+	private static final int THREADS = 8;
+
+	/**
+	 * Runs the task on several threads at once and rethrows the first failure
+	 */
+	private static void runConcurrently(final int threads, final Task task) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final Throwable[] failure = new Throwable[1];
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final int id = t;
+			Thread worker = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						task.run(id);
+					} catch (Throwable e) {
+						synchronized (failure) {
+							if (failure[0] == null) failure[0] = e;
+						}
+					}
+				}
+			};
+			workers.add(worker);
+			worker.start();
+		}
+		start.countDown();
+		for (Thread worker : workers) worker.join();
+		if (failure[0] instanceof Exception) throw (Exception) failure[0];
+		if (failure[0] != null) throw new AssertionError(failure[0]);
+	}
+
+	private interface Task {
+		void run(int id) throws Exception;
+	}
+
+	@Test
+	public void testSequentialBasics() {
+		ConcurrentStringHashSet set = new ConcurrentStringHashSet(1);
+		assertTrue(set.isEmpty());
+		for (String s : new String[] { "hello", "hi", "caio", "hola", "shalom", "bonjour", "ni-hao", "aloha", "tere", "sveiki" }) assertTrue(set.add(s));
+		assertFalse(set.add("hello"));
+		assertEquals(10, set.size());
+		assertTrue(set.contains("aloha"));
+		assertFalse(set.contains("mulishani"));
+		assertTrue(set.remove("aloha"));
+		assertFalse(set.remove("aloha"));
+		assertFalse(set.contains("aloha"));
+		assertEquals(9, set.size());
+		assertTrue(set.removeIf(s -> s.startsWith("h")));
+		assertEquals(6, set.size());
+		assertFalse(set.contains("hola"));
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertEquals("[]", set.toString());
+	}
+
+	@Test
+	public void testAddIfAbsentReturnsStoredInstance() {
+		ConcurrentStringHashSet set = new ConcurrentStringHashSet();
+		String first = new String("hello");
+		assertNull(set.addIfAbsent(first));
+		assertSame(first, set.addIfAbsent(new String("hello")));
+	}
+
+	@Test
+	public void testMatchesOracleUnderContention() throws Exception {
+		// Each thread owns the keys ending in its id, so a per-thread HashSet
+		// is an exact sequential oracle for its part of the set
+		final ConcurrentStringHashSet set = new ConcurrentStringHashSet(1);
+		final List<HashSet<String>> oracles = new ArrayList<HashSet<String>>();
+		for (int t = 0; t < THREADS; t++) oracles.add(new HashSet<String>());
+		runConcurrently(THREADS, new Task() {
+			@Override
+			public void run(int id) {
+				Random random = new Random(id);
+				HashSet<String> oracle = oracles.get(id);
+				for (int i = 0; i < 200000; i++) {
+					String item = random.nextInt(5000) + "/" + id;
+					switch (random.nextInt(4)) {
+					case 0:
+					case 1:
+						assertEquals(oracle.add(item), set.add(item));
+						break;
+					case 2:
+						assertEquals(oracle.remove(item), set.remove(item));
+						break;
+					default:
+						assertEquals(oracle.contains(item), set.contains(item));
+					}
+				}
+			}
+		});
+		HashSet<String> expected = new HashSet<String>();
+		for (HashSet<String> oracle : oracles) expected.addAll(oracle);
+		HashSet<String> actual = new HashSet<String>();
+		for (String s : set) assertTrue(actual.add(s));
+		assertEquals(expected, actual);
+		assertEquals(expected.size(), set.size());
+	}
+
+	@Test
+	public void testExactlyOneWinnerPerItem() throws Exception {
+		final ConcurrentStringHashSet set = new ConcurrentStringHashSet(1);
+		final AtomicInteger wins = new AtomicInteger();
+		runConcurrently(THREADS, new Task() {
+			@Override
+			public void run(int id) {
+				for (int i = 0; i < 50000; i++) if (set.addIfAbsent("item" + i) == null) wins.incrementAndGet();
+			}
+		});
+		assertEquals(50000, wins.get());
+		assertEquals(50000, set.size());
+	}
+
+	@Test
+	public void testReadersSeeStableItemsDuringResizes() throws Exception {
+		final ConcurrentStringHashSet set = new ConcurrentStringHashSet(1);
+		final String[] stable = new String[1000];
+		for (int i = 0; i < stable.length; i++) {
+			stable[i] = "stable" + i;
+			set.add(stable[i]);
+		}
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		runConcurrently(THREADS, new Task() {
+			@Override
+			public void run(int id) {
+				if (id == 0) {
+					for (int i = 0; i < 300000; i++) set.add("churn" + i);
+					for (int i = 0; i < 300000; i++) set.remove("churn" + i);
+					writing.set(false);
+					return;
+				}
+				do {
+					for (String s : stable) assertTrue(s, set.contains(s));
+					HashSet<String> seen = new HashSet<String>();
+					for (String s : set) assertTrue("Returned twice: " + s, seen.add(s));
+					assertTrue(seen.containsAll(Arrays.asList(stable)));
+				} while (writing.get());
+			}
+		});
+		assertEquals(stable.length, set.size());
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		ConcurrentStringHashSet set = new ConcurrentStringHashSet();
+		for (int i = 0; i < 100; i++) set.add("item" + i);
+		for (Iterator<String> iter = set.iterator(); iter.hasNext(); ) {
+			String s = iter.next();
+			set.add(s + "-added");
+			if (!s.endsWith("-added")) iter.remove();
+		}
+		for (int i = 0; i < 100; i++) assertFalse(set.contains("item" + i));
+		for (int i = 0; i < 100; i++) assertTrue(set.contains("item" + i + "-added"));
+	}
+}
@@ -0,0 +1,693 @@
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * A set of Strings kept in a directory, so its contents survive the process
+ * ending, however it ends. Every add(), remove() and clear() that changes the
+ * set appends a record to a write-ahead log before it returns, and opening
+ * the directory again replays the log. The Sync policy decides when the log
+ * is also forced to the disk, and so what an operating system crash or power
+ * cut can take away.
+ *
+ * Writes from several threads are committed in groups: a write puts its
+ * record in a shared buffer, and whichever writer gets to the log first
+ * writes and forces every record waiting there, so the others find theirs
+ * already done. Changes are visible to contains() as soon as they are made,
+ * slightly before their write returns.
+ *
+ * Once the log holds more records than the set holds items (and at least the
+ * compaction threshold), a background thread folds it into a snapshot: a
+ * StringSetSnapshot file of the items, after which older logs and snapshots
+ * are deleted. The items are kept in a VersionedStringSet, so the snapshot is
+ * written from a constant-time view while writers go on, into a new log.
+ *
+ * The directory holds files named snapshot-N and log-N; any other files
+ * there are left alone. Opening it takes the newest snapshot, or none, and
+ * replays every log from the same generation on. A crash in the middle of a write leaves at most one torn record at the
+ * end of the last log, which fails its checksum and is cut off; a damaged
+ * record with more of the log after it makes open() fail instead. A write that
+ * fails part way through is cut off the same way before the next one, and
+ * its records are kept to be written again. A log is laid out as follows,
+ * with every number little-endian:
+ *
+ * <pre>
+ * long  magic "SHWALLOG"
+ * int   format version (1)
+ * int   unused
+ * records: byte operation (1 add, 2 remove, 3 clear)
+ *          varint length, then that many bytes of UTF-8, with unpaired
+ *          surrogates in three bytes each as in WTF-8 (absent for clear)
+ *          int CRC32C of the record's other bytes
+ * </pre>
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public class DurableStringSet implements Iterable<String>, AutoCloseable {
+
+	/**
+	 * When the log is forced to the disk. Every policy writes each record to
+	 * the operating system before its write returns, so killing the process
+	 * loses nothing; they differ in what a crash of the machine can lose.
+	 */
+	public enum Sync {
+		/** Force the log before every write returns; nothing is lost */
+		ALWAYS,
+		/** Force the log at most once per sync interval, so a machine crash loses at most that much */
+		PERIODIC,
+		/** Leave forcing to the operating system, except on compaction and close() */
+		NEVER
+	}
+
+	/**
+	 * The format version this class writes and reads
+	 */
+	public static final int VERSION = 1;
+
+	private static final long MAGIC = 0x474F4C4C_4157_4853L;
+	private static final int HEADER_SIZE = 16;
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final byte CLEAR = 3;
+
+	// The fewest log records worth folding into a snapshot
+	private static final int DEFAULT_COMPACTION_THRESHOLD = 1 << 16;
+
+	private static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofMillis(50);
+
+	// The files the set owns; anything else in the directory is left alone
+	private static final Pattern FILE_NAME = Pattern.compile("(log|snapshot)-(\\d{1,18})(\\.tmp)?");
+
+	private final Path directory;
+	private final Sync sync;
+	private final long syncIntervalNanos;
+	private final VersionedStringSet items = new VersionedStringSet();
+	private final ScheduledExecutorService background;
+	// Held while writing to the log; taken before the set's own lock
+	private final Object commitLock = new Object();
+
+	// Guarded by this
+	private FileChannel log;
+	private long generation;
+	private ByteBuffer pending = DurableStringSet.newBuffer(1 << 12);
+	private final CRC32C checksum = new CRC32C();
+	private long appended;
+	private long logRecords;
+	private int compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+	private boolean compacting;
+	private IOException failure;
+
+	// Guarded by commitLock
+	private ByteBuffer spare = DurableStringSet.newBuffer(1 << 12);
+	// The length of the whole records in the log, and whether it may hold part of one after that
+	private long logEnd;
+	private boolean damaged;
+	private long written;
+	private long synced;
+	private long lastSync = System.nanoTime();
+
+	private DurableStringSet(Path directory, Sync sync, Duration syncInterval) {
+		this.directory = directory;
+		this.sync = sync;
+		this.syncIntervalNanos = syncInterval.toNanos();
+		this.background = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "DurableStringSet " + directory);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Opens the set kept in a directory, creating the directory if needed,
+	 * forcing every write to the disk before it returns.
+	 *
+	 * @param directory
+	 * @return The set
+	 * @throws IOException If the files cannot be read, or one is corrupt
+	 */
+	public static DurableStringSet open(Path directory) throws IOException {
+		return DurableStringSet.open(directory, Sync.ALWAYS);
+	}
+
+	/**
+	 * Opens the set kept in a directory with the given sync policy, forcing
+	 * the log every 50 ms under Sync.PERIODIC.
+	 */
+	public static DurableStringSet open(Path directory, Sync sync) throws IOException {
+		return DurableStringSet.open(directory, sync, DEFAULT_SYNC_INTERVAL);
+	}
+
+	/**
+	 * Opens the set kept in a directory, creating the directory if needed,
+	 * and recovers its items from the newest snapshot and the logs after it.
+	 *
+	 * @param directory
+	 * @param sync When to force the log to the disk
+	 * @param syncInterval The longest Sync.PERIODIC waits to force a write
+	 * @return The set
+	 * @throws IOException If the files cannot be read, or one is corrupt
+	 * @throws IllegalArgumentException If the sync interval is not positive
+	 */
+	public static DurableStringSet open(Path directory, Sync sync, Duration syncInterval) throws IOException, IllegalArgumentException {
+		if (directory == null || sync == null) throw new NullPointerException();
+		if (syncInterval.isNegative() || syncInterval.isZero()) throw new IllegalArgumentException("Illegal sync interval: " + syncInterval);
+		Files.createDirectories(directory);
+		DurableStringSet set = new DurableStringSet(directory, sync, syncInterval);
+		try {
+			set.recover();
+		} catch (IOException | RuntimeException e) {
+			set.background.shutdownNow();
+			if (set.log != null) set.log.close();
+			throw e;
+		}
+		if (sync == Sync.PERIODIC) {
+			long nanos = set.syncIntervalNanos;
+			set.background.scheduleWithFixedDelay(() -> {
+				try {
+					set.sync();
+				} catch (IOException | IllegalStateException e) {
+					// A failed sync is retried on the next tick, and close() forces the log anyway
+				}
+			}, nanos, nanos, TimeUnit.NANOSECONDS);
+		}
+		return set;
+	}
+
+	private Path snapshotFile(long generation) {
+		return this.directory.resolve("snapshot-" + generation);
+	}
+
+	private Path logFile(long generation) {
+		return this.directory.resolve("log-" + generation);
+	}
+
+	/**
+	 * Loads the newest snapshot, replays the logs after it, cuts a torn
+	 * record off the last one and opens it for appending
+	 */
+	private void recover() throws IOException {
+		TreeSet<Long> snapshots = new TreeSet<Long>();
+		TreeSet<Long> logs = new TreeSet<Long>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+			for (Path file : files) {
+				Matcher name = FILE_NAME.matcher(file.getFileName().toString());
+				if (!name.matches()) continue;
+				// A snapshot that was still being written when the process stopped
+				if (name.group(3) != null) Files.delete(file);
+				else (name.group(1).equals("log") ? logs : snapshots).add(Long.parseLong(name.group(2)));
+			}
+		}
+		long start = snapshots.isEmpty() ? 0 : snapshots.last();
+		if (!snapshots.isEmpty()) {
+			try (StringSetSnapshot snapshot = StringSetSnapshot.open(this.snapshotFile(start), true)) {
+				for (String item : snapshot) this.items.add(item);
+			}
+		}
+		Long last = logs.isEmpty() ? null : logs.last();
+		long end = HEADER_SIZE;
+		for (long generation : logs.tailSet(start)) end = this.replay(this.logFile(generation), generation == last);
+		this.generation = last == null || last < start ? start : last;
+		Path path = this.logFile(this.generation);
+		boolean created = !Files.exists(path);
+		this.log = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (created || this.log.size() < HEADER_SIZE) {
+			this.log.truncate(0);
+			ByteBuffer header = DurableStringSet.newBuffer(HEADER_SIZE);
+			header.putLong(MAGIC).putInt(VERSION).putInt(0).flip();
+			while (header.hasRemaining()) this.log.write(header, header.position());
+			end = HEADER_SIZE;
+		} else if (this.log.size() > end) this.log.truncate(end);
+		this.log.force(true);
+		this.log.position(end);
+		this.logEnd = end;
+		this.syncDirectory();
+		for (long generation : snapshots.headSet(start)) Files.deleteIfExists(this.snapshotFile(generation));
+		for (long generation : logs.headSet(start)) Files.deleteIfExists(this.logFile(generation));
+	}
+
+	/**
+	 * Applies the records of a log to the items
+	 * @param last Whether this is the log still being written, whose end may be torn
+	 * @return The length of the log's whole records
+	 * @throws IOException If the log cannot be read, or a log that is not the last is damaged
+	 */
+	private long replay(Path path, boolean last) throws IOException {
+		try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+			byte[] header = new byte[HEADER_SIZE];
+			if (in.readNBytes(header, 0, HEADER_SIZE) < HEADER_SIZE) {
+				if (last) return HEADER_SIZE;
+				throw new IOException("Truncated log: " + path);
+			}
+			ByteBuffer fields = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+			if (fields.getLong(0) != MAGIC) throw new IOException("Not a log: " + path);
+			if (fields.getInt(8) != VERSION) throw new IOException("Unsupported log version " + fields.getInt(8) + ": " + path);
+			long fileSize = Files.size(path);
+			long remaining = fileSize - HEADER_SIZE;
+			long position = HEADER_SIZE;
+			CRC32C checksum = new CRC32C();
+			byte[] data = new byte[64];
+			char[] chars = new char[64];
+			while (true) {
+				int op = in.read();
+				if (op < 0) return position;
+				// Where the record ends, once its length is known
+				long recordEnd = -1;
+				try {
+					checksum.reset();
+					checksum.update(op);
+					int length = 0;
+					int bytes = 1;
+					if (op != CLEAR) {
+						for (int shift = 0; ; shift += 7) {
+							if (shift > 28) throw new IOException("Corrupt record length");
+							int b = DurableStringSet.readByte(in);
+							checksum.update(b);
+							bytes++;
+							length |= (b & 0x7F) << shift;
+							if (b < 0x80) break;
+						}
+						if (length < 0 || length > remaining - bytes - 4) throw new EOFException();
+						recordEnd = position + bytes + length + 4;
+						if (data.length < length) {
+							data = new byte[Math.max(length, data.length * 2)];
+							chars = new char[data.length];
+						}
+						if (in.readNBytes(data, 0, length) < length) throw new EOFException();
+						checksum.update(data, 0, length);
+					} else recordEnd = position + bytes + 4;
+					int stored = 0;
+					for (int i = 0; i < 4; i++) stored |= DurableStringSet.readByte(in) << (8 * i);
+					if (stored != (int) checksum.getValue()) throw new IOException("Record checksum mismatch");
+					if (op == ADD) this.items.add(StringHasher.fromUtf8(data, 0, length, chars));
+					else if (op == REMOVE) this.items.remove(StringHasher.fromUtf8(data, 0, length, chars));
+					else if (op == CLEAR) this.items.clear();
+					else throw new IOException("Unknown operation " + op);
+					int size = bytes + length + 4;
+					position += size;
+					remaining -= size;
+				} catch (IOException e) {
+					// Only the log being written when the process stopped can end in a partial
+					// record, and only a record that runs to the end of the file can be that one
+					if (last && (e instanceof EOFException || recordEnd >= fileSize)) return position;
+					throw new IOException("Corrupt log " + path + " at " + position, e);
+				}
+			}
+		}
+	}
+
+	private static int readByte(InputStream in) throws IOException {
+		int b = in.read();
+		if (b < 0) throw new EOFException();
+		return b;
+	}
+
+	private static ByteBuffer newBuffer(int capacity) {
+		return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Makes a new or renamed file in the directory durable. Not every
+	 * platform can open a directory, and those that cannot do not need to.
+	 */
+	private void syncDirectory() {
+		try (FileChannel channel = FileChannel.open(this.directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// Nothing to do
+		}
+	}
+
+	private void ensureOpen() {
+		if (this.log == null) throw new IllegalStateException("The set has been closed");
+	}
+
+	/**
+	 * Adds a record to the buffer waiting to be written
+	 * @return The record's sequence number
+	 */
+	private long append(byte op, String item) {
+		byte[] utf8 = item == null ? null : StringHasher.toUtf8(item);
+		int size = 1 + (utf8 == null ? 0 : 5 + utf8.length) + 4;
+		if (this.pending.remaining() < size) {
+			ByteBuffer larger = DurableStringSet.newBuffer(Math.max(this.pending.capacity() * 2, this.pending.position() + size));
+			this.pending.flip();
+			this.pending = larger.put(this.pending);
+		}
+		int start = this.pending.position();
+		this.pending.put(op);
+		if (utf8 != null) {
+			int length = utf8.length;
+			for (; length >= 0x80; length >>>= 7) this.pending.put((byte) (length | 0x80));
+			this.pending.put((byte) length);
+			this.pending.put(utf8);
+		}
+		this.checksum.reset();
+		this.checksum.update(this.pending.array(), start, this.pending.position() - start);
+		this.pending.putInt((int) this.checksum.getValue());
+		this.logRecords++;
+		if (!this.compacting && this.logRecords >= this.compactionThreshold && this.logRecords > this.items.size()) {
+			this.compacting = true;
+			try {
+				this.background.execute(this::compactQuietly);
+			} catch (RejectedExecutionException e) {
+				// The set is being closed
+				this.compacting = false;
+			}
+		}
+		return ++this.appended;
+	}
+
+	/**
+	 * Waits until the record with the given sequence number is written, and
+	 * forced if the policy says so, writing every record waiting with it
+	 */
+	private void commit(long sequence) throws IOException {
+		synchronized (this.commitLock) {
+			if (this.written >= sequence && (this.sync != Sync.ALWAYS || this.synced >= sequence)) return;
+			this.flush(this.sync == Sync.ALWAYS || this.sync == Sync.PERIODIC && System.nanoTime() - this.lastSync >= this.syncIntervalNanos);
+		}
+	}
+
+	/**
+	 * Writes every waiting record to the log. Called with the commit lock held.
+	 * If the write fails, the records go back in front of those waiting, and
+	 * whatever part of them reached the log is cut off before the next write.
+	 * @param force Whether to force the log to the disk as well
+	 */
+	private void flush(boolean force) throws IOException {
+		if (this.damaged) this.repair();
+		ByteBuffer batch;
+		long last;
+		FileChannel log;
+		synchronized (this) {
+			this.ensureOpen();
+			batch = this.pending;
+			this.pending = this.spare;
+			last = this.appended;
+			log = this.log;
+		}
+		batch.flip();
+		try {
+			while (batch.hasRemaining()) log.write(batch);
+		} catch (IOException e) {
+			this.damaged = true;
+			synchronized (this) {
+				ByteBuffer waiting = this.pending;
+				waiting.flip();
+				batch.rewind();
+				this.pending = DurableStringSet.newBuffer(Math.max(batch.capacity(), batch.limit() + waiting.limit() + (1 << 12)));
+				this.pending.put(batch).put(waiting);
+				waiting.clear();
+				this.spare = waiting;
+			}
+			throw e;
+		}
+		this.logEnd += batch.limit();
+		batch.clear();
+		this.spare = batch;
+		this.written = last;
+		if (force && this.synced < last) {
+			log.force(false);
+			this.synced = last;
+			this.lastSync = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Cuts the log back to its last whole record after a failed write,
+	 * reopening it if the failure closed it, as an interrupt does. Called
+	 * with the commit lock held.
+	 */
+	private void repair() throws IOException {
+		FileChannel log;
+		long generation;
+		synchronized (this) {
+			this.ensureOpen();
+			log = this.log;
+			generation = this.generation;
+		}
+		if (!log.isOpen()) {
+			log = FileChannel.open(this.logFile(generation), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			synchronized (this) {
+				this.log = log;
+			}
+		}
+		log.truncate(this.logEnd);
+		log.position(this.logEnd);
+		this.damaged = false;
+	}
+
+	/**
+	 * Writes and forces every change made so far, whatever the sync policy.
+	 *
+	 * @throws IOException If the log cannot be written
+	 */
+	public void sync() throws IOException {
+		synchronized (this.commitLock) {
+			this.flush(true);
+		}
+	}
+
+	/**
+	 * Adds the given item if it is not there already, logging the change.
+	 *
+	 * @param item
+	 * @return true if the set changed.
+	 * @throws IOException If the log cannot be written; the item stays in the set, and its record is written with the next change or sync()
+	 */
+	public boolean add(String item) throws IOException {
+		if (item == null) throw new NullPointerException();
+		long sequence;
+		synchronized (this) {
+			this.ensureOpen();
+			if (!this.items.add(item)) return false;
+			sequence = this.append(ADD, item);
+		}
+		this.commit(sequence);
+		return true;
+	}
+
+	/**
+	 * Removes the given item from the set if it is there, logging the change.
+	 *
+	 * @param item
+	 * @return True if the set changed.
+	 * @throws IOException If the log cannot be written; the item stays removed, and its record is written with the next change or sync()
+	 */
+	public boolean remove(String item) throws IOException {
+		long sequence;
+		synchronized (this) {
+			this.ensureOpen();
+			if (!this.items.remove(item)) return false;
+			sequence = this.append(REMOVE, item);
+		}
+		this.commit(sequence);
+		return true;
+	}
+
+	/**
+	 * Removes all the items, logging the change.
+	 *
+	 * @throws IOException If the log cannot be written
+	 */
+	public void clear() throws IOException {
+		long sequence;
+		synchronized (this) {
+			this.ensureOpen();
+			if (this.items.isEmpty()) return;
+			this.items.clear();
+			sequence = this.append(CLEAR, null);
+		}
+		this.commit(sequence);
+	}
+
+	/**
+	 * Checks if the given item is in the set.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the set.
+	 */
+	public synchronized boolean contains(CharSequence item) {
+		return this.items.contains(item);
+	}
+
+	/**
+	 * @return The number of items in the set.
+	 */
+	public synchronized int size() {
+		return this.items.size();
+	}
+
+	/**
+	 * @return True iff the set contains no items.
+	 */
+	public synchronized boolean isEmpty() {
+		return this.items.isEmpty();
+	}
+
+	/**
+	 * @return An immutable view of the items as they are now
+	 */
+	public synchronized VersionedStringSet.Snapshot snapshot() {
+		return this.items.snapshot();
+	}
+
+	/**
+	 * Iterates over a snapshot of the items, so the set can change meanwhile.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		return this.snapshot().iterator();
+	}
+
+	/**
+	 * Sets how many records the log must hold before it is folded into a
+	 * snapshot; it must also hold more records than the set holds items.
+	 *
+	 * @param records
+	 * @throws IllegalArgumentException If the threshold is not positive
+	 */
+	public synchronized void setCompactionThreshold(int records) throws IllegalArgumentException {
+		if (records < 1) throw new IllegalArgumentException("Illegal compaction threshold: " + records);
+		this.compactionThreshold = records;
+	}
+
+	/**
+	 * @return The number of records in the logs since the last snapshot
+	 */
+	public synchronized long logRecords() {
+		return this.logRecords;
+	}
+
+	/**
+	 * Folds the log into a snapshot now and deletes the files it replaces,
+	 * waiting for a compaction already running in the background first.
+	 *
+	 * @throws IOException If the snapshot cannot be written; the log is kept
+	 */
+	public void compact() throws IOException {
+		synchronized (this) {
+			this.ensureOpen();
+			while (this.compacting) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted waiting for compaction", e);
+				}
+			}
+			this.ensureOpen();
+			this.compacting = true;
+		}
+		this.compactNow();
+	}
+
+	private void compactQuietly() {
+		try {
+			this.compactNow();
+		} catch (IOException | IllegalStateException e) {
+			synchronized (this) {
+				if (e instanceof IOException) this.failure = (IOException) e;
+			}
+		}
+	}
+
+	/**
+	 * Starts a new log, writes the items as they were then to a snapshot of
+	 * the same generation, and deletes everything older. Called with
+	 * compacting set.
+	 */
+	private void compactNow() throws IOException {
+		try {
+			VersionedStringSet.Snapshot snapshot;
+			long generation;
+			synchronized (this.commitLock) {
+				synchronized (this) {
+					// Holding the set's lock while flushing keeps every record before the snapshot in the old log
+					this.flush(true);
+					generation = this.generation + 1;
+					FileChannel next = FileChannel.open(this.logFile(generation), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+					ByteBuffer header = DurableStringSet.newBuffer(HEADER_SIZE);
+					header.putLong(MAGIC).putInt(VERSION).putInt(0).flip();
+					while (header.hasRemaining()) next.write(header);
+					next.force(true);
+					this.syncDirectory();
+					this.log.close();
+					this.log = next;
+					this.logEnd = HEADER_SIZE;
+					this.generation = generation;
+					this.logRecords = 0;
+					snapshot = this.items.snapshot();
+				}
+			}
+			StringSetSnapshot.write(snapshot, snapshot.size(), this.snapshotFile(generation));
+			this.syncDirectory();
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+				for (Path file : files) {
+					Matcher name = FILE_NAME.matcher(file.getFileName().toString());
+					if (name.matches() && name.group(3) == null && Long.parseLong(name.group(2)) < generation) Files.delete(file);
+				}
+			}
+		} finally {
+			synchronized (this) {
+				this.compacting = false;
+				this.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Writes and forces the log, waits for any compaction to finish and
+	 * closes the files. Closing a closed set does nothing.
+	 *
+	 * @throws IOException If the log cannot be written, or a background compaction failed
+	 */
+	@Override
+	public void close() throws IOException {
+		this.background.shutdown();
+		try {
+			this.background.awaitTermination(1, TimeUnit.DAYS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		IOException failure;
+		synchronized (this.commitLock) {
+			synchronized (this) {
+				if (this.log == null) return;
+			}
+			try {
+				this.flush(true);
+			} finally {
+				synchronized (this) {
+					this.log.close();
+					this.log = null;
+					failure = this.failure;
+				}
+			}
+		}
+		if (failure != null) throw failure;
+	}
+
+	@Override
+	public String toString() {
+		return this.snapshot().toString();
+	}
+}
@@ -0,0 +1,346 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DurableStringSetTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * The i-th operation of the workload the crash tests replay: mostly adds,
+	 * with a remove of an earlier item every fifth and a clear every thousandth
+	 */
+	private static void apply(DurableStringSet set, int i) throws IOException {
+		if (i % 1000 == 999) set.clear();
+		else if (i % 5 == 4) set.remove("item" + (i - 3));
+		else set.add("item" + i + (i % 7 == 0 ? " caf\u00e9 \ud83d\ude00" : ""));
+	}
+
+	/**
+	 * @return The items after the first count operations of the workload
+	 */
+	private static Set<String> expected(int count) {
+		Set<String> items = new HashSet<String>();
+		for (int i = 0; i < count; i++) {
+			if (i % 1000 == 999) items.clear();
+			else if (i % 5 == 4) items.remove("item" + (i - 3));
+			else items.add("item" + i + (i % 7 == 0 ? " caf\u00e9 \ud83d\ude00" : ""));
+		}
+		return items;
+	}
+
+	private static Set<String> contents(DurableStringSet set) {
+		Set<String> items = new HashSet<String>();
+		for (String item : set) items.add(item);
+		assertEquals(set.size(), items.size());
+		return items;
+	}
+
+	/**
+	 * Runs the workload in a process of its own until it is killed, printing
+	 * the number of operations that have returned after each one.
+	 *
+	 * @param args The directory and the sync policy
+	 */
+	public static void main(String[] args) throws IOException {
+		DurableStringSet set = DurableStringSet.open(Paths.get(args[0]), DurableStringSet.Sync.valueOf(args[1]));
+		set.setCompactionThreshold(300);
+		for (int i = 0; ; i++) {
+			DurableStringSetTest.apply(set, i);
+			System.out.println(i + 1);
+		}
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		Path directory = folder.getRoot().toPath().resolve("set");
+		for (DurableStringSet.Sync sync : DurableStringSet.Sync.values()) {
+			try (DurableStringSet set = DurableStringSet.open(directory, sync)) {
+				set.clear();
+				for (int i = 0; i < 2500; i++) DurableStringSetTest.apply(set, i);
+				assertFalse(set.add("item2003"));
+				assertTrue(set.contains("item2003"));
+				assertFalse(set.contains("item2001"));
+				assertEquals(DurableStringSetTest.expected(2500), DurableStringSetTest.contents(set));
+			}
+			try (DurableStringSet set = DurableStringSet.open(directory, sync)) {
+				assertEquals(DurableStringSetTest.expected(2500), DurableStringSetTest.contents(set));
+				try {
+					set.add(null);
+					fail();
+				} catch (NullPointerException e) {
+					// expected
+				}
+			}
+		}
+		DurableStringSet closed = DurableStringSet.open(directory);
+		closed.close();
+		closed.close();
+		try {
+			closed.add("item");
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCompaction() throws IOException, InterruptedException {
+		Path directory = folder.getRoot().toPath().resolve("set");
+		try (DurableStringSet set = DurableStringSet.open(directory, DurableStringSet.Sync.NEVER)) {
+			set.setCompactionThreshold(100);
+			for (int i = 0; i < 20000; i++) DurableStringSetTest.apply(set, i);
+			set.compact();
+			assertEquals(0, set.logRecords());
+			try (Stream<Path> files = Files.list(directory)) {
+				assertEquals(2, files.count());
+			}
+			for (int i = 20000; i < 20500; i++) DurableStringSetTest.apply(set, i);
+		}
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			assertEquals(DurableStringSetTest.expected(20500), DurableStringSetTest.contents(set));
+		}
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			set.setCompactionThreshold(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUnpairedSurrogates() throws IOException {
+		Path directory = folder.getRoot().toPath().resolve("set");
+		String[] items = { "?", "\ud800", "a\udc00b", "\udc00\ud800", "\ud83d\ude00", "\ud83d" };
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			// String.getBytes() would log the remove as "?" and take out the wrong item on replay
+			assertTrue(set.add("?"));
+			assertTrue(set.add("\ud800"));
+			assertTrue(set.remove("\ud800"));
+		}
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			assertEquals(new HashSet<String>(Arrays.asList("?")), DurableStringSetTest.contents(set));
+			for (String item : items) set.add(item);
+		}
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			assertEquals(new HashSet<String>(Arrays.asList(items)), DurableStringSetTest.contents(set));
+			// The snapshot has to keep them apart as well
+			set.compact();
+			assertEquals(0, set.logRecords());
+		}
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			assertEquals(new HashSet<String>(Arrays.asList(items)), DurableStringSetTest.contents(set));
+			for (String item : items) assertTrue(item, set.contains(item));
+		}
+	}
+
+	@Test
+	public void testFailedWrite() throws IOException {
+		Path directory = folder.getRoot().toPath().resolve("set");
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			set.add("before");
+			// An interrupt closes the log's channel in the middle of the write
+			Thread.currentThread().interrupt();
+			try {
+				set.add("interrupted");
+				fail();
+			} catch (IOException e) {
+				// expected
+			} finally {
+				Thread.interrupted();
+			}
+			assertTrue(set.contains("interrupted"));
+			// The next write reopens the log and writes the failed record along with its own
+			set.add("after");
+		}
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			assertEquals(new HashSet<String>(Arrays.asList("before", "interrupted", "after")), DurableStringSetTest.contents(set));
+			set.add("reopened");
+		}
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			assertEquals(4, set.size());
+		}
+	}
+
+	@Test
+	public void testTornRecords() throws IOException {
+		Path directory = folder.getRoot().toPath().resolve("set");
+		try (DurableStringSet set = DurableStringSet.open(directory, DurableStringSet.Sync.NEVER)) {
+			for (int i = 0; i < 50; i++) DurableStringSetTest.apply(set, i);
+		}
+		Path log = directory.resolve("log-0");
+		byte[] whole = Files.readAllBytes(log);
+		// Every possible cut through the last few records leaves a prefix of the workload
+		Path copy = folder.getRoot().toPath().resolve("copy");
+		Files.createDirectories(copy);
+		for (int length = whole.length - 120; length <= whole.length; length++) {
+			Files.write(copy.resolve("log-0"), Arrays.copyOf(whole, length));
+			try (DurableStringSet set = DurableStringSet.open(copy)) {
+				Set<String> items = DurableStringSetTest.contents(set);
+				boolean prefix = false;
+				for (int count = 35; count <= 50 && !prefix; count++) prefix = items.equals(DurableStringSetTest.expected(count));
+				assertTrue("cut at " + length, prefix);
+				set.add("after");
+			}
+			// The torn record was cut off, so what is written after it survives
+			try (DurableStringSet set = DurableStringSet.open(copy)) {
+				assertTrue(set.contains("after"));
+			}
+		}
+		// A flipped bit in the last record drops just that record
+		try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+			file.seek(whole.length - 6);
+			int b = file.read();
+			file.seek(whole.length - 6);
+			file.write(b ^ 1);
+		}
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			assertEquals(DurableStringSetTest.expected(49), DurableStringSetTest.contents(set));
+		}
+		// The same damage in a log that is not the last is an error
+		Files.copy(log, directory.resolve("log-1"));
+		try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+			file.seek(20);
+			int b = file.read();
+			file.seek(20);
+			file.write(b ^ 1);
+		}
+		try {
+			DurableStringSet.open(directory).close();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUnrelatedFiles() throws IOException {
+		Path directory = folder.getRoot().toPath().resolve("set");
+		Files.createDirectories(directory);
+		String[] unrelated = { "log-notes.txt", "snapshot-", "snapshot-old", "notes.tmp", "log-99999999999999999999", "README" };
+		for (String name : unrelated) Files.write(directory.resolve(name), new byte[] { 1, 2, 3 });
+		try (DurableStringSet set = DurableStringSet.open(directory, DurableStringSet.Sync.NEVER)) {
+			for (int i = 0; i < 1000; i++) DurableStringSetTest.apply(set, i);
+			set.compact();
+		}
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			assertEquals(DurableStringSetTest.expected(1000), DurableStringSetTest.contents(set));
+		}
+		for (String name : unrelated) assertTrue(name, Files.exists(directory.resolve(name)));
+	}
+
+	@Test
+	public void testDamagedMiddleRecord() throws IOException {
+		Path directory = folder.getRoot().toPath().resolve("set");
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			for (int i = 0; i < 100; i++) set.add("item" + i);
+		}
+		Path log = directory.resolve("log-0");
+		long size = Files.size(log);
+		// A flipped bit in the first record, with 99 whole records after it, is not a torn write
+		try (RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+			file.seek(20);
+			int b = file.read();
+			file.seek(20);
+			file.write(b ^ 1);
+		}
+		try {
+			DurableStringSet.open(directory).close();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(size, Files.size(log));
+	}
+
+	@Test
+	public void testGroupCommit() throws IOException, InterruptedException {
+		Path directory = folder.getRoot().toPath().resolve("set");
+		try (DurableStringSet set = DurableStringSet.open(directory, DurableStringSet.Sync.ALWAYS)) {
+			Thread[] writers = new Thread[4];
+			List<IOException> failures = new ArrayList<IOException>();
+			for (int t = 0; t < writers.length; t++) {
+				final int id = t;
+				writers[t] = new Thread() {
+					@Override
+					public void run() {
+						try {
+							for (int i = 0; i < 250; i++) set.add("writer" + id + "-" + i);
+						} catch (IOException e) {
+							synchronized (failures) {
+								failures.add(e);
+							}
+						}
+					}
+				};
+				writers[t].start();
+			}
+			for (Thread writer : writers) writer.join();
+			assertTrue(failures.isEmpty());
+		}
+		try (DurableStringSet set = DurableStringSet.open(directory)) {
+			assertEquals(1000, set.size());
+			assertTrue(set.contains("writer3-249"));
+		}
+	}
+
+	/**
+	 * @return The last whole number the workload process has printed
+	 */
+	private static int returned(Path progress) throws IOException {
+		String out = new String(Files.readAllBytes(progress), StandardCharsets.US_ASCII);
+		int end = out.lastIndexOf('\n');
+		if (end < 0) return 0;
+		return Integer.parseInt(out.substring(out.lastIndexOf('\n', end - 1) + 1, end));
+	}
+
+	/**
+	 * Kills a process running the workload part way through, at a random
+	 * moment that may fall inside a write or a compaction, and checks that
+	 * reopening the set finds every operation that had returned and nothing
+	 * after the one in progress
+	 */
+	@Test
+	public void testKilledMidWrite() throws IOException, InterruptedException {
+		Random random = new Random(25);
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		for (DurableStringSet.Sync sync : DurableStringSet.Sync.values()) {
+			for (int run = 0; run < 2; run++) {
+				Path directory = folder.newFolder().toPath();
+				Path progress = folder.newFile().toPath();
+				Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "DurableStringSetTest", directory.toString(), sync.name())
+						.redirectOutput(progress.toFile()).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+				int target = 2000 + random.nextInt(3000);
+				while (child.isAlive() && DurableStringSetTest.returned(progress) < target) Thread.sleep(1);
+				child.destroyForcibly();
+				child.waitFor();
+				int returned = DurableStringSetTest.returned(progress);
+				assertTrue(sync + " exited early", returned >= target);
+				try (DurableStringSet set = DurableStringSet.open(directory)) {
+					Set<String> items = DurableStringSetTest.contents(set);
+					assertTrue(sync + " after " + returned, items.equals(DurableStringSetTest.expected(returned)) || items.equals(DurableStringSetTest.expected(returned + 1)));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * A count-min sketch of how often hash codes have been seen, for the
+ * admission decisions of W-TinyLFU. Each hash has a 4-bit counter in each of
+ * four rows, packed sixteen to a long, and its estimate is the smallest of
+ * them. Once ten times as many hashes have been counted as the cache holds,
+ * every counter is halved, so the sketch follows changes in what is popular.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+class FrequencySketch {
+	private static final long[] SEEDS = { 0x97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L };
+
+	private final long[] table;
+	private final int mask;
+	private final int sampleSize;
+	private int additions;
+
+	/**
+	 * @param capacity The number of items the cache holds
+	 */
+	FrequencySketch(int capacity) {
+		int width = StringHashSet.powerOfTwoAtLeast(Math.max(8, capacity));
+		this.table = new long[width];
+		this.mask = width - 1;
+		this.sampleSize = 10 * Math.max(1, capacity);
+	}
+
+	/**
+	 * @return The word a row keeps the hash's counter in, above the counter's bit offset in it
+	 */
+	private long locate(int hash, int row) {
+		long h = (hash + SEEDS[row]) * SEEDS[row];
+		h ^= h >>> 32;
+		return (h & this.mask) << 6 | ((h >>> 28) & 15) << 2;
+	}
+
+	/**
+	 * @param hash
+	 * @return The estimated number of times the hash was counted, up to 15
+	 */
+	int frequency(int hash) {
+		int frequency = 15;
+		for (int row = 0; row < SEEDS.length; row++) {
+			long at = this.locate(hash, row);
+			frequency = Math.min(frequency, (int) (this.table[(int) (at >>> 6)] >>> (at & 63)) & 15);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Counts the hash once more, halving every counter when a full sample has been counted
+	 * @param hash
+	 */
+	void increment(int hash) {
+		boolean added = false;
+		for (int row = 0; row < SEEDS.length; row++) {
+			long at = this.locate(hash, row);
+			int word = (int) (at >>> 6);
+			int shift = (int) (at & 63);
+			if (((this.table[word] >>> shift) & 15) == 15) continue;
+			this.table[word] += 1L << shift;
+			added = true;
+		}
+		if (added && ++this.additions == this.sampleSize) {
+			for (int i = 0; i < this.table.length; i++) this.table[i] = (this.table[i] >>> 1) & 0x7777777777777777L;
+			this.additions /= 2;
+		}
+	}
+}
@@ -0,0 +1,409 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An immutable set of Strings, made by StringHashSet.freeze(), that finds
+ * every item with a minimal perfect hash. Each item gets a slot of its own,
+ * with only about 1.5% of the slots left empty, so a lookup reads exactly one
+ * slot: there are no chains, no probing and no spare capacity.
+ *
+ * The hash is built CHD style (compress, hash, displace). A seeded 64-bit
+ * hash splits the items into buckets of about four. Then, biggest bucket
+ * first, each bucket is given the smallest displacement that sends all of its
+ * items to slots nobody has taken yet. A lookup hashes the item once, reads
+ * its bucket's displacement and mixes it into the hash to find the slot. The
+ * slot keeps the low 32 bits of the item's hash, so almost every miss is
+ * turned away without reading any characters, and a record of the item in
+ * the same format as a CompactStringSet, so a hit is confirmed without
+ * creating a String.
+ *
+ * Nothing in a frozen set changes after it is built, so any number of threads
+ * can share it without locking. writeTo() and readFrom() move one between
+ * processes, so a set can be built offline and shipped; the stream is laid
+ * out as follows, with every number big-endian:
+ *
+ * <pre>
+ * long  magic "SHFROZEN"
+ * int   format version (1)
+ * long  hash seed
+ * int   number of items, slots, buckets and record bytes
+ * int   a displacement per bucket
+ * int   a hash fingerprint per slot
+ * int   the offset of each slot's record, and one past the last (a slot with an empty record is empty)
+ * the records
+ * long  CRC32 of everything before it
+ * </pre>
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public final class FrozenStringSet implements Iterable<String> {
+
+	/**
+	 * The format version this class writes and reads
+	 */
+	public static final int VERSION = 1;
+
+	private static final long MAGIC = 0x534846524F5A454EL;
+
+	// The average number of items in a bucket
+	private static final int BUCKET_SIZE = 4;
+
+	// One slot in this many is left empty, so the last buckets placed still find room quickly
+	private static final int SLACK = 64;
+
+	// A bucket that needs more tries than this means the seed was unlucky
+	private static final int MAX_DISPLACEMENT = 1 << 20;
+
+	private final long seed;
+	private final StringHasher.Seeded hasher;
+	private final int size;
+	private final int[] displacements;
+	// Each slot's fingerprint above the offset of its record, and one more for the end of the last record
+	private final long[] entries;
+	private final byte[] records;
+
+	private FrozenStringSet(long seed, int size, int[] displacements, int[] fingerprints, int[] offsets, byte[] records) {
+		this.seed = seed;
+		this.hasher = new StringHasher.Seeded(seed);
+		this.size = size;
+		this.displacements = displacements;
+		this.entries = new long[offsets.length];
+		for (int slot = 0; slot < offsets.length; slot++) this.entries[slot] = (slot < fingerprints.length ? (long) fingerprints[slot] << 32 : 0) | (offsets[slot] & 0xFFFFFFFFL);
+		this.records = records;
+	}
+
+	/**
+	 * Builds a frozen set of distinct items. Seeds are tried in order from 0,
+	 * so the same items always give the same set.
+	 * @param items The items, with no duplicates
+	 * @param size The number of items
+	 * @return The frozen set
+	 */
+	static FrozenStringSet of(Iterable<String> items, int size) {
+		String[] keys = new String[size];
+		int count = 0;
+		for (String item : items) {
+			if (count == size) throw new IllegalArgumentException("More than " + size + " items");
+			keys[count++] = item;
+		}
+		if (count != size) throw new IllegalArgumentException("Fewer than " + size + " items");
+		for (long seed = 0; ; seed++) {
+			FrozenStringSet set = FrozenStringSet.build(keys, seed);
+			if (set != null) return set;
+		}
+	}
+
+	/**
+	 * @return The bucket a hash belongs to
+	 */
+	private static int bucket(long hash, int buckets) {
+		return (int) (((hash >>> 32) * buckets) >>> 32);
+	}
+
+	/**
+	 * @return The slot a hash goes to under the given displacement
+	 */
+	private static int slot(long hash, int displacement, int slots) {
+		long x = hash + displacement * 0x9E3779B97F4A7C15L;
+		x ^= x >>> 33;
+		x *= 0xFF51AFD7ED558CCDL;
+		x ^= x >>> 33;
+		x *= 0xC4CEB9FE1A85EC53L;
+		x ^= x >>> 33;
+		return (int) (((x >>> 32) * slots) >>> 32);
+	}
+
+	/**
+	 * Tries to build the perfect hash with one seed
+	 * @return The set, or null if some bucket could not be placed
+	 */
+	private static FrozenStringSet build(String[] keys, long seed) {
+		StringHasher.Seeded hasher = new StringHasher.Seeded(seed);
+		int n = keys.length;
+		int slots = n + n / SLACK + 1;
+		int buckets = n / BUCKET_SIZE + 1;
+		long[] hashes = new long[n];
+		// Sort the items by bucket, then the buckets by size, both by counting
+		int[] starts = new int[buckets + 1];
+		for (int i = 0; i < n; i++) {
+			hashes[i] = hasher.hash64(keys[i]);
+			starts[FrozenStringSet.bucket(hashes[i], buckets) + 1]++;
+		}
+		int largest = 0;
+		for (int b = 0; b < buckets; b++) {
+			largest = Math.max(largest, starts[b + 1]);
+			starts[b + 1] += starts[b];
+		}
+		int[] members = new int[n];
+		int[] filled = starts.clone();
+		for (int i = 0; i < n; i++) members[filled[FrozenStringSet.bucket(hashes[i], buckets)]++] = i;
+		int[] bySize = new int[largest + 2];
+		for (int b = 0; b < buckets; b++) bySize[largest - (starts[b + 1] - starts[b]) + 1]++;
+		for (int s = 0; s <= largest; s++) bySize[s + 1] += bySize[s];
+		int[] order = new int[buckets];
+		for (int b = 0; b < buckets; b++) order[bySize[largest - (starts[b + 1] - starts[b])]++] = b;
+
+		int[] displacements = new int[buckets];
+		int[] slotOf = new int[n];
+		long[] taken = new long[(slots + 63) >>> 6];
+		for (int b : order) {
+			int start = starts[b], end = starts[b + 1];
+			if (start == end) break;
+			int displacement = 0;
+			search: for (; ; displacement++) {
+				if (displacement == MAX_DISPLACEMENT) return null;
+				for (int k = start; k < end; k++) {
+					int slot = FrozenStringSet.slot(hashes[members[k]], displacement, slots);
+					if ((taken[slot >>> 6] & 1L << slot) != 0) continue search;
+					for (int j = start; j < k; j++) if (slotOf[members[j]] == slot) continue search;
+					slotOf[members[k]] = slot;
+				}
+				break;
+			}
+			displacements[b] = displacement;
+			for (int k = start; k < end; k++) taken[slotOf[members[k]] >>> 6] |= 1L << slotOf[members[k]];
+		}
+
+		// Lay the records out in slot order
+		int[] keyAt = new int[slots];
+		int[] headers = new int[slots];
+		Arrays.fill(keyAt, -1);
+		for (int i = 0; i < n; i++) keyAt[slotOf[i]] = i;
+		int[] fingerprints = new int[slots];
+		int[] offsets = new int[slots + 1];
+		long length = 0;
+		for (int slot = 0; slot < slots; slot++) {
+			offsets[slot] = (int) length;
+			if (keyAt[slot] < 0) continue;
+			fingerprints[slot] = (int) hashes[keyAt[slot]];
+			headers[slot] = CompactStringSet.header(keys[keyAt[slot]]);
+			length += CompactStringSet.headerLength(headers[slot]) + (headers[slot] >>> 1);
+			if (length > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too many characters for a frozen set");
+		}
+		offsets[slots] = (int) length;
+		byte[] records = new byte[(int) length];
+		for (int slot = 0; slot < slots; slot++) if (keyAt[slot] >= 0) CompactStringSet.write(records, offsets[slot], headers[slot], keys[keyAt[slot]]);
+		return new FrozenStringSet(seed, n, displacements, fingerprints, offsets, records);
+	}
+
+	/**
+	 * Checks if the given characters are in the set, reading a single slot.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the set.
+	 */
+	public boolean contains(CharSequence item) {
+		long hash = this.hasher.hash64(item);
+		int slot = FrozenStringSet.slot(hash, this.displacements[FrozenStringSet.bucket(hash, this.displacements.length)], this.entries.length - 1);
+		long entry = this.entries[slot];
+		int record = (int) entry;
+		return (int) (entry >>> 32) == (int) hash && record != (int) this.entries[slot + 1] && CompactStringSet.equalsChars(this.records, record, item);
+	}
+
+	/**
+	 * @return The number of items in the set.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return True iff the set contains no items.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @return The number of slots, of which size() hold an item
+	 */
+	public int slots() {
+		return this.entries.length - 1;
+	}
+
+	/**
+	 * @return The number of bytes in the set's arrays
+	 */
+	public long memoryBytes() {
+		return 4L * this.displacements.length + 8L * this.entries.length + this.records.length;
+	}
+
+	/**
+	 * Copies the items into a new StringHashSet that can be changed.
+	 *
+	 * @param storage The layout of the new set
+	 * @return The new set
+	 */
+	public StringHashSet toStringHashSet(StringHashSet.Storage storage) {
+		double perBucket = storage == StringHashSet.Storage.CHAINED ? storage.defaultLoadFactor() : 1;
+		StringHashSet set = new StringHashSet((int) Math.min(1 << 30, this.size / perBucket + 1), storage);
+		for (String item : this) set.add(item);
+		return set;
+	}
+
+	/**
+	 * Writes the set to a stream in the format described above, so that
+	 * readFrom() can load it in another process. The stream is not closed.
+	 *
+	 * @param out Where to write the set
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(out, 1 << 16), new CRC32());
+		DataOutputStream data = new DataOutputStream(checked);
+		data.writeLong(MAGIC);
+		data.writeInt(VERSION);
+		data.writeLong(this.seed);
+		data.writeInt(this.size);
+		data.writeInt(this.entries.length - 1);
+		data.writeInt(this.displacements.length);
+		data.writeInt(this.records.length);
+		FrozenStringSet.writeInts(data, this.displacements);
+		int[] fingerprints = new int[this.entries.length - 1];
+		int[] offsets = new int[this.entries.length];
+		for (int slot = 0; slot < this.entries.length; slot++) {
+			if (slot < fingerprints.length) fingerprints[slot] = (int) (this.entries[slot] >>> 32);
+			offsets[slot] = (int) this.entries[slot];
+		}
+		FrozenStringSet.writeInts(data, fingerprints);
+		FrozenStringSet.writeInts(data, offsets);
+		data.write(this.records);
+		data.writeLong(checked.getChecksum().getValue());
+		data.flush();
+	}
+
+	/**
+	 * Reads a set written by writeTo(), checking its structure and its
+	 * checksum. Reads exactly as far as the end of the set, but does not
+	 * close the stream.
+	 *
+	 * @param in Where to read the set from
+	 * @return The set
+	 * @throws IOException If the stream cannot be read, or does not hold a frozen set of this version
+	 */
+	public static FrozenStringSet readFrom(InputStream in) throws IOException {
+		CheckedInputStream checked = new CheckedInputStream(in, new CRC32());
+		DataInputStream data = new DataInputStream(checked);
+		if (data.readLong() != MAGIC) throw new IOException("Not a frozen set");
+		int version = data.readInt();
+		if (version != VERSION) throw new IOException("Unsupported frozen set version " + version);
+		long seed = data.readLong();
+		int size = data.readInt();
+		int slots = data.readInt();
+		int buckets = data.readInt();
+		int length = data.readInt();
+		if (size < 0 || slots != size + size / SLACK + 1 || buckets != size / BUCKET_SIZE + 1 || length < 0 || slots > (Integer.MAX_VALUE - 8) / 4 - 1) {
+			throw new IOException("Corrupt frozen set header");
+		}
+		int[] displacements = FrozenStringSet.readInts(data, buckets);
+		int[] fingerprints = FrozenStringSet.readInts(data, slots);
+		int[] offsets = FrozenStringSet.readInts(data, slots + 1);
+		byte[] records = new byte[length];
+		data.readFully(records);
+		long expected = checked.getChecksum().getValue();
+		if (data.readLong() != expected) throw new IOException("Frozen set does not match its checksum");
+		int count = 0;
+		if (offsets[0] != 0 || offsets[slots] != length) throw new IOException("Corrupt frozen set records");
+		for (int slot = 0; slot < slots; slot++) {
+			if (offsets[slot] == offsets[slot + 1]) continue;
+			if (offsets[slot] > offsets[slot + 1] || FrozenStringSet.recordLength(records, offsets[slot], offsets[slot + 1]) != offsets[slot + 1] - offsets[slot]) {
+				throw new IOException("Corrupt frozen set records");
+			}
+			count++;
+		}
+		if (count != size) throw new IOException("Corrupt frozen set records");
+		return new FrozenStringSet(seed, size, displacements, fingerprints, offsets, records);
+	}
+
+	private static void writeInts(DataOutputStream data, int[] values) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+		buffer.asIntBuffer().put(values);
+		data.write(buffer.array());
+	}
+
+	/**
+	 * Reads an array of ints a whole buffer at a time rather than one read per int
+	 */
+	private static int[] readInts(DataInputStream data, int count) throws IOException {
+		byte[] bytes = new byte[count * 4];
+		data.readFully(bytes);
+		int[] values = new int[count];
+		ByteBuffer.wrap(bytes).asIntBuffer().get(values);
+		return values;
+	}
+
+	/**
+	 * Finds the length of a record from its header without reading past the
+	 * given end
+	 * @return The length, or -1 if the header runs past the end
+	 */
+	private static long recordLength(byte[] records, int start, int end) {
+		long header = 0;
+		for (int offset = start, shift = 0; offset < end && shift < 32; offset++, shift += 7) {
+			header |= (long) (records[offset] & 0x7F) << shift;
+			if (records[offset] >= 0) return offset + 1 - start + (header >>> 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns an iterator that decodes each item into a new String.
+	 *
+	 * @return an iterator.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		return new SlotIterator(this);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (Iterator<String> iter = this.iterator(); iter.hasNext(); ) {
+			sb.append(iter.next());
+			if (iter.hasNext()) sb.append(", ");
+		}
+		return sb.append(']').toString();
+	}
+
+	private static class SlotIterator implements Iterator<String> {
+		FrozenStringSet set;
+		int slot = -1;
+		char[] buffer = new char[64];
+
+		SlotIterator(FrozenStringSet set) {
+			this.set = set;
+			this.advance();
+		}
+
+		private void advance() {
+			do this.slot++;
+			while (this.slot < this.set.entries.length - 1 && (int) this.set.entries[this.slot] == (int) this.set.entries[this.slot + 1]);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.slot < this.set.entries.length - 1;
+		}
+
+		@Override
+		public String next() throws NoSuchElementException {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			int record = (int) this.set.entries[this.slot];
+			int length = (int) this.set.entries[this.slot + 1] - record;
+			if (this.buffer.length < length) this.buffer = new char[Math.max(length, this.buffer.length * 2)];
+			this.advance();
+			return CompactStringSet.decode(this.set.records, record, this.buffer);
+		}
+	}
+}
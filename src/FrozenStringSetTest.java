@@ -0,0 +1,133 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FrozenStringSetTest {
+	private static final String[] HELLOS = { "hello", "hi", "caio", "hola", "shalom", "bonjour", "ni-hao", "aloha", "tere", "sveiki",
+			"caf\u00e9", "\u4f60\u597d", "\ud83d\ude00 smile", "" };
+
+	private static StringHashSet hellos() {
+		StringHashSet set = new StringHashSet();
+		for (String s : HELLOS) set.add(s);
+		return set;
+	}
+
+	@Test
+	public void testFreeze() {
+		StringHashSet set = hellos();
+		FrozenStringSet frozen = set.freeze();
+		assertEquals(HELLOS.length, frozen.size());
+		assertEquals(HELLOS.length, set.size());
+		for (String s : HELLOS) {
+			assertTrue(s, frozen.contains(s));
+			assertTrue(s, frozen.contains(new StringBuilder(s)));
+		}
+		assertFalse(frozen.contains("mulishani"));
+		assertFalse(frozen.contains("hell"));
+		assertFalse(frozen.contains("caf\u00e8"));
+		HashSet<String> iterated = new HashSet<String>();
+		for (String s : frozen) assertTrue(iterated.add(s));
+		assertEquals(new HashSet<String>(Arrays.asList(HELLOS)), iterated);
+		assertEquals(frozen.toString(), set.freeze().toString());
+	}
+
+	@Test
+	public void testEmpty() {
+		FrozenStringSet frozen = new StringHashSet().freeze();
+		assertTrue(frozen.isEmpty());
+		assertFalse(frozen.contains(""));
+		assertFalse(frozen.iterator().hasNext());
+		assertEquals("[]", frozen.toString());
+	}
+
+	@Test
+	public void testMinimalPerfectHash() {
+		StringHashSet set = new StringHashSet(5, StringHashSet.Storage.LINEAR_PROBING);
+		for (int i = 0; i < 100000; i++) set.add("item" + i);
+		FrozenStringSet frozen = set.freeze();
+		assertEquals(100000, frozen.size());
+		// One slot in 64 is left empty
+		assertEquals(100000 + 100000 / 64 + 1, frozen.slots());
+		for (int i = 0; i < 100000; i++) assertTrue(frozen.contains("item" + i));
+		for (int i = 100000; i < 200000; i++) assertFalse(frozen.contains("item" + i));
+		// Slots, fingerprints, offsets, a displacement per four items and the records themselves
+		assertTrue(frozen.memoryBytes() < 100000 * 22);
+		StringHashSet copy = frozen.toStringHashSet(StringHashSet.Storage.ROBIN_HOOD);
+		assertEquals(100000, copy.size());
+		assertTrue(copy.containsAll(set.stream()));
+	}
+
+	@Test
+	public void testSharedBetweenThreads() throws InterruptedException {
+		StringHashSet set = new StringHashSet(5, StringHashSet.Storage.CHAINED);
+		for (int i = 0; i < 10000; i++) set.add("item" + i);
+		final FrozenStringSet frozen = set.freeze();
+		final boolean[] ok = new boolean[4];
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < ok.length; t++) {
+			final int id = t;
+			Thread thread = new Thread(() -> {
+				boolean all = true;
+				for (int i = 0; i < 10000; i++) all &= frozen.contains("item" + i) && !frozen.contains("other" + i);
+				ok[id] = all;
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) thread.join();
+		for (boolean b : ok) assertTrue(b);
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		FrozenStringSet frozen = hellos().freeze();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		frozen.writeTo(out);
+		out.write(42);
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		FrozenStringSet read = FrozenStringSet.readFrom(in);
+		// Reading stops at the end of the set
+		assertEquals(42, in.read());
+		assertEquals(frozen.size(), read.size());
+		for (String s : HELLOS) assertTrue(s, read.contains(s));
+		assertFalse(read.contains("mulishani"));
+		assertEquals(frozen.toString(), read.toString());
+	}
+
+	@Test
+	public void testReadRejectsDamage() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		hellos().freeze().writeTo(out);
+		byte[] bytes = out.toByteArray();
+		bytes[bytes.length - 20] ^= 1;
+		try {
+			FrozenStringSet.readFrom(new ByteArrayInputStream(bytes));
+			fail("Read a damaged set");
+		} catch (IOException e) {
+			// expected
+		}
+		try {
+			FrozenStringSet.readFrom(new ByteArrayInputStream("not a frozen set".getBytes()));
+			fail("Read something that is not a frozen set");
+		} catch (IOException e) {
+			// expected
+		}
+		try {
+			FrozenStringSet.readFrom(new ByteArrayInputStream(Arrays.copyOf(out.toByteArray(), 40)));
+			fail("Read a truncated set");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,271 @@
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+
+/**
+ * A hash set of 64-bit integers, such as IDs, that keeps them in a long[]
+ * instead of as Long objects, so adding, finding and iterating never box.
+ * The table is the same open-addressing engine as a StringHashSet's probing
+ * storage. A slot holding 0 is empty, so 0 itself is kept in a flag beside
+ * the table.
+ *
+ * Keys are spread with a 64-bit finalizer before the table takes its low
+ * bits, so sequential IDs do not pile up in neighbouring slots.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public class LongHashSet {
+
+	// The initial size of the table.
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final Table table;
+	private boolean hasZero;
+	private int changes;
+
+	/**
+	 * The probing table, with the keys in a long[] where 0 is empty
+	 */
+	private static final class Table extends OpenTable<long[]> {
+		Table(int initialCapacity, double loadFactor, boolean robinHood) {
+			super(initialCapacity, loadFactor, robinHood);
+		}
+
+		@Override
+		long[] newKeys(int slots) {
+			return new long[slots];
+		}
+
+		@Override
+		boolean isEmpty(long[] keys, int slot) {
+			return keys[slot] == 0;
+		}
+
+		@Override
+		void move(long[] from, int fromSlot, long[] to, int toSlot) {
+			to[toSlot] = from[fromSlot];
+		}
+
+		@Override
+		void clear(long[] keys, int slot) {
+			keys[slot] = 0;
+		}
+
+		/**
+		 * @param item Any value but 0
+		 * @param hash
+		 * @return The slot holding the item, or -1 if it is not in the table
+		 */
+		int find(long item, int hash) {
+			int slot = this.home(hash);
+			for (int dist = 0; ; dist++) {
+				long key = this.keys[slot];
+				if (key == item) return slot;
+				if (key == 0 || this.passed(slot, dist)) return -1;
+				slot = this.next(slot);
+			}
+		}
+	}
+
+	/**
+	 * Creates a set sized for a modest number of items.
+	 */
+	public LongHashSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a set with room for the given number of items before the table
+	 * has to grow, probing linearly.
+	 */
+	public LongHashSet(int expectedItems) {
+		this(expectedItems, StringHashSet.Storage.LINEAR_PROBING);
+	}
+
+	/**
+	 * Creates a set with room for the given number of items before the table
+	 * has to grow.
+	 * @param expectedItems
+	 * @param storage LINEAR_PROBING or ROBIN_HOOD, which also gives the load factor
+	 * @throws IllegalArgumentException If the storage is CHAINED
+	 */
+	public LongHashSet(int expectedItems, StringHashSet.Storage storage) throws IllegalArgumentException {
+		if (storage == StringHashSet.Storage.CHAINED) throw new IllegalArgumentException("Illegal storage: " + storage);
+		this.table = new Table(expectedItems, storage.defaultLoadFactor(), storage == StringHashSet.Storage.ROBIN_HOOD);
+	}
+
+	/**
+	 * The finalizer from SplitMix64, folded to 32 bits
+	 * @param item
+	 * @return The hash code of the item
+	 */
+	static int hash(long item) {
+		long x = item;
+		x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+		x ^= x >>> 31;
+		return (int) (x ^ (x >>> 32));
+	}
+
+	/**
+	 * Adds the given value if it is not there already.
+	 *
+	 * @param item
+	 * @return true if the set changed.
+	 */
+	public boolean add(long item) {
+		if (item == 0) {
+			if (this.hasZero) return false;
+			this.hasZero = true;
+		} else {
+			int hash = LongHashSet.hash(item);
+			if (this.table.find(item, hash) >= 0) return false;
+			int slot = this.table.claim(hash);
+			this.table.keys[slot] = item;
+		}
+		this.changes++;
+		return true;
+	}
+
+	/**
+	 * Checks if the given value is in the set.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the set.
+	 */
+	public boolean contains(long item) {
+		if (item == 0) return this.hasZero;
+		return this.table.find(item, LongHashSet.hash(item)) >= 0;
+	}
+
+	/**
+	 * Removes the given value from the set if it is there.
+	 *
+	 * @param item
+	 * @return True if the set changed.
+	 */
+	public boolean remove(long item) {
+		if (item == 0) {
+			if (!this.hasZero) return false;
+			this.hasZero = false;
+		} else {
+			int slot = this.table.find(item, LongHashSet.hash(item));
+			if (slot < 0) return false;
+			this.table.removeAt(slot);
+		}
+		this.changes++;
+		return true;
+	}
+
+	/**
+	 * @return The number of items in the set.
+	 */
+	public int size() {
+		return this.table.size() + (this.hasZero ? 1 : 0);
+	}
+
+	/**
+	 * @return True iff the set contains no items.
+	 */
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	/**
+	 * Removes all the items, keeping a table of the default size.
+	 */
+	public void clear() {
+		this.table.clear(DEFAULT_CAPACITY);
+		this.hasZero = false;
+		this.changes++;
+	}
+
+	/**
+	 * @return An iterator whose nextLong() returns the items without boxing them
+	 */
+	public PrimitiveIterator.OfLong iterator() {
+		return new SlotIterator(this);
+	}
+
+	/**
+	 * Passes every item to the action, reading the table directly.
+	 *
+	 * @param action
+	 * @throws ConcurrentModificationException If the action changes the set
+	 */
+	public void forEach(LongConsumer action) throws ConcurrentModificationException {
+		int changes = this.changes;
+		if (this.hasZero) action.accept(0);
+		long[] keys = this.table.keys;
+		for (int slot = 0; slot < keys.length && changes == this.changes; slot++) if (keys[slot] != 0) action.accept(keys[slot]);
+		if (changes != this.changes) throw new ConcurrentModificationException();
+	}
+
+	/**
+	 * @return The items in a new array, in no particular order
+	 */
+	public long[] toArray() {
+		long[] items = new long[this.size()];
+		int count = 0;
+		if (this.hasZero) count++;
+		for (long key : this.table.keys) if (key != 0) items[count++] = key;
+		return items;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (PrimitiveIterator.OfLong iter = this.iterator(); iter.hasNext(); ) {
+			sb.append(iter.nextLong());
+			if (iter.hasNext()) sb.append(", ");
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * Returns 0 first if it is in the set, then the table's items
+	 */
+	private static class SlotIterator implements PrimitiveIterator.OfLong {
+		LongHashSet set;
+		OpenTable<long[]>.Cursor cursor;
+		boolean zero;
+		boolean lastWasZero;
+		int changes;
+
+		SlotIterator(LongHashSet set) {
+			this.set = set;
+			this.cursor = set.table.new Cursor();
+			this.zero = set.hasZero;
+			this.changes = set.changes;
+		}
+
+		@Override
+		public boolean hasNext() throws ConcurrentModificationException {
+			if (this.changes != this.set.changes) throw new ConcurrentModificationException();
+			return this.zero || this.cursor.hasNext();
+		}
+
+		@Override
+		public long nextLong() throws NoSuchElementException, ConcurrentModificationException {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			if (this.zero) {
+				this.zero = false;
+				this.lastWasZero = true;
+				return 0;
+			}
+			this.lastWasZero = false;
+			return this.set.table.keys[this.cursor.next()];
+		}
+
+		@Override
+		public void remove() throws IllegalStateException, ConcurrentModificationException {
+			if (this.changes != this.set.changes) throw new ConcurrentModificationException();
+			if (this.lastWasZero) {
+				this.lastWasZero = false;
+				this.set.hasZero = false;
+			} else this.cursor.remove();
+			this.changes = ++this.set.changes;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongHashSetTest {
+
+	@Test
+	public void testZeroAndExtremes() {
+		LongHashSet set = new LongHashSet();
+		assertFalse(set.contains(0));
+		assertTrue(set.add(0));
+		assertFalse(set.add(0));
+		assertTrue(set.add(Long.MIN_VALUE));
+		assertTrue(set.add(Long.MAX_VALUE));
+		assertTrue(set.add(-1));
+		assertEquals(4, set.size());
+		assertTrue(set.contains(0));
+		assertTrue(set.contains(Long.MIN_VALUE));
+		assertFalse(set.contains(1));
+		long[] items = set.toArray();
+		Arrays.sort(items);
+		assertArrayEquals(new long[] { Long.MIN_VALUE, -1, 0, Long.MAX_VALUE }, items);
+		assertTrue(set.remove(0));
+		assertFalse(set.remove(0));
+		assertFalse(set.contains(0));
+		assertEquals(3, set.size());
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertEquals("[]", set.toString());
+	}
+
+	@Test
+	public void testSequentialIds() {
+		for (StringHashSet.Storage storage : new StringHashSet.Storage[] { StringHashSet.Storage.LINEAR_PROBING, StringHashSet.Storage.ROBIN_HOOD }) {
+			LongHashSet set = new LongHashSet(0, storage);
+			for (long id = 0; id < 100000; id++) assertTrue(set.add(id));
+			assertEquals(100000, set.size());
+			for (long id = 0; id < 200000; id++) assertEquals(id < 100000, set.contains(id));
+			for (long id = 0; id < 100000; id += 2) assertTrue(set.remove(id));
+			for (long id = 0; id < 100000; id++) assertEquals(id % 2 == 1, set.contains(id));
+			long[] sum = new long[1];
+			set.forEach((long id) -> sum[0] += id);
+			assertEquals(2500000000L, sum[0]);
+		}
+	}
+
+	@Test
+	public void testMatchesHashSet() {
+		LongHashSet set = new LongHashSet(0, StringHashSet.Storage.ROBIN_HOOD);
+		HashSet<Long> oracle = new HashSet<Long>();
+		SetOracle.check(oracle, new Random(230), 100000, random -> random.nextInt(2000) - 1000L, set::add, set::remove, set::contains);
+		assertEquals(oracle.size(), set.size());
+		HashSet<Long> iterated = new HashSet<Long>();
+		for (PrimitiveIterator.OfLong iter = set.iterator(); iter.hasNext(); ) {
+			long item = iter.nextLong();
+			assertTrue(iterated.add(item));
+			if (item % 3 == 0) iter.remove();
+		}
+		assertEquals(oracle, iterated);
+		for (long item : oracle) assertEquals(item % 3 != 0, set.contains(item));
+	}
+
+	@Test
+	public void testConcurrentModification() {
+		LongHashSet set = new LongHashSet();
+		set.add(1);
+		PrimitiveIterator.OfLong iter = set.iterator();
+		set.add(2);
+		try {
+			iter.nextLong();
+			fail("Should have thrown ConcurrentModificationException");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+		try {
+			set.forEach((long id) -> set.add(id + 10));
+			fail("Should have thrown ConcurrentModificationException");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+	}
+}
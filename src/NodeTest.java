@@ -88,6 +88,52 @@ public class NodeTest {
 		assertEquals("one, two, three, four, five", numbers.toString());
 	}
 
+	@Test
+	public void testGetIsReadOnly() {
+		populateNumbers();
+		assertTrue("Find item 'four'", numbers.get("four"));
+		assertTrue("Find item 'four'", numbers.get("four", StringHashSet.stringHashCode("four"), StringHashSet.Reordering.NONE, 0));
+		assertEquals("one, two, three, four, five", numbers.toString());
+	}
+
+	@Test
+	public void testTranspose() {
+		populateNumbers();
+		assertTrue("Transpose item 'four'", numbers.get("four", StringHashSet.stringHashCode("four"), StringHashSet.Reordering.TRANSPOSE, 0));
+		assertEquals("one, two, four, three, five", numbers.toString());
+		assertTrue("Transpose item 'two'", numbers.get("two", StringHashSet.stringHashCode("two"), StringHashSet.Reordering.TRANSPOSE, 0));
+		assertEquals("two, one, four, three, five", numbers.toString());
+		assertTrue("Transpose item 'two'", numbers.get("two", StringHashSet.stringHashCode("two"), StringHashSet.Reordering.TRANSPOSE, 0));
+		assertEquals("two, one, four, three, five", numbers.toString());
+		assertFalse("Transpose item 'six'", numbers.get("six", StringHashSet.stringHashCode("six"), StringHashSet.Reordering.TRANSPOSE, 0));
+	}
+
+	@Test
+	public void testFrequencyCount() {
+		populateNumbers();
+		StringHashSet.Reordering policy = StringHashSet.Reordering.FREQUENCY_COUNT;
+		assertTrue(numbers.get("five", StringHashSet.stringHashCode("five"), policy, 0));
+		assertEquals("five, one, two, three, four", numbers.toString());
+		assertTrue(numbers.get("three", StringHashSet.stringHashCode("three"), policy, 0));
+		assertEquals("five, three, one, two, four", numbers.toString());
+		assertTrue(numbers.get("three", StringHashSet.stringHashCode("three"), policy, 0));
+		assertEquals("three, five, one, two, four", numbers.toString());
+		assertTrue(numbers.get("four", StringHashSet.stringHashCode("four"), policy, 0));
+		assertEquals("three, five, four, one, two", numbers.toString());
+		assertTrue(numbers.remove("three"));
+		assertTrue(numbers.get("one", StringHashSet.stringHashCode("one"), policy, 0));
+		assertEquals("five, four, one, two", numbers.toString());
+	}
+
+	@Test
+	public void testReorderThreshold() {
+		populateNumbers();
+		assertTrue(numbers.get("three", StringHashSet.stringHashCode("three"), StringHashSet.Reordering.MOVE_TO_FRONT, 3));
+		assertEquals("one, two, three, four, five", numbers.toString());
+		assertTrue(numbers.get("four", StringHashSet.stringHashCode("four"), StringHashSet.Reordering.MOVE_TO_FRONT, 3));
+		assertEquals("four, one, two, three, five", numbers.toString());
+	}
+
 	@Test
 	public void testIterator() {
 		populateNumbers();
@@ -0,0 +1,315 @@
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A run of native memory addressed by long offsets, made of direct or
+ * memory-mapped ByteBuffers that are each a power of two in size. Values are
+ * never split across two buffers: ints and longs stay aligned to their size,
+ * and callers that write variable-length records keep each one inside a
+ * single chunk.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+class OffHeapMemory {
+	private static final int MAX_CHUNK_SHIFT = 30;
+
+	// The largest chunk, which is also the chunk size used for mapped files.
+	static final int MAX_CHUNK_SIZE = 1 << MAX_CHUNK_SHIFT;
+
+	private final int shift;
+	private final int mask;
+	private final ByteOrder order;
+	private ByteBuffer[] chunks;
+	private int used;
+	private long limit = -1;
+
+	/**
+	 * Reserves room for chunks of the given size without allocating any yet
+	 * @param chunkSize The size of each chunk; rounded up to a power of two, at most 1 GiB
+	 */
+	OffHeapMemory(long chunkSize) {
+		this(chunkSize, ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Reserves room for chunks of the given size and byte order without
+	 * allocating any yet
+	 */
+	OffHeapMemory(long chunkSize, ByteOrder order) {
+		int shift = 3;
+		while (1L << shift < chunkSize && shift < MAX_CHUNK_SHIFT) shift++;
+		this.shift = shift;
+		this.mask = (1 << shift) - 1;
+		this.order = order;
+		this.chunks = new ByteBuffer[4];
+	}
+
+	private OffHeapMemory(ByteBuffer[] chunks, long limit) {
+		this.shift = MAX_CHUNK_SHIFT;
+		this.mask = MAX_CHUNK_SIZE - 1;
+		this.order = ByteOrder.LITTLE_ENDIAN;
+		this.chunks = chunks;
+		this.used = chunks.length;
+		this.limit = limit;
+	}
+
+	/**
+	 * Maps a whole file read-only, so that addresses are file positions. The
+	 * file is read in little-endian order.
+	 * @param channel The open file
+	 * @return The mapped memory
+	 */
+	static OffHeapMemory map(FileChannel channel) throws IOException {
+		long size = channel.size();
+		ByteBuffer[] chunks = new ByteBuffer[(int) ((size + MAX_CHUNK_SIZE - 1) >>> MAX_CHUNK_SHIFT)];
+		for (int i = 0; i < chunks.length; i++) {
+			long start = (long) i << MAX_CHUNK_SHIFT;
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAX_CHUNK_SIZE, size - start)).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return new OffHeapMemory(chunks, size);
+	}
+
+	/**
+	 * Allocates zeroed memory of at least the given size in as few chunks as possible
+	 * @param bytes The number of bytes needed
+	 * @return The memory
+	 */
+	static OffHeapMemory allocate(long bytes) {
+		return OffHeapMemory.allocate(bytes, ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Allocates zeroed memory of at least the given size and the given byte order
+	 */
+	static OffHeapMemory allocate(long bytes, ByteOrder order) {
+		OffHeapMemory memory = new OffHeapMemory(bytes, order);
+		while (memory.size() < bytes) memory.addChunk();
+		return memory;
+	}
+
+	/**
+	 * @return The size of each chunk in bytes
+	 */
+	int chunkSize() {
+		return 1 << this.shift;
+	}
+
+	/**
+	 * @return The number of bytes allocated
+	 */
+	long size() {
+		return this.limit >= 0 ? this.limit : (long) this.used << this.shift;
+	}
+
+	/**
+	 * Appends a zeroed chunk
+	 */
+	void addChunk() {
+		if (this.chunks == null) throw new IllegalStateException("Memory has been freed");
+		if (this.used == this.chunks.length) {
+			ByteBuffer[] chunks = new ByteBuffer[this.used * 2];
+			System.arraycopy(this.chunks, 0, chunks, 0, this.used);
+			this.chunks = chunks;
+		}
+		this.chunks[this.used++] = ByteBuffer.allocateDirect(1 << this.shift).order(this.order);
+	}
+
+	private ByteBuffer chunk(long address) {
+		return this.chunks[(int) (address >>> this.shift)];
+	}
+
+	byte getByte(long address) {
+		return this.chunk(address).get((int) address & this.mask);
+	}
+
+	void putByte(long address, byte value) {
+		this.chunk(address).put((int) address & this.mask, value);
+	}
+
+	int getInt(long address) {
+		return this.chunk(address).getInt((int) address & this.mask);
+	}
+
+	void putInt(long address, int value) {
+		this.chunk(address).putInt((int) address & this.mask, value);
+	}
+
+	long getLong(long address) {
+		return this.chunk(address).getLong((int) address & this.mask);
+	}
+
+	void putLong(long address, long value) {
+		this.chunk(address).putLong((int) address & this.mask, value);
+	}
+
+	/**
+	 * Copies bytes out of memory that lies within one chunk
+	 */
+	void getBytes(long address, byte[] into, int offset, int length) {
+		ByteBuffer chunk = this.chunk(address).duplicate();
+		chunk.position((int) address & this.mask);
+		chunk.get(into, offset, length);
+	}
+
+	/**
+	 * Copies bytes into memory that lies within one chunk
+	 */
+	void putBytes(long address, byte[] from, int offset, int length) {
+		ByteBuffer chunk = this.chunk(address).duplicate();
+		chunk.position((int) address & this.mask);
+		chunk.put(from, offset, length);
+	}
+
+	/**
+	 * Writes a range of the memory to a channel, updating a checksum with the
+	 * bytes written
+	 */
+	void writeTo(WritableByteChannel channel, long address, long length, CRC32 checksum) throws IOException {
+		while (length > 0) {
+			ByteBuffer chunk = this.chunk(address).duplicate();
+			int start = (int) address & this.mask;
+			int count = (int) Math.min(length, chunk.capacity() - start);
+			chunk.limit(start + count).position(start);
+			checksum.update(chunk);
+			chunk.position(start);
+			while (chunk.hasRemaining()) channel.write(chunk);
+			address += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Updates a checksum with a range of the memory
+	 */
+	void checksum(long address, long length, CRC32 checksum) {
+		while (length > 0) {
+			ByteBuffer chunk = this.chunk(address).duplicate();
+			int start = (int) address & this.mask;
+			int count = (int) Math.min(length, chunk.capacity() - start);
+			chunk.limit(start + count).position(start);
+			checksum.update(chunk);
+			address += count;
+			length -= count;
+		}
+	}
+
+	/**
+	 * Finds the number of bytes the UTF-8 encoding of the characters takes.
+	 * Unpaired surrogates take three bytes like any other character (as in
+	 * WTF-8), so that no two strings share an encoding.
+	 */
+	static int utf8Length(CharSequence item) {
+		int length = 0;
+		for (int i = 0, n = item.length(); i < n; i++) {
+			char c = item.charAt(i);
+			if (c < 0x80) length++;
+			else if (c < 0x800) length += 2;
+			else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(item.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else length += 3;
+		}
+		return length;
+	}
+
+	/**
+	 * Writes the UTF-8 encoding of the characters, with unpaired surrogates
+	 * in three bytes each, which must fit in one chunk
+	 * @param address Where to write the first byte
+	 * @param item The characters to encode
+	 */
+	void putUtf8(long address, CharSequence item) {
+		for (int i = 0, n = item.length(); i < n; i++) {
+			char c = item.charAt(i);
+			if (c < 0x80) {
+				this.putByte(address++, (byte) c);
+				continue;
+			}
+			int cp = c;
+			if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(item.charAt(i + 1))) cp = Character.toCodePoint(c, item.charAt(++i));
+			int bytes = cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+			this.putByte(address++, (byte) (bytes == 2 ? 0xC0 | cp >> 6 : bytes == 3 ? 0xE0 | cp >> 12 : 0xF0 | cp >> 18));
+			for (int shift = 6 * (bytes - 2); shift >= 0; shift -= 6) this.putByte(address++, (byte) (0x80 | (cp >> shift & 0x3F)));
+		}
+	}
+
+	/**
+	 * Checks whether the UTF-8 bytes at an address encode exactly the given
+	 * characters, without decoding them into a String
+	 * @param address Where the encoded bytes start
+	 * @param length The number of encoded bytes
+	 * @param item The characters to compare with
+	 * @return If they are the same string
+	 */
+	boolean equalsUtf8(long address, int length, CharSequence item) {
+		long end = address + length;
+		for (int i = 0, n = item.length(); i < n; i++) {
+			char c = item.charAt(i);
+			if (c < 0x80) {
+				if (address >= end || this.getByte(address++) != c) return false;
+				continue;
+			}
+			int cp = c;
+			if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(item.charAt(i + 1))) cp = Character.toCodePoint(c, item.charAt(++i));
+			int bytes = cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+			if (address + bytes > end) return false;
+			int lead = bytes == 2 ? 0xC0 | cp >> 6 : bytes == 3 ? 0xE0 | cp >> 12 : 0xF0 | cp >> 18;
+			if (this.getByte(address++) != (byte) lead) return false;
+			for (int shift = 6 * (bytes - 2); shift >= 0; shift -= 6) if (this.getByte(address++) != (byte) (0x80 | (cp >> shift & 0x3F))) return false;
+		}
+		return address == end;
+	}
+
+	/**
+	 * Checks whether the bytes at an address are the same as a slice of an array
+	 */
+	boolean equalsBytes(long address, byte[] bytes, int offset, int length) {
+		for (int i = 0; i < length; i++) if (this.getByte(address + i) != bytes[offset + i]) return false;
+		return true;
+	}
+
+	/**
+	 * Releases the native memory now instead of waiting for the buffers to be
+	 * garbage collected. The memory must not be used afterwards.
+	 */
+	void free() {
+		if (this.chunks == null) return;
+		for (int i = 0; i < this.used; i++) OffHeapMemory.release(this.chunks[i]);
+		this.chunks = null;
+		this.used = 0;
+	}
+
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			Field field = type.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (Exception e) {
+			// Before Java 9 there is no public way to free a direct buffer early
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private static void release(ByteBuffer buffer) {
+		if (INVOKE_CLEANER == null) return;
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, buffer);
+		} catch (Exception e) {
+			// Leave it to the garbage collector
+		}
+	}
+}
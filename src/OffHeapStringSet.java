@@ -0,0 +1,459 @@
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * A hash set for Strings that keeps everything in native memory: the probe
+ * table (cached hashes and record addresses) and the UTF-8 bytes of every
+ * item, appended to an arena of direct buffers. Each arena chunk is twice the
+ * size of the one before, up to 1 GiB, and an item too big for the next chunk
+ * gets one of its own, so the heap only ever holds the set itself and a
+ * handful of buffers, however many items there are, and a huge set adds
+ * nothing for the garbage collector to trace.
+ *
+ * Items can be added and looked up as Strings, any CharSequence, or slices of
+ * UTF-8 bytes, and none of those paths create a String. Strings are only
+ * created when iterating. Removed items leave their bytes behind in the
+ * arena until the set is cleared. Unpaired surrogates are stored in three
+ * bytes (as in WTF-8), so every String comes back out exactly as it went in.
+ *
+ * The memory is freed by close(), after which the set cannot be used.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public class OffHeapStringSet implements Iterable<String>, AutoCloseable {
+
+	// The fraction of slots in use before the table doubles.
+	private static final double LOAD_FACTOR = 0.75;
+
+	private static final int MIN_SLOTS = 16;
+	private static final int MIN_ARENA_CHUNK = 1 << 16;
+	private static final int MAX_ARENA_CHUNK = 1 << 30;
+
+	private final StringHasher hasher;
+	private final int firstChunk;
+	private OffHeapMemory hashes;
+	private OffHeapMemory refs;
+	// Record addresses hold the chunk index in the high 32 bits and the offset in the low
+	private OffHeapMemory[] arena;
+	private int chunkCount;
+	private int current;
+	private int arenaEnd;
+	private int nextChunk;
+	private long arenaBytes;
+	private long deadBytes;
+	private long mask;
+	private long threshold;
+	private int size;
+	private int changes;
+
+	/**
+	 * Creates a set sized for a modest number of items.
+	 */
+	public OffHeapStringSet() {
+		this(1024);
+	}
+
+	/**
+	 * Creates a set with room for the given number of items before the table
+	 * has to grow. The first arena chunk is sized from the same guess.
+	 */
+	public OffHeapStringSet(int expectedItems) {
+		this(expectedItems, StringHasher.MIXED);
+	}
+
+	/**
+	 * Creates a set with room for the given number of items, using the given
+	 * hash function.
+	 */
+	public OffHeapStringSet(int expectedItems, StringHasher hasher) {
+		if (hasher == null) throw new NullPointerException();
+		this.hasher = hasher;
+		this.firstChunk = (int) Math.max(MIN_ARENA_CHUNK, Math.min(MAX_ARENA_CHUNK, expectedItems * 16L));
+		this.allocate(expectedItems);
+	}
+
+	private void allocate(int expectedItems) {
+		long slots = MIN_SLOTS;
+		while (slots * LOAD_FACTOR < expectedItems) slots <<= 1;
+		this.createTable(slots);
+		this.arena = new OffHeapMemory[4];
+		this.chunkCount = 0;
+		this.current = -1;
+		this.arenaEnd = 0;
+		this.nextChunk = this.firstChunk;
+		this.arenaBytes = 0;
+		this.deadBytes = 0;
+		this.size = 0;
+	}
+
+	private void createTable(long slots) {
+		this.hashes = OffHeapMemory.allocate(slots * 4);
+		this.refs = OffHeapMemory.allocate(slots * 8);
+		this.mask = slots - 1;
+		this.threshold = (long) (slots * LOAD_FACTOR);
+	}
+
+	private OffHeapMemory chunk(long record) {
+		return this.arena[(int) (record >>> 32)];
+	}
+
+	private void ensureOpen() {
+		if (this.refs == null) throw new IllegalStateException("The set has been closed");
+	}
+
+	/**
+	 * Checks whether the record at the given address holds exactly these characters
+	 */
+	private boolean equalsChars(long record, CharSequence item) {
+		OffHeapMemory chunk = this.chunk(record);
+		return chunk.equalsUtf8((int) record + 4, chunk.getInt((int) record), item);
+	}
+
+	/**
+	 * Checks whether the record at the given address holds exactly these bytes
+	 */
+	private boolean equalsBytes(long record, byte[] utf8, int offset, int length) {
+		OffHeapMemory chunk = this.chunk(record);
+		return chunk.getInt((int) record) == length && chunk.equalsBytes((int) record + 4, utf8, offset, length);
+	}
+
+	/**
+	 * Finds the slot holding the given characters
+	 * @return The slot, or -1 if they are not in the set
+	 */
+	private long find(CharSequence item, int hash) {
+		for (long slot = hash & this.mask; ; slot = (slot + 1) & this.mask) {
+			long ref = this.refs.getLong(slot * 8);
+			if (ref == 0) return -1;
+			if (this.hashes.getInt(slot * 4) == hash && this.equalsChars(ref - 1, item)) return slot;
+		}
+	}
+
+	/**
+	 * Finds the slot holding the given bytes
+	 * @return The slot, or -1 if they are not in the set
+	 */
+	private long find(byte[] utf8, int offset, int length, int hash) {
+		for (long slot = hash & this.mask; ; slot = (slot + 1) & this.mask) {
+			long ref = this.refs.getLong(slot * 8);
+			if (ref == 0) return -1;
+			if (this.hashes.getInt(slot * 4) == hash && this.equalsBytes(ref - 1, utf8, offset, length)) return slot;
+		}
+	}
+
+	/**
+	 * Checks if the given characters are in the set.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the set.
+	 */
+	public boolean contains(CharSequence item) {
+		this.ensureOpen();
+		return this.find(item, this.hasher.hash(item)) >= 0;
+	}
+
+	/**
+	 * Checks if the string with the given UTF-8 encoding is in the set.
+	 * Malformed bytes are never in it.
+	 *
+	 * @return True if and only if the item is in the set.
+	 * @throws IndexOutOfBoundsException If the range is not inside the array
+	 */
+	public boolean contains(byte[] utf8, int offset, int length) throws IndexOutOfBoundsException {
+		this.ensureOpen();
+		Objects.checkFromIndexSize(offset, length, utf8.length);
+		if (!StringHasher.isWellFormed(utf8, offset, length)) return false;
+		return this.find(utf8, offset, length, this.hasher.hash(utf8, offset, length)) >= 0;
+	}
+
+	/**
+	 * Reserves room in the arena for a record of the given length, moving on
+	 * to a new chunk if the record would not fit in the current one. A record
+	 * bigger than the next chunk would be gets a chunk to itself instead.
+	 * @return The address of the record
+	 */
+	private long reserve(int length) {
+		long recordSize = 4L + length;
+		if (recordSize > MAX_ARENA_CHUNK) throw new IllegalArgumentException("Item too long: " + length + " bytes");
+		if (this.current < 0 || recordSize > this.arena[this.current].chunkSize() - this.arenaEnd) {
+			if (recordSize > this.nextChunk) {
+				long record = (long) this.addChunk(recordSize) << 32;
+				this.arena[this.chunkCount - 1].putInt(0, length);
+				return record;
+			}
+			this.current = this.addChunk(this.nextChunk);
+			this.arenaEnd = 0;
+			this.nextChunk = Math.min(MAX_ARENA_CHUNK, this.nextChunk * 2);
+		}
+		long record = (long) this.current << 32 | this.arenaEnd;
+		this.arena[this.current].putInt(this.arenaEnd, length);
+		this.arenaEnd += (int) recordSize;
+		return record;
+	}
+
+	/**
+	 * Allocates one more arena chunk of at least the given size
+	 * @return Its index
+	 */
+	private int addChunk(long bytes) {
+		if (this.chunkCount == this.arena.length) {
+			OffHeapMemory[] arena = new OffHeapMemory[this.chunkCount * 2];
+			System.arraycopy(this.arena, 0, arena, 0, this.chunkCount);
+			this.arena = arena;
+		}
+		OffHeapMemory chunk = OffHeapMemory.allocate(bytes);
+		this.arenaBytes += chunk.size();
+		this.arena[this.chunkCount] = chunk;
+		return this.chunkCount++;
+	}
+
+	/**
+	 * @return The number of direct buffers the arena is made of
+	 */
+	int arenaChunks() {
+		return this.chunkCount;
+	}
+
+	private void freeArena() {
+		for (int i = 0; i < this.chunkCount; i++) this.arena[i].free();
+	}
+
+	/**
+	 * Adds the given characters if they are not there already.
+	 *
+	 * @param item
+	 * @return true if the set changed.
+	 */
+	public boolean add(CharSequence item) {
+		this.ensureOpen();
+		int hash = this.hasher.hash(item);
+		if (this.find(item, hash) >= 0) return false;
+		long record = this.reserve(OffHeapMemory.utf8Length(item));
+		this.chunk(record).putUtf8((int) record + 4, item);
+		this.insert(hash, record);
+		return true;
+	}
+
+	/**
+	 * Adds the string with the given UTF-8 encoding if it is not there already.
+	 * The bytes are stored as they are, so they must be the shortest form
+	 * of every character, as toUtf8() and String.getBytes() write them.
+	 *
+	 * @return true if the set changed.
+	 * @throws IndexOutOfBoundsException If the range is not inside the array
+	 * @throws IllegalArgumentException If the bytes are not well-formed UTF-8
+	 */
+	public boolean add(byte[] utf8, int offset, int length) throws IndexOutOfBoundsException, IllegalArgumentException {
+		this.ensureOpen();
+		Objects.checkFromIndexSize(offset, length, utf8.length);
+		if (!StringHasher.isWellFormed(utf8, offset, length)) throw new IllegalArgumentException("Malformed UTF-8");
+		int hash = this.hasher.hash(utf8, offset, length);
+		if (this.find(utf8, offset, length, hash) >= 0) return false;
+		long record = this.reserve(length);
+		this.chunk(record).putBytes((int) record + 4, utf8, offset, length);
+		this.insert(hash, record);
+		return true;
+	}
+
+	private void insert(int hash, long record) {
+		if (this.size >= this.threshold) this.resize();
+		this.place(hash, record + 1);
+		this.size++;
+		this.changes++;
+	}
+
+	private void place(int hash, long ref) {
+		long slot = hash & this.mask;
+		while (this.refs.getLong(slot * 8) != 0) slot = (slot + 1) & this.mask;
+		this.hashes.putInt(slot * 4, hash);
+		this.refs.putLong(slot * 8, ref);
+	}
+
+	/**
+	 * Doubles the table, placing every item by its cached hash without
+	 * touching the arena
+	 */
+	private void resize() {
+		OffHeapMemory oldHashes = this.hashes;
+		OffHeapMemory oldRefs = this.refs;
+		long oldSlots = this.mask + 1;
+		this.createTable(oldSlots * 2);
+		for (long slot = 0; slot < oldSlots; slot++) {
+			long ref = oldRefs.getLong(slot * 8);
+			if (ref != 0) this.place(oldHashes.getInt(slot * 4), ref);
+		}
+		oldHashes.free();
+		oldRefs.free();
+	}
+
+	/**
+	 * Removes the given characters from the set if they are there.
+	 *
+	 * @param item
+	 * @return True if the set changed.
+	 */
+	public boolean remove(CharSequence item) {
+		this.ensureOpen();
+		long slot = this.find(item, this.hasher.hash(item));
+		if (slot < 0) return false;
+		this.removeAt(slot);
+		return true;
+	}
+
+	/**
+	 * Removes the string with the given UTF-8 encoding from the set if it is there.
+	 *
+	 * @return True if the set changed.
+	 * @throws IndexOutOfBoundsException If the range is not inside the array
+	 */
+	public boolean remove(byte[] utf8, int offset, int length) throws IndexOutOfBoundsException {
+		this.ensureOpen();
+		Objects.checkFromIndexSize(offset, length, utf8.length);
+		if (!StringHasher.isWellFormed(utf8, offset, length)) return false;
+		long slot = this.find(utf8, offset, length, this.hasher.hash(utf8, offset, length));
+		if (slot < 0) return false;
+		this.removeAt(slot);
+		return true;
+	}
+
+	/**
+	 * Empties a slot and shifts the rest of its cluster back
+	 */
+	private void removeAt(long hole) {
+		long record = this.refs.getLong(hole * 8) - 1;
+		this.deadBytes += 4 + this.chunk(record).getInt((int) record);
+		for (long next = (hole + 1) & this.mask; ; next = (next + 1) & this.mask) {
+			long ref = this.refs.getLong(next * 8);
+			if (ref == 0) break;
+			int hash = this.hashes.getInt(next * 4);
+			if (((next - (hash & this.mask)) & this.mask) < ((next - hole) & this.mask)) continue;
+			this.hashes.putInt(hole * 4, hash);
+			this.refs.putLong(hole * 8, ref);
+			hole = next;
+		}
+		this.refs.putLong(hole * 8, 0);
+		this.size--;
+		this.changes++;
+	}
+
+	/**
+	 * @return The number of items in the set.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return True iff the set contains no items.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes all the items and releases the arena, keeping a table of the
+	 * default size.
+	 */
+	public void clear() {
+		this.ensureOpen();
+		this.hashes.free();
+		this.refs.free();
+		this.freeArena();
+		this.allocate(0);
+		this.changes++;
+	}
+
+	/**
+	 * @return The number of bytes of native memory the set holds, for the
+	 *         table and the arena together
+	 */
+	public long offHeapBytes() {
+		if (this.refs == null) return 0;
+		return this.hashes.size() + this.refs.size() + this.arenaBytes;
+	}
+
+	/**
+	 * @return The number of arena bytes still held by items that have been removed
+	 */
+	public long deadBytes() {
+		return this.deadBytes;
+	}
+
+	/**
+	 * Frees all the native memory. Closing twice does nothing; using the set
+	 * after it is closed throws IllegalStateException.
+	 */
+	@Override
+	public void close() {
+		if (this.refs == null) return;
+		this.hashes.free();
+		this.refs.free();
+		this.freeArena();
+		this.hashes = this.refs = null;
+		this.arena = null;
+		this.size = 0;
+	}
+
+	/**
+	 * Returns an iterator that decodes each item into a new String. Throws
+	 * ConcurrentModificationException if the set changes while iterating.
+	 *
+	 * @return an iterator.
+	 */
+	public Iterator<String> iterator() {
+		this.ensureOpen();
+		return new SlotIterator(this);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (Iterator<String> iter = this.iterator(); iter.hasNext(); ) {
+			sb.append(iter.next());
+			if (iter.hasNext()) sb.append(", ");
+		}
+		return sb.append(']').toString();
+	}
+
+	private static class SlotIterator implements Iterator<String> {
+		OffHeapStringSet set;
+		long slot = -1;
+		int changes;
+		byte[] buffer = new byte[64];
+		char[] chars = new char[64];
+
+		SlotIterator(OffHeapStringSet set) {
+			this.set = set;
+			this.changes = set.changes;
+			this.advance();
+		}
+
+		private void advance() {
+			do this.slot++;
+			while (this.slot <= this.set.mask && this.set.refs.getLong(this.slot * 8) == 0);
+		}
+
+		@Override
+		public boolean hasNext() throws ConcurrentModificationException {
+			if (this.changes != this.set.changes || this.set.refs == null) throw new ConcurrentModificationException();
+			return this.slot <= this.set.mask;
+		}
+
+		@Override
+		public String next() throws NoSuchElementException, ConcurrentModificationException {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			long record = this.set.refs.getLong(this.slot * 8) - 1;
+			OffHeapMemory chunk = this.set.chunk(record);
+			int length = chunk.getInt((int) record);
+			if (this.buffer.length < length) {
+				this.buffer = new byte[Math.max(length, this.buffer.length * 2)];
+				this.chars = new char[this.buffer.length];
+			}
+			chunk.getBytes((int) record + 4, this.buffer, 0, length);
+			this.advance();
+			return StringHasher.fromUtf8(this.buffer, 0, length, this.chars);
+		}
+	}
+}
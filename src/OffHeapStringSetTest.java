@@ -0,0 +1,187 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapStringSetTest {
+	private static final String[] HELLOS = { "hello", "hi", "caio", "hola", "shalom", "bonjour", "ni-hao", "aloha", "tere", "sveiki",
+			"caf\u00e9", "\u4f60\u597d", "\ud83d\ude00 smile" };
+
+	private OffHeapStringSet set;
+
+	@Before
+	public void setUp() {
+		set = new OffHeapStringSet(4);
+	}
+
+	@After
+	public void tearDown() {
+		set.close();
+	}
+
+	@Test
+	public void testAddAndContains() {
+		for (String s : HELLOS) assertTrue(set.add(s));
+		for (String s : HELLOS) assertFalse(set.add(s));
+		assertEquals(HELLOS.length, set.size());
+		for (String s : HELLOS) {
+			assertTrue(s, set.contains(s));
+			assertTrue(s, set.contains(new StringBuilder(s)));
+			byte[] utf8 = ("<<" + s + ">>").getBytes(StandardCharsets.UTF_8);
+			assertTrue(s, set.contains(utf8, 2, utf8.length - 4));
+		}
+		assertFalse(set.contains("mulishani"));
+		assertFalse(set.contains("hell"));
+		assertFalse(set.contains("hello!"));
+		assertFalse(set.contains("caf\u00e8"));
+	}
+
+	@Test
+	public void testAddBytes() {
+		byte[] utf8 = "caf\u00e9 au lait".getBytes(StandardCharsets.UTF_8);
+		assertTrue(set.add(utf8, 0, 5));
+		assertFalse(set.add("caf\u00e9"));
+		assertTrue(set.contains("caf\u00e9"));
+		assertEquals("[caf\u00e9]", set.toString());
+	}
+
+	@Test
+	public void testMalformedBytes() {
+		byte[][] malformed = {
+				{ (byte) 0xC1, (byte) 0x81 }, // "A" in two bytes
+				{ (byte) 0xE0, (byte) 0x81, (byte) 0x81 }, // "A" in three
+				{ (byte) 0xED, (byte) 0xA0, (byte) 0xBD, (byte) 0xED, (byte) 0xB8, (byte) 0x80 }, // CESU-8 for U+1F600
+				{ (byte) 0xE2 }, // cut off
+				{ 'a', (byte) 0xE2, (byte) 0x82 }, // cut off
+				{ (byte) 0x80 }, // a continuation byte on its own
+				{ (byte) 0xF5, (byte) 0x80, (byte) 0x80, (byte) 0x80 } // past U+10FFFF
+		};
+		set.add("A");
+		set.add("\ud83d\ude00");
+		for (byte[] bytes : malformed) {
+			assertFalse(set.contains(bytes, 0, bytes.length));
+			assertFalse(set.remove(bytes, 0, bytes.length));
+			try {
+				set.add(bytes, 0, bytes.length);
+				fail("Should reject malformed UTF-8");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		assertEquals(2, set.size());
+		// A lone surrogate in three bytes is what add(CharSequence) stores for it
+		byte[] lone = { (byte) 0xED, (byte) 0xA0, (byte) 0xBD };
+		assertTrue(set.add(lone, 0, lone.length));
+		assertFalse(set.add("\ud83d"));
+		for (int[] range : new int[][] { { 1, 5 }, { -1, 1 }, { 0, -1 }, { 3, 0 } }) {
+			try {
+				set.contains(new byte[] { 1, 2 }, range[0], range[1]);
+				fail("Should check the range");
+			} catch (IndexOutOfBoundsException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		set.add("hello");
+		set.add("hi");
+		assertTrue(set.remove(new StringBuilder("hello")));
+		assertFalse(set.remove("hello"));
+		byte[] hi = "hi".getBytes(StandardCharsets.UTF_8);
+		assertTrue(set.remove(hi, 0, hi.length));
+		assertTrue(set.isEmpty());
+		assertEquals(15, set.deadBytes());
+	}
+
+	@Test
+	public void testMatchesHashSet() {
+		HashSet<String> oracle = new HashSet<String>();
+		SetOracle.check(oracle, new Random(230), 100000, random -> "item-" + random.nextInt(5000) + (random.nextBoolean() ? "\u00e9" : ""), set::add, set::remove, set::contains);
+		assertEquals(oracle.size(), set.size());
+		SetOracle.assertSameItems(oracle, set);
+	}
+
+	@Test
+	public void testRecordsDoNotCrossChunks() {
+		// The arena of a small set starts with a 64 KiB chunk
+		char[] filler = new char[30000];
+		Arrays.fill(filler, 'x');
+		for (int i = 0; i < 10; i++) assertTrue(set.add(i + new String(filler)));
+		for (int i = 0; i < 10; i++) assertTrue(set.contains(i + new String(filler)));
+	}
+
+	@Test
+	public void testItemsBiggerThanAChunk() {
+		char[] filler = new char[70000];
+		Arrays.fill(filler, 'x');
+		String big = new String(filler);
+		try (OffHeapStringSet fresh = new OffHeapStringSet()) {
+			assertTrue(fresh.add("small"));
+			assertTrue(fresh.add(big));
+			assertTrue(fresh.add("small too"));
+			assertTrue(fresh.contains(big));
+			assertFalse(fresh.add(big));
+			assertTrue(fresh.contains("small"));
+			assertTrue(fresh.contains("small too"));
+			// The big item has its own chunk, and the small ones share the first
+			assertEquals(2, fresh.arenaChunks());
+			assertTrue(fresh.remove(big));
+			HashSet<String> iterated = new HashSet<String>();
+			for (String s : fresh) iterated.add(s);
+			assertEquals(new HashSet<String>(Arrays.asList("small", "small too")), iterated);
+		}
+	}
+
+	@Test
+	public void testChunksGrow() {
+		try (OffHeapStringSet fresh = new OffHeapStringSet()) {
+			for (int i = 0; i < 200000; i++) fresh.add("item" + i);
+			assertTrue(fresh.arenaChunks() + " chunks", fresh.arenaChunks() <= 8);
+		}
+	}
+
+	@Test
+	public void testUnpairedSurrogates() {
+		String[] items = { "?", "\ud800", "\udc00", "a\ud800b", "\udc00\ud800", "\ud83d\ude00", "\ud83d" };
+		for (String s : items) assertTrue(s, set.add(s));
+		for (String s : items) assertFalse(s, set.add(s));
+		assertEquals(items.length, set.size());
+		HashSet<String> iterated = new HashSet<String>();
+		for (String s : set) iterated.add(s);
+		assertEquals(new HashSet<String>(Arrays.asList(items)), iterated);
+		assertTrue(set.remove("\ud800"));
+		assertTrue(set.contains("?"));
+		assertFalse(set.contains("\ud800"));
+	}
+
+	@Test
+	public void testClearAndClose() {
+		for (int i = 0; i < 10000; i++) set.add("item" + i);
+		long used = set.offHeapBytes();
+		assertTrue(used > 10000 * 10);
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertTrue(set.offHeapBytes() < used);
+		set.add("hello");
+		set.close();
+		assertEquals(0, set.offHeapBytes());
+		set.close();
+		try {
+			set.contains("hello");
+			fail("Should not be usable after close");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,333 @@
+import java.util.NoSuchElementException;
+
+/**
+ * The open-addressing engine shared by the probing tables of every set in
+ * this package, whatever their keys. Hash codes are cached in an int array
+ * that parallels the keys, and the slot arithmetic, Robin Hood placement,
+ * backward-shift deletion and resizing all work from those hashes, so a
+ * subclass only says how to tell an empty slot and how to move a key. The
+ * keys are whatever kind of array suits them (K), so a table of long keys
+ * holds a long[] and never boxes.
+ *
+ * Subclasses look their keys up themselves, with a loop like
+ *
+ * <pre>
+ * for (int slot = this.home(hash), dist = 0; !this.isEmpty(this.keys, slot); slot = this.next(slot), dist++) {
+ * 	if (this.hashes[slot] == hash &amp;&amp; ...) return slot;
+ * 	if (this.passed(slot, dist)) break;
+ * }
+ * </pre>
+ *
+ * so the key comparison is inlined. They should be final, so the engine's
+ * calls back into them can be bound without a type check.
+ *
+ * The number of slots is always a power of two so that a bitmask can stand in
+ * for the modulus.
+ *
+ * @param <K> The type of the array of keys
+ * @author Cooper Anderson (andersc7).
+ */
+abstract class OpenTable<K> {
+	private static final int MIN_CAPACITY = 2;
+
+	/**
+	 * A cursor over the full slots of the table. It starts at an empty slot
+	 * and walks backwards from there, wrapping around the end of the array,
+	 * until it is back where it started. No cluster can wrap past that empty
+	 * slot, and removing an item only shifts later items of its cluster
+	 * back, so they move from slots the cursor has passed into slots it has
+	 * also passed and none is skipped or seen twice. The owner checks for
+	 * changes made other than through the cursor.
+	 */
+	class Cursor {
+		private int index;
+		private int remaining;
+		private int last = -1;
+
+		Cursor() {
+			int start = 0;
+			while (!OpenTable.this.isEmpty(OpenTable.this.keys, start)) start++;
+			this.index = start;
+			this.remaining = OpenTable.this.hashes.length - 1;
+			this.advance();
+		}
+
+		/**
+		 * Moves the cursor back to the next full slot, leaving no slots
+		 * remaining after the last one
+		 */
+		private void advance() {
+			while (this.remaining > 0) {
+				this.index = (this.index - 1) & OpenTable.this.mask;
+				if (!OpenTable.this.isEmpty(OpenTable.this.keys, this.index)) return;
+				this.remaining--;
+			}
+		}
+
+		boolean hasNext() {
+			return this.remaining > 0;
+		}
+
+		/**
+		 * @return The next full slot
+		 * @throws NoSuchElementException If every slot has been visited
+		 */
+		int next() throws NoSuchElementException {
+			if (this.remaining <= 0) throw new NoSuchElementException();
+			int slot = this.last = this.index;
+			this.remaining--;
+			this.advance();
+			return slot;
+		}
+
+		/**
+		 * Empties the slot last returned by next()
+		 * @throws IllegalStateException If next() has not been called since the last remove()
+		 */
+		void remove() throws IllegalStateException {
+			if (this.last < 0) throw new IllegalStateException();
+			OpenTable.this.removeAt(this.last);
+			this.last = -1;
+		}
+	}
+
+	final boolean robinHood;
+	final double loadFactor;
+
+	K keys;
+	int[] hashes;
+	int size;
+	int mask;
+	private int threshold;
+
+	/**
+	 * Creates an empty table
+	 * @param initialCapacity The number of items the table should hold before growing
+	 * @param loadFactor The fraction of slots that may be filled before growing
+	 * @param robinHood Whether to use Robin Hood displacement instead of plain linear probing
+	 */
+	OpenTable(int initialCapacity, double loadFactor, boolean robinHood) {
+		if (!(loadFactor > 0 && loadFactor < 1)) throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+		this.robinHood = robinHood;
+		this.loadFactor = loadFactor;
+		this.allocate(OpenTable.slotsFor(initialCapacity, loadFactor));
+	}
+
+	/**
+	 * @param slots
+	 * @return An array of keys with every slot empty
+	 */
+	abstract K newKeys(int slots);
+
+	/**
+	 * @param keys
+	 * @param slot
+	 * @return Whether the slot holds no key
+	 */
+	abstract boolean isEmpty(K keys, int slot);
+
+	/**
+	 * Copies a key from one slot to another, possibly in another array
+	 */
+	abstract void move(K from, int fromSlot, K to, int toSlot);
+
+	/**
+	 * Empties a slot
+	 */
+	abstract void clear(K keys, int slot);
+
+	/**
+	 * Finds the smallest power of two number of slots that can hold the given number of items
+	 * @param items The number of items to hold
+	 * @param loadFactor The fraction of slots that may be filled
+	 * @return The number of slots
+	 */
+	static int slotsFor(int items, double loadFactor) {
+		long needed = (long) Math.ceil(items / loadFactor) + 1;
+		int slots = MIN_CAPACITY;
+		while (slots < needed && slots < 1 << 30) slots <<= 1;
+		return slots;
+	}
+
+	private void allocate(int slots) {
+		this.keys = this.newKeys(slots);
+		this.hashes = new int[slots];
+		this.size = 0;
+		this.mask = slots - 1;
+		this.threshold = Math.min((int) (slots * this.loadFactor), slots - 1);
+	}
+
+	/**
+	 * @return The number of slots in the table
+	 */
+	int capacity() {
+		return this.hashes.length;
+	}
+
+	/**
+	 * @return The number of items in the table
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return Whether the next item added will make the table grow
+	 */
+	boolean isFull() {
+		return this.size >= this.threshold;
+	}
+
+	/**
+	 * @param hash
+	 * @return The slot a lookup of the hash starts at
+	 */
+	final int home(int hash) {
+		return hash & this.mask;
+	}
+
+	/**
+	 * @param slot
+	 * @return The slot after it, wrapping around at the end
+	 */
+	final int next(int slot) {
+		return (slot + 1) & this.mask;
+	}
+
+	/**
+	 * How far the item in the given slot sits from the slot its hash points at
+	 * @param slot The slot being checked
+	 * @return The probe distance of that slot
+	 */
+	final int distance(int slot) {
+		return (slot - (this.hashes[slot] & this.mask)) & this.mask;
+	}
+
+	/**
+	 * @param slot The slot a lookup has reached
+	 * @param dist How many slots the lookup has gone past its home slot
+	 * @return Whether the lookup can stop, because Robin Hood would have put
+	 *         the item it wants before an item that is closer to home
+	 */
+	final boolean passed(int slot, int dist) {
+		return this.robinHood && this.distance(slot) < dist;
+	}
+
+	/**
+	 * Counts items by how many slots a lookup of each reads, and empty slots
+	 * as zero
+	 * @param lengths The histogram to add to; its last entry counts longer probes too
+	 * @return The longest probe
+	 */
+	int probeLengths(long[] lengths) {
+		int max = 0;
+		for (int slot = 0; slot < this.hashes.length; slot++) {
+			int length = this.isEmpty(this.keys, slot) ? 0 : this.distance(slot) + 1;
+			lengths[Math.min(length, lengths.length - 1)]++;
+			max = Math.max(max, length);
+		}
+		return max;
+	}
+
+	/**
+	 * Empties the table and gives it room for the given number of items
+	 * @param initialCapacity The number of items the table should hold before growing
+	 */
+	void clear(int initialCapacity) {
+		this.allocate(OpenTable.slotsFor(initialCapacity, this.loadFactor));
+	}
+
+	/**
+	 * Grows the table, if needed, so it holds the given number of items without growing again
+	 * @param items The number of items the table should hold
+	 */
+	void ensureCapacity(int items) {
+		int slots = OpenTable.slotsFor(items, this.loadFactor);
+		if (slots > this.hashes.length) this.resize(slots);
+	}
+
+	/**
+	 * Empties the table without changing its number of slots
+	 */
+	void clearSlots() {
+		for (int slot = 0; slot < this.hashes.length; slot++) {
+			this.clear(this.keys, slot);
+			this.hashes[slot] = 0;
+		}
+		this.size = 0;
+	}
+
+	/**
+	 * Makes room for an item known not to be in the table, growing the table
+	 * first if it is full. The caller stores the key in the slot.
+	 * @param hash The hash code of the item
+	 * @return The slot for the item, whose hash is already set
+	 */
+	int claim(int hash) {
+		if (this.size >= this.threshold) this.resize(this.hashes.length << 1);
+		return this.open(hash);
+	}
+
+	/**
+	 * Finds the slot for a new item and shifts the rest of its cluster one
+	 * slot along to free it. Under Robin Hood that is the first slot whose
+	 * item is closer to home than the new one would be there, which leaves
+	 * every cluster in the order of its home slots, just as displacing one
+	 * item at a time would.
+	 */
+	private int open(int hash) {
+		int slot = hash & this.mask;
+		if (this.robinHood) {
+			for (int dist = 0; !this.isEmpty(this.keys, slot) && this.distance(slot) >= dist; dist++) slot = (slot + 1) & this.mask;
+			int end = slot;
+			while (!this.isEmpty(this.keys, end)) end = (end + 1) & this.mask;
+			for (int to = end; to != slot; ) {
+				int from = (to - 1) & this.mask;
+				this.move(this.keys, from, this.keys, to);
+				this.hashes[to] = this.hashes[from];
+				to = from;
+			}
+		} else {
+			while (!this.isEmpty(this.keys, slot)) slot = (slot + 1) & this.mask;
+		}
+		this.hashes[slot] = hash;
+		this.size++;
+		return slot;
+	}
+
+	/**
+	 * Empties a slot and shifts the rest of its cluster back so no tombstone is needed
+	 * @param slot The slot to empty
+	 */
+	void removeAt(int slot) {
+		int hole = slot;
+		for (int next = (hole + 1) & this.mask; !this.isEmpty(this.keys, next); next = (next + 1) & this.mask) {
+			if (this.robinHood) {
+				if (this.distance(next) == 0) break;
+			} else {
+				// Only move items whose home slot is not between the hole and where they sit
+				int home = this.hashes[next] & this.mask;
+				if (((next - home) & this.mask) < ((next - hole) & this.mask)) continue;
+			}
+			this.move(this.keys, next, this.keys, hole);
+			this.hashes[hole] = this.hashes[next];
+			hole = next;
+		}
+		this.clear(this.keys, hole);
+		this.hashes[hole] = 0;
+		this.size--;
+	}
+
+	/**
+	 * Moves every item into a table with the given number of slots, using the cached hashes
+	 * @param slots The new number of slots, a power of two
+	 */
+	void resize(int slots) {
+		K oldKeys = this.keys;
+		int[] oldHashes = this.hashes;
+		this.allocate(slots);
+		for (int i = 0; i < oldHashes.length; i++) {
+			if (!this.isEmpty(oldKeys, i)) this.move(oldKeys, i, this.keys, this.open(oldHashes[i]));
+		}
+	}
+}
@@ -0,0 +1,287 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A radix tree over the items of a set, which the set keeps up to date as
+ * items are added and removed, so that finding the items with a prefix
+ * takes time in proportion to the prefix and the number of items found
+ * rather than to the size of the set. Edges are not stored as strings:
+ * each node reads the characters on the path to it from one of the items
+ * at or below it, and knows how many items are at or below it, so counting
+ * the items with a prefix never visits them. Children are kept sorted by
+ * their first character, so items come out in String order.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+class PrefixIndex {
+	private static final Node[] NO_CHILDREN = new Node[0];
+	private static final char[] NO_FIRSTS = new char[0];
+
+	/**
+	 * A node of the tree, which stands for the first depth characters of key.
+	 * The first character of each child's edge is kept in firsts as well, so
+	 * finding a child does not have to read every child's key, and both
+	 * arrays leave room to add children without copying every time.
+	 */
+	static class Node {
+		String key;
+		int depth;
+		String item;
+		int count;
+		Node[] children = NO_CHILDREN;
+		char[] firsts = NO_FIRSTS;
+		int fanout;
+
+		Node(String key, int depth) {
+			this.key = key;
+			this.depth = depth;
+		}
+
+		/**
+		 * @param c The first character of the child's edge
+		 * @return The index of the child, or -(insertion point) - 1 if there is none
+		 */
+		int find(char c) {
+			int low = 0, high = this.fanout - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				char first = this.firsts[middle];
+				if (first < c) low = middle + 1;
+				else if (first > c) high = middle - 1;
+				else return middle;
+			}
+			return -(low + 1);
+		}
+
+		void insert(int index, Node child) {
+			if (this.fanout == this.children.length) {
+				int length = Math.max(2, this.fanout * 2);
+				this.children = Arrays.copyOf(this.children, length);
+				this.firsts = Arrays.copyOf(this.firsts, length);
+			}
+			System.arraycopy(this.children, index, this.children, index + 1, this.fanout - index);
+			System.arraycopy(this.firsts, index, this.firsts, index + 1, this.fanout - index);
+			this.children[index] = child;
+			this.firsts[index] = child.key.charAt(this.depth);
+			this.fanout++;
+		}
+
+		void delete(int index) {
+			this.fanout--;
+			System.arraycopy(this.children, index + 1, this.children, index, this.fanout - index);
+			System.arraycopy(this.firsts, index + 1, this.firsts, index, this.fanout - index);
+			this.children[this.fanout] = null;
+		}
+	}
+
+	private Node root = new Node("", 0);
+
+	/**
+	 * @return The number of items in the index
+	 */
+	int size() {
+		return this.root.count;
+	}
+
+	/**
+	 * Removes every item
+	 */
+	void clear() {
+		this.root = new Node("", 0);
+	}
+
+	/**
+	 * Finds the highest node whose path starts with the given prefix
+	 * @param prefix
+	 * @return The node, or null if no item starts with the prefix
+	 */
+	private Node locate(CharSequence prefix) {
+		Node node = this.root;
+		int length = prefix.length();
+		while (node.depth < length) {
+			int index = node.find(prefix.charAt(node.depth));
+			if (index < 0) return null;
+			Node child = node.children[index];
+			int end = Math.min(child.depth, length);
+			for (int i = node.depth + 1; i < end; i++) if (child.key.charAt(i) != prefix.charAt(i)) return null;
+			node = child;
+		}
+		return node;
+	}
+
+	/**
+	 * @param item
+	 * @return Whether the item is in the index
+	 */
+	boolean contains(String item) {
+		Node node = this.locate(item);
+		return node != null && node.depth == item.length() && node.item != null;
+	}
+
+	/**
+	 * Adds an item, splitting the edge where it leaves the tree if it leaves
+	 * partway along one
+	 * @param item
+	 * @return Whether the item was not already in the index
+	 */
+	boolean add(String item) {
+		int length = item.length();
+		Node node = this.root;
+		while (true) {
+			node.count++;
+			if (node.depth == length) {
+				if (node.item != null) {
+					// Already there, so take back the counts on the way down
+					for (node = this.root; node.depth < length; node = node.children[node.find(item.charAt(node.depth))]) node.count--;
+					node.count--;
+					return false;
+				}
+				node.item = item;
+				return true;
+			}
+			int index = node.find(item.charAt(node.depth));
+			if (index < 0) {
+				Node leaf = new Node(item, length);
+				leaf.item = item;
+				leaf.count = 1;
+				node.insert(-index - 1, leaf);
+				return true;
+			}
+			Node child = node.children[index];
+			int common = node.depth + 1;
+			int end = Math.min(child.depth, length);
+			while (common < end && child.key.charAt(common) == item.charAt(common)) common++;
+			if (common == child.depth) {
+				node = child;
+				continue;
+			}
+			// The item leaves the tree partway along the edge to child
+			Node middle = new Node(child.key, common);
+			middle.count = child.count;
+			middle.children = new Node[] { child, null };
+			middle.firsts = new char[] { child.key.charAt(common), 0 };
+			middle.fanout = 1;
+			node.children[index] = middle;
+			node = middle;
+		}
+	}
+
+	/**
+	 * Removes an item. A node left with no item and one child is replaced by
+	 * that child, and nodes that read their path from the removed item read
+	 * it from another one instead, so the index never keeps a removed item.
+	 * @param item
+	 * @return Whether the item was in the index
+	 */
+	boolean remove(String item) {
+		if (!this.contains(item)) return false;
+		int length = item.length();
+		Node parent = null, node = this.root;
+		while (node.depth < length) {
+			node.count--;
+			parent = node;
+			node = node.children[node.find(item.charAt(node.depth))];
+		}
+		node.count--;
+		node.item = null;
+		if (parent != null) {
+			int index = parent.find(item.charAt(parent.depth));
+			if (node.fanout == 0) parent.delete(index);
+			else if (node.fanout == 1) parent.children[index] = node.children[0];
+			if (parent != this.root && parent.item == null && parent.fanout == 1) {
+				Node grandparent = this.root;
+				while (grandparent.children[grandparent.find(item.charAt(grandparent.depth))] != parent) {
+					grandparent = grandparent.children[grandparent.find(item.charAt(grandparent.depth))];
+				}
+				grandparent.children[grandparent.find(item.charAt(grandparent.depth))] = parent.children[0];
+			}
+		}
+		for (node = this.root; node != null && node.depth <= length; ) {
+			if (node != this.root && node.key == item) node.key = node.item != null ? node.item : node.children[0].key != item ? node.children[0].key : node.children[1].key;
+			if (node.depth == length) break;
+			int index = node.find(item.charAt(node.depth));
+			node = index < 0 ? null : node.children[index];
+		}
+		return true;
+	}
+
+	/**
+	 * @param prefix
+	 * @return The number of items that start with the prefix
+	 */
+	int countWithPrefix(CharSequence prefix) {
+		Node node = this.locate(prefix);
+		return node == null ? 0 : node.count;
+	}
+
+	/**
+	 * Passes every item that starts with the prefix to the action, in String
+	 * order
+	 * @param prefix
+	 * @param action
+	 */
+	void forEachWithPrefix(CharSequence prefix, Consumer<? super String> action) {
+		Node top = this.locate(prefix);
+		if (top == null) return;
+		Node[] stack = new Node[16];
+		stack[0] = top;
+		for (int size = 1; size > 0; ) {
+			Node node = stack[--size];
+			if (node.item != null) action.accept(node.item);
+			if (size + node.fanout > stack.length) stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + node.fanout));
+			for (int i = node.fanout - 1; i >= 0; i--) stack[size++] = node.children[i];
+		}
+	}
+
+	/**
+	 * @param prefix
+	 * @return The items that start with the prefix, in String order
+	 */
+	List<String> prefixQuery(CharSequence prefix) {
+		List<String> items = new ArrayList<String>(this.countWithPrefix(prefix));
+		this.forEachWithPrefix(prefix, items::add);
+		return items;
+	}
+
+	/**
+	 * Finds the items that match a glob, only looking at the items that start
+	 * with the part of the glob before its first wildcard
+	 * @param glob A pattern where * matches any run of characters and ? any one character
+	 * @return The matching items, in String order
+	 */
+	List<String> globQuery(String glob) {
+		int literal = 0;
+		while (literal < glob.length() && glob.charAt(literal) != '*' && glob.charAt(literal) != '?') literal++;
+		List<String> items = new ArrayList<String>();
+		this.forEachWithPrefix(glob.substring(0, literal), item -> {
+			if (PrefixIndex.matches(glob, item)) items.add(item);
+		});
+		return items;
+	}
+
+	/**
+	 * Matches an item against a glob, going back to the last * on a mismatch
+	 * @param glob A pattern where * matches any run of characters and ? any one character
+	 * @param item
+	 * @return Whether the whole item matches the whole glob
+	 */
+	static boolean matches(String glob, String item) {
+		int g = 0, i = 0, star = -1, resume = 0;
+		while (i < item.length()) {
+			if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) != '*' && glob.charAt(g) == item.charAt(i))) {
+				g++;
+				i++;
+			} else if (g < glob.length() && glob.charAt(g) == '*') {
+				star = g++;
+				resume = i;
+			} else if (star >= 0) {
+				g = star + 1;
+				i = ++resume;
+			} else return false;
+		}
+		while (g < glob.length() && glob.charAt(g) == '*') g++;
+		return g == glob.length();
+	}
+}
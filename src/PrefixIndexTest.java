@@ -0,0 +1,103 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrefixIndexTest {
+	private PrefixIndex index;
+
+	@Before
+	public void setUp() {
+		index = new PrefixIndex();
+	}
+
+	private static List<String> withPrefix(TreeSet<String> oracle, String prefix) {
+		List<String> items = new ArrayList<String>();
+		for (String item : oracle.tailSet(prefix)) {
+			if (!item.startsWith(prefix)) break;
+			items.add(item);
+		}
+		return items;
+	}
+
+	@Test
+	public void testAddAndQuery() {
+		String[] items = { "romane", "romanus", "romulus", "rubens", "ruber", "rubicon", "rubicundus", "", "r", "rom" };
+		for (String item : items) assertTrue(item, index.add(item));
+		for (String item : items) assertFalse(item, index.add(item));
+		assertEquals(items.length, index.size());
+		for (String item : items) assertTrue(item, index.contains(item));
+		assertFalse(index.contains("ro"));
+		assertFalse(index.contains("romanes"));
+		assertEquals(Arrays.asList("rom", "romane", "romanus", "romulus"), index.prefixQuery("rom"));
+		assertEquals(Arrays.asList("romane", "romanus"), index.prefixQuery("roma"));
+		assertEquals(4, index.countWithPrefix("rub"));
+		assertEquals(2, index.countWithPrefix("rubic"));
+		assertEquals(1, index.countWithPrefix("rubicu"));
+		assertEquals(0, index.countWithPrefix("rubix"));
+		assertEquals(0, index.countWithPrefix("rubicundusx"));
+		assertEquals(items.length, index.countWithPrefix(""));
+		assertEquals(Arrays.asList(), index.prefixQuery("x"));
+	}
+
+	@Test
+	public void testRemove() {
+		String[] items = { "romane", "romanus", "romulus", "rubens", "ruber", "rubicon", "rubicundus" };
+		for (String item : items) index.add(item);
+		assertTrue(index.remove("romanus"));
+		assertFalse(index.remove("romanus"));
+		assertFalse(index.remove("roman"));
+		assertEquals(Arrays.asList("romane", "romulus"), index.prefixQuery("rom"));
+		assertTrue(index.remove("romane"));
+		assertEquals(Arrays.asList("romulus"), index.prefixQuery("rom"));
+		assertEquals(1, index.countWithPrefix("romu"));
+		for (String item : items) index.remove(item);
+		assertEquals(0, index.size());
+		assertEquals(Arrays.asList(), index.prefixQuery(""));
+	}
+
+	@Test
+	public void testGlob() {
+		String[] items = { "id-1", "id-12", "id-123", "id-2", "key-1", "kid-1", "id-" };
+		for (String item : items) index.add(item);
+		assertEquals(Arrays.asList("id-1", "id-12", "id-123"), index.globQuery("id-1*"));
+		assertEquals(Arrays.asList("id-1", "id-2"), index.globQuery("id-?"));
+		assertEquals(Arrays.asList("id-1", "id-2", "key-1", "kid-1"), index.globQuery("*-?"));
+		assertEquals(Arrays.asList("id-12", "id-123", "id-2"), index.globQuery("*2*"));
+		assertEquals(Arrays.asList("id-123"), index.globQuery("id-123"));
+		assertTrue(PrefixIndex.matches("*", ""));
+		assertTrue(PrefixIndex.matches("a*b*c", "aXbYbZc"));
+		assertFalse(PrefixIndex.matches("a*b?c", "abc"));
+	}
+
+	/**
+	 * @return Up to six letters from a, b and c, so items share prefixes often
+	 */
+	private static String randomItem(Random random) {
+		StringBuilder sb = new StringBuilder();
+		for (int length = random.nextInt(7); length > 0; length--) sb.append((char) ('a' + random.nextInt(3)));
+		return sb.toString();
+	}
+
+	@Test
+	public void testMatchesTreeSet() {
+		Random random = new Random(230);
+		TreeSet<String> oracle = new TreeSet<String>();
+		for (int round = 0; round < 100; round++) {
+			SetOracle.check(oracle, random, 1000, PrefixIndexTest::randomItem, index::add, index::remove, index::contains);
+			String prefix = PrefixIndexTest.randomItem(random);
+			assertEquals(withPrefix(oracle, prefix), index.prefixQuery(prefix));
+			assertEquals(withPrefix(oracle, prefix).size(), index.countWithPrefix(prefix));
+		}
+		assertEquals(oracle.size(), index.size());
+		assertEquals(new ArrayList<String>(oracle), index.prefixQuery(""));
+	}
+}
@@ -0,0 +1,236 @@
+import java.util.Arrays;
+
+/**
+ * The open-addressing storage behind a StringHashSet. Items live in one flat
+ * array of slots with their hash codes cached in a parallel int array, so a
+ * probe never follows a pointer or recomputes a hash. Deletion shifts the rest
+ * of the cluster back instead of leaving tombstones, so probe sequences never
+ * get longer because of removals. The slot handling itself is OpenTable's;
+ * this class adds the String lookups and the parallel build.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+final class ProbingTable extends OpenTable<String[]> {
+
+	/**
+	 * The items a thread could not place in its own range of slots during a
+	 * parallel build, with their hashes
+	 */
+	static class Overflow {
+		String[] keys = new String[4];
+		int[] hashes = new int[4];
+		int size;
+
+		void add(String key, int hash) {
+			if (this.size == this.keys.length) {
+				this.keys = Arrays.copyOf(this.keys, this.size * 2);
+				this.hashes = Arrays.copyOf(this.hashes, this.size * 2);
+			}
+			this.keys[this.size] = key;
+			this.hashes[this.size++] = hash;
+		}
+	}
+
+	/**
+	 * Creates an empty table
+	 * @param initialCapacity The number of items the table should hold before growing
+	 * @param loadFactor The fraction of slots that may be filled before growing
+	 * @param robinHood Whether to use Robin Hood displacement instead of plain linear probing
+	 */
+	ProbingTable(int initialCapacity, double loadFactor, boolean robinHood) {
+		super(initialCapacity, loadFactor, robinHood);
+	}
+
+	@Override
+	String[] newKeys(int slots) {
+		return new String[slots];
+	}
+
+	@Override
+	boolean isEmpty(String[] keys, int slot) {
+		return keys[slot] == null;
+	}
+
+	@Override
+	void move(String[] from, int fromSlot, String[] to, int toSlot) {
+		to[toSlot] = from[fromSlot];
+	}
+
+	@Override
+	void clear(String[] keys, int slot) {
+		keys[slot] = null;
+	}
+
+	/**
+	 * Finds the slot holding an item
+	 * @param item The string being searched for
+	 * @param hash The hash code of the string
+	 * @return The slot holding the item, or -1 if it is not in the table
+	 */
+	int find(String item, int hash) {
+		int slot = hash & this.mask;
+		for (int dist = 0; ; dist++) {
+			String key = this.keys[slot];
+			if (key == null) return -1;
+			if (this.hashes[slot] == hash && key.equals(item)) return slot;
+			if (this.robinHood && this.distance(slot) < dist) return -1;
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	/**
+	 * Looks for a UTF-8 encoded string without decoding it
+	 * @param utf8 The array holding the string
+	 * @param offset The index of its first byte
+	 * @param length The number of bytes in it
+	 * @param hash The hash code of the string
+	 * @return Whether it is in the table
+	 */
+	boolean containsUtf8(byte[] utf8, int offset, int length, int hash) {
+		int slot = hash & this.mask;
+		for (int dist = 0; ; dist++) {
+			String key = this.keys[slot];
+			if (key == null) return false;
+			if (this.hashes[slot] == hash && StringHasher.equalsUtf8(key, utf8, offset, length)) return true;
+			if (this.robinHood && this.distance(slot) < dist) return false;
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	/**
+	 * Looks up a batch of items whose hashes are known. The home slots of the
+	 * whole batch are read before any item is compared, so their cache misses
+	 * overlap.
+	 * @param items The strings being searched for
+	 * @param hashes The hash codes of items[from] to items[to - 1]
+	 * @param stored Scratch space for the hashes in the home slots
+	 * @param keys Scratch space for the items in the home slots
+	 * @param from The first item to look up
+	 * @param to One past the last item to look up
+	 * @param out Where to store whether each item was found
+	 * @return The number of items found
+	 */
+	int findAll(String[] items, int[] hashes, int[] stored, String[] keys, int from, int to, boolean[] out) {
+		for (int i = 0; i < to - from; i++) {
+			int slot = hashes[i] & this.mask;
+			stored[i] = this.hashes[slot];
+			keys[i] = this.keys[slot];
+		}
+		int found = 0;
+		for (int i = from; i < to; i++) {
+			int hash = hashes[i - from];
+			String key = keys[i - from];
+			if (key == null) out[i] = false;
+			else if (stored[i - from] == hash && key.equals(items[i])) out[i] = true;
+			else out[i] = this.find(items[i], hash) >= 0;
+			if (out[i]) found++;
+		}
+		return found;
+	}
+
+	/**
+	 * Adds an item if it is not there already, growing the table first if it is full
+	 * @param item The string to be added
+	 * @param hash The hash code of the string
+	 * @return If the table changed
+	 */
+	boolean add(String item, int hash) {
+		if (this.find(item, hash) >= 0) return false;
+		// The table may grow, so claim the slot before reading keys
+		int slot = this.claim(hash);
+		this.keys[slot] = item;
+		return true;
+	}
+
+	/**
+	 * Finds the slot holding any sequence of characters, without making a String of it
+	 * @param item The characters being searched for
+	 * @param hash The hash code of the characters
+	 * @return The slot holding an equal String, or -1 if it is not in the table
+	 */
+	int find(CharSequence item, int hash) {
+		int slot = hash & this.mask;
+		for (int dist = 0; ; dist++) {
+			String key = this.keys[slot];
+			if (key == null) return -1;
+			if (this.hashes[slot] == hash && key.contentEquals(item)) return slot;
+			if (this.robinHood && this.distance(slot) < dist) return -1;
+			slot = (slot + 1) & this.mask;
+		}
+	}
+
+	/**
+	 * Adds an item during a parallel build, in which each thread owns a range
+	 * of slots and the items whose home slot is in it. The probe never goes
+	 * past the end of the range; an item that would have to, whether it is
+	 * the new one or one Robin Hood displaced, goes to the overflow instead.
+	 * The size is not kept up to date until finishBuild().
+	 * @param item The string to be added
+	 * @param hash The hash code of the string
+	 * @param end One past the last slot of the range
+	 * @param overflow Where to put an item that does not fit in the range
+	 */
+	void addBefore(String item, int hash, int end, Overflow overflow) {
+		int slot = hash & this.mask;
+		for (int dist = 0; slot < end; dist++, slot++) {
+			String key = this.keys[slot];
+			if (key == null || (this.robinHood && this.distance(slot) < dist)) break;
+			if (this.hashes[slot] == hash && key.equals(item)) return;
+		}
+		slot = hash & this.mask;
+		for (int dist = 0; slot < end && this.keys[slot] != null; dist++, slot++) {
+			if (!this.robinHood) continue;
+			int existing = this.distance(slot);
+			if (existing < dist) {
+				String key = this.keys[slot];
+				int keyHash = this.hashes[slot];
+				this.keys[slot] = item;
+				this.hashes[slot] = hash;
+				item = key;
+				hash = keyHash;
+				dist = existing;
+			}
+		}
+		if (slot == end) {
+			overflow.add(item, hash);
+			return;
+		}
+		this.keys[slot] = item;
+		this.hashes[slot] = hash;
+	}
+
+	/**
+	 * Finishes a parallel build by counting the items and adding the overflow
+	 * of every range
+	 * @param overflows The items that did not fit in their ranges
+	 */
+	void finishBuild(Overflow[] overflows) {
+		int size = 0;
+		for (String key : this.keys) if (key != null) size++;
+		this.size = size;
+		for (Overflow overflow : overflows) for (int i = 0; i < overflow.size; i++) this.add(overflow.keys[i], overflow.hashes[i]);
+	}
+
+	/**
+	 * Removes an item from the table if it is there
+	 * @param item The string to be removed
+	 * @param hash The hash code of the string
+	 * @return If the table changed
+	 */
+	boolean remove(String item, int hash) {
+		int slot = this.find(item, hash);
+		if (slot < 0) return false;
+		this.removeAt(slot);
+		return true;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < this.keys.length; i++) {
+			sb.append(i).append(": ");
+			if (this.keys[i] != null) sb.append(this.keys[i]).append(' ');
+			sb.append("null\n");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,126 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith(Parameterized.class)
+public class ProbingTableTest {
+	private static final String[] HELLOS = { "hello", "hi", "caio", "hola", "shalom", "bonjour", "ni-hao", "aloha", "tere", "sveiki" };
+
+	private final StringHashSet.Storage storage;
+
+	public ProbingTableTest(StringHashSet.Storage storage) {
+		this.storage = storage;
+	}
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> storages() {
+		return Arrays.asList(new Object[][] { { StringHashSet.Storage.LINEAR_PROBING }, { StringHashSet.Storage.ROBIN_HOOD } });
+	}
+
+	private StringHashSet newSet() {
+		return new StringHashSet(5, this.storage);
+	}
+
+	@Test
+	public void testAddContainsRemove() {
+		StringHashSet set = newSet();
+		for (String s : HELLOS) assertTrue(set.add(s));
+		for (String s : HELLOS) assertFalse(set.add(s));
+		assertEquals(10, set.size());
+		for (String s : HELLOS) assertTrue(set.contains(s));
+		assertFalse(set.contains("mulishani"));
+		assertTrue(set.remove("hello"));
+		assertFalse(set.remove("hello"));
+		assertFalse(set.contains("hello"));
+		assertTrue(set.contains("aloha"));
+		assertEquals(9, set.size());
+	}
+
+	@Test
+	public void testClear() {
+		StringHashSet set = newSet();
+		set.addAll(Arrays.asList(HELLOS));
+		set.clear();
+		assertTrue(set.isEmpty());
+		assertFalse(set.contains("hello"));
+		assertTrue(set.add("hello"));
+		assertEquals("[hello]", set.toString());
+	}
+
+	@Test
+	public void testLoadFactor() {
+		StringHashSet set = new StringHashSet(0, this.storage, 0.5);
+		for (int i = 0; i < 1000; i++) set.add("item" + i);
+		assertEquals(1000, set.size());
+		assertEquals(2048, set.toRawString().split("\n").length);
+		try {
+			new StringHashSet(5, this.storage, 1.0);
+			fail("Probing tables cannot be completely full");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCollidingRemoves() {
+		// "Aa" and "BB" share a hash code, as does every concatenation of them
+		List<String> colliding = new ArrayList<String>();
+		for (int i = 0; i < 64; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int bit = 0; bit < 6; bit++) sb.append((i & (1 << bit)) != 0 ? "Aa" : "BB");
+			colliding.add(sb.toString());
+		}
+		StringHashSet set = newSet();
+		set.addAll(colliding);
+		for (int i = 0; i < colliding.size(); i += 2) assertTrue(set.remove(colliding.get(i)));
+		for (int i = 0; i < colliding.size(); i++) assertEquals(i % 2 == 1, set.contains(colliding.get(i)));
+	}
+
+	@Test
+	public void testMatchesHashSet() {
+		StringHashSet set = newSet();
+		HashSet<String> oracle = new HashSet<String>();
+		SetOracle.check(oracle, new Random(230), 100000, random -> Integer.toString(random.nextInt(2000)), set::add, set::remove, set::contains);
+		assertEquals(oracle.size(), set.size());
+		SetOracle.assertSameItems(oracle, set);
+	}
+
+	@Test
+	public void testIterator() {
+		StringHashSet set = newSet();
+		set.addAll(Arrays.asList(HELLOS));
+		Iterator<String> iter = set.iterator();
+		for (int i = 0; i < HELLOS.length; i++) assertTrue(set.contains(iter.next()));
+		assertFalse(iter.hasNext());
+		try {
+			iter.next();
+			fail("Should have thrown NoSuchElementException");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+		iter = set.iterator();
+		set.add("item");
+		try {
+			iter.next();
+			fail("Should have thrown ConcurrentModificationException");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+	}
+}
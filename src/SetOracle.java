@@ -0,0 +1,59 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Checks a set against one from java.util by running the same random mix of
+ * adds, removes and lookups on both and comparing every answer. The set is
+ * reached through lambdas, so the same check serves sets of Strings, byte
+ * arrays and longs, and whichever add() or contains() overload a test wants
+ * to exercise.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+final class SetOracle {
+
+	private SetOracle() {
+	}
+
+	/**
+	 * Applies a random operation to both sets, a third each of adds, removes
+	 * and lookups, the given number of times
+	 * @param oracle The java.util set standing in for the one under test
+	 * @param random The source of the operations
+	 * @param operations How many to run
+	 * @param items Picks the item for the next operation
+	 * @param add The set's add(), returning whether it changed the set
+	 * @param remove The set's remove(), returning whether it changed the set
+	 * @param contains The set's contains()
+	 */
+	static <T> void check(Set<T> oracle, Random random, int operations, Function<Random, T> items, Predicate<T> add, Predicate<T> remove, Predicate<T> contains) {
+		for (int i = 0; i < operations; i++) {
+			T item = items.apply(random);
+			switch (random.nextInt(3)) {
+			case 0:
+				assertEquals("add " + item, oracle.add(item), add.test(item));
+				break;
+			case 1:
+				assertEquals("remove " + item, oracle.remove(item), remove.test(item));
+				break;
+			default:
+				assertEquals("contains " + item, oracle.contains(item), contains.test(item));
+			}
+		}
+	}
+
+	/**
+	 * Checks that iterating a set gives every item of the oracle once and nothing else
+	 */
+	static <T> void assertSameItems(Set<T> oracle, Iterable<T> set) {
+		Set<T> iterated = new HashSet<T>();
+		for (T item : set) assertTrue("seen twice: " + item, iterated.add(item));
+		assertEquals(oracle, iterated);
+	}
+}
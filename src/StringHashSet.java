@@ -1,7 +1,30 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  *
@@ -15,17 +38,94 @@ public class StringHashSet implements Iterable<String> {
 	// The initial size of the internal array.
 	private static final int DEFAULT_CAPACITY = 5;
 
+	// How many old buckets each add or remove moves during an incremental resize
+	private static final int MIGRATION_STEP = 4;
+
+	// How many items containsBatch() hashes and probes together
+	private static final int BATCH = 16;
+
+	// How many items a set operation has to scan before it is split over the common ForkJoinPool
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	// The starting size of the buffer addAllFrom() reads into and writeTo() writes from
+	private static final int IO_BUFFER = 1 << 16;
+
+	// The shortest chain that gets a TreeBin, for the default load factor
+	private static final int TREEIFY_THRESHOLD = 16;
+
+	/**
+	 * The ways a StringHashSet can lay out its items in memory
+	 */
+	public enum Storage {
+		/** Separate chaining through linked Nodes, one list per bucket */
+		CHAINED(2),
+		/** Open addressing over flat arrays, probing linearly on collisions */
+		LINEAR_PROBING(0.75),
+		/** Open addressing where items that are farther from home displace closer ones */
+		ROBIN_HOOD(0.9);
+
+		private final double defaultLoadFactor;
+
+		Storage(double defaultLoadFactor) {
+			this.defaultLoadFactor = defaultLoadFactor;
+		}
+
+		/**
+		 * @return The load factor used when none is given
+		 */
+		public double defaultLoadFactor() {
+			return this.defaultLoadFactor;
+		}
+	}
+
+	/**
+	 * The ways contains() can reorder a chain when it finds an item, so that
+	 * frequently requested items are found sooner next time
+	 */
+	public enum Reordering {
+		/** Leave the chain alone, so contains() never writes */
+		NONE,
+		/** Move the item to the front of its chain */
+		MOVE_TO_FRONT,
+		/** Swap the item with the one in front of it */
+		TRANSPOSE,
+		/** Count hits per item and keep each chain sorted by its counts */
+		FREQUENCY_COUNT
+	}
+
+	private final Storage storage;
+	private final double loadFactor;
+	private final StringHasher hasher;
+	private final boolean powerOfTwo;
+	private final int treeifyThreshold;
+	private boolean incremental;
+	private Reordering reordering = Reordering.NONE;
+	private int reorderThreshold;
 	private int size;
 	private int capacity;
+	private int minCapacity;
+	private int mask;
 	private Node[] array;
+	private Node[] oldArray;
+	private int migrated;
+	private ProbingTable table;
 	private int changes;
+	private StringHashSetMetrics metrics;
+	private ObjectName metricsName;
+	private PrefixIndex prefixIndex;
+	private BloomFilter filter;
+	private int filterBitsPerItem;
+	private int filterHashes;
+	private int filterStale;
 
 	/**
 	 * A LinkedList<String> designed for the StringHashSet program
 	 */
 	static class Node implements Iterable<String> {
-		private String data;
-		private Node next;
+		String data;
+		Node next;
+		int hash;
+		int hits;
 
 		Node() {
 			this.data = null;
@@ -41,13 +141,26 @@ public class StringHashSet implements Iterable<String> {
 		 * @return If the add was successful
 		 */
 		boolean add(String item) {
-			if (this.data == null) this.data = item;
-			else {
+			return this.add(item, StringHashSet.stringHashCode(item));
+		}
+
+		/**
+		 * Add a new item to the LinkedList along with its hash code
+		 * @param item The string to be added
+		 * @param hash The hash code of the string, kept so it never has to be computed again
+		 * @return If the add was successful
+		 */
+		boolean add(String item, int hash) {
+			if (this.data != null) {
 				Node node = new Node(this.data);
 				node.next = this.next;
+				node.hash = this.hash;
+				node.hits = this.hits;
 				this.next = node;
-				this.data = item;
+				this.hits = 0;
 			}
+			this.data = item;
+			this.hash = hash;
 			return true;
 		}
 
@@ -57,16 +170,30 @@ public class StringHashSet implements Iterable<String> {
 		 * @return If the remove was successful
 		 */
 		boolean remove(String item) {
-			if (this.data.equals(item)) {
-				this.data = this.next != null ? this.next.data : null;
-				this.next = this.next != null ? this.next.next : null;
+			return this.remove(item, StringHashSet.stringHashCode(item));
+		}
+
+		/**
+		 * Remove an item from the LinkedList
+		 * @param item The string to be removed
+		 * @param hash The hash code of the string
+		 * @return If the remove was successful
+		 */
+		boolean remove(String item, int hash) {
+			if (this.data == null) return false;
+			if (this.hash == hash && this.data.equals(item)) {
+				Node next = this.next;
+				this.data = next != null ? next.data : null;
+				this.hash = next != null ? next.hash : 0;
+				this.hits = next != null ? next.hits : 0;
+				this.next = next != null ? next.next : null;
 				return true;
-			} else if (this.next != null) {
-				if (this.next.data.equals(item)) {
-					this.next = this.next.next;
+			}
+			for (Node prev = this; prev.next != null; prev = prev.next) {
+				if (prev.next.hash == hash && prev.next.data.equals(item)) {
+					prev.next = prev.next.next;
 					return true;
 				}
-				else return this.next.remove(item);
 			}
 			return false;
 		}
@@ -88,8 +215,83 @@ public class StringHashSet implements Iterable<String> {
 		 */
 		boolean get(String item) {
 			if (this.data == null) return false;
-			if (this.data.equals(item)) return true;
-			return this.next != null && this.next.get(item);
+			for (Node node = this; node != null; node = node.next) if (node.data.equals(item)) return true;
+			return false;
+		}
+
+		/**
+		 * Run through the list for the String holding the given characters,
+		 * without reordering it
+		 * @param item The characters being searched for in the list
+		 * @param hash The hash code of the characters
+		 * @return The String in the list, or null if it is not there
+		 */
+		String find(CharSequence item, int hash) {
+			if (this.data == null) return null;
+			for (Node node = this; node != null; node = node.next) if (node.hash == hash && node.data.contentEquals(item)) return node.data;
+			return null;
+		}
+
+		/**
+		 * Run through the list, check if an item exists, and reorder the list
+		 * according to the given policy if it is found deep enough. Never
+		 * allocates.
+		 * @param item The string being searched for in the list
+		 * @param hash The hash code of the string
+		 * @param policy How to reorder the list on a hit
+		 * @param threshold How many nodes deep a hit has to be before the list is reordered
+		 * @return If the search was successful
+		 */
+		boolean get(String item, int hash, Reordering policy, int threshold) {
+			if (this.data == null) return false;
+			Node prev = null;
+			int depth = 0;
+			for (Node node = this; node != null; prev = node, node = node.next, depth++) {
+				if (node.hash != hash || !node.data.equals(item)) continue;
+				if (policy == Reordering.FREQUENCY_COUNT && node.hits < Integer.MAX_VALUE) node.hits++;
+				if (depth < threshold || depth == 0) return true;
+				switch (policy) {
+				case MOVE_TO_FRONT:
+					this.moveBefore(this, prev, node);
+					break;
+				case TRANSPOSE:
+					this.moveBefore(prev, prev, node);
+					break;
+				case FREQUENCY_COUNT:
+					Node target = this;
+					while (target != node && target.hits >= node.hits) target = target.next;
+					if (target != node) this.moveBefore(target, prev, node);
+					break;
+				default:
+				}
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Moves a node so that it sits directly in front of an earlier node in
+		 * this list. Nodes are relinked and their contents swapped, so the
+		 * head of the list stays the same object.
+		 * @param target The earlier node to move in front of
+		 * @param prev The node directly before the node being moved
+		 * @param node The node being moved
+		 */
+		private void moveBefore(Node target, Node prev, Node node) {
+			if (target.next != node) {
+				prev.next = node.next;
+				node.next = target.next;
+				target.next = node;
+			}
+			String data = target.data;
+			target.data = node.data;
+			node.data = data;
+			int hash = target.hash;
+			target.hash = node.hash;
+			node.hash = hash;
+			int hits = target.hits;
+			target.hits = node.hits;
+			node.hits = hits;
 		}
 
 		/**
@@ -98,7 +300,7 @@ public class StringHashSet implements Iterable<String> {
 		 * @return If the operation was successful
 		 */
 		boolean moveToFront(String item) {
-			return this.remove(item) && this.add(item);
+			return this.get(item, StringHashSet.stringHashCode(item), Reordering.MOVE_TO_FRONT, 0);
 		}
 
 		public String toString() {
@@ -131,6 +333,100 @@ public class StringHashSet implements Iterable<String> {
 		}
 	}
 
+	/**
+	 * A chain that has grown long enough to suggest its items were chosen to
+	 * collide. The chain stays as it is, so everything that walks chains
+	 * still works, but the head also keeps a red-black tree of the items
+	 * mapped to the nodes that hold them, so lookups, adds and removes take
+	 * O(log n) time however many items share the bucket, even if they share
+	 * a hash code. Only the head of a bucket is ever a TreeBin, and resizing
+	 * turns it back into a plain chain.
+	 */
+	static class TreeBin extends Node {
+		private final TreeMap<String, Node> index = new TreeMap<String, Node>();
+
+		/**
+		 * Takes over a chain, with this as its new head
+		 * @param list The head of the chain
+		 */
+		TreeBin(Node list) {
+			super(list.data);
+			this.hash = list.hash;
+			this.hits = list.hits;
+			this.next = list.next;
+			this.index.put(this.data, this);
+			for (Node node = this.next; node != null; node = node.next) this.index.put(node.data, node);
+		}
+
+		@Override
+		boolean add(String item, int hash) {
+			boolean shifted = this.data != null;
+			super.add(item, hash);
+			if (shifted) this.index.put(this.next.data, this.next);
+			this.index.put(item, this);
+			return true;
+		}
+
+		/**
+		 * Removes an item by moving the head's item into the node that held
+		 * it and then dropping the head, so no earlier node has to be found
+		 */
+		@Override
+		boolean remove(String item, int hash) {
+			Node node = this.index.remove(item);
+			if (node == null) return false;
+			if (node != this) {
+				node.data = this.data;
+				node.hash = this.hash;
+				node.hits = this.hits;
+				this.index.put(node.data, node);
+			}
+			Node next = this.next;
+			this.data = next != null ? next.data : null;
+			this.hash = next != null ? next.hash : 0;
+			this.hits = next != null ? next.hits : 0;
+			this.next = next != null ? next.next : null;
+			if (next != null) this.index.put(this.data, this);
+			return true;
+		}
+
+		@Override
+		boolean get(String item) {
+			return this.data != null && this.index.containsKey(item);
+		}
+
+		/**
+		 * Looks a String up in the tree; other characters have no order
+		 * against the keys, so they walk the chain
+		 */
+		@Override
+		String find(CharSequence item, int hash) {
+			if (this.data == null || !(item instanceof String)) return super.find(item, hash);
+			Node node = this.index.get(item);
+			return node == null ? null : node.data;
+		}
+
+		/**
+		 * The tree already finds every item quickly, so hits never reorder it
+		 */
+		@Override
+		boolean get(String item, int hash, Reordering policy, int threshold) {
+			return this.data != null && this.index.containsKey(item);
+		}
+
+		/**
+		 * @return A plain head for the same chain, or null if the bin is empty
+		 */
+		Node toChain() {
+			if (this.data == null) return null;
+			Node head = new Node(this.data);
+			head.hash = this.hash;
+			head.hits = this.hits;
+			head.next = this.next;
+			return head;
+		}
+	}
+
 	/**
 	 * Creates a Hash Set with the default capacity.
 	 */
@@ -143,235 +439,2081 @@ public class StringHashSet implements Iterable<String> {
 	 * Creates a Hash Set with the given capacity.
 	 */
 	public StringHashSet(int initialCapacity) {
+		this(initialCapacity, Storage.CHAINED, Storage.CHAINED.defaultLoadFactor(), StringHasher.POLYNOMIAL, false);
+	}
+
+	/**
+	 * Creates a Hash Set with the given capacity and storage layout, using the
+	 * layout's default load factor. The capacity is rounded up to a power of
+	 * two so buckets can be found with a bitmask, and the set hashes with its
+	 * own randomly seeded hasher, so nobody can choose strings that collide in
+	 * it without seeing it.
+	 */
+	public StringHashSet(int initialCapacity, Storage storage) {
+		this(initialCapacity, storage, storage.defaultLoadFactor());
+	}
+
+	/**
+	 * Creates a Hash Set with the given capacity, storage layout and load
+	 * factor. The load factor is the number of items per bucket (chained) or
+	 * the fraction of filled slots (probing) allowed before the table doubles,
+	 * so probing layouts need a load factor below 1. The set hashes with its
+	 * own StringHasher.randomized() hasher.
+	 */
+	public StringHashSet(int initialCapacity, Storage storage, double loadFactor) {
+		this(initialCapacity, storage, loadFactor, StringHasher.randomized());
+	}
+
+	/**
+	 * Creates a Hash Set with the given capacity, storage layout, load factor
+	 * and hash function. Each item's hash is computed once when it is added
+	 * and kept alongside it, so growing the table never hashes again.
+	 */
+	public StringHashSet(int initialCapacity, Storage storage, double loadFactor, StringHasher hasher) {
+		this(initialCapacity, storage, loadFactor, hasher, true);
+	}
+
+	private StringHashSet(int initialCapacity, Storage storage, double loadFactor, StringHasher hasher, boolean powerOfTwo) {
+		if (storage == null || hasher == null) throw new NullPointerException();
+		if (!(loadFactor > 0) || (storage != Storage.CHAINED && loadFactor >= 1)) throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+		this.storage = storage;
+		this.loadFactor = loadFactor;
+		this.hasher = hasher;
+		this.powerOfTwo = powerOfTwo;
+		this.treeifyThreshold = (int) Math.min(Integer.MAX_VALUE, Math.max(TREEIFY_THRESHOLD, Math.ceil(loadFactor * 8)));
 		initialize(initialCapacity);
+		this.minCapacity = this.capacity;
+	}
+
+	/**
+	 * @return The smallest power of two that is at least n
+	 */
+	static int powerOfTwoAtLeast(int n) {
+		int power = 1;
+		while (power < n && power < 1 << 30) power <<= 1;
+		return power;
 	}
 
 	private void initialize(int initialCapacity) {
 		this.size = 0;
-		this.capacity = initialCapacity;
-		this.array = new Node[this.capacity];
+		if (this.prefixIndex != null) this.prefixIndex.clear();
+		if (this.storage == Storage.CHAINED) {
+			this.setCapacity(this.powerOfTwo ? StringHashSet.powerOfTwoAtLeast(initialCapacity) : initialCapacity);
+			this.array = new Node[this.capacity];
+			this.oldArray = null;
+		} else {
+			if (this.table == null) this.table = new ProbingTable(initialCapacity, this.loadFactor, this.storage == Storage.ROBIN_HOOD);
+			else this.table.clear(initialCapacity);
+			this.capacity = this.table.capacity();
+		}
+		if (this.filterBitsPerItem > 0) this.rebuildFilter();
 		this.changes++;
 	}
 
 	/**
-	 * Calculates the hash code for Strings, using the x=31*x + y pattern.
-	 * Follow the specification in the String.hashCode() method in the Java API.
-	 * Note that the hashcode can overflow the max integer, so it can be
-	 * negative. Later, in another method, you'll need to account for a negative
-	 * hashcode by adding Integer.MAX_VALUE + 1 before you mod by the capacity
-	 * (table size) to get the index.
-	 *
-	 * This method is NOT the place to calculate the index though.
-	 *
-	 * @param item
-	 * @return The hash code for this String
+	 * Sets the number of buckets, using a bitmask to find buckets whenever the
+	 * number is a power of two
 	 */
-	public static int stringHashCode(String item) {
-		int hash = 0;
-		for (char c : item.toCharArray()) {
-			hash *= 31;
-			hash += c;
-		}
-		return hash;
+	private void setCapacity(int capacity) {
+		this.capacity = capacity;
+		this.mask = (capacity & (capacity - 1)) == 0 ? capacity - 1 : -1;
 	}
 
 	/**
-	 * Adds a new node if it is not there already. If there is a collision, then
-	 * add a new node to the -front- of the linked list.
-	 *
-	 * Must operate in amortized O(1) time, assuming a good hashcode function.
-	 *
-	 * If the number of nodes in the hash table would be over double the
-	 * capacity (that is, lambda > 2) as a result of adding this item, then
-	 * first double the capacity and then rehash all the current items into the
-	 * double-size table.
-	 *
-	 * @param item
-	 * @return true if the item was successfully added (that is, if that hash
-	 *         table was modified as a result of this call), false otherwise.
+	 * @return The storage layout this set was created with
 	 */
-	public boolean add(String item) {
-		int hash = StringHashSet.stringHashCode(item);
-		if (hash < 0) hash += Integer.MAX_VALUE + 1;
-		int index = hash % this.capacity;
-		if (this.array[index] == null) this.array[index] = new Node();
-		if (!this.array[index].get(item)) {
-			if (this.size >= this.capacity * 2) {
-				StringHashSet hashSet = new StringHashSet(this.capacity * 2);
-				for (int i = 0; i < this.capacity; i++) if (this.array[i] != null) for (String s : this.array[i]) hashSet.add(s);
-				this.array = hashSet.array;
-				this.capacity *= 2;
-				index = hash % this.capacity;
-				if (this.array[index] == null) this.array[index] = new Node();
-			}
-			this.array[index].add(item);
-			this.size++;
-			this.changes++;
-			return true;
-		}
-		return false;
+	public Storage storage() {
+		return this.storage;
 	}
 
 	/**
-	 * Prints an array value on each line. Each line will be an array index
-	 * followed by a colon and a list of Node data values, ending in null. For
-	 * example, inserting the strings in the testAddSmallCollisions example
-	 * gives "0: shalom hola null 1 bonjour null 2 caio hello null 3 null 4 hi
-	 * null". Use a StringBuilder, so you can build the string in O(n) time.
-	 * (Repeatedly concatenating n strings onto a growing string gives O(n^2)
-	 * time)
-	 *
-	 * @return A slightly-formatted string, mostly used for debugging
+	 * @return The load factor this set grows at
 	 */
-	public String toRawString() {
-		StringBuilder sb = new StringBuilder();
-		int index = 0;
-		for (Node list : this.array) {
-			sb.append(index++).append(": ");
-			if (list != null) {
-				for (Iterator<String> iter = list.iterator(); iter.hasNext(); ) {
-					sb.append(iter.next()).append(' ');
-					if (!iter.hasNext()) sb.append("null");
-				}
-			} else sb.append("null");
-			sb.append('\n');
-		}
-		return sb.toString();
+	public double loadFactor() {
+		return this.loadFactor;
 	}
 
 	/**
+	 * Makes contains() reorder chains when it finds an item. Only hits that are
+	 * at least threshold nodes deep in their chain cause a reorder, so sets
+	 * with short chains are left alone. Reordering never allocates and never
+	 * counts as a modification, but it does make contains() write to the set,
+	 * so a reordering set cannot be shared between reading threads. Has no
+	 * effect on probing storage.
 	 *
-	 * Checks if the given item is in the hash table.
-	 *
-	 * Must operate in O(1) time, assuming a good hashcode function.
-	 *
-	 * @param item
-	 * @return True if and only if the item is in the hash table.
+	 * @param policy How to reorder chains, or Reordering.NONE to make contains() read-only
+	 * @param threshold The minimum depth of a hit before its chain is reordered
 	 */
-	public boolean contains(String item) {
-		int hash = StringHashSet.stringHashCode(item);
-		if (hash < 0) hash += Integer.MAX_VALUE + 1;
-		int index = hash % this.capacity;
-		return this.array[index] != null && this.array[index].moveToFront(item);
+	public void setReordering(Reordering policy, int threshold) {
+		if (policy == null) throw new NullPointerException();
+		if (threshold < 0) throw new IllegalArgumentException("Illegal threshold: " + threshold);
+		this.reordering = policy;
+		this.reorderThreshold = threshold;
 	}
 
 	/**
-	 * Returns the number of items added to the hash table. Must operate in O(1)
-	 * time.
+	 * @return The policy contains() uses to reorder chains
+	 */
+	public Reordering reordering() {
+		return this.reordering;
+	}
+
+	/**
+	 * Makes a chained set spread the work of doubling its table over the adds
+	 * and removes that follow, instead of moving every item at once. While a
+	 * resize is in progress each add or remove moves a few old buckets into
+	 * the new table, and lookups check whichever table still holds their
+	 * bucket. Has no effect on probing storage.
 	 *
-	 * @return The number of items in the hash table.
+	 * @param incremental Whether to resize incrementally
 	 */
-	public int size() {
-		return this.size;
+	public void setIncrementalResize(boolean incremental) {
+		this.incremental = incremental;
+		if (!incremental) this.finishResize();
 	}
 
 	/**
-	 * @return True iff the hash table contains no items.
+	 * @return The hash function this set uses
 	 */
-	public boolean isEmpty() {
-		return this.size == 0;
+	public StringHasher hasher() {
+		return this.hasher;
 	}
 
 	/**
-	 * Removes all the items from the hash table. Resets the capacity to the
-	 * DEFAULT_CAPACITY
+	 * Turns metrics on or off. While they are on, the set counts contains()
+	 * hits and misses, times its resizes and samples the latency of every
+	 * 64th add, contains or remove. Turning them on starts the counters from
+	 * zero. While they are off nothing is counted.
+	 *
+	 * @param enabled
 	 */
-	public void clear() {
-		initialize(DEFAULT_CAPACITY);
+	public void setMetricsEnabled(boolean enabled) {
+		if (!enabled) this.metrics = null;
+		else if (this.metrics == null) this.metrics = new StringHashSetMetrics();
+	}
+
+	/**
+	 * @return Whether metrics are being kept
+	 */
+	public boolean metricsEnabled() {
+		return this.metrics != null;
 	}
 
 	/**
-	 * Removes the given item from the hash table if it is there. You do NOT
-	 * need to resize down if the load factor decreases below the threshold.
+	 * Turns the prefix index on or off. While it is on, the set keeps its
+	 * items in a radix tree as well as in the table, so prefixQuery(),
+	 * countWithPrefix() and globQuery() no longer scan the whole set; adds and
+	 * removes cost a walk down the tree, and the tree takes about as much
+	 * memory again as a chained table. Turning it on indexes the items the set
+	 * has now.
 	 *
-	 * @param item
-	 * @return True If the item was in the hash table (or equivalently, if the
-	 *         table changed as a result).
+	 * @param enabled
 	 */
-	public boolean remove(String item) {
-		int hash = StringHashSet.stringHashCode(item);
-		if (hash < 0) hash += Integer.MAX_VALUE + 1;
-		int index = hash % this.capacity;
-		boolean success = this.array[index] != null && this.array[index].remove(item);
-		if (success) {
-			this.size--;
-			this.changes++;
+	public void setPrefixIndex(boolean enabled) {
+		if (!enabled) this.prefixIndex = null;
+		else if (this.prefixIndex == null) {
+			PrefixIndex index = new PrefixIndex();
+			this.forEach(index::add);
+			this.prefixIndex = index;
 		}
-		return success;
 	}
 
 	/**
-	 * Adds all the items from the given collection to the hash table.
+	 * @return Whether the set keeps a prefix index
+	 */
+	public boolean prefixIndexed() {
+		return this.prefixIndex != null;
+	}
+
+	/**
+	 * Finds the items that start with the given prefix. With the prefix index
+	 * this takes time in proportion to the prefix and the items found;
+	 * without it every item is checked.
 	 *
-	 * @param collection
-	 * @return True if the hash table is modified in any way.
+	 * @param prefix
+	 * @return The items that start with the prefix, in String order.
 	 */
-	public boolean addAll(Collection<String> collection) {
-		boolean success = false;
-		for (String item : collection) success |= this.add(item);
-		return success;
+	public List<String> prefixQuery(String prefix) {
+		if (prefix == null) throw new NullPointerException();
+		if (this.prefixIndex != null) return this.prefixIndex.prefixQuery(prefix);
+		ArrayList<String> items = new ArrayList<String>();
+		this.forEach(item -> {
+			if (item.startsWith(prefix)) items.add(item);
+		});
+		items.sort(null);
+		return items;
 	}
 
 	/**
+	 * Counts the items that start with the given prefix. With the prefix
+	 * index this only walks down the tree as far as the prefix goes.
 	 *
-	 * Challenge Feature: Returns an iterator over the set. Return the items in
-	 * any order that you can do efficiently. Should throw a
-	 * NoSuchElementException if there are no more items and next() is called.
-	 * Should throw a ConcurrentModificationException if next() is called and
-	 * the set has been mutated since the iterator was created.
+	 * @param prefix
+	 * @return The number of items that start with the prefix.
+	 */
+	public int countWithPrefix(String prefix) {
+		if (prefix == null) throw new NullPointerException();
+		if (this.prefixIndex != null) return this.prefixIndex.countWithPrefix(prefix);
+		int count = 0;
+		for (String item : this) if (item.startsWith(prefix)) count++;
+		return count;
+	}
+
+	/**
+	 * Finds the items that match a glob, where * matches any run of
+	 * characters and ? matches any one character. With the prefix index only
+	 * the items that start with the part of the glob before its first
+	 * wildcard are checked.
 	 *
-	 * @return an iterator.
+	 * @param glob
+	 * @return The matching items, in String order.
 	 */
-	public Iterator<String> iterator() {
-		return new HashSetIterator(this);
+	public List<String> globQuery(String glob) {
+		if (glob == null) throw new NullPointerException();
+		if (this.prefixIndex != null) return this.prefixIndex.globQuery(glob);
+		ArrayList<String> items = new ArrayList<String>();
+		this.forEach(item -> {
+			if (PrefixIndex.matches(glob, item)) items.add(item);
+		});
+		items.sort(null);
+		return items;
 	}
 
-	// Challenge Feature: If you have an iterator, this is easy. Use a
-	// StringBuilder, so you can build the string in O(n) time. (Repeatedly
-	// concatenating n strings onto a string gives O(n^2) time)
-	// Format it like any other Collection's toString (like [a, b, c])
-	@Override
-	public String toString() {
-		StringBuilder sb = new StringBuilder("[");
-		for (Iterator<String> iter = this.iterator(); iter.hasNext(); ) {
-			sb.append(iter.next());
-			if (iter.hasNext()) sb.append(", ");
-		}
-		return sb.append(']').toString();
+	/**
+	 * Puts a blocked Bloom filter in front of contains(), sized for the given
+	 * rate of false positives. See setBloomFilter(int, int).
+	 *
+	 * @param falsePositiveRate The fraction of absent items that may get past the filter
+	 */
+	public void setBloomFilter(double falsePositiveRate) {
+		if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) throw new IllegalArgumentException("Illegal false positive rate: " + falsePositiveRate);
+		int bitsPerItem = BloomFilter.bitsPerItem(falsePositiveRate);
+		this.setBloomFilter(bitsPerItem, BloomFilter.hashesFor(bitsPerItem));
 	}
 
-	private class HashSetIterator implements Iterator<String> {
-		StringHashSet hashSet;
-		Iterator<String> iter;
-		int index = -1;
-		int changes;
+	/**
+	 * Puts a blocked Bloom filter in front of contains(), so that most
+	 * lookups of absent items are answered from one cache line of the filter
+	 * without reading the table or comparing any strings. The filter is
+	 * built from the hashes the set already keeps, is rebuilt at twice the
+	 * size whenever the set outgrows it, and is rebuilt once as many items
+	 * have been removed as the set holds, since removed items leave their
+	 * bits behind until then.
+	 *
+	 * @param bitsPerItem The size of the filter for each item the set holds
+	 * @param hashes The number of bits each item sets
+	 */
+	public void setBloomFilter(int bitsPerItem, int hashes) {
+		if (bitsPerItem < 1 || bitsPerItem > 64) throw new IllegalArgumentException("Illegal bits per item: " + bitsPerItem);
+		if (hashes < 1 || hashes > 16) throw new IllegalArgumentException("Illegal number of hashes: " + hashes);
+		this.filterBitsPerItem = bitsPerItem;
+		this.filterHashes = hashes;
+		this.rebuildFilter();
+	}
 
-		HashSetIterator(StringHashSet hashSet) {
-			this.hashSet = hashSet;
-			this.changes = hashSet.changes;
-		}
+	/**
+	 * Takes away the Bloom filter, if there is one
+	 */
+	public void removeBloomFilter() {
+		this.filter = null;
+		this.filterBitsPerItem = 0;
+	}
+
+	/**
+	 * @return The fraction of absent items the Bloom filter lets through,
+	 *         estimated from how full it is, or 1 if there is no filter.
+	 */
+	public double bloomFilterFalsePositiveRate() {
+		return this.filter == null ? 1 : this.filter.falsePositiveRate();
+	}
+
+	/**
+	 * @return The bytes the Bloom filter takes, or 0 if there is no filter.
+	 */
+	public long bloomFilterBytes() {
+		return this.filter == null ? 0 : this.filter.bytes();
+	}
+
+	/**
+	 * Builds a new filter with room for twice the items the set holds now,
+	 * from the hashes kept in the table
+	 */
+	private void rebuildFilter() {
+		BloomFilter filter = new BloomFilter(Math.max(64, this.size * 2), this.filterBitsPerItem, this.filterHashes);
+		if (this.table != null) {
+			String[] keys = this.table.keys;
+			int[] hashes = this.table.hashes;
+			for (int i = 0; i < keys.length; i++) if (keys[i] != null) filter.add(hashes[i]);
+		} else {
+			// Buckets an incremental resize has not split yet are still in the old table
+			for (Node[] array : new Node[][] { this.array, this.oldArray }) {
+				if (array == null) continue;
+				for (Node list : array) {
+					if (list == null || list.data == null) continue;
+					for (Node node = list; node != null; node = node.next) filter.add(node.hash);
+				}
+			}
+		}
+		this.filter = filter;
+		this.filterStale = 0;
+	}
+
+	/**
+	 * Brings the prefix index and the Bloom filter up to date with an item
+	 * that has just been added
+	 */
+	private void added(String item, int hash) {
+		if (this.prefixIndex != null) this.prefixIndex.add(item);
+		if (this.filter != null) {
+			if (this.filter.isFull()) this.rebuildFilter();
+			else this.filter.add(hash);
+		}
+	}
+
+	/**
+	 * Brings the prefix index and the Bloom filter up to date with an item
+	 * that has just been removed
+	 */
+	private void removed(String item) {
+		if (this.prefixIndex != null) this.prefixIndex.remove(item);
+		if (this.filter != null && ++this.filterStale > Math.max(64, this.size)) this.rebuildFilter();
+	}
+
+	/**
+	 * Takes a snapshot of the set's metrics, along with its load factor, its
+	 * empty buckets and a histogram of its chain or probe lengths, which are
+	 * found by scanning the table. The counters are zero if metrics are off.
+	 *
+	 * @return The snapshot
+	 */
+	public StringHashSetStats stats() {
+		long[] lengths = new long[StringHashSetStats.HISTOGRAM_SIZE];
+		int maxLength;
+		if (this.table != null) maxLength = this.table.probeLengths(lengths);
+		else {
+			// Buckets an incremental resize has not split yet are counted as they are
+			maxLength = StringHashSet.chainLengths(this.array, lengths);
+			if (this.oldArray != null) {
+				maxLength = Math.max(maxLength, StringHashSet.chainLengths(this.oldArray, lengths));
+				lengths[0] -= this.oldArray.length;
+			}
+		}
+		return new StringHashSetStats(this.storage, this.size, this.capacity, lengths, maxLength, this.metrics);
+	}
+
+	/**
+	 * Counts buckets by the length of their chains
+	 * @return The longest chain
+	 */
+	private static int chainLengths(Node[] buckets, long[] lengths) {
+		int max = 0;
+		for (Node list : buckets) {
+			int length = 0;
+			if (list != null && list.data != null) for (Node node = list; node != null; node = node.next) length++;
+			lengths[Math.min(length, lengths.length - 1)]++;
+			max = Math.max(max, length);
+		}
+		return max;
+	}
+
+	/**
+	 * Publishes this set's stats() through the platform MBean server as a
+	 * StringHashSetMXBean, and turns metrics on. The set is read from the JMX
+	 * thread without locking, so the values can be slightly off while the set
+	 * is changing. The set stays reachable until unpublishMetrics() is called.
+	 *
+	 * @param name The name the set is published under
+	 * @return The name of the MBean
+	 * @throws JMException If the name is taken or cannot be used
+	 */
+	public ObjectName publishMetrics(String name) throws JMException {
+		this.unpublishMetrics();
+		this.setMetricsEnabled(true);
+		ObjectName objectName = new ObjectName("StringHashSet:type=StringHashSet,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(this), objectName);
+		this.metricsName = objectName;
+		return objectName;
+	}
+
+	/**
+	 * Removes the MBean published by publishMetrics(), if there is one. The
+	 * metrics stay on.
+	 *
+	 * @throws JMException If the MBean server refuses
+	 */
+	public void unpublishMetrics() throws JMException {
+		if (this.metricsName == null) return;
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.metricsName);
+		this.metricsName = null;
+	}
+
+	/**
+	 * Hashes an item with this set's hasher. Probing tables index with the
+	 * low bits of the hash, so the high bits are folded into them first.
+	 */
+	private int hash(CharSequence item) {
+		return this.spread(this.hasher.hash(item));
+	}
+
+	/**
+	 * Folds the high bits of a hash into the low bits the probing tables index with
+	 */
+	private int spread(int hash) {
+		return this.table != null ? hash ^ (hash >>> 16) : hash;
+	}
+
+	/**
+	 * @return The bucket a hash code belongs in
+	 */
+	private int index(int hash) {
+		return this.mask >= 0 ? hash & this.mask : (hash & Integer.MAX_VALUE) % this.capacity;
+	}
+
+	/**
+	 * Finds the chain a hash code belongs to, which is in the old table if
+	 * that part of a resize has not happened yet
+	 * @return The chain, or null if there is none
+	 */
+	private Node chain(int hash) {
+		int index = this.index(hash);
+		if (this.oldArray != null) {
+			Node old = this.oldArray[index < this.oldArray.length ? index : index - this.oldArray.length];
+			if (old != null) return old;
+		}
+		return this.array[index];
+	}
+
+	/**
+	 * Calculates the hash code for Strings, using the x=31*x + y pattern.
+	 * Follow the specification in the String.hashCode() method in the Java API.
+	 * Note that the hashcode can overflow the max integer, so it can be
+	 * negative. Later, in another method, you'll need to account for a negative
+	 * hashcode by adding Integer.MAX_VALUE + 1 before you mod by the capacity
+	 * (table size) to get the index.
+	 *
+	 * This method is NOT the place to calculate the index though.
+	 *
+	 * @param item
+	 * @return The hash code for this String
+	 */
+	public static int stringHashCode(String item) {
+		return StringHasher.POLYNOMIAL.hash(item);
+	}
+
+	/**
+	 * Adds a new node if it is not there already. If there is a collision, then
+	 * add a new node to the -front- of the linked list.
+	 *
+	 * Must operate in amortized O(1) time, assuming a good hashcode function.
+	 *
+	 * If the number of nodes in the hash table would be over double the
+	 * capacity (that is, lambda > 2) as a result of adding this item, then
+	 * first double the capacity and then rehash all the current items into the
+	 * double-size table.
+	 *
+	 * @param item
+	 * @return true if the item was successfully added (that is, if that hash
+	 *         table was modified as a result of this call), false otherwise.
+	 */
+	public boolean add(String item) {
+		StringHashSetMetrics metrics = this.metrics;
+		if (metrics == null) return this.addItem(item);
+		long start = metrics.startSample();
+		boolean added = this.addItem(item);
+		metrics.endSample(start);
+		return added;
+	}
+
+	private boolean addItem(String item) {
+		return this.addItem(item, this.hash(item));
+	}
+
+	/**
+	 * Adds an item whose hash is already known
+	 */
+	private boolean addItem(String item, int hash) {
+		if (this.table != null) {
+			StringHashSetResizeEvent resize = this.table.isFull() ? this.beginResize() : null;
+			if (!this.table.add(item, hash)) return false;
+			this.capacity = this.table.capacity();
+			if (resize != null) this.endResize(resize);
+			this.added(item, hash);
+			this.size++;
+			this.changes++;
+			return true;
+		}
+		this.migrate(hash);
+		int index = this.index(hash);
+		if (this.array[index] == null) this.array[index] = new Node();
+		if (!this.array[index].get(item, hash, Reordering.NONE, 0)) {
+			if (this.size >= this.capacity * this.loadFactor) {
+				this.grow();
+				this.migrate(hash);
+				index = this.index(hash);
+				if (this.array[index] == null) this.array[index] = new Node();
+			}
+			this.array[index].add(item, hash);
+			this.treeifyIfLong(index);
+			this.added(item, hash);
+			this.size++;
+			this.changes++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Doubles the chained table. Every old bucket splits into the bucket with
+	 * the same index and the one a whole old capacity above it, so the nodes
+	 * are relinked by their stored hashes without hashing, comparing or
+	 * allocating. In incremental mode the buckets are split a few at a time
+	 * by later calls to migrate().
+	 */
+	private void grow() {
+		this.finishResize();
+		StringHashSetResizeEvent resize = this.beginResize();
+		this.oldArray = this.array;
+		this.migrated = 0;
+		this.setCapacity(this.capacity * 2);
+		this.array = new Node[this.capacity];
+		if (!this.incremental) this.finishResize();
+		this.endResize(resize);
+	}
+
+	/**
+	 * Starts timing a resize, which is about to happen
+	 * @return The JFR event for it
+	 */
+	private StringHashSetResizeEvent beginResize() {
+		StringHashSetResizeEvent resize = new StringHashSetResizeEvent();
+		resize.oldCapacity = this.capacity;
+		resize.start = System.nanoTime();
+		resize.begin();
+		return resize;
+	}
+
+	/**
+	 * Records a resize that has just finished in the metrics, and commits its
+	 * JFR event if a recording wants it
+	 */
+	private void endResize(StringHashSetResizeEvent resize) {
+		resize.end();
+		if (this.metrics != null) this.metrics.resized(System.nanoTime() - resize.start);
+		if (resize.shouldCommit()) {
+			resize.storage = this.storage.name();
+			resize.newCapacity = this.capacity;
+			resize.size = this.size;
+			resize.incremental = this.incremental && this.table == null;
+			resize.commit();
+		}
+	}
+
+	/**
+	 * Grows the table, if needed, so that it holds the given number of items
+	 * without growing again. The chained table is doubled as many times as it
+	 * would have been one add at a time, but its nodes are relinked only once.
+	 * @param items The number of items the table should hold
+	 */
+	private void growFor(long items) {
+		if (this.table != null) {
+			int slots = ProbingTable.slotsFor((int) Math.min(items, 1 << 30), this.loadFactor);
+			if (slots > this.table.capacity()) this.rehash(slots);
+			return;
+		}
+		int capacity = this.capacity;
+		while (items > capacity * this.loadFactor && capacity < 1 << 30) capacity *= 2;
+		if (capacity != this.capacity) this.rehash(capacity);
+	}
+
+	/**
+	 * Moves every item into a table of the given size, larger or smaller,
+	 * relinking chained nodes in place and using the cached hashes either way
+	 * @param capacity The new number of buckets, or of slots for probing layouts
+	 */
+	private void rehash(int capacity) {
+		if (this.table != null) {
+			StringHashSetResizeEvent resize = this.beginResize();
+			this.table.resize(capacity);
+			this.capacity = this.table.capacity();
+			this.changes++;
+			this.endResize(resize);
+			return;
+		}
+		this.finishResize();
+		StringHashSetResizeEvent resize = this.beginResize();
+		Node[] old = this.array;
+		Node[] tails = new Node[capacity];
+		this.setCapacity(capacity);
+		this.array = new Node[capacity];
+		int[] lengths = new int[capacity];
+		for (Node list : old) {
+			if (list instanceof TreeBin) list = ((TreeBin) list).toChain();
+			if (list == null || list.data == null) continue;
+			for (Node node = list, next; node != null; node = next) {
+				next = node.next;
+				node.next = null;
+				int index = this.index(node.hash);
+				if (tails[index] == null) this.array[index] = node;
+				else tails[index].next = node;
+				tails[index] = node;
+				lengths[index]++;
+			}
+		}
+		for (int index = 0; index < capacity; index++) if (lengths[index] >= this.treeifyThreshold) this.treeifyIfLong(index);
+		this.changes++;
+		this.endResize(resize);
+	}
+
+	/**
+	 * Halves the table once it is less than a quarter as full as it may get
+	 * before growing. The gap between the two thresholds means a set has to
+	 * double or halve its size again before the table changes again, so a
+	 * size that hovers near one threshold cannot make it resize back and
+	 * forth. The table never shrinks below its minimum capacity, which starts
+	 * as the capacity it was created with, is raised by ensureCapacity() and
+	 * is set by trimToSize().
+	 */
+	private void shrinkIfSparse() {
+		if (this.capacity <= this.minCapacity || this.size >= this.capacity * this.loadFactor / 4) return;
+		this.rehash(Math.max(this.minCapacity, this.capacity / 2));
+	}
+
+	/**
+	 * Grows the table, if needed, so that it can hold the given number of
+	 * items without growing again, and keeps it from shrinking below that
+	 * size when items are removed.
+	 *
+	 * @param items
+	 */
+	public void ensureCapacity(int items) {
+		if (items < 0) throw new IllegalArgumentException("Illegal capacity: " + items);
+		this.growFor(items);
+		this.minCapacity = Math.max(this.minCapacity, this.capacity);
+	}
+
+	/**
+	 * Shrinks the table to the smallest size that holds the items it has now,
+	 * and lets it shrink that far again later. The table keeps the shape its
+	 * constructor gave it: power of two sizes stay powers of two.
+	 */
+	public void trimToSize() {
+		int capacity;
+		if (this.table != null) capacity = ProbingTable.slotsFor(this.size, this.loadFactor);
+		else {
+			capacity = (int) Math.max(1, Math.ceil(this.size / this.loadFactor));
+			if (this.powerOfTwo) capacity = StringHashSet.powerOfTwoAtLeast(capacity);
+		}
+		this.minCapacity = capacity;
+		if (capacity < this.capacity) this.rehash(capacity);
+	}
+
+	/**
+	 * Moves the old bucket a hash code belongs to, plus a few more, into the
+	 * new table if a resize is in progress, so the caller can change the new
+	 * table directly
+	 */
+	private void migrate(int hash) {
+		if (this.oldArray == null) return;
+		int index = this.index(hash);
+		this.split(index < this.oldArray.length ? index : index - this.oldArray.length);
+		for (int step = 0; step < MIGRATION_STEP && this.migrated < this.oldArray.length; step++) this.split(this.migrated++);
+		while (this.migrated < this.oldArray.length && this.oldArray[this.migrated] == null) this.migrated++;
+		if (this.migrated == this.oldArray.length) this.oldArray = null;
+	}
+
+	/**
+	 * Completes a resize that is in progress
+	 */
+	private void finishResize() {
+		if (this.oldArray == null) return;
+		while (this.migrated < this.oldArray.length) this.split(this.migrated++);
+		this.oldArray = null;
+	}
+
+	/**
+	 * Splits one bucket of the old table between its two buckets in the new
+	 * table, keeping the order of the chain
+	 * @param index The index of the old bucket
+	 */
+	private void split(int index) {
+		Node list = this.oldArray[index];
+		if (list == null) return;
+		this.oldArray[index] = null;
+		if (list instanceof TreeBin) list = ((TreeBin) list).toChain();
+		if (list == null || list.data == null) return;
+		Node low = null, lowTail = null, high = null, highTail = null;
+		int lows = 0, highs = 0;
+		for (Node node = list, next; node != null; node = next) {
+			next = node.next;
+			node.next = null;
+			if (this.index(node.hash) == index) {
+				if (lowTail == null) low = node;
+				else lowTail.next = node;
+				lowTail = node;
+				lows++;
+			} else {
+				if (highTail == null) high = node;
+				else highTail.next = node;
+				highTail = node;
+				highs++;
+			}
+		}
+		this.array[index] = low;
+		this.array[index + this.oldArray.length] = high;
+		if (lows >= this.treeifyThreshold) this.treeifyIfLong(index);
+		if (highs >= this.treeifyThreshold) this.treeifyIfLong(index + this.oldArray.length);
+	}
+
+	/**
+	 * Gives a bucket a TreeBin once its chain is as long as the treeify
+	 * threshold, which is far longer than chains get unless their items
+	 * collide. Only that many nodes are walked, so it is cheap to call after
+	 * every add.
+	 * @param index The bucket in the current table
+	 */
+	private void treeifyIfLong(int index) {
+		Node list = this.array[index];
+		if (list == null || list instanceof TreeBin) return;
+		int length = 0;
+		for (Node node = list; node != null && node.data != null && length < this.treeifyThreshold; node = node.next) length++;
+		if (length >= this.treeifyThreshold) this.array[index] = new TreeBin(list);
+	}
+
+	/**
+	 * Prints an array value on each line. Each line will be an array index
+	 * followed by a colon and a list of Node data values, ending in null. For
+	 * example, inserting the strings in the testAddSmallCollisions example
+	 * gives "0: shalom hola null 1 bonjour null 2 caio hello null 3 null 4 hi
+	 * null". Use a StringBuilder, so you can build the string in O(n) time.
+	 * (Repeatedly concatenating n strings onto a growing string gives O(n^2)
+	 * time)
+	 *
+	 * @return A slightly-formatted string, mostly used for debugging
+	 */
+	public String toRawString() {
+		if (this.table != null) return this.table.toString();
+		this.finishResize();
+		StringBuilder sb = new StringBuilder();
+		int index = 0;
+		for (Node list : this.array) {
+			sb.append(index++).append(": ");
+			if (list != null) {
+				for (Iterator<String> iter = list.iterator(); iter.hasNext(); ) {
+					sb.append(iter.next()).append(' ');
+					if (!iter.hasNext()) sb.append("null");
+				}
+			} else sb.append("null");
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 *
+	 * Checks if the given item is in the hash table. Does not change the table
+	 * unless a reordering policy has been set with setReordering().
+	 *
+	 * Must operate in O(1) time, assuming a good hashcode function.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the hash table.
+	 */
+	public boolean contains(String item) {
+		StringHashSetMetrics metrics = this.metrics;
+		if (metrics == null) return this.containsItem(item);
+		long start = metrics.startSample();
+		boolean found = this.containsItem(item);
+		metrics.contains(found, start);
+		return found;
+	}
+
+	private boolean containsItem(String item) {
+		int hash = this.hash(item);
+		if (this.filter != null && !this.filter.mightContain(hash)) return false;
+		if (this.table != null) return this.table.find(item, hash) >= 0;
+		Node list = this.chain(hash);
+		return list != null && list.get(item, hash, this.reordering, this.reorderThreshold);
+	}
+
+	/**
+	 * Finds the String the set holds for the given characters, without
+	 * reordering its chain.
+	 *
+	 * @param item
+	 * @return The String in the set equal to the item, or null if there is none.
+	 */
+	public String get(CharSequence item) {
+		return this.lookup(item, this.hash(item));
+	}
+
+	/**
+	 * Returns the String the set holds for the given characters, adding them
+	 * as a new String first if they are not there. Handing every repeated
+	 * string of a parse through this and keeping only what it returns leaves
+	 * one copy of each, so the duplicates can be collected.
+	 *
+	 * @param item
+	 * @return The canonical String equal to the item.
+	 */
+	public String getOrAdd(CharSequence item) {
+		StringHashSetMetrics metrics = this.metrics;
+		long start = metrics == null ? 0 : metrics.startSample();
+		int hash = this.hash(item);
+		String found = this.lookup(item, hash);
+		if (found == null) {
+			found = item.toString();
+			this.addItem(found, hash);
+		}
+		if (metrics != null) metrics.endSample(start);
+		return found;
+	}
+
+	/**
+	 * Like String.intern(), but with this set as the pool: returns the String
+	 * the set already holds that equals the item, or adds the item itself.
+	 *
+	 * @param item
+	 * @return The canonical String equal to the item.
+	 */
+	public String intern(String item) {
+		return this.getOrAdd(item);
+	}
+
+	/**
+	 * Finds the String holding some characters whose hash is already known
+	 */
+	private String lookup(CharSequence item, int hash) {
+		if (this.filter != null && !this.filter.mightContain(hash)) return null;
+		if (this.table != null) {
+			int slot = item instanceof String ? this.table.find((String) item, hash) : this.table.find(item, hash);
+			return slot < 0 ? null : this.table.keys[slot];
+		}
+		Node list = this.chain(hash);
+		return list == null ? null : list.find(item, hash);
+	}
+
+	/**
+	 * Returns the number of items added to the hash table. Must operate in O(1)
+	 * time.
+	 *
+	 * @return The number of items in the hash table.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return True iff the hash table contains no items.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes all the items from the hash table. Resets the capacity to the
+	 * DEFAULT_CAPACITY
+	 */
+	public void clear() {
+		initialize(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Removes all the items from the hash table, either keeping the table at
+	 * its current size to be filled again without growing, or going back to
+	 * the DEFAULT_CAPACITY as clear() does.
+	 *
+	 * @param keepCapacity
+	 */
+	public void clear(boolean keepCapacity) {
+		if (!keepCapacity) {
+			this.clear();
+			return;
+		}
+		if (this.table != null) this.table.clearSlots();
+		else {
+			Arrays.fill(this.array, null);
+			this.oldArray = null;
+		}
+		if (this.prefixIndex != null) this.prefixIndex.clear();
+		this.size = 0;
+		if (this.filter != null) this.rebuildFilter();
+		this.changes++;
+	}
+
+	/**
+	 * Removes the given item from the hash table if it is there. The table is
+	 * halved once it gets sparse enough; see ensureCapacity() to prevent that.
+	 *
+	 * @param item
+	 * @return True If the item was in the hash table (or equivalently, if the
+	 *         table changed as a result).
+	 */
+	public boolean remove(String item) {
+		StringHashSetMetrics metrics = this.metrics;
+		if (metrics == null) return this.removeItem(item);
+		long start = metrics.startSample();
+		boolean removed = this.removeItem(item);
+		metrics.endSample(start);
+		return removed;
+	}
+
+	private boolean removeItem(String item) {
+		return this.removeItem(item, this.hash(item));
+	}
+
+	/**
+	 * Removes an item whose hash is already known
+	 */
+	private boolean removeItem(String item, int hash) {
+		boolean success;
+		if (this.table != null) success = this.table.remove(item, hash);
+		else {
+			this.migrate(hash);
+			Node list = this.array[this.index(hash)];
+			success = list != null && list.remove(item, hash);
+		}
+		if (success) {
+			this.size--;
+			this.removed(item);
+			this.changes++;
+			this.shrinkIfSparse();
+		}
+		return success;
+	}
+
+	/**
+	 * Adds all the items from the given collection to the hash table. The
+	 * table is grown once up front to fit at least as many items as the
+	 * collection has, so a bulk load into an empty set never resizes; items
+	 * that are already in the set do not make it grow any further.
+	 *
+	 * @param collection
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean addAll(Collection<String> collection) {
+		this.growFor(collection.size());
+		boolean success = false;
+		for (String item : collection) success |= this.add(item);
+		return success;
+	}
+
+	/**
+	 * Adds all the items in the given array to the hash table, growing it
+	 * once up front to fit at least as many items as the array has.
+	 *
+	 * @param items
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean addAll(String[] items) {
+		this.growFor(items.length);
+		boolean success = false;
+		for (String item : items) success |= this.add(item);
+		return success;
+	}
+
+	/**
+	 * Adds all the items of a stream to the hash table, growing it once up
+	 * front if the stream knows its size, as addAll(Collection) does. Parallel streams are consumed on
+	 * the calling thread.
+	 *
+	 * @param items
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean addAll(Stream<String> items) {
+		Spliterator<String> spliterator = items.spliterator();
+		long count = spliterator.getExactSizeIfKnown();
+		if (count > 0) this.growFor(count);
+		int before = this.size;
+		spliterator.forEachRemaining(item -> this.add(item));
+		return this.size != before;
+	}
+
+	/**
+	 * @param collection
+	 * @return True if every item of the collection is in the hash table.
+	 */
+	public boolean containsAll(Collection<String> collection) {
+		for (String item : collection) if (!this.contains(item)) return false;
+		return true;
+	}
+
+	/**
+	 * @param items
+	 * @return True if every item of the array is in the hash table.
+	 */
+	public boolean containsAll(String[] items) {
+		for (String item : items) if (!this.contains(item)) return false;
+		return true;
+	}
+
+	/**
+	 * @param items
+	 * @return True if every item of the stream is in the hash table.
+	 */
+	public boolean containsAll(Stream<String> items) {
+		return items.sequential().allMatch(item -> this.contains(item));
+	}
+
+	/**
+	 * Checks a whole batch of items at once, storing whether each one is in
+	 * the hash table in the matching element of out. The items are taken a
+	 * few at a time: all of them are hashed, then all of their buckets are
+	 * read, and only then are they compared, so the cache misses of a group
+	 * overlap instead of being paid one after another.
+	 *
+	 * @param in The items to look for
+	 * @param out Where to store the answers; at least as long as in
+	 * @return The number of items found
+	 */
+	public int containsBatch(String[] in, boolean[] out) {
+		if (out.length < in.length) throw new IllegalArgumentException("Output array too short: " + out.length + " < " + in.length);
+		int[] hashes = new int[BATCH];
+		int[] stored = new int[BATCH];
+		String[] keys = new String[BATCH];
+		Node[] heads = new Node[BATCH];
+		int found = 0;
+		for (int start = 0; start < in.length; start += BATCH) {
+			int end = Math.min(in.length, start + BATCH);
+			for (int i = start; i < end; i++) hashes[i - start] = this.hash(in[i]);
+			if (this.table != null) {
+				found += this.table.findAll(in, hashes, stored, keys, start, end, out);
+				continue;
+			}
+			for (int i = start; i < end; i++) heads[i - start] = this.chain(hashes[i - start]);
+			for (int i = start; i < end; i++) {
+				Node list = heads[i - start];
+				out[i] = list != null && list.get(in[i], hashes[i - start], this.reordering, this.reorderThreshold);
+				if (out[i]) found++;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Removes every item of the given collection from the hash table.
+	 *
+	 * @param collection
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean removeAll(Collection<String> collection) {
+		boolean success = false;
+		for (String item : collection) success |= this.remove(item);
+		return success;
+	}
+
+	/**
+	 * Removes every item of the given array from the hash table.
+	 *
+	 * @param items
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean removeAll(String[] items) {
+		boolean success = false;
+		for (String item : items) success |= this.remove(item);
+		return success;
+	}
+
+	/**
+	 * Removes every item of the given stream from the hash table.
+	 *
+	 * @param items
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean removeAll(Stream<String> items) {
+		int before = this.size;
+		items.sequential().forEach(item -> this.remove(item));
+		return this.size != before;
+	}
+
+	/**
+	 * Removes every item that is not in the given collection, which is asked
+	 * once per item in the hash table.
+	 *
+	 * @param collection
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean retainAll(Collection<String> collection) {
+		return this.removeIf(item -> !collection.contains(item));
+	}
+
+	/**
+	 * Items picked out of a set, with their hashes in the set that picked them
+	 */
+	private static class Selection {
+		String[] items = new String[16];
+		int[] hashes = new int[16];
+		int size;
+
+		void add(String item, int hash) {
+			if (this.size == this.items.length) {
+				this.items = Arrays.copyOf(this.items, this.size * 2);
+				this.hashes = Arrays.copyOf(this.hashes, this.size * 2);
+			}
+			this.items[this.size] = item;
+			this.hashes[this.size++] = hash;
+		}
+
+		void addAll(Selection other) {
+			for (int i = 0; i < other.size; i++) this.add(other.items[i], other.hashes[i]);
+		}
+	}
+
+	/**
+	 * @return Whether the other set gives every item the same hash as this one
+	 */
+	private boolean sameHashes(StringHashSet other) {
+		return this.hasher.equals(other.hasher) && (this.table == null) == (other.table == null);
+	}
+
+	/**
+	 * Looks for an item whose hash is already known without reordering its
+	 * chain, so any number of threads can do it at once
+	 */
+	private boolean containsHashed(String item, int hash) {
+		if (this.filter != null && !this.filter.mightContain(hash)) return false;
+		if (this.table != null) return this.table.find(item, hash) >= 0;
+		Node list = this.chain(hash);
+		return list != null && list.get(item, hash, Reordering.NONE, 0);
+	}
+
+	/**
+	 * Picks out the items of one set that are, or are not, in another,
+	 * walking the buckets of the first in order and checking each item in
+	 * the second with its cached hash whenever the second hashes the same
+	 * way. When the two have the same chained layout the matching bucket of
+	 * the second is read directly, so both tables are read front to back.
+	 * Large sets are split into ranges of buckets on the common ForkJoinPool.
+	 *
+	 * @param source The set whose items are picked
+	 * @param probe The set to check them in, or null to pick them all
+	 * @param present Whether to pick the items that are in probe or the ones that are not
+	 * @return The items, with their hashes in this set
+	 */
+	private Selection select(StringHashSet source, StringHashSet probe, boolean present) {
+		source.finishResize();
+		if (probe != null) probe.finishResize();
+		int slots = source.table != null ? source.table.capacity() : source.capacity;
+		int parts = source.size < PARALLEL_THRESHOLD ? 1 : Math.min(slots, ForkJoinPool.getCommonPoolParallelism() * 4);
+		Selection[] selections = new Selection[parts];
+		IntStream range = IntStream.range(0, parts);
+		(parts > 1 ? range.parallel() : range).forEach(p -> {
+			Selection selection = selections[p] = new Selection();
+			this.select(source, probe, present, (int) ((long) slots * p / parts), (int) ((long) slots * (p + 1) / parts), selection);
+		});
+		for (int p = 1; p < parts; p++) selections[0].addAll(selections[p]);
+		return selections[0];
+	}
+
+	private void select(StringHashSet source, StringHashSet probe, boolean present, int from, int to, Selection selection) {
+		boolean probeHashes = probe != null && source.sameHashes(probe);
+		boolean ownHashes = source.sameHashes(this);
+		if (source.table != null) {
+			String[] keys = source.table.keys;
+			int[] hashes = source.table.hashes;
+			for (int i = from; i < to; i++) {
+				String item = keys[i];
+				if (item == null) continue;
+				int hash = hashes[i];
+				if (probe != null && probe.containsHashed(item, probeHashes ? hash : probe.hash(item)) != present) continue;
+				selection.add(item, ownHashes ? hash : this.hash(item));
+			}
+			return;
+		}
+		boolean sameBuckets = probeHashes && probe.table == null && probe.capacity == source.capacity && probe.mask == source.mask;
+		for (int i = from; i < to; i++) {
+			Node list = source.array[i];
+			if (list == null || list.data == null) continue;
+			Node other = sameBuckets ? probe.array[i] : null;
+			for (Node node = list; node != null; node = node.next) {
+				String item = node.data;
+				int hash = node.hash;
+				if (probe != null) {
+					boolean found;
+					if (sameBuckets) found = other != null && other.get(item, hash, Reordering.NONE, 0);
+					else found = probe.containsHashed(item, probeHashes ? hash : probe.hash(item));
+					if (found != present) continue;
+				}
+				selection.add(item, ownHashes ? hash : this.hash(item));
+			}
+		}
+	}
+
+	/**
+	 * @param expected The number of items the new set will hold
+	 * @return An empty set with this set's storage layout, load factor and
+	 *         hasher, big enough for the expected items
+	 */
+	private StringHashSet emptyCopy(int expected) {
+		StringHashSet set = new StringHashSet(DEFAULT_CAPACITY, this.storage, this.loadFactor, this.hasher, this.powerOfTwo);
+		set.growFor(expected);
+		return set;
+	}
+
+	/**
+	 * Fills an empty set with this set's hasher from a selection, in parallel
+	 * if it is large and the set's capacity is a power of two
+	 */
+	private StringHashSet fill(Selection selection) {
+		StringHashSet set = this.emptyCopy(selection.size);
+		if (selection.size >= PARALLEL_THRESHOLD && (set.table != null || set.mask >= 0)) {
+			set.parallelFill(Arrays.copyOf(selection.items, selection.size), Arrays.copyOf(selection.hashes, selection.size));
+		} else {
+			for (int i = 0; i < selection.size; i++) set.addItem(selection.items[i], selection.hashes[i]);
+		}
+		return set;
+	}
+
+	/**
+	 * Returns a new set holding the items that are in this set, the other or
+	 * both. The new set has this set's storage layout, load factor and
+	 * hasher, so it can reuse the hashes cached in this set, and in the other
+	 * too if it hashes the same way; neither set is changed, not even by
+	 * reordering. Large sets are scanned in parallel.
+	 *
+	 * @param other
+	 * @return The union
+	 */
+	public StringHashSet union(StringHashSet other) {
+		Selection selection = this.select(this, null, false);
+		selection.addAll(this.select(other, this, false));
+		return this.fill(selection);
+	}
+
+	/**
+	 * Returns a new set holding the items that are in both this set and the
+	 * other, found by walking the smaller of the two. See union().
+	 *
+	 * @param other
+	 * @return The intersection
+	 */
+	public StringHashSet intersect(StringHashSet other) {
+		if (other.size < this.size) return this.fill(this.select(other, this, true));
+		return this.fill(this.select(this, other, true));
+	}
+
+	/**
+	 * Returns a new set holding the items of this set that are not in the
+	 * other. See union().
+	 *
+	 * @param other
+	 * @return The difference
+	 */
+	public StringHashSet difference(StringHashSet other) {
+		return this.fill(this.select(this, other, false));
+	}
+
+	/**
+	 * Returns a new set holding the items that are in exactly one of this set
+	 * and the other. See union().
+	 *
+	 * @param other
+	 * @return The symmetric difference
+	 */
+	public StringHashSet symmetricDifference(StringHashSet other) {
+		Selection selection = this.select(this, other, false);
+		selection.addAll(this.select(other, this, false));
+		return this.fill(selection);
+	}
+
+	/**
+	 * Adds every item of the other set, using the hashes it has cached if it
+	 * hashes the same way as this set. The table is grown once up front, as
+	 * in addAll().
+	 *
+	 * @param other
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean unionWith(StringHashSet other) {
+		if (other == this) return false;
+		Selection added = this.select(other, this, false);
+		this.growFor((long) this.size + added.size);
+		for (int i = 0; i < added.size; i++) this.addItem(added.items[i], added.hashes[i]);
+		return added.size > 0;
+	}
+
+	/**
+	 * Removes every item that is not in the other set. The items to remove
+	 * are found first, in parallel for large sets, and then removed.
+	 *
+	 * @param other
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean intersectWith(StringHashSet other) {
+		if (other == this) return false;
+		Selection removed = this.select(this, other, false);
+		for (int i = 0; i < removed.size; i++) this.removeItem(removed.items[i], removed.hashes[i]);
+		return removed.size > 0;
+	}
+
+	/**
+	 * Removes every item that is in the other set, walking whichever of the
+	 * two is smaller to find them.
+	 *
+	 * @param other
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean differenceWith(StringHashSet other) {
+		if (other == this) {
+			boolean changed = this.size > 0;
+			if (changed) this.clear();
+			return changed;
+		}
+		Selection removed = other.size < this.size ? this.select(other, this, true) : this.select(this, other, true);
+		for (int i = 0; i < removed.size; i++) this.removeItem(removed.items[i], removed.hashes[i]);
+		return removed.size > 0;
+	}
+
+	/**
+	 * Removes every item that is in the other set and adds every item of the
+	 * other set that was not in this one.
+	 *
+	 * @param other
+	 * @return True if the hash table is modified in any way.
+	 */
+	public boolean symmetricDifferenceWith(StringHashSet other) {
+		if (other == this) return this.differenceWith(other);
+		Selection removed = this.select(this, other, true);
+		Selection added = this.select(other, this, false);
+		for (int i = 0; i < removed.size; i++) this.removeItem(removed.items[i], removed.hashes[i]);
+		this.growFor((long) this.size + added.size);
+		for (int i = 0; i < added.size; i++) this.addItem(added.items[i], added.hashes[i]);
+		return removed.size + added.size > 0;
+	}
+
+	/**
+	 * Builds a chained set from a collection on all the cores of the common
+	 * ForkJoinPool. See parallelBuild(Collection, Storage).
+	 *
+	 * @param items
+	 * @return A new set holding the distinct items.
+	 */
+	public static StringHashSet parallelBuild(Collection<String> items) {
+		return StringHashSet.parallelBuild(items, Storage.CHAINED);
+	}
+
+	/**
+	 * Builds a set with the given storage layout from a collection on all the
+	 * cores of the common ForkJoinPool. The table is sized for the whole
+	 * collection up front and cut into ranges of buckets, the items are
+	 * hashed and partitioned by the range they fall in, and each range is
+	 * then filled by its own task. Every item is hashed exactly once and no
+	 * two tasks ever touch the same bucket, so the ranges need no merging. In
+	 * the probing layouts, the few items whose probe runs past the end of
+	 * their range are added afterwards on the calling thread.
+	 *
+	 * @param items
+	 * @param storage
+	 * @return A new set holding the distinct items.
+	 */
+	public static StringHashSet parallelBuild(Collection<String> items, Storage storage) {
+		return StringHashSet.parallelBuild(items.toArray(new String[items.size()]), storage);
+	}
+
+	/**
+	 * Builds a chained set from a stream, which is collected in parallel
+	 * first. See parallelBuild(Collection, Storage).
+	 *
+	 * @param items
+	 * @return A new set holding the distinct items.
+	 */
+	public static StringHashSet parallelBuild(Stream<String> items) {
+		return StringHashSet.parallelBuild(items, Storage.CHAINED);
+	}
+
+	/**
+	 * Builds a set with the given storage layout from a stream, which is
+	 * collected in parallel first. See parallelBuild(Collection, Storage).
+	 *
+	 * @param items
+	 * @param storage
+	 * @return A new set holding the distinct items.
+	 */
+	public static StringHashSet parallelBuild(Stream<String> items, Storage storage) {
+		return StringHashSet.parallelBuild(items.parallel().toArray(String[]::new), storage);
+	}
+
+	private static StringHashSet parallelBuild(String[] items, Storage storage) {
+		StringHashSet set = new StringHashSet(DEFAULT_CAPACITY, storage);
+		set.parallelFill(items, null);
+		return set;
+	}
+
+	/**
+	 * Fills an empty set whose capacity is a power of two with the given
+	 * items on the common ForkJoinPool. See parallelBuild(Collection, Storage).
+	 *
+	 * @param items
+	 * @param known The hashes of the items, or null to compute them here
+	 */
+	private void parallelFill(String[] items, int[] known) {
+		StringHashSet set = this;
+		set.growFor(items.length);
+		int slots = set.table != null ? set.table.capacity() : set.capacity;
+		int parts = Math.min(slots, StringHashSet.powerOfTwoAtLeast(ForkJoinPool.getCommonPoolParallelism() * 4));
+		int shift = Integer.numberOfTrailingZeros(slots) - Integer.numberOfTrailingZeros(parts);
+		int chunk = (items.length + parts - 1) / parts;
+		int[] hashes = known != null ? known : new int[items.length];
+
+		// Each chunk of the input hashes its items and counts how many fall in each part
+		int[][] offsets = new int[parts][parts];
+		IntStream.range(0, parts).parallel().forEach(c -> {
+			for (int i = c * chunk, end = Math.min(items.length, i + chunk); i < end; i++) {
+				if (known == null) hashes[i] = set.hash(items[i]);
+				offsets[c][(hashes[i] & (slots - 1)) >>> shift]++;
+			}
+		});
+		// The counts become where each chunk writes its items of each part
+		int[] partStart = new int[parts + 1];
+		for (int p = 0, offset = 0; p < parts; p++) {
+			partStart[p] = offset;
+			for (int c = 0; c < parts; c++) {
+				int count = offsets[c][p];
+				offsets[c][p] = offset;
+				offset += count;
+			}
+		}
+		partStart[parts] = items.length;
+		int[] order = new int[items.length];
+		IntStream.range(0, parts).parallel().forEach(c -> {
+			int[] next = offsets[c];
+			for (int i = c * chunk, end = Math.min(items.length, i + chunk); i < end; i++) order[next[(hashes[i] & (slots - 1)) >>> shift]++] = i;
+		});
+
+		if (set.table != null) {
+			ProbingTable.Overflow[] overflows = new ProbingTable.Overflow[parts];
+			IntStream.range(0, parts).parallel().forEach(p -> {
+				ProbingTable.Overflow overflow = overflows[p] = new ProbingTable.Overflow();
+				int end = (p + 1) << shift;
+				for (int k = partStart[p]; k < partStart[p + 1]; k++) set.table.addBefore(items[order[k]], hashes[order[k]], end, overflow);
+			});
+			set.table.finishBuild(overflows);
+			set.size = set.table.size();
+		} else {
+			int[] sizes = new int[parts];
+			IntStream.range(0, parts).parallel().forEach(p -> {
+				for (int k = partStart[p]; k < partStart[p + 1]; k++) {
+					String item = items[order[k]];
+					int hash = hashes[order[k]];
+					int index = set.index(hash);
+					Node list = set.array[index];
+					if (list == null) list = set.array[index] = new Node();
+					else if (list.get(item, hash, Reordering.NONE, 0)) continue;
+					list.add(item, hash);
+					set.treeifyIfLong(index);
+					sizes[p]++;
+				}
+			});
+			for (int count : sizes) set.size += count;
+		}
+		set.changes++;
+	}
+
+	/**
+	 * Reports how far addAllFrom() has got
+	 */
+	@FunctionalInterface
+	public interface Progress {
+		/**
+		 * @param bytes The number of bytes read so far
+		 * @param lines The number of lines read so far
+		 * @param size The number of items now in the set
+		 */
+		void update(long bytes, long lines, int size);
+	}
+
+	/**
+	 * Creates a chained set from the lines of a UTF-8 text file. See
+	 * addAllFrom(ReadableByteChannel, Progress).
+	 *
+	 * @param path
+	 * @return A new set holding the distinct lines.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public static StringHashSet load(Path path) throws IOException {
+		return StringHashSet.load(path, Storage.CHAINED, null);
+	}
+
+	/**
+	 * Creates a set with the given storage layout from the lines of a UTF-8
+	 * text file. See addAllFrom(ReadableByteChannel, Progress).
+	 *
+	 * @param path
+	 * @param storage
+	 * @param progress Told how far the load has got after each buffer, or null
+	 * @return A new set holding the distinct lines.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public static StringHashSet load(Path path, Storage storage, Progress progress) throws IOException {
+		StringHashSet set = new StringHashSet(DEFAULT_CAPACITY, storage);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			set.addAllFrom(channel, progress);
+		}
+		return set;
+	}
+
+	/**
+	 * Adds every line read from the channel. See addAllFrom(ReadableByteChannel, Progress).
+	 *
+	 * @param in
+	 * @return The number of items added.
+	 * @throws IOException If the channel cannot be read.
+	 */
+	public int addAllFrom(ReadableByteChannel in) throws IOException {
+		return this.addAllFrom(in, null);
+	}
+
+	/**
+	 * Adds every line read from the channel, which holds UTF-8 text. Lines end
+	 * with \n or \r\n, and a last line does not need an end. The channel is
+	 * read into one reusable buffer, which only grows if a line is longer
+	 * than it, and each line is hashed and looked up straight from its bytes,
+	 * so a line that is already in the set costs no allocation at all; only
+	 * new items become Strings. The channel is read to its end but not
+	 * closed.
+	 *
+	 * @param in
+	 * @param progress Told how far the load has got after each buffer, or null
+	 * @return The number of items added.
+	 * @throws IOException If the channel cannot be read.
+	 */
+	public int addAllFrom(ReadableByteChannel in, Progress progress) throws IOException {
+		int before = this.size;
+		// The hashers may read up to three bytes past a malformed last character, so the end of the array is never filled
+		ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER);
+		buffer.limit(buffer.capacity() - 4);
+		long bytes = 0, lines = 0;
+		while (true) {
+			int read = in.read(buffer);
+			if (read > 0) bytes += read;
+			byte[] array = buffer.array();
+			int end = buffer.position(), start = 0;
+			for (int i = 0; i < end; i++) {
+				if (array[i] != '\n') continue;
+				this.addUtf8(array, start, i > start && array[i - 1] == '\r' ? i - 1 : i);
+				lines++;
+				start = i + 1;
+			}
+			if (read < 0) {
+				if (start < end) {
+					this.addUtf8(array, start, array[end - 1] == '\r' ? end - 1 : end);
+					lines++;
+				}
+				break;
+			}
+			if (start == 0 && end == buffer.limit()) {
+				// One line fills the whole buffer
+				ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+				larger.put(array, 0, end).limit(larger.capacity() - 4);
+				buffer = larger;
+			} else {
+				System.arraycopy(array, start, array, 0, end - start);
+				buffer.position(end - start);
+			}
+			if (progress != null && read > 0) progress.update(bytes, lines, this.size);
+		}
+		if (progress != null) progress.update(bytes, lines, this.size);
+		return this.size - before;
+	}
+
+	/**
+	 * Adds a UTF-8 encoded line, only decoding it into a String if it is not
+	 * in the set already. A malformed line is decoded first, since Java's
+	 * decoder replaces the bad bytes, and looking it up by its raw bytes
+	 * could find a different string than the one it becomes.
+	 */
+	private boolean addUtf8(byte[] utf8, int offset, int end) {
+		int length = end - offset;
+		int i = offset;
+		while (i < end && utf8[i] >= 0) i++;
+		boolean ascii = i == end;
+		if (!ascii && !StringHashSet.isStrictUtf8(utf8, i, end - i)) return this.addItem(new String(utf8, offset, length, StandardCharsets.UTF_8));
+		int hash = this.spread(this.hasher.hash(utf8, offset, length));
+		if (this.filter == null || this.filter.mightContain(hash)) {
+			if (this.table != null) {
+				if (this.table.containsUtf8(utf8, offset, length, hash)) return false;
+			} else {
+				for (Node node = this.chain(hash); node != null && node.data != null; node = node.next) {
+					if (node.hash == hash && StringHasher.equalsUtf8(node.data, utf8, offset, length)) return false;
+				}
+			}
+		}
+		if (ascii) return this.addItem(new String(utf8, offset, length, StandardCharsets.ISO_8859_1), hash);
+		return this.addItem(new String(utf8, offset, length, StandardCharsets.UTF_8), hash);
+	}
+
+	/**
+	 * Checks that bytes are UTF-8 that Java's decoder reads without replacing
+	 * anything: well-formed, and with no surrogates encoded on their own
+	 */
+	private static boolean isStrictUtf8(byte[] utf8, int offset, int length) {
+		if (!StringHasher.isWellFormed(utf8, offset, length)) return false;
+		// In well-formed input 0xED is always a lead byte, and 0xA0 and up after it make a surrogate
+		for (int i = offset, end = offset + length - 1; i < end; i++) if (utf8[i] == (byte) 0xED && (utf8[i + 1] & 0xFF) >= 0xA0) return false;
+		return true;
+	}
+
+	/**
+	 * Writes every item to the channel as a line of UTF-8 text, ending in
+	 * \n, which addAllFrom() can read back. The items are encoded into one
+	 * reusable buffer that is written out whenever it fills, so no String of
+	 * the whole set is ever built. Items that hold line breaks come back as
+	 * more than one line. The channel is not closed.
+	 *
+	 * @param out
+	 * @return The number of bytes written.
+	 * @throws IOException If the channel cannot be written.
+	 * @throws ConcurrentModificationException If the set changes while it is being written.
+	 */
+	public long writeTo(WritableByteChannel out) throws IOException, ConcurrentModificationException {
+		ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER);
+		byte[] array = buffer.array();
+		long written = 0;
+		int position = 0;
+		for (String item : this) {
+			// Each character takes at most three bytes
+			long needed = 3L * item.length() + 1;
+			if (position + needed > array.length) {
+				written += StringHashSet.drain(out, buffer, position);
+				position = 0;
+			}
+			if (needed > array.length) {
+				byte[] bytes = (item + "\n").getBytes(StandardCharsets.UTF_8);
+				written += StringHashSet.drain(out, ByteBuffer.wrap(bytes), bytes.length);
+				continue;
+			}
+			position = StringHashSet.encodeUtf8(item, array, position);
+			array[position++] = '\n';
+		}
+		return written + StringHashSet.drain(out, buffer, position);
+	}
+
+	/**
+	 * Writes the first length bytes of a buffer to a channel
+	 * @return The number of bytes written
+	 */
+	private static int drain(WritableByteChannel out, ByteBuffer buffer, int length) throws IOException {
+		buffer.limit(length).position(0);
+		while (buffer.hasRemaining()) out.write(buffer);
+		buffer.clear();
+		return length;
+	}
+
+	/**
+	 * Encodes characters as UTF-8 the way String.getBytes() does, turning
+	 * unpaired surrogates into '?'
+	 * @return The index after the last byte written
+	 */
+	private static int encodeUtf8(String item, byte[] out, int position) {
+		for (int i = 0, n = item.length(); i < n; i++) {
+			char c = item.charAt(i);
+			if (c < 0x80) out[position++] = (byte) c;
+			else if (c < 0x800) {
+				out[position++] = (byte) (0xC0 | c >> 6);
+				out[position++] = (byte) (0x80 | c & 0x3F);
+			} else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(item.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, item.charAt(++i));
+				out[position++] = (byte) (0xF0 | cp >> 18);
+				out[position++] = (byte) (0x80 | cp >> 12 & 0x3F);
+				out[position++] = (byte) (0x80 | cp >> 6 & 0x3F);
+				out[position++] = (byte) (0x80 | cp & 0x3F);
+			} else if (Character.isSurrogate(c)) out[position++] = '?';
+			else {
+				out[position++] = (byte) (0xE0 | c >> 12);
+				out[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+				out[position++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Copies the items into an immutable FrozenStringSet, which finds each of
+	 * them with a minimal perfect hash in a single probe and can be shared
+	 * between threads without locking. Building it takes a few passes over
+	 * the items; the set itself is left as it was.
+	 *
+	 * @return The frozen copy
+	 */
+	public FrozenStringSet freeze() {
+		return FrozenStringSet.of(this, this.size);
+	}
+
+	/**
+	 *
+	 * Challenge Feature: Returns an iterator over the set. Return the items in
+	 * any order that you can do efficiently. Should throw a
+	 * NoSuchElementException if there are no more items and next() is called.
+	 * Should throw a ConcurrentModificationException if next() is called and
+	 * the set has been mutated since the iterator was created.
+	 *
+	 * @return an iterator.
+	 */
+	public Iterator<String> iterator() {
+		if (this.table != null) return new SlotIterator(this);
+		return new HashSetIterator(this);
+	}
+
+	/**
+	 * Passes every item to the action, walking the table directly instead of
+	 * through an iterator.
+	 *
+	 * @param action
+	 * @throws ConcurrentModificationException If the action changes the set.
+	 */
+	@Override
+	public void forEach(Consumer<? super String> action) throws ConcurrentModificationException {
+		this.finishResize();
+		int changes = this.changes;
+		if (this.table != null) {
+			String[] keys = this.table.keys;
+			for (int i = 0; i < keys.length && this.changes == changes; i++) if (keys[i] != null) action.accept(keys[i]);
+		} else {
+			Node[] array = this.array;
+			for (int i = 0; i < this.capacity && this.changes == changes; i++) {
+				Node list = array[i];
+				if (list == null || list.data == null) continue;
+				for (Node node = list; node != null; node = node.next) action.accept(node.data);
+			}
+		}
+		if (this.changes != changes) throw new ConcurrentModificationException();
+	}
+
+	/**
+	 * Removes every item the filter accepts in one pass of a cursor over the
+	 * table. The table only shrinks once at the end, if it has become sparse.
+	 *
+	 * @param filter
+	 * @return True if the hash table is modified in any way.
+	 * @throws ConcurrentModificationException If the filter changes the set.
+	 */
+	public boolean removeIf(Predicate<? super String> filter) throws ConcurrentModificationException {
+		int before = this.size;
+		for (Iterator<String> iter = this.iterator(); iter.hasNext(); ) if (filter.test(iter.next())) iter.remove();
+		if (this.size == before) return false;
+		this.shrinkIfSparse();
+		return true;
+	}
+
+	/**
+	 * Returns a spliterator over ranges of buckets, which splits by halving
+	 * the range. It is SIZED until it is first split, and DISTINCT and
+	 * NONNULL throughout. It throws ConcurrentModificationException if the
+	 * set changes while it is being used.
+	 *
+	 * @return a spliterator.
+	 */
+	@Override
+	public Spliterator<String> spliterator() {
+		this.finishResize();
+		return new BucketSpliterator(this, 0, this.table != null ? this.table.capacity() : this.capacity, this.size, true);
+	}
+
+	/**
+	 * @return A sequential stream over the items.
+	 */
+	public Stream<String> stream() {
+		return StreamSupport.stream(this.spliterator(), false);
+	}
+
+	/**
+	 * @return A parallel stream over the items, which splits the table into
+	 *         ranges of buckets.
+	 */
+	public Stream<String> parallelStream() {
+		return StreamSupport.stream(this.spliterator(), true);
+	}
+
+	// Challenge Feature: If you have an iterator, this is easy. Use a
+	// StringBuilder, so you can build the string in O(n) time. (Repeatedly
+	// concatenating n strings onto a string gives O(n^2) time)
+	// Format it like any other Collection's toString (like [a, b, c])
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (Iterator<String> iter = this.iterator(); iter.hasNext(); ) {
+			sb.append(iter.next());
+			if (iter.hasNext()) sb.append(", ");
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * A cursor over the chains: it holds the node it will return next and the
+	 * bucket after it, so each step either follows a link or scans forward to
+	 * the next bucket that has items, and nothing is allocated per item.
+	 */
+	private class HashSetIterator implements Iterator<String> {
+		StringHashSet hashSet;
+		Node node;
+		int index;
+		Node last;
+		int changes;
+
+		HashSetIterator(StringHashSet hashSet) {
+			hashSet.finishResize();
+			this.hashSet = hashSet;
+			this.changes = hashSet.changes;
+			this.advance();
+		}
+
+		/**
+		 * Moves the cursor to the next node, which is null after the last one
+		 */
+		private void advance() {
+			if (this.node != null && (this.node = this.node.next) != null) return;
+			Node[] array = this.hashSet.array;
+			while (this.index < this.hashSet.capacity) {
+				Node list = array[this.index++];
+				if (list != null && list.data != null) {
+					this.node = list;
+					return;
+				}
+			}
+		}
 
 		@Override
 		public boolean hasNext() throws ConcurrentModificationException {
 			if (this.changes != this.hashSet.changes) throw new ConcurrentModificationException();
-			if (this.iter != null && this.iter.hasNext()) return true;
-			for (int i = this.index + 1; i < this.hashSet.capacity; i++) if (this.hashSet.array[i] != null && this.hashSet.array[i].data != null) return true;
-			return false;
+			return this.node != null;
+		}
+
+		@Override
+		public String next() throws NoSuchElementException, ConcurrentModificationException {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			this.last = this.node;
+			this.advance();
+			return this.last.data;
+		}
+
+		/**
+		 * Removes the last item returned. A node keeps its link when it is
+		 * unlinked, and removing a chain's head moves the next node's item
+		 * into it, so the cursor always still points at the right node. The
+		 * table does not shrink until the next add or remove on the set.
+		 */
+		@Override
+		public void remove() throws IllegalStateException, ConcurrentModificationException {
+			if (this.last == null) throw new IllegalStateException();
+			if (this.changes != this.hashSet.changes) throw new ConcurrentModificationException();
+			String item = this.last.data;
+			Node list = this.hashSet.array[this.hashSet.index(this.last.hash)];
+			list.remove(item, this.last.hash);
+			this.last = null;
+			this.hashSet.size--;
+			this.hashSet.removed(item);
+			this.changes = ++this.hashSet.changes;
+		}
+	}
+
+	/**
+	 * Walks the probing table with its removal-safe cursor, keeping the set's
+	 * size and removal hook up to date when items are removed through it.
+	 */
+	private class SlotIterator implements Iterator<String> {
+		StringHashSet hashSet;
+		OpenTable<String[]>.Cursor cursor;
+		String last;
+		int changes;
+
+		SlotIterator(StringHashSet hashSet) {
+			this.hashSet = hashSet;
+			this.cursor = hashSet.table.new Cursor();
+			this.changes = hashSet.changes;
+		}
+
+		@Override
+		public boolean hasNext() throws ConcurrentModificationException {
+			if (this.changes != this.hashSet.changes) throw new ConcurrentModificationException();
+			return this.cursor.hasNext();
 		}
 
 		@Override
 		public String next() throws NoSuchElementException, ConcurrentModificationException {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			this.last = this.hashSet.table.keys[this.cursor.next()];
+			return this.last;
+		}
+
+		@Override
+		public void remove() throws IllegalStateException, ConcurrentModificationException {
+			if (this.last == null) throw new IllegalStateException();
 			if (this.changes != this.hashSet.changes) throw new ConcurrentModificationException();
-			if (this.iter != null) {
-				if (!this.iter.hasNext() && !this.hasNext()) throw new NoSuchElementException();
-				if (this.iter.hasNext()) return this.iter.next();
+			this.cursor.remove();
+			this.hashSet.size--;
+			this.hashSet.removed(this.last);
+			this.last = null;
+			this.changes = ++this.hashSet.changes;
+		}
+	}
+
+	/**
+	 * The live view of a set's stats() that publishMetrics() registers
+	 */
+	private static class MetricsBean implements StringHashSetMXBean {
+		StringHashSet set;
+
+		MetricsBean(StringHashSet set) {
+			this.set = set;
+		}
+
+		@Override
+		public String getStorage() {
+			return this.set.storage.name();
+		}
+
+		@Override
+		public int getSize() {
+			return this.set.size;
+		}
+
+		@Override
+		public int getCapacity() {
+			return this.set.capacity;
+		}
+
+		@Override
+		public double getLoadFactor() {
+			return this.set.stats().getLoadFactor();
+		}
+
+		@Override
+		public double getEmptyBucketRatio() {
+			return this.set.stats().getEmptyBucketRatio();
+		}
+
+		@Override
+		public int getMaxProbeLength() {
+			return this.set.stats().getMaxProbeLength();
+		}
+
+		@Override
+		public long[] getProbeLengthHistogram() {
+			return this.set.stats().getProbeLengthHistogram();
+		}
+
+		@Override
+		public long getResizeCount() {
+			return this.set.stats().getResizeCount();
+		}
+
+		@Override
+		public long getResizeNanos() {
+			return this.set.stats().getResizeNanos();
+		}
+
+		@Override
+		public long getMaxResizeNanos() {
+			return this.set.stats().getMaxResizeNanos();
+		}
+
+		@Override
+		public long getContainsHits() {
+			return this.set.stats().getContainsHits();
+		}
+
+		@Override
+		public long getContainsMisses() {
+			return this.set.stats().getContainsMisses();
+		}
+
+		@Override
+		public long getLatencyP50Nanos() {
+			return this.set.stats().getLatencyP50Nanos();
+		}
+
+		@Override
+		public long getLatencyP99Nanos() {
+			return this.set.stats().getLatencyP99Nanos();
+		}
+
+		@Override
+		public long getLatencyP999Nanos() {
+			return this.set.stats().getLatencyP999Nanos();
+		}
+	}
+
+	private static class BucketSpliterator implements Spliterator<String> {
+		StringHashSet hashSet;
+		Node[] buckets;
+		String[] keys;
+		int index;
+		int fence;
+		long estimate;
+		boolean exact;
+		Node node;
+		int changes;
+
+		BucketSpliterator(StringHashSet hashSet, int index, int fence, long estimate, boolean exact) {
+			this.hashSet = hashSet;
+			this.buckets = hashSet.array;
+			this.keys = hashSet.table != null ? hashSet.table.keys : null;
+			this.index = index;
+			this.fence = fence;
+			this.estimate = estimate;
+			this.exact = exact;
+			this.changes = hashSet.changes;
+		}
+
+		/**
+		 * @return The next item in this range, or null if there are no more
+		 */
+		private String next() {
+			if (this.keys != null) {
+				while (this.index < this.fence) {
+					String key = this.keys[this.index++];
+					if (key != null) return key;
+				}
+				return null;
 			}
-			for (int i = this.index + 1; i < this.hashSet.capacity; i++) if (this.hashSet.array[i] != null && this.hashSet.array[i].data != null) {
-				this.index = i;
-				break;
+			while (this.node == null) {
+				if (this.index >= this.fence) return null;
+				Node list = this.buckets[this.index++];
+				if (list != null && list.data != null) this.node = list;
 			}
-			this.iter = this.hashSet.array[index].iterator();
-			return this.iter.next();
+			String item = this.node.data;
+			this.node = this.node.next;
+			return item;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super String> action) throws ConcurrentModificationException {
+			if (action == null) throw new NullPointerException();
+			String item = this.next();
+			if (item == null) return false;
+			action.accept(item);
+			if (this.changes != this.hashSet.changes) throw new ConcurrentModificationException();
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super String> action) throws ConcurrentModificationException {
+			if (action == null) throw new NullPointerException();
+			for (String item = this.next(); item != null; item = this.next()) action.accept(item);
+			if (this.changes != this.hashSet.changes) throw new ConcurrentModificationException();
+		}
+
+		@Override
+		public Spliterator<String> trySplit() {
+			int mid = (this.index + this.fence) >>> 1;
+			if (mid <= this.index) return null;
+			this.estimate >>>= 1;
+			this.exact = false;
+			BucketSpliterator prefix = new BucketSpliterator(this.hashSet, this.index, mid, this.estimate, false);
+			prefix.buckets = this.buckets;
+			prefix.keys = this.keys;
+			prefix.changes = this.changes;
+			this.index = mid;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return this.estimate;
+		}
+
+		@Override
+		public int characteristics() {
+			return (this.exact ? Spliterator.SIZED : 0) | Spliterator.DISTINCT | Spliterator.NONNULL;
 		}
 	}
 }
@@ -0,0 +1,1344 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Throughput, latency and allocation measurements for StringHashSet and its
+ * storage layouts, side by side with java.util.HashSet. Each case runs a few
+ * warmup rounds and then several measured rounds on the same JVM. It reports
+ * operations per second for the best round, latency percentiles from every
+ * 64th operation, and the bytes the benchmark thread allocated per operation.
+ *
+ * Usage: java -Xmx8g StringHashSetBenchmark [sizes] [filter]
+ *
+ * sizes is a comma-separated list of set sizes (default 1000,100000,1000000;
+ * 50000000 needs about 16g of heap), and filter only runs the cases whose
+ * name contains it. The studies at the end (reordering, resize-pauses,
+ * contended, snapshot-startup, bulk, parallel, memory, memory-per-entry,
+ * frozen, prefix, bloom, set-algebra, load, char-slices, byte-arrays, longs,
+ * intern, bounded, versioned, durable) run once each, at their own sizes.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public class StringHashSetBenchmark {
+	private static final int WARMUP_ROUNDS = 3;
+	private static final int ROUNDS = 5;
+	private static final int SAMPLE_EVERY = 64;
+	private static final int MAX_OPERATIONS = 2000000;
+	private static final int MAX_TO_STRING_SIZE = 5000000;
+
+	// Results are folded in here so the JIT cannot discard the work
+	static volatile long sink;
+
+	/**
+	 * A set implementation under test
+	 */
+	abstract static class Subject {
+		abstract boolean add(String item);
+
+		abstract boolean contains(String item);
+
+		abstract boolean remove(String item);
+
+		abstract Iterator<String> iterator();
+
+		abstract String render();
+
+		abstract int size();
+
+		/**
+		 * @return The StringHashSet under test, or null for other implementations
+		 */
+		StringHashSet set() {
+			return null;
+		}
+	}
+
+	/**
+	 * The implementations every case runs against
+	 */
+	enum Kind {
+		CHAINED, LINEAR_PROBING, ROBIN_HOOD, COMPACT, JAVA_UTIL;
+
+		/**
+		 * @param capacity The initial capacity, or -1 for the implementation's default
+		 * @return An empty set of this kind
+		 */
+		Subject create(int capacity) {
+			if (this == JAVA_UTIL) {
+				final HashSet<String> set = capacity < 0 ? new HashSet<String>() : new HashSet<String>(capacity);
+				return new Subject() {
+					boolean add(String item) {
+						return set.add(item);
+					}
+
+					boolean contains(String item) {
+						return set.contains(item);
+					}
+
+					boolean remove(String item) {
+						return set.remove(item);
+					}
+
+					Iterator<String> iterator() {
+						return set.iterator();
+					}
+
+					String render() {
+						return set.toString();
+					}
+
+					int size() {
+						return set.size();
+					}
+				};
+			}
+			if (this == COMPACT) {
+				final CompactStringSet set = capacity < 0 ? new CompactStringSet() : new CompactStringSet(capacity);
+				return new Subject() {
+					boolean add(String item) {
+						return set.add(item);
+					}
+
+					boolean contains(String item) {
+						return set.contains(item);
+					}
+
+					boolean remove(String item) {
+						return set.remove(item);
+					}
+
+					Iterator<String> iterator() {
+						return set.iterator();
+					}
+
+					String render() {
+						return set.toString();
+					}
+
+					int size() {
+						return set.size();
+					}
+				};
+			}
+			StringHashSet.Storage storage = StringHashSet.Storage.valueOf(this.name());
+			final StringHashSet set = capacity < 0 && storage == StringHashSet.Storage.CHAINED ? new StringHashSet() : new StringHashSet(Math.max(capacity, 5), storage);
+			return new Subject() {
+				boolean add(String item) {
+					return set.add(item);
+				}
+
+				boolean contains(String item) {
+					return set.contains(item);
+				}
+
+				boolean remove(String item) {
+					return set.remove(item);
+				}
+
+				Iterator<String> iterator() {
+					return set.iterator();
+				}
+
+				String render() {
+					return set.toString();
+				}
+
+				int size() {
+					return set.size();
+				}
+
+				StringHashSet set() {
+					return set;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Collects every SAMPLE_EVERY-th operation's latency during a round
+	 */
+	static class Recorder {
+		long[] samples = new long[1024];
+		int count;
+
+		void record(long nanos) {
+			if (this.count == this.samples.length) this.samples = Arrays.copyOf(this.samples, this.count * 2);
+			this.samples[this.count++] = nanos;
+		}
+
+		long percentile(double p) {
+			if (this.count == 0) return 0;
+			long[] sorted = Arrays.copyOf(this.samples, this.count);
+			Arrays.sort(sorted);
+			return sorted[Math.min(this.count - 1, (int) (p * this.count))];
+		}
+	}
+
+	/**
+	 * One benchmark case. setup() runs untimed before every round, and run()
+	 * performs the timed operations and says how many it did.
+	 */
+	abstract static class Case {
+		void setup() {
+		}
+
+		abstract long run(Recorder recorder);
+	}
+
+	/**
+	 * @return The bytes the current thread has allocated so far, or -1 if the JVM cannot tell
+	 */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Runs a case through its warmup and measured rounds and prints one row
+	 */
+	static void measure(String name, Object subject, int size, Case benchmark) {
+		double bestRate = 0;
+		long allocated = 0, operations = 0;
+		Recorder recorder = new Recorder();
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			benchmark.setup();
+			Recorder roundRecorder = round < WARMUP_ROUNDS ? new Recorder() : recorder;
+			long before = StringHashSetBenchmark.allocatedBytes();
+			long start = System.nanoTime();
+			long ops = benchmark.run(roundRecorder);
+			long elapsed = System.nanoTime() - start;
+			long after = StringHashSetBenchmark.allocatedBytes();
+			if (round < WARMUP_ROUNDS) continue;
+			bestRate = Math.max(bestRate, ops * 1e9 / elapsed);
+			if (before < 0) allocated = -1;
+			else if (allocated >= 0) allocated += after - before;
+			operations += ops;
+		}
+		String bytes = allocated < 0 || operations == 0 ? "n/a" : String.format("%.1f", (double) allocated / operations);
+		System.out.printf("%-20s %-15s %10d %14.0f %8d %8d %8d %10s%n", name, subject, size, bestRate, recorder.percentile(0.5), recorder.percentile(0.99), recorder.percentile(0.999), bytes);
+	}
+
+	/**
+	 * Builds a list of queries over the given items where the item of rank k
+	 * is requested with probability proportional to 1 / k^exponent.
+	 * @param items The items to draw from, most popular first
+	 * @param count The number of queries to build
+	 * @param exponent The skew of the distribution; 0 is uniform
+	 * @param random The source of randomness
+	 * @return The queries
+	 */
+	static String[] zipf(String[] items, int count, double exponent, Random random) {
+		double[] cdf = new double[items.length];
+		double total = 0;
+		for (int i = 0; i < items.length; i++) cdf[i] = total += 1 / Math.pow(i + 1, exponent);
+		String[] queries = new String[count];
+		for (int i = 0; i < count; i++) {
+			double target = random.nextDouble() * total;
+			int lo = 0, hi = items.length - 1;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (cdf[mid] < target) lo = mid + 1;
+				else hi = mid;
+			}
+			queries[i] = items[lo];
+		}
+		return queries;
+	}
+
+	/**
+	 * Builds distinct items that look like short identifiers
+	 * @param count The number of items
+	 * @param random The source of randomness, used to shuffle them
+	 * @return The items
+	 */
+	static String[] items(int count, Random random) {
+		return StringHashSetBenchmark.items(0, count, random);
+	}
+
+	/**
+	 * Builds distinct items that look like short identifiers, numbered from
+	 * first, so that ranges that do not overlap give disjoint items
+	 */
+	static String[] items(int first, int count, Random random) {
+		String[] items = new String[count];
+		for (int i = 0; i < count; i++) items[i] = "id-" + Long.toString((first + i) * 7919L, 36);
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			String item = items[i];
+			items[i] = items[j];
+			items[j] = item;
+		}
+		return items;
+	}
+
+	/**
+	 * Draws queries uniformly, taking each from the hits with the given
+	 * probability and from the misses otherwise
+	 */
+	static String[] mix(String[] hits, String[] misses, int count, double hitRatio, Random random) {
+		String[] queries = new String[count];
+		for (int i = 0; i < count; i++) {
+			String[] source = random.nextDouble() < hitRatio ? hits : misses;
+			queries[i] = source[random.nextInt(source.length)];
+		}
+		return queries;
+	}
+
+	/**
+	 * @return A set of the given kind holding the items
+	 */
+	static Subject filled(Kind kind, String[] items) {
+		Subject set = kind.create(items.length);
+		for (String item : items) set.add(item);
+		return set;
+	}
+
+	/**
+	 * Times contains() over a fixed list of queries
+	 */
+	static Case lookups(final Subject set, final String[] queries) {
+		return new Case() {
+			long run(Recorder recorder) {
+				long found = 0;
+				for (int i = 0; i < queries.length; i++) {
+					if (i % SAMPLE_EVERY == 0) {
+						long start = System.nanoTime();
+						if (set.contains(queries[i])) found++;
+						recorder.record(System.nanoTime() - start);
+					} else if (set.contains(queries[i])) found++;
+				}
+				sink += found;
+				return queries.length;
+			}
+		};
+	}
+
+	/**
+	 * Runs every case against every kind of set at the given size
+	 */
+	static void suite(int size, String filter) {
+		Random random = new Random(size);
+		final String[] items = StringHashSetBenchmark.items(size, random);
+		final String[] absent = StringHashSetBenchmark.items(size, Math.max(size, 1000), random);
+		int count = Math.min(MAX_OPERATIONS, Math.max(size, 100000));
+		String[] uniform = StringHashSetBenchmark.mix(items, absent, count, 1, random);
+		String[] skewed = StringHashSetBenchmark.zipf(items, count, 1.1, random);
+		String[] half = StringHashSetBenchmark.mix(items, absent, count, 0.5, random);
+		String[] misses = StringHashSetBenchmark.mix(items, absent, count, 0, random);
+		final String[] churn = StringHashSetBenchmark.mix(items, items, count, 1, random);
+		for (final Kind kind : Kind.values()) {
+			final Subject filled = StringHashSetBenchmark.filled(kind, items);
+			if ("contains-uniform".contains(filter)) StringHashSetBenchmark.measure("contains-uniform", kind, size, StringHashSetBenchmark.lookups(filled, uniform));
+			if ("contains-zipf".contains(filter)) StringHashSetBenchmark.measure("contains-zipf", kind, size, StringHashSetBenchmark.lookups(filled, skewed));
+			if ("contains-50%-hits".contains(filter)) StringHashSetBenchmark.measure("contains-50%-hits", kind, size, StringHashSetBenchmark.lookups(filled, half));
+			if ("contains-misses".contains(filter)) StringHashSetBenchmark.measure("contains-misses", kind, size, StringHashSetBenchmark.lookups(filled, misses));
+			if ("add-growth".contains(filter)) StringHashSetBenchmark.measure("add-growth", kind, size, new Case() {
+				long run(Recorder recorder) {
+					Subject set = kind.create(-1);
+					for (int i = 0; i < items.length; i++) {
+						if (i % SAMPLE_EVERY == 0) {
+							long start = System.nanoTime();
+							set.add(items[i]);
+							recorder.record(System.nanoTime() - start);
+						} else set.add(items[i]);
+					}
+					return items.length;
+				}
+			});
+			if ("remove-churn".contains(filter)) StringHashSetBenchmark.measure("remove-churn", kind, size, new Case() {
+				long run(Recorder recorder) {
+					for (int i = 0; i < churn.length; i++) {
+						if (i % SAMPLE_EVERY == 0) {
+							long start = System.nanoTime();
+							filled.remove(churn[i]);
+							filled.add(churn[i]);
+							recorder.record(System.nanoTime() - start);
+						} else {
+							filled.remove(churn[i]);
+							filled.add(churn[i]);
+						}
+					}
+					return churn.length * 2L;
+				}
+			});
+			if ("iterate".contains(filter)) StringHashSetBenchmark.measure("iterate", kind, size, new Case() {
+				long run(Recorder recorder) {
+					long length = 0;
+					long start = System.nanoTime();
+					for (Iterator<String> iter = filled.iterator(); iter.hasNext(); ) length += iter.next().length();
+					recorder.record((System.nanoTime() - start) / Math.max(1, items.length));
+					sink += length;
+					return items.length;
+				}
+			});
+			if ("toString".contains(filter) && size <= MAX_TO_STRING_SIZE) StringHashSetBenchmark.measure("toString", kind, size, new Case() {
+				long run(Recorder recorder) {
+					long start = System.nanoTime();
+					sink += filled.render().length();
+					recorder.record((System.nanoTime() - start) / Math.max(1, items.length));
+					return items.length;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Times contains() over the queries against a set built from the items
+	 * @return The best time per query, in nanoseconds
+	 */
+	static double timeLookups(String[] items, String[] queries, int capacity, double loadFactor, StringHashSet.Reordering policy, int threshold) {
+		double best = Double.MAX_VALUE;
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+			StringHashSet set = new StringHashSet(capacity, StringHashSet.Storage.CHAINED, loadFactor);
+			for (String item : items) set.add(item);
+			set.setReordering(policy, threshold);
+			int found = 0;
+			long start = System.nanoTime();
+			for (String query : queries) if (set.contains(query)) found++;
+			long elapsed = System.nanoTime() - start;
+			if (found != queries.length) throw new AssertionError("Lost an item");
+			best = Math.min(best, (double) elapsed / queries.length);
+		}
+		return best;
+	}
+
+	/**
+	 * Compares the reordering policies on Zipf-skewed lookups into long chains
+	 */
+	static void skewedLookups() {
+		Random random = new Random(230);
+		String[] items = StringHashSetBenchmark.items(1 << 18, random);
+		String[] queries = StringHashSetBenchmark.zipf(items, 2000000, 1.1, random);
+		int capacity = items.length / 16;
+		System.out.println("Skewed contains(), 262144 items, chains of about 16:");
+		for (StringHashSet.Reordering policy : StringHashSet.Reordering.values()) {
+			double ns = StringHashSetBenchmark.timeLookups(items, queries, capacity, 1024, policy, 2);
+			System.out.printf("  %-16s %8.1f ns/op%n", policy, ns);
+		}
+	}
+
+	/**
+	 * Compares the slowest single add() while growing a set from the default
+	 * capacity, with stop-the-world and incremental resizing
+	 */
+	static void resizePauses() {
+		String[] items = StringHashSetBenchmark.items(4000000, new Random(230));
+		System.out.println("Slowest add() while growing to 4000000 items:");
+		for (boolean incremental : new boolean[] { false, true }) {
+			long worst = Long.MAX_VALUE;
+			long total = Long.MAX_VALUE;
+			for (int round = 0; round < 3; round++) {
+				StringHashSet set = new StringHashSet(5, StringHashSet.Storage.CHAINED);
+				set.setIncrementalResize(incremental);
+				long roundWorst = 0;
+				long roundStart = System.nanoTime();
+				for (String item : items) {
+					long start = System.nanoTime();
+					set.add(item);
+					roundWorst = Math.max(roundWorst, System.nanoTime() - start);
+				}
+				total = Math.min(total, System.nanoTime() - roundStart);
+				worst = Math.min(worst, roundWorst);
+			}
+			System.out.printf("  %-16s %8.2f ms worst, %8.1f ns/op%n", incremental ? "incremental" : "stop-the-world", worst / 1e6, (double) total / items.length);
+		}
+	}
+
+	/**
+	 * Runs a 90% read, 10% write mix on several threads against a StringHashSet
+	 * behind one lock and against a ConcurrentStringHashSet
+	 */
+	static void contendedMix() throws InterruptedException {
+		final String[] items = StringHashSetBenchmark.items(1 << 16, new Random(230));
+		final int threads = Runtime.getRuntime().availableProcessors();
+		final int operations = 2000000;
+		System.out.println("90% contains / 10% add+remove on " + threads + " threads:");
+		for (final boolean concurrent : new boolean[] { false, true }) {
+			long best = Long.MAX_VALUE;
+			for (int round = 0; round < 3; round++) {
+				final StringHashSet locked = new StringHashSet(items.length, StringHashSet.Storage.CHAINED);
+				final ConcurrentStringHashSet shared = new ConcurrentStringHashSet(items.length);
+				for (String item : items) {
+					locked.add(item);
+					shared.add(item);
+				}
+				Thread[] workers = new Thread[threads];
+				for (int t = 0; t < threads; t++) {
+					final int seed = t;
+					workers[t] = new Thread() {
+						@Override
+						public void run() {
+							Random random = new Random(seed);
+							for (int i = 0; i < operations; i++) {
+								String item = items[random.nextInt(items.length)];
+								int op = random.nextInt(20);
+								if (concurrent) {
+									if (op == 0) shared.remove(item);
+									else if (op == 1) shared.add(item);
+									else shared.contains(item);
+								} else {
+									synchronized (locked) {
+										if (op == 0) locked.remove(item);
+										else if (op == 1) locked.add(item);
+										else locked.contains(item);
+									}
+								}
+							}
+						}
+					};
+				}
+				long start = System.nanoTime();
+				for (Thread worker : workers) worker.start();
+				for (Thread worker : workers) worker.join();
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			System.out.printf("  %-16s %8.1f Mops/s%n", concurrent ? "concurrent" : "synchronized", (double) threads * operations / best * 1e3);
+		}
+	}
+
+	/**
+	 * Compares building a set item by item with opening a memory-mapped
+	 * snapshot of it, and the first lookups served from each
+	 */
+	static void snapshotStartup() throws IOException {
+		String[] items = StringHashSetBenchmark.items(4000000, new Random(230));
+		String[] queries = StringHashSetBenchmark.mix(items, items, 1000000, 1, new Random(231));
+		StringHashSet set = new StringHashSet(5, StringHashSet.Storage.CHAINED);
+		long start = System.nanoTime();
+		set.addAll(Arrays.asList(items));
+		long build = System.nanoTime() - start;
+		Path path = Files.createTempFile("StringHashSetBenchmark", ".snap");
+		try {
+			start = System.nanoTime();
+			StringSetSnapshot.write(set, path);
+			long write = System.nanoTime() - start;
+			start = System.nanoTime();
+			StringSetSnapshot snapshot = StringSetSnapshot.open(path);
+			long open = System.nanoTime() - start;
+			start = System.nanoTime();
+			snapshot.verify();
+			long verify = System.nanoTime() - start;
+			long heapLookups = StringHashSetBenchmark.firstLookups(set, null, queries);
+			long mappedLookups = StringHashSetBenchmark.firstLookups(null, snapshot, queries);
+			snapshot.close();
+			System.out.printf("Startup with 4000000 items (%d MB snapshot):%n", Files.size(path) >> 20);
+			System.out.printf("  %-16s %10.1f ms%n", "addAll", build / 1e6);
+			System.out.printf("  %-16s %10.1f ms%n", "write", write / 1e6);
+			System.out.printf("  %-16s %10.3f ms%n", "open", open / 1e6);
+			System.out.printf("  %-16s %10.1f ms%n", "verify", verify / 1e6);
+			System.out.printf("  %-16s %10.1f ns/op heap, %.1f ns/op mapped%n", "first lookups", (double) heapLookups / queries.length, (double) mappedLookups / queries.length);
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	private static long firstLookups(StringHashSet set, StringSetSnapshot snapshot, String[] queries) {
+		long start = System.nanoTime();
+		int found = 0;
+		for (String query : queries) if (set != null ? set.contains(query) : snapshot.contains(query)) found++;
+		sink += found;
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Compares bulk loads and batched lookups with the same work done one
+	 * item at a time
+	 */
+	static void bulkOperations() {
+		Random random = new Random(230);
+		String[] items = StringHashSetBenchmark.items(4000000, random);
+		String[] queries = StringHashSetBenchmark.mix(items, StringHashSetBenchmark.items(4000000, 4000000, random), 4000000, 0.5, random);
+		boolean[] found = new boolean[queries.length];
+		System.out.println("Bulk operations with 4000000 items:");
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			long loop = Long.MAX_VALUE, bulk = Long.MAX_VALUE, contains = Long.MAX_VALUE, batch = Long.MAX_VALUE;
+			StringHashSet set = null;
+			for (int round = 0; round < 3; round++) {
+				set = new StringHashSet(5, storage);
+				long start = System.nanoTime();
+				for (String item : items) set.add(item);
+				loop = Math.min(loop, System.nanoTime() - start);
+				set = new StringHashSet(5, storage);
+				start = System.nanoTime();
+				set.addAll(items);
+				bulk = Math.min(bulk, System.nanoTime() - start);
+			}
+			for (int round = 0; round < 5; round++) {
+				long start = System.nanoTime();
+				int hits = 0;
+				for (String query : queries) if (set.contains(query)) hits++;
+				contains = Math.min(contains, System.nanoTime() - start);
+				start = System.nanoTime();
+				hits += set.containsBatch(queries, found);
+				batch = Math.min(batch, System.nanoTime() - start);
+				sink += hits;
+			}
+			System.out.printf("  %-16s add %6.1f ns/op, addAll %6.1f ns/op, contains %6.1f ns/op, containsBatch %6.1f ns/op%n", storage, (double) loop / items.length,
+					(double) bulk / items.length, (double) contains / queries.length, (double) batch / queries.length);
+		}
+	}
+
+	/**
+	 * Compares building and scanning a set on one thread with doing the same
+	 * on the common ForkJoinPool
+	 */
+	static void parallelBuildAndScan() {
+		String[] items = StringHashSetBenchmark.items(4000000, new Random(230));
+		System.out.println("Build and scan 4000000 items, " + ForkJoinPool.getCommonPoolParallelism() + " worker threads:");
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			long sequential = Long.MAX_VALUE, parallel = Long.MAX_VALUE, scan = Long.MAX_VALUE, parallelScan = Long.MAX_VALUE;
+			for (int round = 0; round < 3; round++) {
+				long start = System.nanoTime();
+				StringHashSet set = new StringHashSet(5, storage);
+				set.addAll(items);
+				sequential = Math.min(sequential, System.nanoTime() - start);
+				set = null;
+				start = System.nanoTime();
+				set = StringHashSet.parallelBuild(Arrays.asList(items), storage);
+				parallel = Math.min(parallel, System.nanoTime() - start);
+				start = System.nanoTime();
+				sink += set.stream().filter(item -> item.endsWith("7")).count();
+				scan = Math.min(scan, System.nanoTime() - start);
+				start = System.nanoTime();
+				sink += set.parallelStream().filter(item -> item.endsWith("7")).count();
+				parallelScan = Math.min(parallelScan, System.nanoTime() - start);
+			}
+			System.out.printf("  %-16s addAll %7.1f ms, parallelBuild %7.1f ms, stream %7.1f ms, parallelStream %7.1f ms%n", storage, sequential / 1e6, parallel / 1e6,
+					scan / 1e6, parallelScan / 1e6);
+		}
+	}
+
+	/**
+	 * @return The bytes of heap in use after a full collection
+	 */
+	private static long usedHeap() {
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			used = Math.min(used, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+		}
+		return used;
+	}
+
+	/**
+	 * Measures the heap a set holds after growing to 2000000 items and
+	 * shrinking back to 20000, and how long refilling takes after clear()
+	 * and clear(true)
+	 */
+	static void memoryAfterChurn() {
+		String[] items = StringHashSetBenchmark.items(2000000, new Random(230));
+		int keep = 20000;
+		System.out.println("Heap held after growing to 2000000 items and removing all but 20000:");
+		long baseline = StringHashSetBenchmark.usedHeap();
+		for (Kind kind : Kind.values()) {
+			Subject subject = kind.create(-1);
+			for (String item : items) subject.add(item);
+			long full = StringHashSetBenchmark.usedHeap() - baseline;
+			for (int i = keep; i < items.length; i++) subject.remove(items[i]);
+			long churned = StringHashSetBenchmark.usedHeap() - baseline;
+			String trimmed = "";
+			if (subject.set() != null) {
+				subject.set().trimToSize();
+				trimmed = String.format(", %8.2f MB after trimToSize", (StringHashSetBenchmark.usedHeap() - baseline) / 1e6);
+			}
+			System.out.printf("  %-16s %8.2f MB full, %8.2f MB after removing%s%n", kind, full / 1e6, churned / 1e6, trimmed);
+			sink += subject.size();
+		}
+		System.out.println("Refilling 2000000 items after clearing:");
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			long reset = Long.MAX_VALUE, kept = Long.MAX_VALUE;
+			StringHashSet set = new StringHashSet(5, storage);
+			set.addAll(items);
+			for (int round = 0; round < 3; round++) {
+				set.clear();
+				long start = System.nanoTime();
+				for (String item : items) set.add(item);
+				reset = Math.min(reset, System.nanoTime() - start);
+				set.clear(true);
+				start = System.nanoTime();
+				for (String item : items) set.add(item);
+				kept = Math.min(kept, System.nanoTime() - start);
+			}
+			System.out.printf("  %-16s clear() %7.1f ms, clear(true) %7.1f ms%n", storage, reset / 1e6, kept / 1e6);
+		}
+	}
+
+	/**
+	 * Measures the heap each kind of set holds per item, for 1000000 short
+	 * identifiers that only the set refers to, next to the bytes of the
+	 * identifiers themselves
+	 */
+	static void memoryPerEntry() {
+		int count = 1000000;
+		long keyBytes = 0;
+		for (int i = 0; i < count; i++) keyBytes += ("id-" + Long.toString(i * 7919L, 36)).length();
+		System.out.printf("Heap held per item for %d identifiers of %.1f characters on average:%n", count, (double) keyBytes / count);
+		for (Kind kind : Kind.values()) {
+			long baseline = StringHashSetBenchmark.usedHeap();
+			Subject subject = kind.create(-1);
+			for (int i = 0; i < count; i++) subject.add("id-" + Long.toString(i * 7919L, 36));
+			long used = StringHashSetBenchmark.usedHeap() - baseline;
+			System.out.printf("  %-16s %7.1f bytes per item, %5.2fx the key bytes%n", kind, (double) used / count, (double) used / keyBytes);
+			sink += subject.size();
+		}
+	}
+
+	/**
+	 * Compares lookups in a frozen set with lookups in the set it was frozen
+	 * from, with the time freezing takes and the memory each holds
+	 */
+	static void frozenLookups() {
+		Random random = new Random(230);
+		String[] items = StringHashSetBenchmark.items(1000000, random);
+		String[] queries = StringHashSetBenchmark.mix(items, StringHashSetBenchmark.items(1000000, 1000000, random), 2000000, 0.5, random);
+		System.out.println("Frozen sets of 1000000 items, half the lookups missing:");
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			set.addAll(items);
+			long freeze = Long.MAX_VALUE, contains = Long.MAX_VALUE, frozenContains = Long.MAX_VALUE;
+			FrozenStringSet frozen = null;
+			for (int round = 0; round < 3; round++) {
+				long start = System.nanoTime();
+				frozen = set.freeze();
+				freeze = Math.min(freeze, System.nanoTime() - start);
+			}
+			for (int round = 0; round < 5; round++) {
+				long start = System.nanoTime();
+				int hits = 0;
+				for (String query : queries) if (set.contains(query)) hits++;
+				contains = Math.min(contains, System.nanoTime() - start);
+				start = System.nanoTime();
+				for (String query : queries) if (frozen.contains(query)) hits++;
+				frozenContains = Math.min(frozenContains, System.nanoTime() - start);
+				sink += hits;
+			}
+			System.out.printf("  %-16s freeze %7.1f ms, contains %6.1f ns/op, frozen contains %6.1f ns/op, frozen %5.1f bytes per item%n", storage, freeze / 1e6,
+					(double) contains / queries.length, (double) frozenContains / queries.length, (double) frozen.memoryBytes() / items.length);
+		}
+	}
+
+	/**
+	 * Compares prefix queries answered by the prefix index with the same
+	 * queries answered by scanning the set, and the cost of keeping the
+	 * index on add
+	 */
+	static void prefixQueries() {
+		Random random = new Random(230);
+		String[] items = StringHashSetBenchmark.items(2000000, random);
+		String[] prefixes = new String[1000];
+		for (int i = 0; i < prefixes.length; i++) {
+			String item = items[random.nextInt(items.length)];
+			prefixes[i] = item.substring(0, Math.min(item.length(), 6));
+		}
+		System.out.println("Prefix queries over 2000000 items, prefixes of 6 characters:");
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			long plain = Long.MAX_VALUE, indexed = Long.MAX_VALUE, scan = Long.MAX_VALUE, query = Long.MAX_VALUE, count = Long.MAX_VALUE;
+			int scans = 20, found = 0;
+			StringHashSet set = null;
+			for (int round = 0; round < 3; round++) {
+				long start = System.nanoTime();
+				set = new StringHashSet(5, storage);
+				set.addAll(items);
+				plain = Math.min(plain, System.nanoTime() - start);
+				start = System.nanoTime();
+				for (int i = 0; i < scans; i++) sink += set.prefixQuery(prefixes[i]).size();
+				scan = Math.min(scan, System.nanoTime() - start);
+				start = System.nanoTime();
+				set = new StringHashSet(5, storage);
+				set.setPrefixIndex(true);
+				set.addAll(items);
+				indexed = Math.min(indexed, System.nanoTime() - start);
+				start = System.nanoTime();
+				found = 0;
+				for (String prefix : prefixes) found += set.prefixQuery(prefix).size();
+				query = Math.min(query, System.nanoTime() - start);
+				start = System.nanoTime();
+				for (String prefix : prefixes) sink += set.countWithPrefix(prefix);
+				count = Math.min(count, System.nanoTime() - start);
+			}
+			sink += found;
+			System.out.printf("  %-16s addAll %7.1f ms, indexed %7.1f ms; prefixQuery scan %8.1f us, indexed %6.1f us (%.1f items); countWithPrefix %5.2f us%n", storage,
+					plain / 1e6, indexed / 1e6, scan / 1e3 / scans, query / 1e3 / prefixes.length, (double) found / prefixes.length, count / 1e3 / prefixes.length);
+		}
+	}
+
+	/**
+	 * Compares lookups where 95% of the items are absent with and without a
+	 * Bloom filter in front of the table, for the legacy set and each storage
+	 * layout
+	 */
+	static void filteredMisses() {
+		Random random = new Random(230);
+		String[] items = StringHashSetBenchmark.items(1000000, random);
+		String[] queries = StringHashSetBenchmark.mix(items, StringHashSetBenchmark.items(1000000, 1000000, random), 2000000, 0.05, random);
+		System.out.println("Lookups in 1000000 items, 95% of them missing, with a 1% Bloom filter:");
+		StringHashSet[] sets = { new StringHashSet(), new StringHashSet(5, StringHashSet.Storage.CHAINED), new StringHashSet(5, StringHashSet.Storage.LINEAR_PROBING),
+				new StringHashSet(5, StringHashSet.Storage.ROBIN_HOOD) };
+		String[] names = { "LEGACY", "CHAINED", "LINEAR_PROBING", "ROBIN_HOOD" };
+		for (int s = 0; s < sets.length; s++) {
+			StringHashSet set = sets[s];
+			set.addAll(items);
+			long plain = Long.MAX_VALUE, filtered = Long.MAX_VALUE;
+			for (int round = 0; round < 5; round++) {
+				set.removeBloomFilter();
+				long start = System.nanoTime();
+				int hits = 0;
+				for (String query : queries) if (set.contains(query)) hits++;
+				plain = Math.min(plain, System.nanoTime() - start);
+				set.setBloomFilter(0.01);
+				start = System.nanoTime();
+				for (String query : queries) if (set.contains(query)) hits++;
+				filtered = Math.min(filtered, System.nanoTime() - start);
+				sink += hits;
+			}
+			System.out.printf("  %-16s contains %6.1f ns/op, filtered %6.1f ns/op (%.2fx), filter %5.2f MB, %.2f%% false positives%n", names[s],
+					(double) plain / queries.length, (double) filtered / queries.length, (double) plain / filtered, set.bloomFilterBytes() / 1e6,
+					set.bloomFilterFalsePositiveRate() * 100);
+		}
+	}
+
+	/**
+	 * Compares intersecting two sets of 1000000 items that share half of
+	 * them by iterating one and calling contains() on the other with
+	 * intersect(), for sets with their own hashers and sets that share one
+	 */
+	static void setAlgebra() {
+		Random random = new Random(230);
+		String[] left = StringHashSetBenchmark.items(0, 1000000, random);
+		String[] right = StringHashSetBenchmark.items(500000, 1000000, random);
+		System.out.println("Intersecting two sets of 1000000 items sharing 500000, " + ForkJoinPool.getCommonPoolParallelism() + " worker threads:");
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHasher shared = StringHasher.randomized();
+			StringHashSet a = new StringHashSet(5, storage), b = new StringHashSet(5, storage);
+			StringHashSet sharedA = new StringHashSet(5, storage, storage.defaultLoadFactor(), shared);
+			StringHashSet sharedB = new StringHashSet(5, storage, storage.defaultLoadFactor(), shared);
+			a.addAll(left);
+			sharedA.addAll(left);
+			b.addAll(right);
+			sharedB.addAll(right);
+			long scan = Long.MAX_VALUE, own = Long.MAX_VALUE, cached = Long.MAX_VALUE;
+			for (int round = 0; round < 3; round++) {
+				long start = System.nanoTime();
+				StringHashSet result = new StringHashSet(5, storage);
+				for (String item : a) if (b.contains(item)) result.add(item);
+				scan = Math.min(scan, System.nanoTime() - start);
+				sink += result.size();
+				start = System.nanoTime();
+				sink += a.intersect(b).size();
+				own = Math.min(own, System.nanoTime() - start);
+				start = System.nanoTime();
+				sink += sharedA.intersect(sharedB).size();
+				cached = Math.min(cached, System.nanoTime() - start);
+			}
+			System.out.printf("  %-16s iterate and contains %7.1f ms, intersect %7.1f ms, intersect sharing a hasher %7.1f ms%n", storage, scan / 1e6, own / 1e6,
+					cached / 1e6);
+		}
+	}
+
+	/**
+	 * Compares reading a file of 4000000 lines, each item twice, line by line
+	 * into Strings with loading it through a channel, with the bytes the
+	 * thread allocates for each, and the time writeTo() takes to write the
+	 * set back out
+	 */
+	static void loadFromFile() throws IOException {
+		String[] items = StringHashSetBenchmark.items(2000000, new Random(230));
+		Path path = Files.createTempFile("StringHashSetBenchmark", ".txt");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(path)) {
+				for (int round = 0; round < 2; round++) for (String item : items) writer.append(item).append('\n');
+			}
+			System.out.printf("Loading %d lines (%d MB), each item twice:%n", 2 * items.length, Files.size(path) >> 20);
+			long lines = Long.MAX_VALUE, channel = Long.MAX_VALUE, write = Long.MAX_VALUE, linesAllocated = 0, channelAllocated = 0;
+			for (int round = 0; round < 3; round++) {
+				long allocated = StringHashSetBenchmark.allocatedBytes();
+				long start = System.nanoTime();
+				StringHashSet set = new StringHashSet(5, StringHashSet.Storage.CHAINED);
+				try (BufferedReader reader = Files.newBufferedReader(path)) {
+					for (String line; (line = reader.readLine()) != null; ) set.add(line);
+				}
+				lines = Math.min(lines, System.nanoTime() - start);
+				linesAllocated = StringHashSetBenchmark.allocatedBytes() - allocated;
+				sink += set.size();
+				allocated = StringHashSetBenchmark.allocatedBytes();
+				start = System.nanoTime();
+				set = StringHashSet.load(path);
+				channel = Math.min(channel, System.nanoTime() - start);
+				channelAllocated = StringHashSetBenchmark.allocatedBytes() - allocated;
+				sink += set.size();
+				start = System.nanoTime();
+				try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+					sink += set.writeTo(out);
+				}
+				write = Math.min(write, System.nanoTime() - start);
+			}
+			System.out.printf("  %-16s %7.1f ms, %6.1f MB allocated%n", "readLine and add", lines / 1e6, linesAllocated / 1e6);
+			System.out.printf("  %-16s %7.1f ms, %6.1f MB allocated%n", "load", channel / 1e6, channelAllocated / 1e6);
+			System.out.printf("  %-16s %7.1f ms%n", "writeTo", write / 1e6);
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	/**
+	 * A reusable view of part of a char[], as a tokenizer would hand out
+	 */
+	static class Slice implements CharSequence {
+		char[] chars;
+		int offset;
+		int length;
+
+		Slice reset(char[] chars, int offset, int length) {
+			this.chars = chars;
+			this.offset = offset;
+			this.length = length;
+			return this;
+		}
+
+		@Override
+		public int length() {
+			return this.length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return this.chars[this.offset + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(this.chars, this.offset + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(this.chars, this.offset, this.length);
+		}
+	}
+
+	/**
+	 * Lays items out one after another in a char[], as a parser's buffer
+	 * would hold them
+	 * @return The start of each item, with one more entry for the end of the last
+	 */
+	static int[] layOut(String[] items, char[] buffer) {
+		int[] starts = new int[items.length + 1];
+		for (int i = 0; i < items.length; i++) {
+			items[i].getChars(0, items[i].length(), buffer, starts[i]);
+			starts[i + 1] = starts[i] + items[i].length();
+		}
+		return starts;
+	}
+
+	/**
+	 * Compares looking up slices of a char[] in a CharSequenceHashSet through
+	 * a reused view with making a String of each slice for a HashSet, with
+	 * the bytes the thread allocates per lookup
+	 */
+	static void charSlices() {
+		Random random = new Random(230);
+		String[] items = StringHashSetBenchmark.items(1000000, random);
+		String[] queries = StringHashSetBenchmark.mix(items, StringHashSetBenchmark.items(1000000, 1000000, random), 2000000, 0.5, random);
+		char[] buffer = new char[queries.length * 16];
+		int[] starts = StringHashSetBenchmark.layOut(queries, buffer);
+		System.out.println("Looking up 2000000 slices of a char[] in 1000000 items, half of them missing:");
+		CharSequenceHashSet set = new CharSequenceHashSet();
+		HashSet<String> hashSet = new HashSet<String>();
+		long add = Long.MAX_VALUE, hashSetAdd = Long.MAX_VALUE, contains = Long.MAX_VALUE, hashSetContains = Long.MAX_VALUE, allocated = 0, hashSetAllocated = 0;
+		Slice slice = new Slice();
+		for (int round = 0; round < 5; round++) {
+			set.clear();
+			hashSet.clear();
+			long start = System.nanoTime();
+			for (String item : items) set.add(item);
+			add = Math.min(add, System.nanoTime() - start);
+			start = System.nanoTime();
+			for (String item : items) hashSet.add(item);
+			hashSetAdd = Math.min(hashSetAdd, System.nanoTime() - start);
+			int hits = 0;
+			long bytes = StringHashSetBenchmark.allocatedBytes();
+			start = System.nanoTime();
+			for (int i = 0; i < queries.length; i++) if (set.contains(slice.reset(buffer, starts[i], starts[i + 1] - starts[i]))) hits++;
+			contains = Math.min(contains, System.nanoTime() - start);
+			allocated = StringHashSetBenchmark.allocatedBytes() - bytes;
+			bytes = StringHashSetBenchmark.allocatedBytes();
+			start = System.nanoTime();
+			for (int i = 0; i < queries.length; i++) if (hashSet.contains(new String(buffer, starts[i], starts[i + 1] - starts[i]))) hits++;
+			hashSetContains = Math.min(hashSetContains, System.nanoTime() - start);
+			hashSetAllocated = StringHashSetBenchmark.allocatedBytes() - bytes;
+			sink += hits;
+		}
+		System.out.printf("  %-20s add %6.1f ns/op, contains %6.1f ns/op, %6.1f B/op%n", "CharSequenceHashSet", (double) add / items.length,
+				(double) contains / queries.length, (double) allocated / queries.length);
+		System.out.printf("  %-20s add %6.1f ns/op, contains %6.1f ns/op, %6.1f B/op%n", "HashSet<String>", (double) hashSetAdd / items.length,
+				(double) hashSetContains / queries.length, (double) hashSetAllocated / queries.length);
+	}
+
+	/**
+	 * Compares looking up ranges of a byte[] in a ByteArrayHashSet with
+	 * wrapping each range in a ByteBuffer for a HashSet, with the bytes the
+	 * thread allocates per lookup and the heap each set holds
+	 */
+	static void byteArrays() {
+		Random random = new Random(230);
+		String[] items = StringHashSetBenchmark.items(1000000, random);
+		String[] queries = StringHashSetBenchmark.mix(items, StringHashSetBenchmark.items(1000000, 1000000, random), 2000000, 0.5, random);
+		char[] chars = new char[queries.length * 16];
+		int[] starts = StringHashSetBenchmark.layOut(queries, chars);
+		byte[] buffer = new byte[starts[queries.length]];
+		for (int i = 0; i < buffer.length; i++) buffer[i] = (byte) chars[i];
+		byte[][] keys = new byte[items.length][];
+		for (int i = 0; i < items.length; i++) keys[i] = items[i].getBytes(StandardCharsets.US_ASCII);
+		System.out.println("Looking up 2000000 ranges of a byte[] in 1000000 items, half of them missing:");
+		long baseline = StringHashSetBenchmark.usedHeap();
+		ByteArrayHashSet set = new ByteArrayHashSet();
+		for (byte[] key : keys) set.add(key);
+		long heap = StringHashSetBenchmark.usedHeap() - baseline;
+		baseline = StringHashSetBenchmark.usedHeap();
+		HashSet<ByteBuffer> hashSet = new HashSet<ByteBuffer>();
+		for (byte[] key : keys) hashSet.add(ByteBuffer.wrap(key.clone()));
+		long hashSetHeap = StringHashSetBenchmark.usedHeap() - baseline;
+		long contains = Long.MAX_VALUE, hashSetContains = Long.MAX_VALUE, allocated = 0, hashSetAllocated = 0;
+		for (int round = 0; round < 5; round++) {
+			int hits = 0;
+			long bytes = StringHashSetBenchmark.allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < queries.length; i++) if (set.contains(buffer, starts[i], starts[i + 1] - starts[i])) hits++;
+			contains = Math.min(contains, System.nanoTime() - start);
+			allocated = StringHashSetBenchmark.allocatedBytes() - bytes;
+			bytes = StringHashSetBenchmark.allocatedBytes();
+			start = System.nanoTime();
+			for (int i = 0; i < queries.length; i++) if (hashSet.contains(ByteBuffer.wrap(buffer, starts[i], starts[i + 1] - starts[i]))) hits++;
+			hashSetContains = Math.min(hashSetContains, System.nanoTime() - start);
+			hashSetAllocated = StringHashSetBenchmark.allocatedBytes() - bytes;
+			sink += hits;
+		}
+		System.out.printf("  %-20s contains %6.1f ns/op, %6.1f B/op, %6.1f bytes per item%n", "ByteArrayHashSet", (double) contains / queries.length,
+				(double) allocated / queries.length, (double) heap / keys.length);
+		System.out.printf("  %-20s contains %6.1f ns/op, %6.1f B/op, %6.1f bytes per item%n", "HashSet<ByteBuffer>", (double) hashSetContains / queries.length,
+				(double) hashSetAllocated / queries.length, (double) hashSetHeap / keys.length);
+		sink += set.size() + hashSet.size();
+	}
+
+	/**
+	 * Compares a LongHashSet of 1000000 random IDs with a HashSet of Longs:
+	 * the time to add them and look up as many again, half of them missing,
+	 * the bytes allocated doing so and the heap each set holds
+	 */
+	static void longs() {
+		Random random = new Random(230);
+		long[] ids = new long[1000000];
+		for (int i = 0; i < ids.length; i++) ids[i] = random.nextLong();
+		long[] queries = new long[2000000];
+		for (int i = 0; i < queries.length; i++) queries[i] = random.nextBoolean() ? ids[random.nextInt(ids.length)] : random.nextLong();
+		System.out.println("Adding 1000000 random IDs and looking up 2000000, half of them missing:");
+		for (StringHashSet.Storage storage : new StringHashSet.Storage[] { StringHashSet.Storage.LINEAR_PROBING, StringHashSet.Storage.ROBIN_HOOD }) {
+			long add = Long.MAX_VALUE, contains = Long.MAX_VALUE, allocated = 0, heap = 0;
+			for (int round = 0; round < 5; round++) {
+				long baseline = StringHashSetBenchmark.usedHeap();
+				long bytes = StringHashSetBenchmark.allocatedBytes();
+				long start = System.nanoTime();
+				LongHashSet set = new LongHashSet(5, storage);
+				for (long id : ids) set.add(id);
+				add = Math.min(add, System.nanoTime() - start);
+				int hits = 0;
+				start = System.nanoTime();
+				for (long query : queries) if (set.contains(query)) hits++;
+				contains = Math.min(contains, System.nanoTime() - start);
+				allocated = StringHashSetBenchmark.allocatedBytes() - bytes;
+				if (round == 0) heap = StringHashSetBenchmark.usedHeap() - baseline;
+				sink += hits + set.size();
+			}
+			System.out.printf("  %-20s add %6.1f ns/op, contains %6.1f ns/op, %6.1f MB allocated, %6.1f bytes per item%n", "LongHashSet " + storage,
+					(double) add / ids.length, (double) contains / queries.length, allocated / 1e6, (double) heap / ids.length);
+		}
+		long add = Long.MAX_VALUE, contains = Long.MAX_VALUE, allocated = 0, heap = 0;
+		for (int round = 0; round < 5; round++) {
+			long baseline = StringHashSetBenchmark.usedHeap();
+			long bytes = StringHashSetBenchmark.allocatedBytes();
+			long start = System.nanoTime();
+			HashSet<Long> set = new HashSet<Long>();
+			for (long id : ids) set.add(id);
+			add = Math.min(add, System.nanoTime() - start);
+			int hits = 0;
+			start = System.nanoTime();
+			for (long query : queries) if (set.contains(query)) hits++;
+			contains = Math.min(contains, System.nanoTime() - start);
+			allocated = StringHashSetBenchmark.allocatedBytes() - bytes;
+			if (round == 0) heap = StringHashSetBenchmark.usedHeap() - baseline;
+			sink += hits + set.size();
+		}
+		System.out.printf("  %-20s add %6.1f ns/op, contains %6.1f ns/op, %6.1f MB allocated, %6.1f bytes per item%n", "HashSet<Long>", (double) add / ids.length,
+				(double) contains / queries.length, allocated / 1e6, (double) heap / ids.length);
+	}
+
+	/**
+	 * Compares the heap held by 4000000 tokens drawn from 100000 distinct
+	 * strings when each parsed token is kept as it is, canonicalized through
+	 * StringHashSet.intern(), looked up from a reused view with getOrAdd(),
+	 * pooled in a WeakStringInterner or passed to String.intern(), with the
+	 * time each takes per token
+	 */
+	static void interning() {
+		Random random = new Random(230);
+		String[] distinct = StringHashSetBenchmark.items(100000, random);
+		String[] tokens = new String[4000000];
+		for (int i = 0; i < tokens.length; i++) tokens[i] = distinct[random.nextInt(distinct.length)];
+		char[] buffer = new char[tokens.length * 16];
+		int[] starts = StringHashSetBenchmark.layOut(tokens, buffer);
+		tokens = null;
+		System.out.println("Keeping 4000000 parsed tokens of 100000 distinct strings:");
+		String[] names = { "new String", "intern() CHAINED", "intern() ROBIN_HOOD", "getOrAdd(view)", "WeakStringInterner", "String.intern()" };
+		for (int c = 0; c < names.length; c++) {
+			long baseline = StringHashSetBenchmark.usedHeap();
+			long[] result = StringHashSetBenchmark.keepTokens(c, buffer, starts);
+			System.out.printf("  %-20s %6.1f ns per token, %7.1f MB held%n", names[c], (double) result[0] / (starts.length - 1), (result[1] - baseline) / 1e6);
+			// Weak references are cleared by one collection and their referents freed by a later one
+			StringHashSetBenchmark.usedHeap();
+		}
+	}
+
+	/**
+	 * Keeps every token one of the ways interning() compares, in its own
+	 * frame so nothing it keeps outlives it
+	 * @return The nanoseconds taken and the heap in use while the tokens are kept
+	 */
+	private static long[] keepTokens(int c, char[] buffer, int[] starts) {
+		String[] kept = new String[starts.length - 1];
+		StringHashSet set = new StringHashSet(5, c == 2 ? StringHashSet.Storage.ROBIN_HOOD : StringHashSet.Storage.CHAINED);
+		WeakStringInterner pool = new WeakStringInterner();
+		Slice slice = new Slice();
+		long start = System.nanoTime();
+		for (int i = 0; i < kept.length; i++) {
+			if (c == 3) {
+				kept[i] = set.getOrAdd(slice.reset(buffer, starts[i], starts[i + 1] - starts[i]));
+				continue;
+			}
+			String token = new String(buffer, starts[i], starts[i + 1] - starts[i]);
+			kept[i] = c == 0 ? token : c == 4 ? pool.intern(token) : c == 5 ? token.intern() : set.intern(token);
+		}
+		long elapsed = System.nanoTime() - start;
+		long heap = StringHashSetBenchmark.usedHeap();
+		Reference.reachabilityFence(kept);
+		Reference.reachabilityFence(set);
+		Reference.reachabilityFence(pool);
+		return new long[] { elapsed, heap };
+	}
+
+	/**
+	 * Replays a Zipf-skewed trace, with a scan of one-off items through the
+	 * middle of it, against bounded sets holding 1% of the distinct items,
+	 * one per eviction policy and an access-ordered LinkedHashMap as the
+	 * usual LRU, on every thread at once. Each access is one add(), which
+	 * finds the item if it is there, or one put() into the map.
+	 */
+	static void boundedTrace() throws InterruptedException {
+		Random random = new Random(230);
+		String[] items = StringHashSetBenchmark.items(1000000, random);
+		final String[] trace = StringHashSetBenchmark.zipf(items, 4000000, 0.9, random);
+		String[] scan = StringHashSetBenchmark.items(trace.length / 4, new Random(231));
+		System.arraycopy(scan, 0, trace, trace.length / 2, scan.length);
+		final int maximumSize = items.length / 100;
+		final int threads = Runtime.getRuntime().availableProcessors();
+		System.out.println("Accessing 4000000 Zipf(0.9) keys with a 1000000-key scan, holding " + maximumSize + ", on " + threads + " threads:");
+		for (int policy = 0; policy <= BoundedStringSet.Eviction.values().length; policy++) {
+			final boolean lru = policy == BoundedStringSet.Eviction.values().length;
+			String name = lru ? "LinkedHashMap" : BoundedStringSet.Eviction.values()[policy].toString();
+			long best = Long.MAX_VALUE;
+			double hitRate = 0;
+			for (int round = 0; round < 3; round++) {
+				final BoundedStringSet set = lru ? null : new BoundedStringSet(maximumSize, BoundedStringSet.Eviction.values()[policy]);
+				final Map<String, Boolean> map = new LinkedHashMap<String, Boolean>(maximumSize * 2, 0.75f, true) {
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+						return this.size() > maximumSize;
+					}
+				};
+				final long[] hits = new long[threads];
+				Thread[] workers = new Thread[threads];
+				for (int t = 0; t < threads; t++) {
+					final int id = t;
+					workers[t] = new Thread() {
+						@Override
+						public void run() {
+							for (int i = id; i < trace.length; i += threads) {
+								String item = trace[i];
+								if (lru) {
+									synchronized (map) {
+										if (map.put(item, Boolean.TRUE) != null) hits[id]++;
+									}
+								} else if (!set.add(item)) hits[id]++;
+							}
+						}
+					};
+				}
+				long start = System.nanoTime();
+				for (Thread worker : workers) worker.start();
+				for (Thread worker : workers) worker.join();
+				best = Math.min(best, System.nanoTime() - start);
+				long total = 0;
+				for (long count : hits) total += count;
+				hitRate = (double) total / trace.length;
+			}
+			System.out.printf("  %-16s %6.1f%% hits, %8.1f ns/op%n", name, 100 * hitRate, (double) best / trace.length);
+		}
+	}
+
+	/**
+	 * Compares taking a stable view of a set of 10000000 items with
+	 * VersionedStringSet.snapshot() against copying or freezing a
+	 * StringHashSet, then measures what the snapshots cost the writer: the
+	 * time and bytes allocated per write, each replacing one item with a new
+	 * one, when a snapshot is taken every so many writes
+	 */
+	static void versionedSnapshots() {
+		int size = 10000000;
+		int writes = 1000000;
+		String[] items = StringHashSetBenchmark.items(size + writes, new Random(230));
+		System.out.println("Stable views of " + size + " items:");
+		StringHashSet hashSet = new StringHashSet(size, StringHashSet.Storage.CHAINED);
+		for (int i = 0; i < size; i++) hashSet.add(items[i]);
+		StringHashSet empty = new StringHashSet(5, StringHashSet.Storage.CHAINED);
+		long copy = Long.MAX_VALUE, freeze = Long.MAX_VALUE;
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			sink += hashSet.union(empty).size();
+			copy = Math.min(copy, System.nanoTime() - start);
+			start = System.nanoTime();
+			sink += hashSet.freeze().size();
+			freeze = Math.min(freeze, System.nanoTime() - start);
+		}
+		hashSet = null;
+		VersionedStringSet set = new VersionedStringSet(StringHasher.MIXED);
+		for (int i = 0; i < size; i++) set.add(items[i]);
+		long snapshot = Long.MAX_VALUE;
+		for (int round = 0; round < 5; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < 1000; i++) sink += set.snapshot().size();
+			snapshot = Math.min(snapshot, System.nanoTime() - start);
+		}
+		System.out.printf("  %-24s %12.1f us%n", "StringHashSet copy", copy / 1e3);
+		System.out.printf("  %-24s %12.1f us%n", "StringHashSet.freeze()", freeze / 1e3);
+		System.out.printf("  %-24s %12.3f us%n", "snapshot()", snapshot / 1e3 / 1000);
+		System.out.println("Replacing " + writes + " items, one remove() and one add() per write:");
+		int next = 0;
+		for (int every : new int[] { 0, 4096, 64, 1 }) {
+			long time = Long.MAX_VALUE, allocated = Long.MAX_VALUE;
+			for (int round = 0; round < 3; round++) {
+				long bytes = StringHashSetBenchmark.allocatedBytes();
+				long start = System.nanoTime();
+				for (int i = 0; i < writes; i++, next++) {
+					if (every > 0 && i % every == 0) sink += set.snapshot().size();
+					set.remove(items[next % (size + writes)]);
+					set.add(items[(next + size) % (size + writes)]);
+				}
+				time = Math.min(time, System.nanoTime() - start);
+				allocated = Math.min(allocated, StringHashSetBenchmark.allocatedBytes() - bytes);
+			}
+			System.out.printf("  %-24s %8.1f ns/write, %8.1f bytes allocated per write%n", every == 0 ? "no snapshots" : "snapshot every " + every, (double) time / writes,
+					(double) allocated / writes);
+		}
+	}
+
+	/**
+	 * Measures adds per second to a DurableStringSet under each sync policy,
+	 * from one thread and from several, whose forces are shared by group
+	 * commit, and the time to reopen the set from its log and from a
+	 * compacted snapshot
+	 */
+	static void durableWrites() throws IOException, InterruptedException {
+		final String[] items = StringHashSetBenchmark.items(1000000, new Random(230));
+		int[] threadCounts = { 1, 8 };
+		System.out.println("Adds to a DurableStringSet:");
+		for (DurableStringSet.Sync sync : DurableStringSet.Sync.values()) {
+			for (final int threads : threadCounts) {
+				// Forcing every write is too slow to do a million of
+				final int operations = sync == DurableStringSet.Sync.ALWAYS ? 20000 : items.length;
+				Path directory = Files.createTempDirectory("StringHashSetBenchmark");
+				try {
+					final DurableStringSet set = DurableStringSet.open(directory, sync);
+					Thread[] workers = new Thread[threads];
+					for (int t = 0; t < threads; t++) {
+						final int id = t;
+						workers[t] = new Thread() {
+							@Override
+							public void run() {
+								try {
+									for (int i = id; i < operations; i += threads) set.add(items[i]);
+								} catch (IOException e) {
+									throw new RuntimeException(e);
+								}
+							}
+						};
+					}
+					long start = System.nanoTime();
+					for (Thread worker : workers) worker.start();
+					for (Thread worker : workers) worker.join();
+					long elapsed = System.nanoTime() - start;
+					set.close();
+					System.out.printf("  %-8s %2d threads %10.0f ops/s%n", sync, threads, operations / (elapsed / 1e9));
+					if (sync != DurableStringSet.Sync.NEVER || threads != 1) continue;
+					start = System.nanoTime();
+					DurableStringSet reopened = DurableStringSet.open(directory);
+					long replay = System.nanoTime() - start;
+					reopened.compact();
+					reopened.close();
+					start = System.nanoTime();
+					DurableStringSet.open(directory).close();
+					long load = System.nanoTime() - start;
+					System.out.printf("  reopening %d items: %.1f ms from the log, %.1f ms from a snapshot%n", operations, replay / 1e6, load / 1e6);
+				} finally {
+					try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+						for (Path file : files) Files.delete(file);
+					}
+					Files.delete(directory);
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws InterruptedException, IOException {
+		String[] sizes = (args.length > 0 ? args[0] : "1000,100000,1000000").split(",");
+		String filter = args.length > 1 ? args[1] : "";
+		System.out.printf("%-20s %-15s %10s %14s %8s %8s %8s %10s%n", "case", "set", "size", "ops/s", "p50 ns", "p99 ns", "p99.9 ns", "B/op");
+		for (String size : sizes) StringHashSetBenchmark.suite(Integer.parseInt(size.trim()), filter);
+		if ("reordering".contains(filter)) StringHashSetBenchmark.skewedLookups();
+		if ("resize-pauses".contains(filter)) StringHashSetBenchmark.resizePauses();
+		if ("contended".contains(filter)) StringHashSetBenchmark.contendedMix();
+		if ("snapshot-startup".contains(filter)) StringHashSetBenchmark.snapshotStartup();
+		if ("bulk".contains(filter)) StringHashSetBenchmark.bulkOperations();
+		if ("parallel".contains(filter)) StringHashSetBenchmark.parallelBuildAndScan();
+		if ("memory".contains(filter)) StringHashSetBenchmark.memoryAfterChurn();
+		if ("memory-per-entry".contains(filter)) StringHashSetBenchmark.memoryPerEntry();
+		if ("frozen".contains(filter)) StringHashSetBenchmark.frozenLookups();
+		if ("prefix".contains(filter)) StringHashSetBenchmark.prefixQueries();
+		if ("bloom".contains(filter)) StringHashSetBenchmark.filteredMisses();
+		if ("set-algebra".contains(filter)) StringHashSetBenchmark.setAlgebra();
+		if ("load".contains(filter)) StringHashSetBenchmark.loadFromFile();
+		if ("char-slices".contains(filter)) StringHashSetBenchmark.charSlices();
+		if ("byte-arrays".contains(filter)) StringHashSetBenchmark.byteArrays();
+		if ("longs".contains(filter)) StringHashSetBenchmark.longs();
+		if ("intern".contains(filter)) StringHashSetBenchmark.interning();
+		if ("bounded".contains(filter)) StringHashSetBenchmark.boundedTrace();
+		if ("versioned".contains(filter)) StringHashSetBenchmark.versionedSnapshots();
+		if ("durable".contains(filter)) StringHashSetBenchmark.durableWrites();
+	}
+}
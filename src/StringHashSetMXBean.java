@@ -0,0 +1,38 @@
+/**
+ * The metrics of a StringHashSet as published through JMX by
+ * StringHashSet.publishMetrics(). Every attribute is read from a fresh
+ * StringHashSetStats, so reading the length histogram scans the table.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public interface StringHashSetMXBean {
+	String getStorage();
+
+	int getSize();
+
+	int getCapacity();
+
+	double getLoadFactor();
+
+	double getEmptyBucketRatio();
+
+	int getMaxProbeLength();
+
+	long[] getProbeLengthHistogram();
+
+	long getResizeCount();
+
+	long getResizeNanos();
+
+	long getMaxResizeNanos();
+
+	long getContainsHits();
+
+	long getContainsMisses();
+
+	long getLatencyP50Nanos();
+
+	long getLatencyP99Nanos();
+
+	long getLatencyP999Nanos();
+}
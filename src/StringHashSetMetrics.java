@@ -0,0 +1,62 @@
+/**
+ * The counters a StringHashSet keeps while its metrics are enabled. The set
+ * holds none of these when metrics are disabled, so the only cost then is
+ * checking for null.
+ *
+ * Latencies are sampled on every 64th add, contains or remove and counted in
+ * buckets by powers of two: bucket b holds the operations that took at least
+ * 2^(b-1) and less than 2^b nanoseconds.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+class StringHashSetMetrics {
+	static final int SAMPLE_EVERY = 64;
+	static final int LATENCY_BUCKETS = 40;
+
+	long containsHits;
+	long containsMisses;
+	long resizes;
+	long resizeNanos;
+	long maxResizeNanos;
+	long operations;
+	final long[] latency = new long[LATENCY_BUCKETS];
+
+	/**
+	 * Counts an operation and starts timing it if it is one to be sampled
+	 * @return The start time, or 0 if the operation is not sampled
+	 */
+	long startSample() {
+		return (++this.operations & (SAMPLE_EVERY - 1)) == 0 ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Finishes timing an operation if it was sampled
+	 * @param start What startSample() returned
+	 */
+	void endSample(long start) {
+		if (start == 0) return;
+		long nanos = System.nanoTime() - start;
+		this.latency[Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))]++;
+	}
+
+	/**
+	 * Records the result of a contains() call
+	 * @param found Whether the item was in the set
+	 * @param start What startSample() returned
+	 */
+	void contains(boolean found, long start) {
+		if (found) this.containsHits++;
+		else this.containsMisses++;
+		this.endSample(start);
+	}
+
+	/**
+	 * Records a resize
+	 * @param nanos How long it took
+	 */
+	void resized(long nanos) {
+		this.resizes++;
+		this.resizeNanos += nanos;
+		this.maxResizeNanos = Math.max(this.maxResizeNanos, nanos);
+	}
+}
@@ -0,0 +1,36 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JFR event for each time a StringHashSet grows or shrinks its table. Its
+ * duration is the time the resize took on the thread that caused it; in
+ * incremental mode that is only the allocation of the new table. JFR records it only
+ * when a recording has the event enabled, which it is by default.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+@Name("StringHashSet.Resize")
+@Label("StringHashSet Resize")
+@Category("StringHashSet")
+@Description("A StringHashSet grew or shrank its table")
+class StringHashSetResizeEvent extends jdk.jfr.Event {
+	@Label("Storage")
+	String storage;
+
+	@Label("Old Capacity")
+	int oldCapacity;
+
+	@Label("New Capacity")
+	int newCapacity;
+
+	@Label("Size")
+	int size;
+
+	@Label("Incremental")
+	boolean incremental;
+
+	// When the resize started, for the set's own metrics; not recorded
+	transient long start;
+}
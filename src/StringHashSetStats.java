@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+/**
+ * A snapshot of the shape and metrics of a StringHashSet, from
+ * StringHashSet.stats(). The shape (load factor, empty buckets and the length
+ * histogram) is always available; the counters and latencies are zero unless
+ * metrics were enabled with StringHashSet.setMetricsEnabled().
+ *
+ * The length histogram counts, for the chained layout, buckets by the length
+ * of their chain, and for the probing layouts, items by the number of slots a
+ * lookup of them has to read. Either way entry 0 counts the empty buckets or
+ * slots, and the last entry also counts everything longer.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public final class StringHashSetStats implements StringHashSetMXBean {
+	// The number of entries in the length histogram
+	static final int HISTOGRAM_SIZE = 32;
+
+	private final StringHashSet.Storage storage;
+	private final int size;
+	private final int capacity;
+	private final long[] lengths;
+	private final int maxLength;
+	private final long resizes;
+	private final long resizeNanos;
+	private final long maxResizeNanos;
+	private final long containsHits;
+	private final long containsMisses;
+	private final long[] latency;
+
+	StringHashSetStats(StringHashSet.Storage storage, int size, int capacity, long[] lengths, int maxLength, StringHashSetMetrics metrics) {
+		this.storage = storage;
+		this.size = size;
+		this.capacity = capacity;
+		this.lengths = lengths;
+		this.maxLength = maxLength;
+		this.resizes = metrics != null ? metrics.resizes : 0;
+		this.resizeNanos = metrics != null ? metrics.resizeNanos : 0;
+		this.maxResizeNanos = metrics != null ? metrics.maxResizeNanos : 0;
+		this.containsHits = metrics != null ? metrics.containsHits : 0;
+		this.containsMisses = metrics != null ? metrics.containsMisses : 0;
+		this.latency = metrics != null ? metrics.latency.clone() : new long[StringHashSetMetrics.LATENCY_BUCKETS];
+	}
+
+	@Override
+	public String getStorage() {
+		return this.storage.name();
+	}
+
+	@Override
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return The number of buckets or slots
+	 */
+	@Override
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return The number of items per bucket or slot
+	 */
+	@Override
+	public double getLoadFactor() {
+		return (double) this.size / this.capacity;
+	}
+
+	/**
+	 * @return The fraction of buckets or slots that are empty
+	 */
+	@Override
+	public double getEmptyBucketRatio() {
+		return (double) this.lengths[0] / this.capacity;
+	}
+
+	/**
+	 * @return The longest chain, or the longest probe for an item
+	 */
+	@Override
+	public int getMaxProbeLength() {
+		return this.maxLength;
+	}
+
+	@Override
+	public long[] getProbeLengthHistogram() {
+		return this.lengths.clone();
+	}
+
+	@Override
+	public long getResizeCount() {
+		return this.resizes;
+	}
+
+	/**
+	 * @return The total time spent resizing
+	 */
+	@Override
+	public long getResizeNanos() {
+		return this.resizeNanos;
+	}
+
+	@Override
+	public long getMaxResizeNanos() {
+		return this.maxResizeNanos;
+	}
+
+	@Override
+	public long getContainsHits() {
+		return this.containsHits;
+	}
+
+	@Override
+	public long getContainsMisses() {
+		return this.containsMisses;
+	}
+
+	/**
+	 * @return The number of operations whose latency was sampled
+	 */
+	public long getLatencySamples() {
+		long samples = 0;
+		for (long count : this.latency) samples += count;
+		return samples;
+	}
+
+	/**
+	 * Estimates a latency percentile from the sampled operations, rounding up
+	 * to a power of two
+	 * @param percentile Between 0 and 100
+	 * @return The latency in nanoseconds, or 0 if nothing was sampled
+	 */
+	public long latencyPercentileNanos(double percentile) {
+		long samples = this.getLatencySamples();
+		if (samples == 0) return 0;
+		long rank = (long) Math.ceil(samples * percentile / 100);
+		long seen = 0;
+		for (int bucket = 0; bucket < this.latency.length; bucket++) {
+			seen += this.latency[bucket];
+			if (seen >= rank) return 1L << bucket;
+		}
+		return 1L << (this.latency.length - 1);
+	}
+
+	@Override
+	public long getLatencyP50Nanos() {
+		return this.latencyPercentileNanos(50);
+	}
+
+	@Override
+	public long getLatencyP99Nanos() {
+		return this.latencyPercentileNanos(99);
+	}
+
+	@Override
+	public long getLatencyP999Nanos() {
+		return this.latencyPercentileNanos(99.9);
+	}
+
+	@Override
+	public String toString() {
+		int last = this.lengths.length - 1;
+		while (last > 0 && this.lengths[last] == 0) last--;
+		return String.format("%s: %d items in %d buckets, load %.2f, %.1f%% empty, longest %d, lengths %s%n"
+				+ "resizes %d taking %.3f ms (longest %.3f ms), contains %d hits / %d misses, latency p50 %d ns p99 %d ns p99.9 %d ns",
+				this.storage, this.size, this.capacity, this.getLoadFactor(), this.getEmptyBucketRatio() * 100, this.maxLength,
+				Arrays.toString(Arrays.copyOf(this.lengths, last + 1)), this.resizes, this.resizeNanos / 1e6, this.maxResizeNanos / 1e6, this.containsHits,
+				this.containsMisses, this.getLatencyP50Nanos(), this.getLatencyP99Nanos(), this.getLatencyP999Nanos());
+	}
+}
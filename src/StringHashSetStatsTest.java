@@ -0,0 +1,128 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+public class StringHashSetStatsTest {
+	private static final String[] HELLOS = { "hello", "hi", "caio", "hola", "shalom", "bonjour", "ni-hao", "aloha", "tere", "sveiki" };
+
+	@Test
+	public void testChainLengths() {
+		StringHashSet set = new StringHashSet();
+		for (String s : HELLOS) set.add(s);
+		// 0: hola, 1: bonjour shalom, 2: tere aloha caio hello, 3: sveiki, 4: ni-hao hi
+		StringHashSetStats stats = set.stats();
+		assertEquals(10, stats.getSize());
+		assertEquals(5, stats.getCapacity());
+		assertEquals(2.0, stats.getLoadFactor(), 0);
+		assertEquals(0.0, stats.getEmptyBucketRatio(), 0);
+		assertEquals(4, stats.getMaxProbeLength());
+		long[] lengths = stats.getProbeLengthHistogram();
+		assertEquals(StringHashSetStats.HISTOGRAM_SIZE, lengths.length);
+		assertArrayEquals(new long[] { 0, 2, 2, 0, 1 }, Arrays.copyOf(lengths, 5));
+		// Nothing is counted while metrics are off
+		assertFalse(set.metricsEnabled());
+		set.contains("hello");
+		assertEquals(0, set.stats().getContainsHits());
+	}
+
+	@Test
+	public void testProbeLengths() {
+		for (StringHashSet.Storage storage : new StringHashSet.Storage[] { StringHashSet.Storage.LINEAR_PROBING, StringHashSet.Storage.ROBIN_HOOD }) {
+			StringHashSet set = new StringHashSet(1000, storage);
+			for (int i = 0; i < 1000; i++) set.add("item" + i);
+			StringHashSetStats stats = set.stats();
+			long[] lengths = stats.getProbeLengthHistogram();
+			long items = 0;
+			for (int i = 1; i < lengths.length; i++) items += lengths[i];
+			assertEquals(1000, items);
+			assertEquals(stats.getCapacity() - 1000, lengths[0]);
+			assertTrue(lengths[1] > 0);
+			assertTrue(stats.getMaxProbeLength() >= 1);
+		}
+	}
+
+	@Test
+	public void testCounters() {
+		StringHashSet set = new StringHashSet();
+		set.setMetricsEnabled(true);
+		for (int i = 0; i < 6400; i++) set.add("item" + i);
+		for (int i = 0; i < 6400; i++) set.contains("item" + (i * 2));
+		set.remove("item0");
+		StringHashSetStats stats = set.stats();
+		assertEquals(3200, stats.getContainsHits());
+		assertEquals(3200, stats.getContainsMisses());
+		// 5 -> 10 -> ... -> 5120 buckets
+		assertEquals(10, stats.getResizeCount());
+		assertTrue(stats.getResizeNanos() >= stats.getMaxResizeNanos());
+		assertEquals(200, stats.getLatencySamples());
+		assertTrue(stats.getLatencyP50Nanos() > 0);
+		assertTrue(stats.getLatencyP999Nanos() >= stats.getLatencyP50Nanos());
+		assertTrue(stats.toString().contains("6399 items"));
+		set.setMetricsEnabled(false);
+		set.setMetricsEnabled(true);
+		assertEquals(0, set.stats().getResizeCount());
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		StringHashSet set = new StringHashSet(5, StringHashSet.Storage.ROBIN_HOOD);
+		ObjectName name = set.publishMetrics("hellos");
+		try {
+			for (String s : HELLOS) set.add(s);
+			set.contains("hello");
+			set.contains("mulishani");
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(10, server.getAttribute(name, "Size"));
+			assertEquals("ROBIN_HOOD", server.getAttribute(name, "Storage"));
+			assertEquals(1L, server.getAttribute(name, "ContainsHits"));
+			assertEquals(1L, server.getAttribute(name, "ContainsMisses"));
+		} finally {
+			set.unpublishMetrics();
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+
+	@Test
+	public void testResizeEvents() throws Exception {
+		Path file = Files.createTempFile("StringHashSetStatsTest", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable("StringHashSet.Resize");
+			recording.start();
+			StringHashSet set = new StringHashSet();
+			for (int i = 0; i < 100; i++) set.add("item" + i);
+			StringHashSet probing = new StringHashSet(5, StringHashSet.Storage.LINEAR_PROBING);
+			for (int i = 0; i < 100; i++) probing.add("item" + i);
+			recording.stop();
+			recording.dump(file);
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+			int chained = 0, linear = 0;
+			for (RecordedEvent event : events) {
+				if (!event.getEventType().getName().equals("StringHashSet.Resize")) continue;
+				assertEquals(event.getInt("oldCapacity") * 2, event.getInt("newCapacity"));
+				if (event.getString("storage").equals("CHAINED")) chained++;
+				else linear++;
+			}
+			// 5 -> 10 -> 20 -> 40 -> 80 buckets; 8 -> 16 -> ... -> 256 slots
+			assertEquals(4, chained);
+			assertEquals(5, linear);
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -3,11 +3,24 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
 
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -114,6 +127,22 @@ public class StringHashSetTest {
 		sPoints += 5;
 	}
 
+	@Test
+	public void testContainsIsReadOnly() {
+		mHashSet.addAll(mHelloList);
+		String before = mHashSet.toRawString();
+		Iterator<String> iter = mHashSet.iterator();
+		for (String s : mHelloList) {
+			assertTrue(mHashSet.contains(s));
+		}
+		assertEquals(before, mHashSet.toRawString());
+		iter.next();
+
+		mHashSet.setReordering(StringHashSet.Reordering.MOVE_TO_FRONT, 0);
+		assertTrue(mHashSet.contains("hello"));
+		assertTrue(mHashSet.toRawString().contains("2: hello "));
+	}
+
 	@Test
 	public void testEmptyHashSet() {
 		assertEquals(0, mHashSet.size());
@@ -193,6 +222,337 @@ public class StringHashSetTest {
 		sPoints += 4;
 	}
 
+	@Test
+	public void testPowerOfTwoCapacity() {
+		StringHashSet set = new StringHashSet(5, StringHashSet.Storage.CHAINED);
+		assertEquals(8, set.toRawString().split("\n").length);
+		for (int i = 0; i < 17; i++) {
+			set.add("item" + i);
+		}
+		assertEquals(16, set.toRawString().split("\n").length);
+		for (int i = 0; i < 17; i++) {
+			assertTrue(set.contains("item" + i));
+		}
+		set.clear();
+		assertEquals(8, set.toRawString().split("\n").length);
+	}
+
+	@Test
+	public void testAddAllPresizes() {
+		List<String> items = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			items.add("item" + i);
+		}
+		StringHashSet oneByOne = new StringHashSet();
+		for (String s : items) {
+			oneByOne.add(s);
+		}
+		assertTrue(mHashSet.addAll(items));
+		assertFalse(mHashSet.addAll(items));
+		assertEquals(1000, mHashSet.size());
+		assertEquals(oneByOne.toRawString().split("\n").length, mHashSet.toRawString().split("\n").length);
+		for (String s : items) {
+			assertTrue(mHashSet.contains(s));
+		}
+		StringHashSet fromArray = new StringHashSet(5, StringHashSet.Storage.ROBIN_HOOD);
+		assertTrue(fromArray.addAll(items.toArray(new String[0])));
+		StringHashSet fromStream = new StringHashSet(5, StringHashSet.Storage.LINEAR_PROBING);
+		assertTrue(fromStream.addAll(items.stream()));
+		assertFalse(fromStream.addAll(items.stream().filter(s -> s.length() > 6)));
+		assertEquals(1000, fromArray.size());
+		assertEquals(1000, fromStream.size());
+		assertTrue(fromArray.containsAll(items));
+		assertTrue(fromStream.containsAll(items.stream()));
+	}
+
+	@Test
+	public void testBulkRemoveAndRetain() {
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			set.addAll(mHelloList);
+			assertTrue(set.containsAll(new String[] { "hello", "hola" }));
+			assertFalse(set.containsAll(new String[] { "hello", "mulishani" }));
+			assertTrue(set.removeAll(new String[] { "hello", "mulishani" }));
+			assertFalse(set.removeAll(mHelloList.subList(0, 1)));
+			assertTrue(set.removeAll(mHelloList.stream().filter(s -> s.startsWith("h"))));
+			assertEquals(7, set.size());
+			assertTrue(set.retainAll(mHelloList.subList(5, 10)));
+			assertFalse(set.retainAll(mHelloList));
+			assertEquals(5, set.size());
+			assertTrue(set.containsAll(mHelloList.subList(5, 10)));
+		}
+	}
+
+	@Test
+	public void testContainsBatch() {
+		Random random = new Random(230);
+		String[] queries = new String[1000];
+		for (int i = 0; i < queries.length; i++) {
+			queries[i] = "item" + random.nextInt(2000);
+		}
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			for (int i = 0; i < 2000; i += 2) {
+				set.add("item" + i);
+			}
+			boolean[] found = new boolean[queries.length];
+			int hits = set.containsBatch(queries, found);
+			int expected = 0;
+			for (int i = 0; i < queries.length; i++) {
+				assertEquals(queries[i], set.contains(queries[i]), found[i]);
+				if (found[i]) expected++;
+			}
+			assertEquals(expected, hits);
+		}
+	}
+
+	@Test
+	public void testParallelBuild() {
+		Random random = new Random(230);
+		List<String> items = new ArrayList<String>();
+		for (int i = 0; i < 100000; i++) {
+			items.add("item" + random.nextInt(50000));
+		}
+		// 1024 strings with the same hash code pile up in one range of buckets
+		for (int i = 0; i < 1024; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int bit = 0; bit < 10; bit++) {
+				sb.append((i >> bit & 1) == 0 ? "Aa" : "BB");
+			}
+			items.add(sb.toString());
+			items.add(sb.toString());
+		}
+		HashSet<String> oracle = new HashSet<String>(items);
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = StringHashSet.parallelBuild(items, storage);
+			assertEquals(storage.toString(), oracle.size(), set.size());
+			for (String s : oracle) {
+				assertTrue(s, set.contains(s));
+			}
+			assertFalse(set.contains("mulishani"));
+			HashSet<String> iterated = new HashSet<String>();
+			for (String s : set) {
+				assertTrue(iterated.add(s));
+			}
+			assertEquals(oracle, iterated);
+			assertTrue(set.add("mulishani"));
+			assertTrue(set.remove("item1"));
+		}
+		assertEquals(oracle.size(), StringHashSet.parallelBuild(items.stream()).size());
+		assertTrue(StringHashSet.parallelBuild(new ArrayList<String>()).isEmpty());
+	}
+
+	@Test
+	public void testStreams() {
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			for (int i = 0; i < 10000; i++) {
+				set.add("item" + i);
+			}
+			Spliterator<String> spliterator = set.spliterator();
+			assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.DISTINCT | Spliterator.NONNULL));
+			assertEquals(10000, spliterator.estimateSize());
+			assertEquals(10000, set.stream().count());
+			assertEquals(1000, set.parallelStream().filter(s -> s.endsWith("7")).count());
+			Set<String> collected = set.parallelStream().map(s -> s.substring(4)).collect(Collectors.toSet());
+			assertEquals(10000, collected.size());
+			assertTrue(collected.contains("9999"));
+		}
+		mHashSet.addAll(mHelloList);
+		try {
+			mHashSet.stream().forEach(s -> mHashSet.add(s + "!"));
+			fail("Did not throw ConcurrentModificationException");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testShrinkOnRemove() {
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			int small = set.stats().getCapacity();
+			for (int i = 0; i < 10000; i++) {
+				set.add("item" + i);
+			}
+			int large = set.stats().getCapacity();
+			for (int i = 100; i < 10000; i++) {
+				assertTrue(set.remove("item" + i));
+			}
+			int shrunk = set.stats().getCapacity();
+			assertTrue(storage + " " + shrunk, shrunk < large / 16);
+			assertTrue(shrunk >= small);
+			assertEquals(100, set.size());
+			for (int i = 0; i < 100; i++) {
+				assertTrue(set.contains("item" + i));
+			}
+			// Hysteresis: removing and adding back one item does not resize
+			set.remove("item0");
+			set.add("item0");
+			assertEquals(shrunk, set.stats().getCapacity());
+			for (int i = 0; i < 100; i++) {
+				set.remove("item" + i);
+			}
+			assertEquals(small, set.stats().getCapacity());
+		}
+	}
+
+	@Test
+	public void testEnsureCapacityAndTrimToSize() {
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			set.ensureCapacity(10000);
+			int reserved = set.stats().getCapacity();
+			for (int i = 0; i < 10000; i++) {
+				set.add("item" + i);
+			}
+			assertEquals(reserved, set.stats().getCapacity());
+			for (int i = 10; i < 10000; i++) {
+				set.remove("item" + i);
+			}
+			// ensureCapacity() keeps the table from shrinking
+			assertEquals(reserved, set.stats().getCapacity());
+			set.trimToSize();
+			int trimmed = set.stats().getCapacity();
+			assertTrue(trimmed <= 16);
+			for (int i = 0; i < 10; i++) {
+				assertTrue(set.contains("item" + i));
+			}
+			assertTrue(set.add("item10"));
+			assertEquals(11, set.size());
+		}
+		mHashSet.addAll(mHelloList);
+		mHashSet.trimToSize();
+		assertEquals(5, mHashSet.toRawString().split("\n").length);
+	}
+
+	@Test
+	public void testClearKeepCapacity() {
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			for (int i = 0; i < 1000; i++) {
+				set.add("item" + i);
+			}
+			int capacity = set.stats().getCapacity();
+			Iterator<String> iter = set.iterator();
+			set.clear(true);
+			try {
+				iter.next();
+				fail("Did not throw ConcurrentModificationException for clear");
+			} catch (ConcurrentModificationException e) {
+				// expected
+			}
+			assertTrue(set.isEmpty());
+			assertFalse(set.contains("item1"));
+			assertFalse(set.iterator().hasNext());
+			assertEquals(capacity, set.stats().getCapacity());
+			set.setMetricsEnabled(true);
+			for (int i = 0; i < 1000; i++) {
+				set.add("item" + i);
+			}
+			assertEquals(0, set.stats().getResizeCount());
+			set.clear(false);
+			assertTrue(set.stats().getCapacity() < capacity);
+		}
+	}
+
+	/**
+	 * 17 pairs of "Aa" and "BB" give 131072 strings with the same hash code
+	 */
+	private static String colliding(int i) {
+		StringBuilder sb = new StringBuilder();
+		for (int bit = 0; bit < 17; bit++) {
+			sb.append((i >> bit & 1) == 0 ? "Aa" : "BB");
+		}
+		return sb.toString();
+	}
+
+	@Test(timeout = 30000)
+	public void testCollidingStrings() {
+		int n = 100000;
+		String[] items = new String[n + 1];
+		for (int i = 0; i <= n; i++) {
+			items[i] = colliding(i);
+		}
+		for (boolean incremental : new boolean[] { false, true }) {
+			// The legacy set hashes with String.hashCode(), so every item lands in one bucket
+			StringHashSet set = new StringHashSet();
+			set.setIncrementalResize(incremental);
+			set.setReordering(StringHashSet.Reordering.MOVE_TO_FRONT, 1);
+			for (int i = 0; i < n; i++) {
+				assertTrue(set.add(items[i]));
+			}
+			assertFalse(set.add(items[0]));
+			assertEquals(n, set.size());
+			assertEquals(n, set.stats().getMaxProbeLength());
+			for (int i = 0; i < n; i++) {
+				assertTrue(set.contains(items[i]));
+			}
+			assertFalse(set.contains(items[n]));
+			int count = 0;
+			for (String s : set) {
+				assertEquals(34, s.length());
+				count++;
+			}
+			assertEquals(n, count);
+			for (int i = 0; i < n; i += 2) {
+				assertTrue(set.remove(items[i]));
+			}
+			assertFalse(set.remove(items[0]));
+			assertEquals(n / 2, set.size());
+			for (int i = 0; i < n; i++) {
+				assertEquals(i % 2 == 1, set.contains(items[i]));
+			}
+			// Shrinking and growing again keeps the bucket searchable
+			set.trimToSize();
+			for (int i = 0; i < n; i += 2) {
+				assertTrue(set.add(items[i]));
+			}
+			for (int i = 0; i < n; i++) {
+				assertTrue(set.contains(items[i]));
+			}
+		}
+		// Sets with a storage layout hash with their own random seed, so the same strings spread out
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			for (int i = 0; i < n; i++) {
+				set.add(items[i]);
+			}
+			assertEquals(n, set.size());
+			assertTrue(storage.toString(), set.stats().getMaxProbeLength() < 64);
+		}
+		assertFalse(new StringHashSet(5, StringHashSet.Storage.CHAINED).hasher().hash("Aa") == new StringHashSet(5, StringHashSet.Storage.CHAINED).hasher().hash("Aa"));
+	}
+
+	@Test
+	public void testIncrementalResize() {
+		Random random = new Random(230);
+		HashSet<String> oracle = new HashSet<String>();
+		StringHashSet set = new StringHashSet(5, StringHashSet.Storage.CHAINED);
+		set.setIncrementalResize(true);
+		for (int i = 0; i < 200000; i++) {
+			String item = Integer.toString(random.nextInt(20000));
+			switch (random.nextInt(4)) {
+			case 0:
+			case 1:
+				assertEquals(oracle.add(item), set.add(item));
+				break;
+			case 2:
+				assertEquals(oracle.remove(item), set.remove(item));
+				break;
+			default:
+				assertEquals(oracle.contains(item), set.contains(item));
+			}
+		}
+		assertEquals(oracle.size(), set.size());
+		int count = 0;
+		for (String s : set) {
+			assertTrue(oracle.contains(s));
+			count++;
+		}
+		assertEquals(oracle.size(), count);
+	}
+
 	@Test
 	public void testIterator() {
 		mHashSet.add("hello");
@@ -301,6 +661,325 @@ public class StringHashSetTest {
 		sBonusPoints += 1;
 	}
 
+	@Test
+	public void testIteratorRemove() {
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			for (int i = 0; i < 1000; i++) set.add("item" + i);
+			HashSet<String> seen = new HashSet<String>();
+			Iterator<String> iter = set.iterator();
+			while (iter.hasNext()) {
+				String item = iter.next();
+				assertTrue(storage + " returned " + item + " twice", seen.add(item));
+				if (item.hashCode() % 3 == 0) iter.remove();
+			}
+			assertEquals(1000, seen.size());
+			for (int i = 0; i < 1000; i++) {
+				String item = "item" + i;
+				assertEquals(storage + " " + item, item.hashCode() % 3 != 0, set.contains(item));
+			}
+			iter = set.iterator();
+			iter.next();
+			iter.remove();
+			try {
+				iter.remove();
+				fail("Removed the same item twice");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+		}
+		// Chains long enough to be trees, in the legacy set every item collides
+		for (int i = 0; i < 40; i++) mHashSet.add(colliding(i));
+		HashSet<String> seen = new HashSet<String>();
+		for (Iterator<String> iter = mHashSet.iterator(); iter.hasNext(); ) {
+			String item = iter.next();
+			assertTrue(seen.add(item));
+			if (seen.size() % 2 == 0) iter.remove();
+		}
+		assertEquals(40, seen.size());
+		assertEquals(20, mHashSet.size());
+		int left = 0;
+		for (String item : seen) if (mHashSet.contains(item)) left++;
+		assertEquals(20, left);
+		Iterator<String> iter = mHashSet.iterator();
+		iter.next();
+		mHashSet.add("hello");
+		try {
+			iter.remove();
+			fail("Did not throw ConcurrentModificationException");
+		} catch (ConcurrentModificationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testForEachAndRemoveIf() {
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			for (int i = 0; i < 1000; i++) set.add("item" + i);
+			HashSet<String> seen = new HashSet<String>();
+			set.forEach(item -> assertTrue(seen.add(item)));
+			assertEquals(1000, seen.size());
+			assertTrue(set.removeIf(item -> item.endsWith("7")));
+			assertFalse(set.removeIf(item -> item.endsWith("7")));
+			assertEquals(900, set.size());
+			for (int i = 0; i < 1000; i++) assertEquals(i % 10 != 7, set.contains("item" + i));
+			assertTrue(set.removeIf(item -> true));
+			assertTrue(set.isEmpty());
+			set.add("hello");
+			try {
+				set.forEach(item -> set.add("hi"));
+				fail("Did not throw ConcurrentModificationException");
+			} catch (ConcurrentModificationException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testPrefixQuery() {
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			for (int i = 0; i < 1000; i++) set.add("item" + i);
+			List<String> scanned = set.prefixQuery("item1");
+			assertEquals(111, scanned.size());
+			assertEquals(111, set.countWithPrefix("item1"));
+			set.setPrefixIndex(true);
+			assertTrue(set.prefixIndexed());
+			assertEquals(scanned, set.prefixQuery("item1"));
+			assertEquals("[item10, item100, item101]", set.prefixQuery("item10").subList(0, 3).toString());
+			assertEquals(set.globQuery("item?7"), Arrays.asList("item17", "item27", "item37", "item47", "item57", "item67", "item77", "item87", "item97"));
+			// The index follows every way items leave the set
+			set.remove("item10");
+			set.removeIf(item -> item.startsWith("item11"));
+			for (Iterator<String> iter = set.iterator(); iter.hasNext(); ) if (iter.next().startsWith("item12")) iter.remove();
+			set.add("item1x");
+			assertEquals(111 - 1 - 11 - 11 + 1, set.countWithPrefix("item1"));
+			set.setPrefixIndex(false);
+			List<String> unindexed = set.prefixQuery("item1");
+			set.setPrefixIndex(true);
+			assertEquals(unindexed, set.prefixQuery("item1"));
+			set.clear();
+			assertEquals(0, set.countWithPrefix(""));
+		}
+	}
+
+	@Test
+	public void testBloomFilter() {
+		List<StringHashSet> sets = new ArrayList<StringHashSet>();
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) sets.add(new StringHashSet(5, storage));
+		mHashSet.setIncrementalResize(true);
+		sets.add(mHashSet);
+		for (StringHashSet set : sets) {
+			set.setBloomFilter(0.01);
+			for (int i = 0; i < 10000; i++) set.add("item" + i);
+			for (int i = 0; i < 10000; i++) assertTrue(set.contains("item" + i));
+			for (int i = 0; i < 10000; i++) assertFalse(set.contains("other" + i));
+			assertTrue(set.bloomFilterFalsePositiveRate() < 0.02);
+			// Removed items leave bits behind until the filter is rebuilt
+			for (int i = 0; i < 9000; i++) set.remove("item" + i);
+			for (int i = 0; i < 10000; i++) assertEquals(i >= 9000, set.contains("item" + i));
+			assertTrue(set.bloomFilterBytes() < 10000);
+			set.clear();
+			assertFalse(set.contains("item9999"));
+			set.add("hello");
+			assertTrue(set.contains("hello"));
+			set.removeBloomFilter();
+			assertEquals(1, set.bloomFilterFalsePositiveRate(), 0);
+			assertTrue(set.contains("hello"));
+		}
+		try {
+			mHashSet.setBloomFilter(1.5);
+			fail("Accepted a false positive rate over 1");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static Set<String> items(StringHashSet set) {
+		Set<String> items = new HashSet<String>();
+		for (String item : set) assertTrue(items.add(item));
+		assertEquals(set.size(), items.size());
+		return items;
+	}
+
+	@Test
+	public void testSetAlgebra() {
+		StringHasher shared = StringHasher.randomized();
+		for (int n : new int[] { 1000, 200000 }) {
+			List<StringHashSet> sets = new ArrayList<StringHashSet>();
+			sets.add(new StringHashSet());
+			for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+				sets.add(new StringHashSet(5, storage));
+				sets.add(new StringHashSet(5, storage, storage.defaultLoadFactor(), shared));
+			}
+			Set<String> left = new HashSet<String>(), right = new HashSet<String>();
+			for (int i = 0; i < n; i++) left.add("item" + i);
+			for (int i = n / 2; i < n * 2; i++) right.add("item" + i);
+			Set<String> union = new HashSet<String>(left), intersection = new HashSet<String>(left), difference = new HashSet<String>(left),
+					symmetric = new HashSet<String>(right);
+			union.addAll(right);
+			intersection.retainAll(right);
+			difference.removeAll(right);
+			symmetric.removeAll(left);
+			symmetric.addAll(difference);
+			for (StringHashSet a : sets) {
+				a.clear();
+				a.addAll(left);
+				for (StringHashSet b : sets) {
+					if (a == b) continue;
+					b.clear();
+					b.addAll(right);
+					assertEquals(union, items(a.union(b)));
+					assertEquals(intersection, items(a.intersect(b)));
+					assertEquals(intersection, items(b.intersect(a)));
+					assertEquals(difference, items(a.difference(b)));
+					assertEquals(symmetric, items(a.symmetricDifference(b)));
+					assertEquals(left, items(a));
+					assertEquals(right, items(b));
+				}
+				if (n > 1000) continue;
+				for (StringHashSet b : sets) {
+					if (a == b) continue;
+					b.clear();
+					b.addAll(right);
+					StringHashSet c = a.union(new StringHashSet());
+					assertTrue(c.unionWith(b));
+					assertFalse(c.unionWith(b));
+					assertEquals(union, items(c));
+					c = a.union(new StringHashSet());
+					assertTrue(c.intersectWith(b));
+					assertEquals(intersection, items(c));
+					c = a.union(new StringHashSet());
+					assertTrue(c.differenceWith(b));
+					assertEquals(difference, items(c));
+					c = a.union(new StringHashSet());
+					assertTrue(c.symmetricDifferenceWith(b));
+					assertEquals(symmetric, items(c));
+					assertTrue(c.differenceWith(c));
+					assertTrue(c.isEmpty());
+				}
+			}
+		}
+		// Set operations never reorder chains, even in a set that reorders on contains()
+		mHashSet.setReordering(StringHashSet.Reordering.MOVE_TO_FRONT, 0);
+		mHashSet.addAll(mHelloList);
+		StringHashSet other = new StringHashSet();
+		other.addAll(mHelloList);
+		String before = mHashSet.toRawString();
+		mHashSet.intersect(other);
+		other.intersect(mHashSet);
+		assertEquals(before, mHashSet.toRawString());
+	}
+
+	@Test
+	public void testLoadAndWrite() throws IOException {
+		String[] lines = { "hello", "hi", "caf\u00e9", "\u4f60\u597d", "\ud83d\ude00 smile", "", "hello", "hi\r", "caf\u00e9" };
+		byte[] text = (String.join("\n", lines) + "\r\nlast").getBytes(StandardCharsets.UTF_8);
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage);
+			set.setBloomFilter(0.01);
+			long[] progress = new long[3];
+			int added = set.addAllFrom(Channels.newChannel(new ByteArrayInputStream(text)), (bytes, read, size) -> {
+				progress[0] = bytes;
+				progress[1] = read;
+				progress[2] = size;
+			});
+			assertEquals(7, added);
+			assertEquals(text.length, progress[0]);
+			assertEquals(lines.length + 1, progress[1]);
+			assertEquals(7, progress[2]);
+			for (String line : new String[] { "hello", "hi", "caf\u00e9", "\u4f60\u597d", "\ud83d\ude00 smile", "", "last" }) assertTrue(line, set.contains(line));
+			assertFalse(set.contains("hi\r"));
+			// Lines longer than the buffer, and the same again, which add nothing
+			char[] filler = new char[100000];
+			Arrays.fill(filler, '\u20ac');
+			String longLine = new String(filler);
+			byte[] longText = ("a" + longLine + "\nb" + longLine + "\n").getBytes(StandardCharsets.UTF_8);
+			assertEquals(2, set.addAllFrom(Channels.newChannel(new ByteArrayInputStream(longText))));
+			assertEquals(0, set.addAllFrom(Channels.newChannel(new ByteArrayInputStream(longText))));
+			assertTrue(set.contains("b" + longLine));
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			long written = set.writeTo(Channels.newChannel(out));
+			assertEquals(out.size(), written);
+			StringHashSet copy = new StringHashSet();
+			assertEquals(set.size(), copy.addAllFrom(Channels.newChannel(new ByteArrayInputStream(out.toByteArray()))));
+			assertEquals(items(set), items(copy));
+		}
+		Path path = Files.createTempFile("StringHashSetTest", ".txt");
+		try {
+			Files.write(path, text);
+			StringHashSet set = StringHashSet.load(path);
+			assertEquals(7, set.size());
+			assertTrue(set.contains("last"));
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testLoadMalformedLines() throws IOException {
+		// Java's decoder turns each malformed line into replacement characters, so they get distinct prefixes
+		byte[][] lines = {
+				{ 'A' },
+				{ (byte) 0xC1, (byte) 0x81 }, // "A" in two bytes
+				{ 'c', (byte) 0xED, (byte) 0xA0, (byte) 0xBD, (byte) 0xED, (byte) 0xB8, (byte) 0x80 }, // CESU-8 for U+1F600
+				StringHasher.toUtf8("c\ud83d\ude00"),
+				{ 's', (byte) 0xED, (byte) 0xA0, (byte) 0xBD }, // a lone surrogate
+				StringHasher.toUtf8("s\ud83d"),
+				{ 'x', (byte) 0xE2 } // cut off
+		};
+		Set<String> expected = new HashSet<String>();
+		for (byte[] line : lines) expected.add(new String(line, StandardCharsets.UTF_8));
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			// Whichever way round the lines come, each ends up as Java's decoder reads it
+			for (boolean reversed : new boolean[] { false, true }) {
+				ByteArrayOutputStream text = new ByteArrayOutputStream();
+				for (int i = 0; i < lines.length; i++) {
+					text.write(lines[reversed ? lines.length - 1 - i : i]);
+					text.write('\n');
+				}
+				StringHashSet set = new StringHashSet(5, storage);
+				set.setBloomFilter(0.01);
+				assertEquals(expected.size(), set.addAllFrom(Channels.newChannel(new ByteArrayInputStream(text.toByteArray()))));
+				assertEquals(storage + " " + reversed, expected, items(set));
+			}
+		}
+	}
+
+	@Test
+	public void testIntern() {
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			StringHashSet set = new StringHashSet(5, storage, storage.defaultLoadFactor(), StringHasher.POLYNOMIAL);
+			set.setBloomFilter(0.01);
+			String hello = new String("hello");
+			assertTrue(hello == set.intern(hello));
+			assertTrue(hello == set.intern(new String("hello")));
+			assertTrue(hello == set.getOrAdd(new StringBuilder("hello")));
+			assertTrue(hello == set.get(new StringBuilder("hello")));
+			assertEquals(null, set.get("hi"));
+			String hi = set.getOrAdd(new StringBuilder("hi"));
+			assertEquals("hi", hi);
+			assertTrue(hi == set.intern("hi"));
+			assertEquals(2, set.size());
+			// "Aa" and "BB" share a hash code, so these all land in one chain, which becomes a tree
+			List<String> colliding = new ArrayList<String>();
+			for (int i = 0; i < 64; i++) {
+				StringBuilder sb = new StringBuilder();
+				for (int bit = 0; bit < 6; bit++) sb.append((i & (1 << bit)) != 0 ? "Aa" : "BB");
+				colliding.add(sb.toString());
+			}
+			for (String item : colliding) assertTrue(item == set.intern(item));
+			for (String item : colliding) {
+				assertTrue(item == set.intern(new String(item)));
+				assertTrue(item == set.getOrAdd(new StringBuilder(item)));
+			}
+			assertEquals(66, set.size());
+			assertTrue(set.contains("AaAaAaAaAaAa"));
+		}
+	}
+
 	@Test
 	public void testToString() {
 		sPassedToStringBasic = false;
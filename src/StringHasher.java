@@ -0,0 +1,383 @@
+import java.security.SecureRandom;
+
+/**
+ * A strategy for turning strings into hash codes. Every hasher has to give the
+ * same hash for a string whether it is handed the characters or their UTF-8
+ * encoding, so sets can be probed with either. None of them copy or allocate.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public interface StringHasher {
+
+	/**
+	 * The x=31*x + y pattern from String.hashCode(). Strings cache this hash
+	 * themselves, so hashing one a second time is free.
+	 */
+	StringHasher POLYNOMIAL = new Polynomial();
+
+	/**
+	 * The polynomial hash run through a finalizer that spreads every input bit
+	 * over every output bit, for tables that index with the low bits.
+	 */
+	StringHasher MIXED = new Mixed();
+
+	/**
+	 * @param item The characters to hash
+	 * @return The hash code of the characters
+	 */
+	int hash(CharSequence item);
+
+	/**
+	 * @param utf8 The array holding the UTF-8 encoded string
+	 * @param offset The index of the first byte of the string
+	 * @param length The number of bytes in the string
+	 * @return The same hash code hash(CharSequence) gives for the decoded string
+	 */
+	int hash(byte[] utf8, int offset, int length);
+
+	/**
+	 * Creates a wyhash-style hasher keyed with the given seed. Different seeds
+	 * give unrelated hash codes for the same string.
+	 * @param seed The key for the hasher
+	 * @return The hasher
+	 */
+	static StringHasher seeded(long seed) {
+		return new Seeded(seed);
+	}
+
+	/**
+	 * Creates a seeded hasher with a fresh random seed, so which strings
+	 * collide differs from one hasher to the next and cannot be worked out
+	 * in advance by someone choosing the strings.
+	 * @return The hasher
+	 */
+	static StringHasher randomized() {
+		return new Seeded(Seeded.SEEDS.nextLong());
+	}
+
+	/**
+	 * Decodes the UTF-16 code units of a UTF-8 string one at a time. The result
+	 * packs the next byte offset into the high 32 bits and the code unit into
+	 * the low 16 bits; a code point outside the basic plane comes out as its
+	 * high surrogate with bit 16 set (and the rest of the pair stashed in bits
+	 * 17 to 26), and its low surrogate is returned by the following call.
+	 * @param utf8 The encoded bytes
+	 * @param offset The offset returned by the previous call, or the start of the string
+	 * @param pending The result of the previous call, or 0 at the start of the string
+	 * @return The next offset and code unit
+	 */
+	static long nextChar(byte[] utf8, int offset, long pending) {
+		if ((pending & 0x10000) != 0) {
+			// The previous call returned a high surrogate; finish the pair
+			return ((long) offset << 32) | (0xDC00 | ((int) (pending >>> 17) & 0x3FF));
+		}
+		int b = utf8[offset];
+		if (b >= 0) return ((long) (offset + 1) << 32) | b;
+		if ((b & 0xE0) == 0xC0) return ((long) (offset + 2) << 32) | ((b & 0x1F) << 6 | (utf8[offset + 1] & 0x3F));
+		if ((b & 0xF0) == 0xE0) return ((long) (offset + 3) << 32) | ((b & 0x0F) << 12 | (utf8[offset + 1] & 0x3F) << 6 | (utf8[offset + 2] & 0x3F));
+		int cp = (b & 0x07) << 18 | (utf8[offset + 1] & 0x3F) << 12 | (utf8[offset + 2] & 0x3F) << 6 | (utf8[offset + 3] & 0x3F);
+		int high = 0xD800 | ((cp - 0x10000) >>> 10);
+		return ((long) (offset + 4) << 32) | (cp & 0x3FF) << 17 | 0x10000 | high;
+	}
+
+	/**
+	 * Encodes characters as UTF-8, with each unpaired surrogate in three bytes
+	 * like any other character (as in WTF-8) instead of the '?' that
+	 * String.getBytes() writes, so no two strings share an encoding
+	 * @param item The characters
+	 * @return The encoded bytes
+	 */
+	static byte[] toUtf8(CharSequence item) {
+		int n = item.length();
+		long length = 0;
+		for (int i = 0; i < n; i++) {
+			char c = item.charAt(i);
+			if (c < 0x80) length++;
+			else if (c < 0x800) length += 2;
+			else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(item.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else length += 3;
+		}
+		if (length > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Item too long: " + length + " bytes");
+		byte[] utf8 = new byte[(int) length];
+		int offset = 0;
+		for (int i = 0; i < n; i++) {
+			int cp = item.charAt(i);
+			if (cp < 0x80) {
+				utf8[offset++] = (byte) cp;
+				continue;
+			}
+			if (Character.isHighSurrogate((char) cp) && i + 1 < n && Character.isLowSurrogate(item.charAt(i + 1))) cp = Character.toCodePoint((char) cp, item.charAt(++i));
+			int bytes = cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+			utf8[offset++] = (byte) (bytes == 2 ? 0xC0 | cp >> 6 : bytes == 3 ? 0xE0 | cp >> 12 : 0xF0 | cp >> 18);
+			for (int shift = 6 * (bytes - 2); shift >= 0; shift -= 6) utf8[offset++] = (byte) (0x80 | (cp >> shift & 0x3F));
+		}
+		return utf8;
+	}
+
+	/**
+	 * Decodes what toUtf8() wrote back into the same String
+	 * @param utf8 The array holding the encoded string
+	 * @param offset The index of the first byte of the string
+	 * @param length The number of bytes in the string
+	 * @param buffer Scratch space at least length characters long
+	 * @return The string
+	 */
+	static String fromUtf8(byte[] utf8, int offset, int length, char[] buffer) {
+		int end = offset + length;
+		int n = 0;
+		long next = 0;
+		while (offset < end || (next & 0x10000) != 0) {
+			next = StringHasher.nextChar(utf8, offset, next);
+			offset = (int) (next >>> 32);
+			buffer[n++] = (char) next;
+		}
+		return new String(buffer, 0, n);
+	}
+
+	/**
+	 * Checks that bytes are exactly what toUtf8() writes for some string:
+	 * every character in its shortest form, nothing cut off at the end, and
+	 * surrogate pairs in four bytes rather than two threes (as CESU-8 has
+	 * them). Only then do nextChar() and byte-for-byte comparison agree.
+	 * @param utf8 The array holding the encoded string
+	 * @param offset The index of the first byte of the string
+	 * @param length The number of bytes in the string
+	 * @return Whether the bytes are well formed
+	 */
+	static boolean isWellFormed(byte[] utf8, int offset, int length) {
+		int end = offset + length;
+		boolean afterHigh = false;
+		for (int i = offset; i < end; ) {
+			int b = utf8[i] & 0xFF;
+			if (b < 0x80) {
+				afterHigh = false;
+				i++;
+				continue;
+			}
+			int bytes;
+			int cp;
+			if (b >= 0xC2 && b <= 0xDF) {
+				bytes = 2;
+				cp = b & 0x1F;
+			} else if ((b & 0xF0) == 0xE0) {
+				bytes = 3;
+				cp = b & 0x0F;
+			} else if (b >= 0xF0 && b <= 0xF4) {
+				bytes = 4;
+				cp = b & 0x07;
+			} else return false;
+			if (end - i < bytes) return false;
+			for (int k = 1; k < bytes; k++) {
+				int c = utf8[i + k] & 0xFF;
+				if ((c & 0xC0) != 0x80) return false;
+				cp = cp << 6 | (c & 0x3F);
+			}
+			if (bytes == 3 && cp < 0x800 || bytes == 4 && (cp < 0x10000 || cp > 0x10FFFF)) return false;
+			if (afterHigh && cp >= 0xDC00 && cp <= 0xDFFF) return false;
+			afterHigh = cp >= 0xD800 && cp <= 0xDBFF;
+			i += bytes;
+		}
+		return true;
+	}
+
+	/**
+	 * Compares characters with a UTF-8 string, decoding it as it goes instead
+	 * of into a new String
+	 * @param item The characters
+	 * @param utf8 The array holding the UTF-8 encoded string
+	 * @param offset The index of the first byte of the string
+	 * @param length The number of bytes in the string
+	 * @return Whether the string decodes to exactly the characters
+	 */
+	static boolean equalsUtf8(CharSequence item, byte[] utf8, int offset, int length) {
+		int n = item.length();
+		// Every character takes one to three bytes, and a surrogate pair four
+		if (length < n || length > 3 * n) return false;
+		int end = offset + length;
+		int i = 0;
+		long next = 0;
+		while (offset < end || (next & 0x10000) != 0) {
+			if (i == n) return false;
+			next = StringHasher.nextChar(utf8, offset, next);
+			offset = (int) (next >>> 32);
+			if ((char) next != item.charAt(i++)) return false;
+		}
+		// A character cut off by the end of the string is read past it
+		return i == n && offset == end;
+	}
+
+	/**
+	 * The x=31*x + y hash from String.hashCode()
+	 */
+	final class Polynomial implements StringHasher {
+		Polynomial() {
+		}
+
+		@Override
+		public int hash(CharSequence item) {
+			if (item instanceof String) return item.hashCode();
+			int hash = 0;
+			for (int i = 0, length = item.length(); i < length; i++) hash = 31 * hash + item.charAt(i);
+			return hash;
+		}
+
+		@Override
+		public int hash(byte[] utf8, int offset, int length) {
+			int hash = 0;
+			int end = offset + length;
+			for (int i = offset; i < end; ) {
+				int b = utf8[i];
+				if (b >= 0) {
+					// ASCII fast path
+					hash = 31 * hash + b;
+					i++;
+					continue;
+				}
+				long next = 0;
+				do {
+					next = StringHasher.nextChar(utf8, i, next);
+					i = (int) (next >>> 32);
+					hash = 31 * hash + (char) next;
+				} while ((next & 0x10000) != 0);
+			}
+			return hash;
+		}
+
+		public String toString() {
+			return "POLYNOMIAL";
+		}
+	}
+
+	/**
+	 * The polynomial hash followed by the MurmurHash3 finalizer
+	 */
+	final class Mixed implements StringHasher {
+		Mixed() {
+		}
+
+		static int mix(int hash) {
+			hash ^= hash >>> 16;
+			hash *= 0x85EBCA6B;
+			hash ^= hash >>> 13;
+			hash *= 0xC2B2AE35;
+			return hash ^ (hash >>> 16);
+		}
+
+		@Override
+		public int hash(CharSequence item) {
+			return Mixed.mix(POLYNOMIAL.hash(item));
+		}
+
+		@Override
+		public int hash(byte[] utf8, int offset, int length) {
+			return Mixed.mix(POLYNOMIAL.hash(utf8, offset, length));
+		}
+
+		public String toString() {
+			return "MIXED";
+		}
+	}
+
+	/**
+	 * A seeded hash in the style of wyhash: four characters at a time are
+	 * folded into a 64-bit word and mixed into the state with a wide multiply.
+	 */
+	final class Seeded implements StringHasher {
+		static final long P0 = 0xA0761D6478BD642FL;
+		static final long P1 = 0xE7037ED1A0B428DBL;
+		static final long P2 = 0x8EBC6AF09C88C6E3L;
+		static final SecureRandom SEEDS = new SecureRandom();
+
+		private final long seed;
+
+		Seeded(long seed) {
+			this.seed = seed ^ P0;
+		}
+
+		/**
+		 * Multiplies two words into 128 unsigned bits and folds the halves together
+		 */
+		static long mum(long a, long b) {
+			// multiplyHigh() is signed; adding back the other operand where the sign bit is set makes it unsigned
+			long high = Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+			return (a * b) ^ high;
+		}
+
+		private long finish(long state, long word, int count) {
+			state = Seeded.mum(state ^ word ^ P1, count ^ P2);
+			return state ^ (state >>> 32);
+		}
+
+		@Override
+		public int hash(CharSequence item) {
+			return (int) this.hash64(item);
+		}
+
+		/**
+		 * @param item The characters to hash
+		 * @return All 64 bits of the hash, of which hash() keeps the low 32
+		 */
+		long hash64(CharSequence item) {
+			long state = this.seed;
+			long word = 0;
+			int length = item.length();
+			int i = 0;
+			for (; i + 4 <= length; i += 4) {
+				word = (long) item.charAt(i) | (long) item.charAt(i + 1) << 16 | (long) item.charAt(i + 2) << 32 | (long) item.charAt(i + 3) << 48;
+				state = Seeded.mum(state ^ word, P1);
+			}
+			word = 0;
+			for (int shift = 0; i < length; i++, shift += 16) word |= (long) item.charAt(i) << shift;
+			return this.finish(state, word, length);
+		}
+
+		@Override
+		public int hash(byte[] utf8, int offset, int length) {
+			long state = this.seed;
+			long word = 0;
+			int shift = 0;
+			int count = 0;
+			int end = offset + length;
+			long next = 0;
+			int i = offset;
+			// Runs of ASCII bytes are whole characters, so they can be taken four at a time
+			for (; i + 4 <= end && (utf8[i] | utf8[i + 1] | utf8[i + 2] | utf8[i + 3]) >= 0; i += 4, count += 4) {
+				word = (long) utf8[i] | (long) utf8[i + 1] << 16 | (long) utf8[i + 2] << 32 | (long) utf8[i + 3] << 48;
+				state = Seeded.mum(state ^ word, P1);
+			}
+			word = 0;
+			while (i < end || (next & 0x10000) != 0) {
+				next = StringHasher.nextChar(utf8, i, next);
+				i = (int) (next >>> 32);
+				word |= (long) (char) next << shift;
+				count++;
+				if ((shift += 16) == 64) {
+					state = Seeded.mum(state ^ word, P1);
+					word = 0;
+					shift = 0;
+				}
+			}
+			return (int) this.finish(state, word, count);
+		}
+
+		/**
+		 * Hashers with the same seed give every string the same hash, so sets
+		 * that share one can use each other's cached hashes
+		 */
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Seeded && ((Seeded) other).seed == this.seed;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(this.seed);
+		}
+
+		public String toString() {
+			return "SEEDED";
+		}
+	}
+}
@@ -0,0 +1,146 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class StringHasherTest {
+	private static final String[] SAMPLES = { "", "A", "AB", "ciao", "shalom", "ni-hao", "bonjour le monde", "caf\u00e9", "\u4f60\u597d",
+			"\ud83d\ude00 smile", "mixed \u00e9\u4f60\ud83d\ude00 text of some length" };
+
+	private static final StringHasher[] HASHERS = { StringHasher.POLYNOMIAL, StringHasher.MIXED, StringHasher.seeded(0), StringHasher.seeded(230) };
+
+	/**
+	 * Counts how many times it is asked for a hash
+	 */
+	private static class CountingHasher implements StringHasher {
+		int calls;
+
+		@Override
+		public int hash(CharSequence item) {
+			this.calls++;
+			return StringHasher.POLYNOMIAL.hash(item);
+		}
+
+		@Override
+		public int hash(byte[] utf8, int offset, int length) {
+			this.calls++;
+			return StringHasher.POLYNOMIAL.hash(utf8, offset, length);
+		}
+	}
+
+	@Test
+	public void testPolynomialMatchesString() {
+		for (String s : SAMPLES) {
+			assertEquals(s.hashCode(), StringHasher.POLYNOMIAL.hash(s));
+			assertEquals(s.hashCode(), StringHasher.POLYNOMIAL.hash(new StringBuilder(s)));
+			assertEquals(s.hashCode(), StringHashSet.stringHashCode(s));
+		}
+	}
+
+	@Test
+	public void testBytesMatchChars() {
+		for (StringHasher hasher : HASHERS) {
+			for (String s : SAMPLES) {
+				byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+				byte[] padded = new byte[utf8.length + 6];
+				System.arraycopy(utf8, 0, padded, 3, utf8.length);
+				assertEquals(hasher + " " + s, hasher.hash(s), hasher.hash(utf8, 0, utf8.length));
+				assertEquals(hasher + " " + s, hasher.hash(s), hasher.hash(padded, 3, utf8.length));
+				assertEquals(hasher + " " + s, hasher.hash(s), hasher.hash(new StringBuilder(s)));
+			}
+		}
+	}
+
+	@Test
+	public void testEqualsUtf8() {
+		String[] samples = { "", "abcd", "abcdefg\u00e9", "\u00e9abcdefgh", "\ud83d\ude00 smile", "\u4f60\u597d" };
+		for (String s : samples) {
+			byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+			assertTrue(s, StringHasher.equalsUtf8(s, utf8, 0, utf8.length));
+			assertTrue(s, StringHasher.equalsUtf8(new StringBuilder(s), utf8, 0, utf8.length));
+			for (String t : samples) if (!t.equals(s)) assertFalse(s + " " + t, StringHasher.equalsUtf8(t, utf8, 0, utf8.length));
+			if (utf8.length > 0) assertFalse(s, StringHasher.equalsUtf8(s, utf8, 0, utf8.length - 1));
+		}
+		// Seeded hashers are equal only with equal seeds
+		assertEquals(StringHasher.seeded(1), StringHasher.seeded(1));
+		assertNotEquals(StringHasher.seeded(1), StringHasher.seeded(2));
+	}
+
+	@Test
+	public void testUtf8RoundTrip() {
+		String[] lone = { "?", "\ud800", "\udc00", "a\ud800b", "\udc00\ud800", "\ud83d" };
+		for (String[] samples : new String[][] { SAMPLES, lone }) {
+			for (String s : samples) {
+				byte[] utf8 = StringHasher.toUtf8(s);
+				// Well-formed strings encode exactly as String.getBytes() does
+				if (samples == SAMPLES) assertArrayEquals(s, s.getBytes(StandardCharsets.UTF_8), utf8);
+				assertEquals(s, StringHasher.fromUtf8(utf8, 0, utf8.length, new char[utf8.length]));
+				assertTrue(s, StringHasher.equalsUtf8(s, utf8, 0, utf8.length));
+				for (StringHasher hasher : HASHERS) assertEquals(hasher + " " + s, hasher.hash(s), hasher.hash(utf8, 0, utf8.length));
+			}
+		}
+		assertEquals(3, StringHasher.toUtf8("\ud800").length);
+		for (String[] samples : new String[][] { SAMPLES, lone }) {
+			for (String s : samples) {
+				byte[] utf8 = StringHasher.toUtf8(s);
+				assertTrue(s, StringHasher.isWellFormed(utf8, 0, utf8.length));
+				if (utf8.length > 0 && utf8[utf8.length - 1] < 0) assertFalse(s, StringHasher.isWellFormed(utf8, 0, utf8.length - 1));
+			}
+		}
+		assertFalse(StringHasher.isWellFormed(new byte[] { (byte) 0xC1, (byte) 0x81 }, 0, 2));
+		// The two halves of a pair encoded one at a time are CESU-8, not the four-byte form
+		byte[] cesu = new byte[6];
+		System.arraycopy(StringHasher.toUtf8("\ud83d"), 0, cesu, 0, 3);
+		System.arraycopy(StringHasher.toUtf8("\ude00"), 0, cesu, 3, 3);
+		assertFalse(StringHasher.isWellFormed(cesu, 0, 6));
+		assertTrue(StringHasher.isWellFormed(cesu, 3, 3));
+	}
+
+	@Test
+	public void testSeedsDiffer() {
+		StringHasher a = StringHasher.seeded(1);
+		StringHasher b = StringHasher.seeded(2);
+		int same = 0;
+		for (int i = 0; i < 1000; i++) if (a.hash("item" + i) == b.hash("item" + i)) same++;
+		assertTrue(same < 5);
+		// The classic polynomial collision does not survive a seeded hash
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		assertNotEquals(a.hash("Aa"), a.hash("BB"));
+	}
+
+	@Test
+	public void testMixedSpreadsLowBits() {
+		// Sequential strings differ only in their low polynomial bits
+		int[] buckets = new int[64];
+		for (int i = 0; i < 64 * 100; i++) buckets[StringHasher.MIXED.hash("k" + i) & 63]++;
+		for (int count : buckets) assertTrue(count > 50 && count < 150);
+	}
+
+	@Test
+	public void testSetsWithEachHasher() {
+		for (StringHasher hasher : HASHERS) {
+			for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+				StringHashSet set = new StringHashSet(5, storage, storage.defaultLoadFactor(), hasher);
+				for (String s : SAMPLES) assertTrue(set.add(s));
+				for (String s : SAMPLES) assertTrue(set.contains(s));
+				for (String s : SAMPLES) assertTrue(set.remove(s));
+				assertTrue(set.isEmpty());
+			}
+		}
+	}
+
+	@Test
+	public void testResizeDoesNotRehash() {
+		for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+			CountingHasher hasher = new CountingHasher();
+			StringHashSet set = new StringHashSet(5, storage, storage.defaultLoadFactor(), hasher);
+			for (int i = 0; i < 10000; i++) set.add("item" + i);
+			assertEquals(storage.toString(), 10000, hasher.calls);
+		}
+	}
+}
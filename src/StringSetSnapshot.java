@@ -0,0 +1,394 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only set of Strings stored in a file that is memory-mapped rather
+ * than read. Opening a snapshot only checks its header, so it takes the same
+ * time however many items there are, and lookups probe the mapped table and
+ * compare the mapped UTF-8 bytes directly. The operating system pages the file
+ * in as it is touched and can share it between processes.
+ *
+ * A snapshot file is laid out as follows, with every number little-endian:
+ *
+ * <pre>
+ *  0  magic "SHSNAP" and two zero bytes
+ *  8  int   format version (1)
+ * 12  int   hash function (1 = StringHasher.MIXED)
+ * 16  int   number of items
+ * 20  int   unused
+ * 24  long  number of slots, a power of two
+ * 32  long  file position of the table
+ * 40  long  file position of the first record
+ * 48  long  CRC32 of everything after the header
+ * 56  long  CRC32 of the first 56 bytes
+ * 64  records: int length, then that many bytes of UTF-8 (unpaired
+ *     surrogates in three bytes each, as in WTF-8)
+ *     table: an int hash per slot, then a long record position per slot (0 if empty)
+ * </pre>
+ *
+ * Records never cross a 1 GiB boundary, so files of any size can be mapped a
+ * gigabyte at a time. A snapshot is written in one sequential pass by write(),
+ * and copied into a StringHashSet by toStringHashSet() when it needs changing.
+ *
+ * Closing a snapshot unmaps it; it must not be closed while another thread is
+ * still reading it.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public final class StringSetSnapshot implements Iterable<String>, AutoCloseable {
+
+	/**
+	 * The format version this class writes and reads
+	 */
+	public static final int VERSION = 1;
+
+	private static final long MAGIC = 0x0000_5041_4E53_4853L;
+	private static final int HASHER_MIXED = 1;
+	private static final int HEADER_SIZE = 64;
+
+	// Lookups are all that happen on a snapshot, and misses stop at the first
+	// empty slot, so the table is kept sparser than a mutable set's.
+	private static final double LOAD_FACTOR = 0.5;
+
+	private final StringHasher hasher = StringHasher.MIXED;
+	private final int size;
+	private final long mask;
+	private final long hashes;
+	private final long refs;
+	private final long bodyChecksum;
+	private OffHeapMemory file;
+
+	private StringSetSnapshot(OffHeapMemory file, int size, long slots, long tableOffset, long bodyChecksum) {
+		this.file = file;
+		this.size = size;
+		this.mask = slots - 1;
+		this.hashes = tableOffset;
+		this.refs = tableOffset + slots * 4;
+		this.bodyChecksum = bodyChecksum;
+	}
+
+	/**
+	 * Writes the items of a set to a snapshot file, replacing the file if it
+	 * exists. The file is written beside its destination and moved into place,
+	 * so readers never see half a snapshot.
+	 *
+	 * @param set The items to write
+	 * @param path The file to write
+	 */
+	public static void write(StringHashSet set, Path path) throws IOException {
+		StringSetSnapshot.write(set, set.size(), path);
+	}
+
+	/**
+	 * Writes distinct items to a snapshot file, replacing the file if it exists.
+	 *
+	 * @param items The items to write, with no duplicates
+	 * @param size The number of items
+	 * @param path The file to write
+	 */
+	public static void write(Iterable<String> items, int size, Path path) throws IOException {
+		if (size < 0) throw new IllegalArgumentException("Illegal size: " + size);
+		long slots = 2;
+		while (slots * LOAD_FACTOR < size) slots <<= 1;
+		OffHeapMemory hashes = OffHeapMemory.allocate(slots * 4, ByteOrder.LITTLE_ENDIAN);
+		OffHeapMemory refs = OffHeapMemory.allocate(slots * 8, ByteOrder.LITTLE_ENDIAN);
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			CRC32 checksum = new CRC32();
+			ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			long position = HEADER_SIZE;
+			int count = 0;
+			channel.position(position);
+			for (String item : items) {
+				if (++count > size) throw new IllegalArgumentException("More than " + size + " items");
+				byte[] utf8 = StringHasher.toUtf8(item);
+				long recordSize = 4L + utf8.length;
+				if (recordSize > OffHeapMemory.MAX_CHUNK_SIZE) throw new IllegalArgumentException("Item too long: " + utf8.length + " bytes");
+				long chunkLeft = OffHeapMemory.MAX_CHUNK_SIZE - (position & (OffHeapMemory.MAX_CHUNK_SIZE - 1));
+				if (recordSize > chunkLeft) position = StringSetSnapshot.pad(channel, buffer, checksum, position, chunkLeft);
+				StringSetSnapshot.place(hashes, refs, slots - 1, StringHasher.MIXED.hash(item), position);
+				if (buffer.remaining() < 4) StringSetSnapshot.flush(channel, buffer, checksum);
+				buffer.putInt(utf8.length);
+				for (int off = 0; off < utf8.length; ) {
+					if (!buffer.hasRemaining()) StringSetSnapshot.flush(channel, buffer, checksum);
+					int n = Math.min(buffer.remaining(), utf8.length - off);
+					buffer.put(utf8, off, n);
+					off += n;
+				}
+				position += recordSize;
+			}
+			if (count != size) throw new IllegalArgumentException("Expected " + size + " items but found " + count);
+			position = StringSetSnapshot.pad(channel, buffer, checksum, position, -position & 7);
+			StringSetSnapshot.flush(channel, buffer, checksum);
+			long tableOffset = position;
+			hashes.writeTo(channel, 0, slots * 4, checksum);
+			refs.writeTo(channel, 0, slots * 8, checksum);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putLong(MAGIC).putInt(VERSION).putInt(HASHER_MIXED).putInt(size).putInt(0);
+			header.putLong(slots).putLong(tableOffset).putLong(HEADER_SIZE).putLong(checksum.getValue());
+			header.putLong(StringSetSnapshot.headerChecksum(header));
+			header.flip();
+			while (header.hasRemaining()) channel.write(header, header.position());
+			channel.force(true);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		} finally {
+			hashes.free();
+			refs.free();
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void place(OffHeapMemory hashes, OffHeapMemory refs, long mask, int hash, long record) {
+		long slot = hash & mask;
+		while (refs.getLong(slot * 8) != 0) slot = (slot + 1) & mask;
+		hashes.putInt(slot * 4, hash);
+		refs.putLong(slot * 8, record);
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer, CRC32 checksum) throws IOException {
+		buffer.flip();
+		checksum.update(buffer);
+		buffer.rewind();
+		while (buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Writes zero bytes
+	 * @return The position after them
+	 */
+	private static long pad(FileChannel channel, ByteBuffer buffer, CRC32 checksum, long position, long bytes) throws IOException {
+		for (long i = 0; i < bytes; i++) {
+			if (!buffer.hasRemaining()) StringSetSnapshot.flush(channel, buffer, checksum);
+			buffer.put((byte) 0);
+		}
+		return position + bytes;
+	}
+
+	private static long headerChecksum(ByteBuffer header) {
+		CRC32 checksum = new CRC32();
+		checksum.update(header.array(), 0, HEADER_SIZE - 8);
+		return checksum.getValue();
+	}
+
+	/**
+	 * Maps a snapshot file, checking its header but not its contents.
+	 *
+	 * @param path The file to open
+	 * @return The snapshot
+	 * @throws IOException If the file cannot be read or is not a valid snapshot
+	 */
+	public static StringSetSnapshot open(Path path) throws IOException {
+		return StringSetSnapshot.open(path, false);
+	}
+
+	/**
+	 * Maps a snapshot file, checking its header and, if asked, the checksum of
+	 * its contents. Verifying reads the whole file once.
+	 *
+	 * @param path The file to open
+	 * @param verify Whether to check the contents as well
+	 * @return The snapshot
+	 * @throws IOException If the file cannot be read or is not a valid snapshot
+	 */
+	public static StringSetSnapshot open(Path path, boolean verify) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length < HEADER_SIZE) throw new IOException("Not a snapshot: " + path);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining()) if (channel.read(header, header.position()) < 0) throw new IOException("Not a snapshot: " + path);
+			header.flip();
+			if (header.getLong(0) != MAGIC) throw new IOException("Not a snapshot: " + path);
+			if (header.getLong(56) != StringSetSnapshot.headerChecksum(header)) throw new IOException("Corrupt snapshot header: " + path);
+			int version = header.getInt(8);
+			if (version != VERSION) throw new IOException("Unsupported snapshot version " + version + ": " + path);
+			if (header.getInt(12) != HASHER_MIXED) throw new IOException("Unknown hash function " + header.getInt(12) + ": " + path);
+			int size = header.getInt(16);
+			long slots = header.getLong(24);
+			long tableOffset = header.getLong(32);
+			if (size < 0 || slots < 2 || (slots & (slots - 1)) != 0 || size >= slots || (tableOffset & 7) != 0 || tableOffset < HEADER_SIZE
+					|| tableOffset + slots * 12 != length) throw new IOException("Corrupt snapshot header: " + path);
+			StringSetSnapshot snapshot = new StringSetSnapshot(OffHeapMemory.map(channel), size, slots, tableOffset, header.getLong(48));
+			if (verify) {
+				try {
+					snapshot.verify();
+				} catch (IOException e) {
+					snapshot.close();
+					throw e;
+				}
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Reads the whole file and checks it against the checksum in its header.
+	 *
+	 * @throws IOException If the contents do not match
+	 */
+	public void verify() throws IOException {
+		this.ensureOpen();
+		CRC32 checksum = new CRC32();
+		this.file.checksum(HEADER_SIZE, this.file.size() - HEADER_SIZE, checksum);
+		if (checksum.getValue() != this.bodyChecksum) throw new IOException("Snapshot contents do not match their checksum");
+	}
+
+	private void ensureOpen() {
+		if (this.file == null) throw new IllegalStateException("The snapshot has been closed");
+	}
+
+	/**
+	 * Checks if the given characters are in the snapshot.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the snapshot.
+	 */
+	public boolean contains(CharSequence item) {
+		this.ensureOpen();
+		int hash = this.hasher.hash(item);
+		for (long slot = hash & this.mask; ; slot = (slot + 1) & this.mask) {
+			long record = this.file.getLong(this.refs + slot * 8);
+			if (record == 0) return false;
+			if (this.file.getInt(this.hashes + slot * 4) == hash && this.file.equalsUtf8(record + 4, this.file.getInt(record), item)) return true;
+		}
+	}
+
+	/**
+	 * Checks if the string with the given UTF-8 encoding is in the snapshot.
+	 * Malformed bytes are never in it.
+	 *
+	 * @return True if and only if the item is in the snapshot.
+	 * @throws IndexOutOfBoundsException If the range is not inside the array
+	 */
+	public boolean contains(byte[] utf8, int offset, int length) throws IndexOutOfBoundsException {
+		this.ensureOpen();
+		Objects.checkFromIndexSize(offset, length, utf8.length);
+		if (!StringHasher.isWellFormed(utf8, offset, length)) return false;
+		int hash = this.hasher.hash(utf8, offset, length);
+		for (long slot = hash & this.mask; ; slot = (slot + 1) & this.mask) {
+			long record = this.file.getLong(this.refs + slot * 8);
+			if (record == 0) return false;
+			if (this.file.getInt(this.hashes + slot * 4) == hash && this.file.getInt(record) == length && this.file.equalsBytes(record + 4, utf8, offset, length)) return true;
+		}
+	}
+
+	/**
+	 * @return The number of items in the snapshot.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return True iff the snapshot contains no items.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Copies the items into a new set that can be changed, using the chained
+	 * storage layout.
+	 *
+	 * @return The new set
+	 */
+	public StringHashSet toStringHashSet() {
+		return this.toStringHashSet(StringHashSet.Storage.CHAINED);
+	}
+
+	/**
+	 * Copies the items into a new set with the given storage layout, sized so
+	 * that it does not have to grow while being filled.
+	 *
+	 * @param storage The layout of the new set
+	 * @return The new set
+	 */
+	public StringHashSet toStringHashSet(StringHashSet.Storage storage) {
+		double perBucket = storage == StringHashSet.Storage.CHAINED ? storage.defaultLoadFactor() : 1;
+		StringHashSet set = new StringHashSet((int) Math.min(1 << 30, this.size / perBucket + 1), storage);
+		for (String item : this) set.add(item);
+		return set;
+	}
+
+	/**
+	 * Unmaps the file. Closing twice does nothing; using the snapshot after it
+	 * is closed throws IllegalStateException.
+	 */
+	@Override
+	public void close() {
+		if (this.file == null) return;
+		this.file.free();
+		this.file = null;
+	}
+
+	/**
+	 * Returns an iterator that decodes each item into a new String.
+	 *
+	 * @return an iterator.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		this.ensureOpen();
+		return new SlotIterator(this);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("[");
+		for (Iterator<String> iter = this.iterator(); iter.hasNext(); ) {
+			sb.append(iter.next());
+			if (iter.hasNext()) sb.append(", ");
+		}
+		return sb.append(']').toString();
+	}
+
+	private static class SlotIterator implements Iterator<String> {
+		StringSetSnapshot snapshot;
+		long slot = -1;
+		byte[] buffer = new byte[64];
+		char[] chars = new char[64];
+
+		SlotIterator(StringSetSnapshot snapshot) {
+			this.snapshot = snapshot;
+			this.advance();
+		}
+
+		private void advance() {
+			do this.slot++;
+			while (this.slot <= this.snapshot.mask && this.snapshot.file.getLong(this.snapshot.refs + this.slot * 8) == 0);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.slot <= this.snapshot.mask;
+		}
+
+		@Override
+		public String next() throws NoSuchElementException {
+			if (!this.hasNext()) throw new NoSuchElementException();
+			this.snapshot.ensureOpen();
+			long record = this.snapshot.file.getLong(this.snapshot.refs + this.slot * 8);
+			int length = this.snapshot.file.getInt(record);
+			if (this.buffer.length < length) {
+				this.buffer = new byte[Math.max(length, this.buffer.length * 2)];
+				this.chars = new char[this.buffer.length];
+			}
+			this.snapshot.file.getBytes(record + 4, this.buffer, 0, length);
+			this.advance();
+			return StringHasher.fromUtf8(this.buffer, 0, length, this.chars);
+		}
+	}
+}
@@ -0,0 +1,158 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StringSetSnapshotTest {
+	private static final String[] HELLOS = { "hello", "hi", "caio", "hola", "shalom", "bonjour", "ni-hao", "aloha", "tere", "sveiki",
+			"caf\u00e9", "\u4f60\u597d", "\ud83d\ude00 smile", "" };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path writeHellos() throws IOException {
+		StringHashSet set = new StringHashSet();
+		for (String s : HELLOS) set.add(s);
+		Path path = folder.getRoot().toPath().resolve("hellos.snap");
+		StringSetSnapshot.write(set, path);
+		return path;
+	}
+
+	private static void corrupt(Path path, long position) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			file.seek(position);
+			int b = file.read();
+			file.seek(position);
+			file.write(b ^ 1);
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		try (StringSetSnapshot snapshot = StringSetSnapshot.open(writeHellos(), true)) {
+			assertEquals(HELLOS.length, snapshot.size());
+			for (String s : HELLOS) {
+				assertTrue(s, snapshot.contains(s));
+				assertTrue(s, snapshot.contains(new StringBuilder(s)));
+				byte[] utf8 = ("<<" + s + ">>").getBytes(StandardCharsets.UTF_8);
+				assertTrue(s, snapshot.contains(utf8, 2, utf8.length - 4));
+			}
+			assertFalse(snapshot.contains("mulishani"));
+			assertFalse(snapshot.contains("hell"));
+			assertFalse(snapshot.contains("caf\u00e8"));
+			HashSet<String> iterated = new HashSet<String>();
+			for (String s : snapshot) assertTrue(iterated.add(s));
+			assertEquals(new HashSet<String>(Arrays.asList(HELLOS)), iterated);
+		}
+	}
+
+	@Test
+	public void testManyItems() throws IOException {
+		StringHashSet set = new StringHashSet(16, StringHashSet.Storage.ROBIN_HOOD);
+		for (int i = 0; i < 100000; i++) set.add("item" + i);
+		Path path = folder.getRoot().toPath().resolve("items.snap");
+		StringSetSnapshot.write(set, path);
+		try (StringSetSnapshot snapshot = StringSetSnapshot.open(path)) {
+			for (int i = 0; i < 100000; i++) assertTrue(snapshot.contains("item" + i));
+			for (int i = 100000; i < 110000; i++) assertFalse(snapshot.contains("item" + i));
+		}
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("empty.snap");
+		StringSetSnapshot.write(new StringHashSet(), path);
+		try (StringSetSnapshot snapshot = StringSetSnapshot.open(path, true)) {
+			assertTrue(snapshot.isEmpty());
+			assertFalse(snapshot.contains("hello"));
+			assertEquals("[]", snapshot.toString());
+		}
+	}
+
+	@Test
+	public void testToStringHashSet() throws IOException {
+		try (StringSetSnapshot snapshot = StringSetSnapshot.open(writeHellos())) {
+			for (StringHashSet.Storage storage : StringHashSet.Storage.values()) {
+				StringHashSet set = snapshot.toStringHashSet(storage);
+				assertEquals(HELLOS.length, set.size());
+				for (String s : HELLOS) assertTrue(set.contains(s));
+				assertTrue(set.add("mulishani"));
+				assertTrue(set.remove("hello"));
+				assertFalse(snapshot.contains("mulishani"));
+			}
+		}
+	}
+
+	@Test
+	public void testCorruptContents() throws IOException {
+		Path path = writeHellos();
+		corrupt(path, 70);
+		// Opening only checks the header
+		StringSetSnapshot.open(path).close();
+		try {
+			StringSetSnapshot.open(path, true);
+			fail("Corrupt contents should be detected");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCorruptHeader() throws IOException {
+		for (long position : new long[] { 0, 8, 16, 24, 32 }) {
+			Path path = writeHellos();
+			corrupt(path, position);
+			try {
+				StringSetSnapshot.open(path);
+				fail("Corrupt header should be detected at " + position);
+			} catch (IOException e) {
+				// expected
+			}
+		}
+		Path path = writeHellos();
+		Files.write(path, Arrays.copyOf(Files.readAllBytes(path), 40));
+		try {
+			StringSetSnapshot.open(path);
+			fail("Truncated file should be detected");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testWrongSize() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("wrong.snap");
+		try {
+			StringSetSnapshot.write(Arrays.asList("a", "b", "c"), 2, path);
+			fail("Too many items should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(0, folder.getRoot().list().length);
+	}
+
+	@Test
+	public void testClose() throws IOException {
+		StringSetSnapshot snapshot = StringSetSnapshot.open(writeHellos());
+		snapshot.close();
+		snapshot.close();
+		try {
+			snapshot.contains("hello");
+			fail("Should not be usable after close");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,501 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of Strings that can hand out an immutable snapshot of itself in
+ * constant time, however large it is, and keep changing while readers work
+ * through the snapshot. Readers never see a later change, never need a lock
+ * and never throw ConcurrentModificationException; a snapshot can also be
+ * forked into a new set that changes independently of the first.
+ *
+ * The items are kept in a hash array mapped trie: each node covers five bits
+ * of the hash, with a bitmap saying which of its 32 branches hold an item
+ * directly and which lead to a child node, and packed arrays holding only
+ * those. A set of ten million items is about five levels deep. Snapshots
+ * share every node with the set. Each node records the set version that
+ * created it; the set changes the nodes of its current version in place, and
+ * taking a snapshot starts a new version, so the next write to a shared node
+ * copies it and the path above it first. A write therefore copies only those
+ * nodes on its path that no write since the last snapshot has copied yet.
+ *
+ * The set itself is not safe for use by several threads at once, but its
+ * snapshots are: once taken, nothing reachable from one is ever changed.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public class VersionedStringSet implements Iterable<String> {
+
+	// The number of hash bits each level of the trie consumes
+	private static final int BITS = 5;
+
+	// The deepest a lookup goes: six levels of five bits, one of two, then a collision node
+	private static final int MAX_DEPTH = 8;
+
+	private static final String[] NO_ITEMS = new String[0];
+	private static final int[] NO_HASHES = new int[0];
+	private static final Node[] NO_CHILDREN = new Node[0];
+	private static final Node EMPTY = new Node(null, 0, 0, NO_ITEMS, NO_HASHES, NO_CHILDREN);
+
+	private final StringHasher hasher;
+	private Node root = EMPTY;
+	private int size;
+	// The nodes created since the last snapshot have this version, and may be changed in place
+	private Object version = new Object();
+	// Set by add() and remove() when they change the trie
+	private boolean changed;
+
+	/**
+	 * One node of the trie. Below the last level of hash bits it is a
+	 * collision node, whose items all have the same hash and whose maps are
+	 * unused. Its items and hashes arrays are never changed once the node can
+	 * be reached from a snapshot; its children array is only changed while
+	 * the node belongs to the current version.
+	 */
+	private static final class Node {
+		final Object version;
+		int dataMap;
+		int nodeMap;
+		String[] items;
+		int[] hashes;
+		Node[] children;
+
+		Node(Object version, int dataMap, int nodeMap, String[] items, int[] hashes, Node[] children) {
+			this.version = version;
+			this.dataMap = dataMap;
+			this.nodeMap = nodeMap;
+			this.items = items;
+			this.hashes = hashes;
+			this.children = children;
+		}
+	}
+
+	/**
+	 * An immutable view of a VersionedStringSet as it was when snapshot() was
+	 * called. It shares its nodes with the set, so it costs nothing to take
+	 * and little to keep while the set changes, and any number of threads can
+	 * read it.
+	 */
+	public static final class Snapshot implements Iterable<String> {
+		private final StringHasher hasher;
+		private final Node root;
+		private final int size;
+
+		Snapshot(StringHasher hasher, Node root, int size) {
+			this.hasher = hasher;
+			this.root = root;
+			this.size = size;
+		}
+
+		/**
+		 * Checks if the given item was in the set when the snapshot was taken.
+		 *
+		 * @param item
+		 * @return True if and only if the item is in the snapshot.
+		 */
+		public boolean contains(CharSequence item) {
+			return VersionedStringSet.contains(this.root, item, this.hasher.hash(item));
+		}
+
+		/**
+		 * @return The number of items in the snapshot.
+		 */
+		public int size() {
+			return this.size;
+		}
+
+		/**
+		 * @return True iff the snapshot contains no items.
+		 */
+		public boolean isEmpty() {
+			return this.size == 0;
+		}
+
+		/**
+		 * Creates a new set holding the snapshot's items, in constant time. The
+		 * new set and the snapshot share their nodes until the set changes them.
+		 *
+		 * @return The new set
+		 */
+		public VersionedStringSet fork() {
+			return new VersionedStringSet(this);
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			return new TrieIterator(this.root, null);
+		}
+
+		@Override
+		public String toString() {
+			return VersionedStringSet.render(this);
+		}
+	}
+
+	/**
+	 * Creates an empty set. It hashes with its own StringHasher.randomized()
+	 * hasher.
+	 */
+	public VersionedStringSet() {
+		this(StringHasher.randomized());
+	}
+
+	/**
+	 * Creates an empty set using the given hash function.
+	 */
+	public VersionedStringSet(StringHasher hasher) {
+		if (hasher == null) throw new NullPointerException();
+		this.hasher = hasher;
+	}
+
+	private VersionedStringSet(Snapshot snapshot) {
+		this.hasher = snapshot.hasher;
+		this.root = snapshot.root;
+		this.size = snapshot.size;
+	}
+
+	/**
+	 * @return The hash function the set uses
+	 */
+	public StringHasher hasher() {
+		return this.hasher;
+	}
+
+	/**
+	 * Takes an immutable view of the set as it is now, in constant time.
+	 * Afterwards, the first write to each part of the set the snapshot shares
+	 * copies that part.
+	 *
+	 * @return The snapshot
+	 */
+	public Snapshot snapshot() {
+		this.version = new Object();
+		return new Snapshot(this.hasher, this.root, this.size);
+	}
+
+	/**
+	 * @return The position of the bit among the set bits of the map below it
+	 */
+	private static int index(int map, int bit) {
+		return Integer.bitCount(map & (bit - 1));
+	}
+
+	private static boolean contains(Node node, CharSequence item, int hash) {
+		for (int shift = 0; shift < 32; shift += BITS) {
+			int bit = 1 << ((hash >>> shift) & 31);
+			if ((node.dataMap & bit) != 0) {
+				int i = VersionedStringSet.index(node.dataMap, bit);
+				return node.hashes[i] == hash && node.items[i].contentEquals(item);
+			}
+			if ((node.nodeMap & bit) == 0) return false;
+			node = node.children[VersionedStringSet.index(node.nodeMap, bit)];
+		}
+		for (int i = 0; i < node.items.length; i++) if (node.items[i].contentEquals(item)) return true;
+		return false;
+	}
+
+	/**
+	 * Checks if the given item is in the set.
+	 *
+	 * @param item
+	 * @return True if and only if the item is in the set.
+	 */
+	public boolean contains(CharSequence item) {
+		return VersionedStringSet.contains(this.root, item, this.hasher.hash(item));
+	}
+
+	/**
+	 * Adds the given item if it is not there already.
+	 *
+	 * @param item
+	 * @return true if the set changed.
+	 */
+	public boolean add(String item) {
+		if (item == null) throw new NullPointerException();
+		this.changed = false;
+		this.root = this.add(this.root, item, this.hasher.hash(item), 0);
+		if (!this.changed) return false;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * Removes the given item from the set if it is there.
+	 *
+	 * @param item
+	 * @return True if the set changed.
+	 */
+	public boolean remove(String item) {
+		this.changed = false;
+		this.root = this.remove(this.root, item, this.hasher.hash(item), 0);
+		if (!this.changed) return false;
+		this.size--;
+		return true;
+	}
+
+	/**
+	 * @return The node itself if it belongs to the current version, or else a
+	 *         copy of it that does, sharing its items
+	 */
+	private Node editable(Node node) {
+		if (node.version == this.version) return node;
+		return new Node(this.version, node.dataMap, node.nodeMap, node.items, node.hashes, node.children.clone());
+	}
+
+	/**
+	 * @return The node with its items replaced, in place if it belongs to the current version
+	 */
+	private Node withItems(Node node, int dataMap, int nodeMap, String[] items, int[] hashes, Node[] children) {
+		// The copy will change its children array in place, so it must not share the old node's
+		if (node.version != this.version) return new Node(this.version, dataMap, nodeMap, items, hashes, children == node.children ? children.clone() : children);
+		node.dataMap = dataMap;
+		node.nodeMap = nodeMap;
+		node.items = items;
+		node.hashes = hashes;
+		node.children = children;
+		return node;
+	}
+
+	/**
+	 * @return A new node holding two items whose hashes agree below the shift
+	 */
+	private Node pair(String first, int firstHash, String second, int secondHash, int shift) {
+		if (shift >= 32) return new Node(this.version, 0, 0, new String[] { first, second }, new int[] { firstHash, secondHash }, NO_CHILDREN);
+		int firstBit = 1 << ((firstHash >>> shift) & 31);
+		int secondBit = 1 << ((secondHash >>> shift) & 31);
+		if (firstBit == secondBit) return new Node(this.version, 0, firstBit, NO_ITEMS, NO_HASHES, new Node[] { this.pair(first, firstHash, second, secondHash, shift + BITS) });
+		boolean ordered = Integer.compareUnsigned(firstBit, secondBit) < 0;
+		return new Node(this.version, firstBit | secondBit, 0, ordered ? new String[] { first, second } : new String[] { second, first },
+				ordered ? new int[] { firstHash, secondHash } : new int[] { secondHash, firstHash }, NO_CHILDREN);
+	}
+
+	/**
+	 * @return The node the subtree is after adding the item
+	 */
+	private Node add(Node node, String item, int hash, int shift) {
+		if (shift >= 32) {
+			for (String existing : node.items) if (existing.equals(item)) return node;
+			this.changed = true;
+			String[] items = Arrays.copyOf(node.items, node.items.length + 1);
+			int[] hashes = Arrays.copyOf(node.hashes, node.hashes.length + 1);
+			items[node.items.length] = item;
+			hashes[node.hashes.length] = hash;
+			return this.withItems(node, 0, 0, items, hashes, NO_CHILDREN);
+		}
+		int bit = 1 << ((hash >>> shift) & 31);
+		if ((node.dataMap & bit) != 0) {
+			int i = VersionedStringSet.index(node.dataMap, bit);
+			if (node.hashes[i] == hash && node.items[i].equals(item)) return node;
+			// The branch's item and the new one move down into a node of their own
+			this.changed = true;
+			Node child = this.pair(node.items[i], node.hashes[i], item, hash, shift + BITS);
+			int j = VersionedStringSet.index(node.nodeMap, bit);
+			return this.withItems(node, node.dataMap ^ bit, node.nodeMap | bit, VersionedStringSet.without(node.items, i),
+					VersionedStringSet.without(node.hashes, i), VersionedStringSet.with(node.children, j, child));
+		}
+		if ((node.nodeMap & bit) != 0) {
+			int i = VersionedStringSet.index(node.nodeMap, bit);
+			Node child = node.children[i];
+			Node updated = this.add(child, item, hash, shift + BITS);
+			if (updated == child) return node;
+			node = this.editable(node);
+			node.children[i] = updated;
+			return node;
+		}
+		this.changed = true;
+		int i = VersionedStringSet.index(node.dataMap, bit);
+		return this.withItems(node, node.dataMap | bit, node.nodeMap, VersionedStringSet.with(node.items, i, item), VersionedStringSet.with(node.hashes, i, hash),
+				node.children);
+	}
+
+	/**
+	 * @return The node the subtree is after removing the item
+	 */
+	private Node remove(Node node, String item, int hash, int shift) {
+		if (shift >= 32) {
+			for (int i = 0; i < node.items.length; i++) {
+				if (!node.items[i].equals(item)) continue;
+				this.changed = true;
+				return this.withItems(node, 0, 0, VersionedStringSet.without(node.items, i), VersionedStringSet.without(node.hashes, i), NO_CHILDREN);
+			}
+			return node;
+		}
+		int bit = 1 << ((hash >>> shift) & 31);
+		if ((node.dataMap & bit) != 0) {
+			int i = VersionedStringSet.index(node.dataMap, bit);
+			if (node.hashes[i] != hash || !node.items[i].equals(item)) return node;
+			this.changed = true;
+			return this.withItems(node, node.dataMap ^ bit, node.nodeMap, VersionedStringSet.without(node.items, i), VersionedStringSet.without(node.hashes, i),
+					node.children);
+		}
+		if ((node.nodeMap & bit) == 0) return node;
+		int i = VersionedStringSet.index(node.nodeMap, bit);
+		Node child = node.children[i];
+		Node updated = this.remove(child, item, hash, shift + BITS);
+		if (updated == child) return node;
+		if (updated.nodeMap == 0 && updated.items.length == 1) {
+			// A child left with one item gives it back to this node
+			int j = VersionedStringSet.index(node.dataMap, bit);
+			return this.withItems(node, node.dataMap | bit, node.nodeMap ^ bit, VersionedStringSet.with(node.items, j, updated.items[0]),
+					VersionedStringSet.with(node.hashes, j, updated.hashes[0]), VersionedStringSet.without(node.children, i));
+		}
+		node = this.editable(node);
+		node.children[i] = updated;
+		return node;
+	}
+
+	private static String[] with(String[] array, int index, String value) {
+		String[] result = new String[array.length + 1];
+		System.arraycopy(array, 0, result, 0, index);
+		result[index] = value;
+		System.arraycopy(array, index, result, index + 1, array.length - index);
+		return result;
+	}
+
+	private static int[] with(int[] array, int index, int value) {
+		int[] result = new int[array.length + 1];
+		System.arraycopy(array, 0, result, 0, index);
+		result[index] = value;
+		System.arraycopy(array, index, result, index + 1, array.length - index);
+		return result;
+	}
+
+	private static Node[] with(Node[] array, int index, Node value) {
+		Node[] result = new Node[array.length + 1];
+		System.arraycopy(array, 0, result, 0, index);
+		result[index] = value;
+		System.arraycopy(array, index, result, index + 1, array.length - index);
+		return result;
+	}
+
+	private static String[] without(String[] array, int index) {
+		if (array.length == 1) return NO_ITEMS;
+		String[] result = new String[array.length - 1];
+		System.arraycopy(array, 0, result, 0, index);
+		System.arraycopy(array, index + 1, result, index, result.length - index);
+		return result;
+	}
+
+	private static int[] without(int[] array, int index) {
+		if (array.length == 1) return NO_HASHES;
+		int[] result = new int[array.length - 1];
+		System.arraycopy(array, 0, result, 0, index);
+		System.arraycopy(array, index + 1, result, index, result.length - index);
+		return result;
+	}
+
+	private static Node[] without(Node[] array, int index) {
+		if (array.length == 1) return NO_CHILDREN;
+		Node[] result = new Node[array.length - 1];
+		System.arraycopy(array, 0, result, 0, index);
+		System.arraycopy(array, index + 1, result, index, result.length - index);
+		return result;
+	}
+
+	/**
+	 * @return The number of items in the set.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return True iff the set contains no items.
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Removes all the items. Snapshots keep theirs.
+	 */
+	public void clear() {
+		this.root = EMPTY;
+		this.size = 0;
+	}
+
+	/**
+	 * Iterates over the items the set held when the iterator was created,
+	 * however the set changes meanwhile, so it never throws
+	 * ConcurrentModificationException. Like snapshot(), it makes the next
+	 * writes copy what they touch. Its remove() removes the last item from
+	 * the set.
+	 */
+	@Override
+	public Iterator<String> iterator() {
+		this.version = new Object();
+		return new TrieIterator(this.root, this);
+	}
+
+	@Override
+	public String toString() {
+		return VersionedStringSet.render(this);
+	}
+
+	private static String render(Iterable<String> items) {
+		StringBuilder sb = new StringBuilder("[");
+		for (Iterator<String> iter = items.iterator(); iter.hasNext(); ) {
+			sb.append(iter.next());
+			if (iter.hasNext()) sb.append(", ");
+		}
+		return sb.append(']').toString();
+	}
+
+	/**
+	 * Walks the trie depth first, each node's own items before its children's
+	 */
+	private static class TrieIterator implements Iterator<String> {
+		VersionedStringSet set;
+		Node[] nodes = new Node[MAX_DEPTH + 1];
+		// How far through each node's items and then children the walk is
+		int[] positions = new int[MAX_DEPTH + 1];
+		int depth;
+		String next;
+		String last;
+
+		TrieIterator(Node root, VersionedStringSet set) {
+			this.set = set;
+			this.nodes[0] = root;
+			this.advance();
+		}
+
+		private void advance() {
+			this.next = null;
+			while (this.depth >= 0) {
+				Node node = this.nodes[this.depth];
+				int position = this.positions[this.depth]++;
+				if (position < node.items.length) {
+					this.next = node.items[position];
+					return;
+				}
+				position -= node.items.length;
+				if (position < node.children.length) {
+					this.depth++;
+					this.nodes[this.depth] = node.children[position];
+					this.positions[this.depth] = 0;
+				} else this.depth--;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.next != null;
+		}
+
+		@Override
+		public String next() throws NoSuchElementException {
+			if (this.next == null) throw new NoSuchElementException();
+			this.last = this.next;
+			this.advance();
+			return this.last;
+		}
+
+		@Override
+		public void remove() throws IllegalStateException, UnsupportedOperationException {
+			if (this.set == null) throw new UnsupportedOperationException();
+			if (this.last == null) throw new IllegalStateException();
+			this.set.remove(this.last);
+			this.last = null;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class VersionedStringSetTest {
+
+	@Test
+	public void testMatchesHashSet() {
+		// POLYNOMIAL makes "Aa" and "BB" collide on every bit, which exercises the collision nodes
+		for (StringHasher hasher : new StringHasher[] { StringHasher.randomized(), StringHasher.POLYNOMIAL }) {
+			VersionedStringSet set = new VersionedStringSet(hasher);
+			Set<String> expected = new HashSet<String>();
+			Random random = new Random(24);
+			String[] pool = new String[2000];
+			for (int i = 0; i < pool.length; i++) pool[i] = i < 64 ? VersionedStringSetTest.colliding(i) : "item" + random.nextInt();
+			for (int i = 0; i < 50000; i++) {
+				String item = pool[random.nextInt(pool.length)];
+				if (random.nextInt(3) == 0) assertEquals(expected.remove(item), set.remove(item));
+				else assertEquals(expected.add(item), set.add(item));
+				assertEquals(expected.size(), set.size());
+			}
+			for (String item : pool) assertEquals(expected.contains(item), set.contains(item));
+			Set<String> seen = new HashSet<String>();
+			for (String item : set) assertTrue(seen.add(item));
+			assertEquals(expected, seen);
+			for (String item : pool) set.remove(item);
+			assertTrue(set.isEmpty());
+			assertEquals("[]", set.toString());
+		}
+	}
+
+	/**
+	 * Six pairs of "Aa" and "BB" give 64 strings with the same hash code
+	 */
+	private static String colliding(int i) {
+		StringBuilder sb = new StringBuilder();
+		for (int bit = 0; bit < 6; bit++) sb.append((i >> bit & 1) == 0 ? "Aa" : "BB");
+		return sb.toString();
+	}
+
+	@Test
+	public void testSnapshotIsolation() {
+		VersionedStringSet set = new VersionedStringSet();
+		for (int i = 0; i < 10000; i++) set.add("item" + i);
+		VersionedStringSet.Snapshot before = set.snapshot();
+		for (int i = 0; i < 10000; i += 2) set.remove("item" + i);
+		for (int i = 10000; i < 12000; i++) set.add("item" + i);
+		VersionedStringSet.Snapshot after = set.snapshot();
+		set.clear();
+		assertEquals(10000, before.size());
+		assertEquals(7000, after.size());
+		for (int i = 0; i < 12000; i++) {
+			assertEquals(i < 10000, before.contains("item" + i));
+			assertEquals(i % 2 == 1 || i >= 10000, after.contains(new StringBuilder("item").append(i)));
+		}
+		int count = 0;
+		for (String item : before) {
+			assertTrue(before.contains(item));
+			count++;
+		}
+		assertEquals(10000, count);
+		try {
+			before.iterator().remove();
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testFork() {
+		VersionedStringSet set = new VersionedStringSet();
+		set.add("a");
+		set.add("b");
+		VersionedStringSet.Snapshot snapshot = set.snapshot();
+		VersionedStringSet first = snapshot.fork();
+		VersionedStringSet second = snapshot.fork();
+		first.add("c");
+		second.remove("a");
+		set.add("d");
+		assertTrue(first.contains("a") && first.contains("c") && !first.contains("d"));
+		assertTrue(!second.contains("a") && second.contains("b") && !second.contains("c"));
+		assertEquals(2, snapshot.size());
+		assertFalse(snapshot.contains("c"));
+		assertEquals(3, set.size());
+	}
+
+	@Test
+	public void testIteratorSeesItsOwnVersion() {
+		VersionedStringSet set = new VersionedStringSet();
+		for (int i = 0; i < 1000; i++) set.add("item" + i);
+		int count = 0;
+		for (Iterator<String> iter = set.iterator(); iter.hasNext(); count++) {
+			String item = iter.next();
+			set.add(item + "!");
+			if (item.endsWith("0")) iter.remove();
+		}
+		assertEquals(1000, count);
+		assertEquals(1900, set.size());
+	}
+}
@@ -0,0 +1,183 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * A pool of canonical Strings, like StringHashSet.intern(), that only holds
+ * its Strings through weak references, so a String nothing else uses any
+ * more can be collected and drops out of the pool. Unlike String.intern()
+ * the pool is an ordinary object: it can be sized, cleared, dropped, and
+ * searched with any CharSequence.
+ *
+ * Collected Strings leave their entries in the table until the next call
+ * that touches the pool, which removes them from the table the way remove()
+ * would. The table is the same open-addressing engine as a StringHashSet's
+ * probing storage. It is not safe for use by several threads at once.
+ *
+ * @author Cooper Anderson (andersc7).
+ */
+public class WeakStringInterner {
+
+	// The initial size of the table.
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final StringHasher hasher;
+	private final ReferenceQueue<String> collected = new ReferenceQueue<String>();
+	private final Table table;
+
+	/**
+	 * A weak reference to a pooled String, which keeps its hash so the
+	 * entry can be found again after the String is gone
+	 */
+	private static final class Entry extends WeakReference<String> {
+		final int hash;
+
+		Entry(String item, int hash, ReferenceQueue<String> queue) {
+			super(item, queue);
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * The probing table, with the entries as its keys
+	 */
+	private static final class Table extends OpenTable<Entry[]> {
+		Table(int initialCapacity) {
+			super(initialCapacity, StringHashSet.Storage.LINEAR_PROBING.defaultLoadFactor(), false);
+		}
+
+		@Override
+		Entry[] newKeys(int slots) {
+			return new Entry[slots];
+		}
+
+		@Override
+		boolean isEmpty(Entry[] keys, int slot) {
+			return keys[slot] == null;
+		}
+
+		@Override
+		void move(Entry[] from, int fromSlot, Entry[] to, int toSlot) {
+			to[toSlot] = from[fromSlot];
+		}
+
+		@Override
+		void clear(Entry[] keys, int slot) {
+			keys[slot] = null;
+		}
+
+		/**
+		 * @return The String in the table equal to the item, or null if there is none
+		 */
+		String find(CharSequence item, int hash) {
+			for (int slot = this.home(hash); ; slot = this.next(slot)) {
+				Entry entry = this.keys[slot];
+				if (entry == null) return null;
+				if (this.hashes[slot] != hash) continue;
+				String key = entry.get();
+				if (key != null && key.contentEquals(item)) return key;
+			}
+		}
+
+		/**
+		 * Removes an entry whose String has been collected, if it is still in the table
+		 */
+		void remove(Entry entry) {
+			for (int slot = this.home(entry.hash); this.keys[slot] != null; slot = this.next(slot)) {
+				if (this.keys[slot] == entry) {
+					this.removeAt(slot);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a pool sized for a modest number of Strings.
+	 */
+	public WeakStringInterner() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a pool with room for the given number of Strings before the
+	 * table has to grow. It hashes with its own StringHasher.randomized()
+	 * hasher.
+	 */
+	public WeakStringInterner(int expectedItems) {
+		this(expectedItems, StringHasher.randomized());
+	}
+
+	/**
+	 * Creates a pool with room for the given number of Strings, using the
+	 * given hash function.
+	 */
+	public WeakStringInterner(int expectedItems, StringHasher hasher) {
+		if (hasher == null) throw new NullPointerException();
+		this.hasher = hasher;
+		this.table = new Table(expectedItems);
+	}
+
+	/**
+	 * Removes the entries of every String that has been collected since the
+	 * last call.
+	 */
+	public void purge() {
+		for (Entry entry; (entry = (Entry) this.collected.poll()) != null; ) this.table.remove(entry);
+	}
+
+	/**
+	 * Finds the pooled String for the given characters.
+	 *
+	 * @param item
+	 * @return The String in the pool equal to the item, or null if there is none.
+	 */
+	public String get(CharSequence item) {
+		this.purge();
+		return this.table.find(item, this.hasher.hash(item));
+	}
+
+	/**
+	 * Returns the pooled String for the given characters, adding them as a
+	 * new String first if they are not there.
+	 *
+	 * @param item
+	 * @return The canonical String equal to the item.
+	 */
+	public String getOrAdd(CharSequence item) {
+		this.purge();
+		int hash = this.hasher.hash(item);
+		String found = this.table.find(item, hash);
+		if (found != null) return found;
+		found = item.toString();
+		int slot = this.table.claim(hash);
+		this.table.keys[slot] = new Entry(found, hash, this.collected);
+		return found;
+	}
+
+	/**
+	 * Returns the pooled String equal to the item, or pools the item itself.
+	 *
+	 * @param item
+	 * @return The canonical String equal to the item.
+	 */
+	public String intern(String item) {
+		return this.getOrAdd(item);
+	}
+
+	/**
+	 * @return The number of Strings in the pool, counting any collected
+	 *         since the last purge that the collector has not reported yet
+	 */
+	public int size() {
+		this.purge();
+		return this.table.size();
+	}
+
+	/**
+	 * Empties the pool, keeping a table of the default size.
+	 */
+	public void clear() {
+		this.purge();
+		this.table.clear(DEFAULT_CAPACITY);
+	}
+}
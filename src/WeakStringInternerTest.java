@@ -0,0 +1,47 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class WeakStringInternerTest {
+
+	@Test
+	public void testIntern() {
+		WeakStringInterner pool = new WeakStringInterner();
+		String hello = new String("hello");
+		assertTrue(hello == pool.intern(hello));
+		assertTrue(hello == pool.intern(new String("hello")));
+		assertTrue(hello == pool.getOrAdd(new StringBuilder("hello")));
+		assertTrue(hello == pool.get("hello"));
+		assertEquals(null, pool.get("hi"));
+		List<String> kept = new ArrayList<String>();
+		for (int i = 0; i < 10000; i++) kept.add(pool.intern("item" + i));
+		for (int i = 0; i < 10000; i++) assertTrue(kept.get(i) == pool.intern("item" + i));
+		assertEquals(10001, pool.size());
+		pool.clear();
+		assertEquals(0, pool.size());
+		assertEquals(null, pool.get("hello"));
+	}
+
+	@Test
+	public void testCollected() throws InterruptedException {
+		WeakStringInterner pool = new WeakStringInterner();
+		List<String> kept = new ArrayList<String>();
+		for (int i = 0; i < 10000; i++) {
+			String item = pool.intern("item" + i);
+			if (i % 2 == 0) kept.add(item);
+		}
+		for (int attempt = 0; attempt < 50 && pool.size() > kept.size(); attempt++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(kept.size(), pool.size());
+		for (String item : kept) assertTrue(item == pool.get(new StringBuilder(item)));
+		// Collected Strings come back as new entries
+		assertEquals("item1", pool.getOrAdd(new StringBuilder("item1")));
+		assertEquals(kept.size() + 1, pool.size());
+	}
+}